@@ -19,7 +19,15 @@
 package info.johnmurphyastro.dslrtrigger;
 
 import javax.swing.JOptionPane;
+import info.johnmurphyastro.dslrtrigger.api.ControlServer;
+import info.johnmurphyastro.dslrtrigger.headless.HeadlessRunner;
+import info.johnmurphyastro.dslrtrigger.jfr.FlightRecorderEvents;
 import info.johnmurphyastro.dslrtrigger.ui.DslrTriggerFrame;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import javax.swing.UIManager;
 
 /**
@@ -28,9 +36,95 @@ import javax.swing.UIManager;
  */
 public class DslrTrigger {
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments. Use "-plan planFile" to run 
+     * a sequence plan file without the user interface, "-dryrun planFile"
+     * to simulate it, "-selftest planFile" to check this machine can take it,
+     * "-calibrate sessionFile" to continue a shutter lag calibration session,
+     * "-correlate logFile imageFolder" to match images to log rows,
+     * "-rename logFile imageFolder [destFolder] [-copy] [-dryrun]" to give
+     * them their log row filenames, "-undo journalFile" to reverse that,
+     * "-analyze logFileOrFolder..." to analyse the timing of many logs,
+     * "-index indexFile logFileOrFolder..." to index their exposure times,
+     * "-query indexFile utcTime [utcEndTime]" to find exposures in the index,
+     * "-events eventsFile" to export a binary event log,
+     * or "-api port" to serve the local control API.
+     * Any of these, or none, can be preceded by "-jfr file.jfr" to make a 
+     * continuous Flight Recorder recording.
      */
     public static void main(String args[]) {
+        if (args.length >= 2 && "-jfr".equals(args[0])) {
+            try {
+                FlightRecorderEvents.startRecording(new File(args[1]));
+            } catch (IOException ex) {
+                System.err.println("Failed to start Flight Recorder: " + ex.getMessage());
+                System.exit(2);
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args.length == 2 && "-plan".equals(args[0])) {
+            System.exit(HeadlessRunner.run(new File(args[1])));
+        }
+        if (args.length == 2 && "-dryrun".equals(args[0])) {
+            System.exit(HeadlessRunner.dryRun(new File(args[1])));
+        }
+        if (args.length == 2 && "-selftest".equals(args[0])) {
+            System.exit(HeadlessRunner.selfTest(new File(args[1])));
+        }
+        if (args.length == 2 && "-calibrate".equals(args[0])) {
+            System.exit(HeadlessRunner.calibrate(new File(args[1])));
+        }
+        if (args.length == 3 && "-correlate".equals(args[0])) {
+            System.exit(HeadlessRunner.correlate(new File(args[1]), new File(args[2])));
+        }
+        if (args.length >= 3 && "-rename".equals(args[0])) {
+            File destFolder = null;
+            boolean copy = false;
+            boolean dryRun = false;
+            for (int i = 3; i < args.length; i++) {
+                if ("-copy".equals(args[i])) {
+                    copy = true;
+                } else if ("-dryrun".equals(args[i])) {
+                    dryRun = true;
+                } else if (destFolder == null) {
+                    destFolder = new File(args[i]);
+                } else {
+                    System.err.println("-rename logFile imageFolder [destFolder] [-copy] [-dryrun]");
+                    System.exit(2);
+                }
+            }
+            System.exit(HeadlessRunner.rename(new File(args[1]), new File(args[2]), destFolder, copy, dryRun));
+        }
+        if (args.length == 2 && "-undo".equals(args[0])) {
+            System.exit(HeadlessRunner.undoRename(new File(args[1])));
+        }
+        if (args.length >= 2 && "-analyze".equals(args[0])) {
+            List<File> paths = new ArrayList<>();
+            for (int i = 1; i < args.length; i++) {
+                paths.add(new File(args[i]));
+            }
+            System.exit(HeadlessRunner.analyze(paths));
+        }
+        if (args.length >= 3 && "-index".equals(args[0])) {
+            List<File> paths = new ArrayList<>();
+            for (int i = 2; i < args.length; i++) {
+                paths.add(new File(args[i]));
+            }
+            System.exit(HeadlessRunner.index(new File(args[1]), paths));
+        }
+        if ((args.length == 3 || args.length == 4) && "-query".equals(args[0])) {
+            System.exit(HeadlessRunner.query(new File(args[1]), args[2], args.length == 4 ? args[3] : null));
+        }
+        if (args.length == 2 && "-events".equals(args[0])) {
+            System.exit(HeadlessRunner.exportEvents(new File(args[1])));
+        }
+        if (args.length == 2 && "-api".equals(args[0])) {
+            try {
+                System.exit(ControlServer.run(Integer.parseInt(args[1])));
+            } catch (NumberFormatException ex) {
+                System.err.println("-api port must be a number: " + args[1]);
+                System.exit(2);
+            }
+        }
 
         /* Set the Nimbus look and feel */
         //<editor-fold defaultstate="collapsed" desc=" Look and feel setting code (optional) ">
@@ -0,0 +1,61 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger;
+
+/**
+ * Receives every button press and release, wait and log event of a sequence
+ * as it happens. Called on the Intervalometer thread, so implementations must
+ * return quickly and must never block. SWITCH_ERROR may also be called on
+ * the shutter watchdog thread.
+ * @author John Murphy
+ */
+public interface TimingListener {
+    
+    /** Sequence timing events */
+    public enum Event {
+        /** Started waiting for a scheduled time. Actual time is the time the wait started */
+        WAIT_BEGIN,
+        /** Finished waiting for a scheduled time */
+        WAIT_END,
+        /** Shutter button pressed to flip the mirror up */
+        MIRROR_LOCK_PRESS,
+        /** Shutter button released after flipping the mirror up */
+        MIRROR_LOCK_RELEASE,
+        /** Shutter button pressed to start the exposure */
+        SHUTTER_PRESS,
+        /** Shutter button released. In bulb mode this ends the exposure */
+        SHUTTER_RELEASE,
+        /** A log file row was written. Scheduled time is the planned exposure start */
+        LOG_ROW,
+        /** The shot was cancelled by Pause or Stop. Scheduled time is the planned exposure start */
+        CANCEL,
+        /** The shot started later than its time grid slot. Scheduled time is the slot */
+        OVERRUN,
+        /** A USB switch command failed. Shot is -1 and both times are when it failed */
+        SWITCH_ERROR
+    }
+    
+    /**
+     * @param event What happened
+     * @param shot Shot index in the sequence, from 0, or -1 if not known
+     * @param scheduledTime When it should have happened, in ms
+     * @param actualTime When it happened, in ms
+     */
+    public void timingEvent(Event event, int shot, long scheduledTime, long actualTime);
+}
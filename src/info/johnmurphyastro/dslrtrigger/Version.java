@@ -79,9 +79,23 @@ public class Version {
             "It can improve exposure end time accuracy, and allows a sequence to be aborted without having to wait for a\n" +
             "long exposure to finish.\n\n" +
             
-            "- 'Fire interval / s:' is the time from the start of the first shot to the start of the next shot. Note that if the camera\n" +
+            "- 'Fire interval / s:' is the time from the start of the first shot to the start of the next shot. Millisecond resolution,\n" +
+            "for example 1.5 or 0.75 seconds. Start times are aligned to whole seconds if the interval is a whole number of seconds,\n" +
+            "otherwise to 0.1 seconds, or not at all. Note that if the camera\n" +
             "starts buffering images, the shutter lag may become inconsistent. Ensure that:\n" +
-            "            'Fire interval' time    >    'Mirror Lock' time + 'Exposure' time + '" + (MinTime.BEFORE_SHOT_MS/1000.0) + " seconds'.\n\n" +
+            "            'Fire interval' time    >    'Mirror Lock' time + 'Exposure' time + 'Shutter open delay' - 'Shutter close delay'\n" +
+            "                                         + '" + (MinTime.BEFORE_SHOT_MS/1000.0) + " seconds' + measured trigger latency.\n\n" +
+            
+            "If a shot finishes late, the overrun is recorded in the 'Comment' column. The 'overrun_policy' preference\n" +
+            "selects SLIP (shift all later shots, the default), SKIP (keep the time grid, skip missed slots) or\n" +
+            "CATCH_UP (keep the time grid, take the late shot as soon as possible).\n\n" +
+            
+            "'Sequence' menu: 'Pause' finishes or cancels the current shot in the same way as 'Stop', but keeps the log file open.\n" +
+            "'Resume' retakes that shot at the next time it can reach on the original time grid, so later shots keep the same\n" +
+            "phase. The paused interval is recorded in the 'Comment' column.\n" +
+            "Progress is saved to 'DSLRtrigger.checkpoint' in the log folder after every shot. If the program or computer\n" +
+            "crashes, the next start offers to resume the sequence on its original time grid, appending to the same log file.\n" +
+            "With -plan, running the same plan again resumes automatically.\n\n" +
             
             "- 'Shots:' Set to the desired number of shots or set to a high number and use 'Stop' to end the sequence.\n\n" +
             
@@ -104,8 +118,67 @@ public class Version {
             "---- 'Shutter open delay compensation' Press the shutter button early by this number of ms to compensate for shutter lag.\n" +
             "---- 'Shutter close delay compensation' Release the shutter button early by this number of ms to compensate for shutter lag.\n" +
             "The 'Shutter close delay' only has an effect in Bulb mode.\n" +
+            "Shutter lag profiles: each applied calibration is added to a profile for the 'Camera' (Settings dialog), Mirror\n" +
+            "Lock and Bulb mode. Once a profile exists its mean replaces these delays, and the log header records the\n" +
+            "uncertainty of the mean. Add 'lag_profile = true' to a plan's [camera] section to use the profiles there too.\n" +
+            "Calibration session: 'Calibrate > Shutter open lag session...' creates a session file and takes a round of LED\n" +
+            "test shots back to back, from half to twice the current delay. Mark each shot's 'led' column in the file with y or\n" +
+            "n, then open it again: the next round narrows the range, until the lag is known to +/- 2 ms (95% confidence).\n" +
+            "The result is then added to the profile. Headless: 'java -jar DSLRtrigger.jar -calibrate session.txt'.\n" +
+            "'Calibrate > Shutter close lag session...' does the same for the shutter close delay, in bulb mode. Each shot\n" +
+            "is held for the shutter open delay plus 500 ms, and the switch LED is pulsed briefly after the release. The\n" +
+            "'Calibrate' button next to 'Shutter close delay' in the Settings dialog takes single close lag test shots.\n" +
             "---- 'Tab separated data' If selected, the log file columns will be separated with a tab instead of a comma character\n" +
             "---- 'Log all events' If selected, all button press and release times will be logged.\n\n" +
+            "- 'Plan' menu: 'Save settings as plan file...' writes the current settings to a text file. The file can be edited\n" +
+            "to add more [segment] sections, each with its own exposure, fire interval and shots. 'Run plan file...' checks\n" +
+            "the file, lists every problem with its line number, then runs it. To run a plan without the user interface:\n" +
+            "    java -jar DSLRtrigger.jar -plan myPlan.txt\n" +
+            "In bulb mode a plan [segment] can ramp the exposure ('ramp = linear', 'logarithmic' or 'table'), for example for\n" +
+            "day to night time-lapse. Each shot's requested exposure is logged in the 'Commanded' column.\n" +
+            "'Dry run plan file...' (or -dryrun myPlan.txt) simulates the plan without the switch, and writes every button\n" +
+            "press and release to myPlan.txt_dryrun.csv and myPlan.txt_dryrun.json (open in chrome://tracing or Perfetto).\n" +
+            "External trigger mode: add 'external_input = udp' (or 'pipe' or 'serial'), 'external_address = 5000' and\n" +
+            "'external_deadline_ms = 500' to the plan's [trigger] section. Each shot then starts when a 'FIRE' message arrives\n" +
+            "('FIRE 1565576100000' starts it at that Java time in ms), or when a serial port's CTS line becomes active.\n" +
+            "The 'fire_interval_s' is the minimum time between shots. A trigger that cannot start an exposure within the\n" +
+            "deadline is rejected. The trigger input to shutter button press latency is recorded in the 'Comment' column.\n" +
+            "Remote control: 'java -jar DSLRtrigger.jar -api 8080' serves a local HTTP API (use an SSH tunnel from another\n" +
+            "computer). POST a plan file to /plan, then POST /start, /pause, /resume or /stop. GET /status returns the progress\n" +
+            "and GET /events streams every button press, release, wait and log row (Server-Sent Events). GET /metrics returns\n" +
+            "shot, overrun, switch error and garbage collection counters and button timing histograms for Prometheus.\n" +
+            "Self test: 'Plan > Self test current settings' or 'java -jar DSLRtrigger.jar -selftest plan.txt' runs 2000\n" +
+            "simulated press / release cycles through the wait loop, the USB switch (release commands only, so no shot is\n" +
+            "taken) and the log folder, then reports GO or NO-GO with the wake up, switch and log write times and the\n" +
+            "timing margins this computer needs. Without a COM port, the switch is not tested.\n" +
+            "Flight Recorder: 'java -jar DSLRtrigger.jar -jfr night.jfr' (optionally followed by -plan, -dryrun or -api)\n" +
+            "records every wait, button press and release, log row and cancel step, with GC, safepoint and I/O events, to\n" +
+            "night.jfr when the program exits. Open it in JDK Mission Control (the 'DSLR Trigger' event category).\n" +
+            "GPS clock: add a [clock] section with 'gps_port = COM5' (and 'gps_baud = 4800' if not 9600) to time the shots\n" +
+            "from a GPS receiver's NMEA RMC / ZDA sentences instead of the computer clock. 'gps_pps = true' uses the pulse per\n" +
+            "second on the port's DCD line for sub millisecond accuracy; NMEA alone is only accurate to tens of ms.\n" +
+            "'gps_replay = night.nmea' replays a recorded NMEA file instead. A sequence waits up to 60 seconds for the GPS\n" +
+            "time, and the log header records the offset, drift and jitter of the computer clock.\n" +
+            "NTP monitor: 'ntp_server = ntp.example.org' (or 'host:port') in the [clock] section polls the server every\n" +
+            "'ntp_poll_s' seconds (default 16) on a low priority thread and adds an 'NTP offset' column: the server's time\n" +
+            "minus the logged times, in ms. Without a GPS, 'ntp_apply = true' also disciplines the trigger clock to the server.\n" +
+            "Image check: 'java -jar DSLRtrigger.jar -correlate log.txt imageFolder' reads the EXIF time, exposure and shutter\n" +
+            "count of every JPEG and RAW file in the folder, finds the camera clock offset, and matches each image to a log\n" +
+            "row. It lists missing and extra images, shutter count gaps and mirror lock desyncs (an image taken at the 'ML\n" +
+            "press' time: the camera lost step with the mirror lock presses), and writes log.txt_images.csv.\n" +
+            "Rename images: '-rename log.txt imageFolder [destFolder] [-copy] [-dryrun]' then gives each matched image its\n" +
+            "log 'Filename', keeping its extension. -dryrun only lists the new names. Every rename or copy is recorded in\n" +
+            "log.txt_rename_journal.txt, and '-undo log.txt_rename_journal.txt' restores the camera's filenames.\n" +
+            "Log archive: '-analyze logFolder [more files or folders]' reads every .txt log (comma or tab, with or without\n" +
+            "all events) and reports bulb exposure, exposure error, lateness from the fire interval grid, gaps, cancelled\n" +
+            "shots and mirror lock desync signatures (an 'ML press' less than 250 ms after the previous exposure ended).\n" +
+            "One row per log is written to logFolder_sessions.csv.\n" +
+            "Exposure index: '-index archive.idx logFolder' indexes the start and end of every exposure in the logs. Run it\n" +
+            "again after each session; only new or changed logs are read. '-query archive.idx 2019-05-12T21:03:05.250Z'\n" +
+            "then lists the frames that were exposing at that UTC time (add a second time for a range, for example a\n" +
+            "satellite pass).\n" +
+            "Event log: every button press, release, log row and cancellation is also recorded in log.txt.events, a compact\n" +
+            "binary file. '-events log.txt.events' converts it to log.txt.events.txt (the log file columns), .csv and .json.\n\n" +
             "- Log file columns include:\n" +
             "    'ML press' Time the button was pressed; instructs DSLR to lock up mirror.\n" +
             "    'ML release' Time the button was released; mirror stays locked up.\n" +
@@ -114,7 +187,7 @@ public class Version {
             "    'Start time' The exposure start time; equal to 'SB press' + 'Shutter open delay'.\n" +
             "    'End time' The exposure end time; equal to 'SB release' + 'Shutter close delay'.\n" +
             "    'Exposure' The exposure time; equal to 'End time' - 'Start time'.\n" +
-            "    'Comment' BST / GMT, aborted image details.\n\n" +
+            "    'Comment' BST / GMT, aborted image details, shutter watchdog releases.\n\n" +
             
             "DSLRtrigger trys to ensure that the exposure 'Start time' starts at an exact second.\n" +
             "To do this, the shutter button is pressed early (by 'Shutter open delay'). However, due to OS multitasking, there may be\n" +
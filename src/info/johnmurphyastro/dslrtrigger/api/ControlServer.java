@@ -0,0 +1,549 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.api;
+
+import info.johnmurphyastro.dslrtrigger.ArmedListener;
+import info.johnmurphyastro.dslrtrigger.MessageListener;
+import info.johnmurphyastro.dslrtrigger.ProgressListener;
+import info.johnmurphyastro.dslrtrigger.TimingListener;
+import info.johnmurphyastro.dslrtrigger.WaitTimeListener;
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import info.johnmurphyastro.dslrtrigger.intervalometer.ArmingReport;
+import info.johnmurphyastro.dslrtrigger.intervalometer.IntervalometerController;
+import info.johnmurphyastro.dslrtrigger.plan.PlanException;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFile;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFileReader;
+import info.johnmurphyastro.dslrtrigger.plan.PlanProblem;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Local HTTP control and telemetry API, so that a remote site can be driven
+ * through an SSH tunnel instead of VNC. Listens on the loopback interface only.
+ * <pre>
+ * GET  /status   Sequence state and progress (JSON)
+ * GET  /events   Server-Sent Events stream of every press, release, wait and log row
+ * GET  /metrics  Counters, gauges and latency histograms in the Prometheus text format
+ * POST /plan     Load a sequence plan file (the request body)
+ * POST /start    Start the loaded plan
+ * POST /stop, /pause, /resume
+ * </pre>
+ * A single thread serves every client with a non-blocking selector. The 
+ * Intervalometer thread only adds events to a lock free queue, so a slow or
+ * stalled client can never delay a shot; a client that falls too far behind
+ * is disconnected.
+ * @author John Murphy
+ */
+public class ControlServer implements ProgressListener, WaitTimeListener, ArmedListener, 
+        MessageListener, TimingListener {
+    /** Queued events are sent to clients at most this long after they happen */
+    private static final long SELECT_MS = 50;
+    /** An event stream client with more than this number of unsent bytes is disconnected */
+    private static final int MAX_CLIENT_BACKLOG = 256 * 1024;
+    /** Send a comment line this often so that dead event stream clients are detected */
+    private static final long KEEP_ALIVE_MS = 15_000;
+    private static final String JSON = "application/json";
+    private static final String PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+    
+    /** An event waiting to be sent. Formatted on the selector thread, not the Intervalometer thread */
+    private static class StreamEvent {
+        final String name;
+        final int shot;
+        final long scheduledTime;
+        final long actualTime;
+        final String json;
+        
+        StreamEvent(String name, int shot, long scheduledTime, long actualTime, String json) {
+            this.name = name;
+            this.shot = shot;
+            this.scheduledTime = scheduledTime;
+            this.actualTime = actualTime;
+            this.json = json;
+        }
+    }
+    
+    private final IntervalometerController controller;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread selectorThread;
+    private final Queue<StreamEvent> events = new ConcurrentLinkedQueue<>();
+    /** Open event streams. Only used by the selector thread */
+    private final List<HttpConnection> streams = new ArrayList<>();
+    private final SequenceMetrics metrics = new SequenceMetrics();
+    private long lastKeepAlive;
+    
+    private volatile PlanFile plan;
+    private volatile Thread sequenceThread;
+    private volatile int shotsTaken;
+    private volatile int totalShots;
+    private volatile long waitTime;
+    private volatile String lastError;
+    
+    /**
+     * Open the port and start serving
+     * @param controller Runs the sequences
+     * @param port Local TCP port
+     * @throws IOException The port could not be opened
+     */
+    public ControlServer(IntervalometerController controller, int port) throws IOException {
+        this.controller = controller;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        controller.addTimingListener(this);
+        controller.addTimingListener(metrics);
+        selectorThread = new Thread(this::serve, "Control Server");
+        selectorThread.start();
+    }
+    
+    /**
+     * Serve the API without a user interface until the process is stopped
+     * @param port Local TCP port
+     * @return Process exit code
+     */
+    public static int run(int port) {
+        IntervalometerController controller = new IntervalometerController();
+        ControlServer server;
+        try {
+            server = new ControlServer(controller, port);
+        } catch (IOException ex) {
+            System.err.println("Failed to open port " + port + ": " + ex.getMessage());
+            return 2;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            controller.close(server, true);
+            server.close();
+        }, "Stop Hook"));
+        System.out.println("Control API listening on http://localhost:" + port + "/status");
+        try {
+            server.selectorThread.join();
+        } catch (InterruptedException ex) {
+            return 1;
+        }
+        return 0;
+    }
+    
+    /**
+     * Stop serving and disconnect every client
+     */
+    public void close() {
+        controller.removeTimingListener(this);
+        controller.removeTimingListener(metrics);
+        metrics.close();
+        try {
+            serverChannel.close();
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+        selector.wakeup();
+    }
+    
+    private void serve() {
+        try {
+            while (serverChannel.isOpen()) {
+                selector.select(SELECT_MS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        HttpConnection connection = (HttpConnection) key.attachment();
+                        if (key.isValid() && key.isReadable() && connection.read()) {
+                            handle(connection);
+                            flush(key, connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(key, connection);
+                        }
+                    } catch (IOException ex) {
+                        disconnect(key);
+                    } catch (RuntimeException ex) {
+                        // A bad request must not stop the server
+                        System.err.println("Control server request failed: " + ex);
+                        disconnect(key);
+                    }
+                }
+                sendEvents();
+            }
+        } catch (IOException ex) {
+            System.err.println("Control server stopped: " + ex.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                disconnect(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                System.err.println(ex.getMessage());
+            }
+        }
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, new HttpConnection(channel));
+        }
+    }
+    
+    /**
+     * Write what the socket will accept. Close the connection when a response
+     * has been written, otherwise wait until the socket can accept more.
+     */
+    private void flush(SelectionKey key, HttpConnection connection) throws IOException {
+        if (connection.write()) {
+            if (connection.isCloseWhenWritten()) {
+                disconnect(key);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        } else {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+    
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        Object attachment = key.attachment();
+        if (attachment instanceof HttpConnection) {
+            streams.remove((HttpConnection) attachment);
+        }
+        try {
+            key.channel().close();
+        } catch (IOException ex) {
+            // Already closed
+        }
+    }
+    
+    /**
+     * Handle a complete request. Must not block: anything slow runs on another thread.
+     */
+    private void handle(HttpConnection connection) {
+        String method = connection.getMethod();
+        String path = connection.getPath();
+        boolean get = "GET".equals(method);
+        boolean post = "POST".equals(method) || "PUT".equals(method);
+        if (connection.isBadRequest()) {
+            connection.respond("400 Bad Request", JSON, error("Invalid Content-Length"));
+            return;
+        }
+        switch (path) {
+            case "/status":
+                if (get) {
+                    connection.respond("200 OK", JSON, getStatus());
+                    return;
+                }
+                break;
+            case "/metrics":
+                if (get) {
+                    connection.respond("200 OK", PROMETHEUS, getMetrics());
+                    return;
+                }
+                break;
+            case "/events":
+                if (get) {
+                    connection.startStream();
+                    streams.add(connection);
+                    return;
+                }
+                break;
+            case "/plan":
+                if (post) {
+                    loadPlan(connection);
+                    return;
+                }
+                break;
+            case "/start":
+                if (post) {
+                    startSequence(connection);
+                    return;
+                }
+                break;
+            case "/stop":
+                if (post) {
+                    Thread thread = new Thread(() -> controller.stop(this), "API Stop Thread");
+                    thread.start();
+                    connection.respond("202 Accepted", JSON, "{\"result\":\"stopping\"}");
+                    return;
+                }
+                break;
+            case "/pause":
+                if (post) {
+                    if (controller.pause()) {
+                        connection.respond("200 OK", JSON, "{\"result\":\"paused\"}");
+                    } else {
+                        connection.respond("409 Conflict", JSON, error("No armed sequence to pause"));
+                    }
+                    return;
+                }
+                break;
+            case "/resume":
+                if (post) {
+                    if (controller.isPaused()) {
+                        controller.resume();
+                        connection.respond("200 OK", JSON, "{\"result\":\"resumed\"}");
+                    } else {
+                        connection.respond("409 Conflict", JSON, error("The sequence is not paused"));
+                    }
+                    return;
+                }
+                break;
+            default:
+                connection.respond("404 Not Found", JSON, error("Unknown path " + path));
+                return;
+        }
+        connection.respond("405 Method Not Allowed", JSON, error(method + " is not supported for " + path));
+    }
+    
+    private void loadPlan(HttpConnection connection) {
+        if (isRunning()) {
+            connection.respond("409 Conflict", JSON, error("A sequence is running"));
+            return;
+        }
+        try {
+            PlanFile planFile = PlanFileReader.read(new StringReader(connection.getBody()), "plan");
+            if (planFile.getComPort() == null) {
+                connection.respond("400 Bad Request", JSON, error("[trigger] 'com_port' is required"));
+                return;
+            }
+            plan = planFile;
+            connection.respond("200 OK", JSON, "{\"result\":\"loaded\",\"shots\":" 
+                    + planFile.getSequencePlan().getNumberOfShots() + "}");
+        } catch (PlanException ex) {
+            StringBuilder sb = new StringBuilder("{\"error\":\"Invalid plan\",\"problems\":[");
+            List<PlanProblem> problems = ex.getProblems();
+            for (int i = 0; i < problems.size(); i++) {
+                sb.append(i == 0 ? "" : ",").append(quote(problems.get(i).toString()));
+            }
+            connection.respond("400 Bad Request", JSON, sb.append("]}").toString());
+        } catch (IOException ex) {
+            connection.respond("400 Bad Request", JSON, error(ex.getMessage()));
+        }
+    }
+    
+    private void startSequence(HttpConnection connection) {
+        PlanFile planFile = plan;
+        if (planFile == null) {
+            connection.respond("409 Conflict", JSON, error("No plan loaded. POST a plan to /plan first"));
+            return;
+        }
+        if (isRunning()) {
+            connection.respond("409 Conflict", JSON, error("A sequence is already running"));
+            return;
+        }
+        shotsTaken = 0;
+        totalShots = planFile.getSequencePlan().getNumberOfShots();
+        waitTime = 0;
+        lastError = null;
+        Thread thread = new Thread("API Start Thread") {
+            @Override
+            public void run() {
+                controller.start(planFile.getComPort(), planFile.getSequencePlan(), 
+                        planFile.getObserverData(), planFile.getLogfileData(), planFile.getTriggerData(),
+                        ControlServer.this, ControlServer.this, ControlServer.this, ControlServer.this);
+                events.add(new StreamEvent("finished", 0, 0, 0, "{\"shotsTaken\":" + shotsTaken + "}"));
+            }
+        };
+        sequenceThread = thread;
+        thread.start();
+        connection.respond("202 Accepted", JSON, "{\"result\":\"started\"}");
+    }
+    
+    private boolean isRunning() {
+        Thread thread = sequenceThread;
+        return thread != null && thread.isAlive();
+    }
+    
+    private String getStatus() {
+        String state = !isRunning() ? "idle" : controller.isPaused() ? "paused" : "running";
+        PlanFile planFile = plan;
+        StringBuilder sb = new StringBuilder("{\"state\":\"").append(state).append('"')
+                .append(",\"planLoaded\":").append(planFile != null)
+                .append(",\"shotsTaken\":").append(shotsTaken)
+                .append(",\"totalShots\":").append(totalShots)
+                .append(",\"waitTimeMs\":").append(waitTime)
+                .append(",\"time\":").append(TriggerClock.currentTimeMillis());
+        String error = lastError;
+        if (error != null) {
+            sb.append(",\"lastError\":").append(quote(error));
+        }
+        return sb.append('}').toString();
+    }
+    
+    private String getMetrics() {
+        StringBuilder sb = new StringBuilder(8192);
+        SequenceMetrics.gauge(sb, "dslrtrigger_sequence_running", "1 if a sequence is running", 
+                isRunning() ? 1 : 0);
+        SequenceMetrics.gauge(sb, "dslrtrigger_sequence_paused", "1 if the sequence is paused", 
+                controller.isPaused() ? 1 : 0);
+        // The log file is written on the Intervalometer thread, so the only writer queue is the event stream's
+        SequenceMetrics.gauge(sb, "dslrtrigger_event_queue_depth", "Timing events waiting to be sent to /events clients", 
+                events.size());
+        SequenceMetrics.gauge(sb, "dslrtrigger_event_stream_clients", "Connected /events clients", 
+                streams.size());
+        metrics.write(sb);
+        return sb.toString();
+    }
+    
+    /**
+     * Send queued events to every event stream. A client that cannot keep up is disconnected.
+     */
+    private void sendEvents() {
+        long now = TriggerClock.currentTimeMillis();
+        StringBuilder sb = new StringBuilder();
+        StreamEvent event;
+        while ((event = events.poll()) != null) {
+            sb.append("event: ").append(event.name).append("\ndata: ");
+            if (event.json != null) {
+                sb.append(event.json);
+            } else {
+                sb.append("{\"shot\":").append(event.shot)
+                        .append(",\"scheduled\":").append(event.scheduledTime)
+                        .append(",\"actual\":").append(event.actualTime)
+                        .append(",\"late\":").append(event.actualTime - event.scheduledTime).append('}');
+            }
+            sb.append("\n\n");
+        }
+        if (sb.length() == 0 && now - lastKeepAlive > KEEP_ALIVE_MS) {
+            sb.append(": keep alive\n\n");
+        }
+        if (sb.length() == 0 || streams.isEmpty()) {
+            return;
+        }
+        lastKeepAlive = now;
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+        for (HttpConnection stream : new ArrayList<>(streams)) {
+            SelectionKey key = stream.getChannel().keyFor(selector);
+            if (key == null) {
+                streams.remove(stream);
+                continue;
+            }
+            if (stream.getQueuedBytes() > MAX_CLIENT_BACKLOG) {
+                disconnect(key);
+                continue;
+            }
+            stream.queue(data);
+            try {
+                flush(key, stream);
+            } catch (IOException ex) {
+                disconnect(key);
+            }
+        }
+    }
+    
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+    
+    /**
+     * @return The text as a quoted JSON string
+     */
+    static String quote(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < ' ') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    @Override
+    public void timingEvent(Event event, int shot, long scheduledTime, long actualTime) {
+        events.add(new StreamEvent(event.name(), shot, scheduledTime, actualTime, null));
+    }
+
+    @Override
+    public void setProgress(int completed) {
+        shotsTaken = completed;
+        events.add(new StreamEvent("progress", completed, 0, 0, 
+                "{\"shotsTaken\":" + completed + ",\"totalShots\":" + totalShots + "}"));
+    }
+
+    @Override
+    public void setWaitTime(long waitTime) {
+        this.waitTime = waitTime;
+    }
+
+    @Override
+    public void setArmed(ArmingReport report) {
+        events.add(new StreamEvent("armed", 0, 0, 0, String.format(Locale.ROOT,
+                "{\"meanWakeUpErrorMs\":%.1f,\"maxWakeUpErrorMs\":%d,\"maxSwitchWriteMs\":%d}",
+                report.getMeanWakeUpError(), report.getMaxWakeUpError(), report.getMaxSwitchWriteTime())));
+    }
+
+    @Override
+    public void showErrorMessage(Throwable exception) {
+        showErrorMessage(exception.getMessage() != null ? exception.getMessage() : exception.toString());
+    }
+
+    @Override
+    public void showErrorMessage(String message) {
+        lastError = message;
+        System.err.println(message);
+        events.add(new StreamEvent("error", 0, 0, 0, "{\"message\":" + quote(message) + "}"));
+    }
+
+    @Override
+    public void showMessage(String message, String title) {
+        events.add(new StreamEvent("message", 0, 0, 0, 
+                "{\"title\":" + quote(title) + ",\"message\":" + quote(message) + "}"));
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+/**
+ * One client connection to the ControlServer. Only used by the server's
+ * selector thread. Reads a single HTTP/1.1 request without blocking, then
+ * either writes a response and closes, or stays open as an event stream.
+ * @author John Murphy
+ */
+class HttpConnection {
+    /** Largest request accepted, including a plan file body */
+    static final int MAX_REQUEST = 64 * 1024;
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+    
+    private final SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocate(4096);
+    private final Deque<ByteBuffer> out = new ArrayDeque<>();
+    private int outBytes;
+    private boolean stream;
+    private boolean closeWhenWritten;
+    private boolean badRequest;
+    
+    private String method;
+    private String path;
+    private String body;
+    
+    /**
+     * @param channel Non-blocking client channel
+     */
+    HttpConnection(SocketChannel channel) {
+        this.channel = channel;
+    }
+    
+    SocketChannel getChannel() {
+        return channel;
+    }
+    
+    /**
+     * Read whatever the client has sent
+     * @return True when a complete request has been read
+     * @throws IOException The client closed the connection, or the request is too large
+     */
+    boolean read() throws IOException {
+        if (method != null) {
+            // One request per connection. Ignore anything else the client sends.
+            ByteBuffer discard = ByteBuffer.allocate(256);
+            int n;
+            while ((n = channel.read(discard)) > 0) {
+                discard.clear();
+            }
+            if (n < 0) {
+                // An event stream client has gone
+                throw new IOException("Connection closed");
+            }
+            return false;
+        }
+        if (!in.hasRemaining()) {
+            if (in.capacity() >= MAX_REQUEST) {
+                throw new IOException("Request too large");
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(in.capacity() * 4, MAX_REQUEST));
+            in.flip();
+            bigger.put(in);
+            in = bigger;
+        }
+        if (channel.read(in) < 0) {
+            throw new IOException("Connection closed");
+        }
+        return parse();
+    }
+    
+    /**
+     * @return True if the buffer holds a complete request
+     */
+    private boolean parse() {
+        byte[] data = in.array();
+        int headerEnd = indexOf(data, in.position(), HEADER_END);
+        if (headerEnd < 0) {
+            return false;
+        }
+        String header = new String(data, 0, headerEnd, StandardCharsets.ISO_8859_1);
+        String[] lines = header.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        int contentLength = 0;
+        boolean validLength = true;
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0 && "content-length".equals(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT))) {
+                try {
+                    contentLength = Integer.parseInt(lines[i].substring(colon + 1).trim());
+                } catch (NumberFormatException ex) {
+                    validLength = false;
+                }
+            }
+        }
+        int bodyStart = headerEnd + HEADER_END.length;
+        // MAX_REQUEST includes the header, so the body must fit in the rest
+        if (!validLength || contentLength < 0 || contentLength > MAX_REQUEST - bodyStart) {
+            // Answered with 400 Bad Request
+            badRequest = true;
+            contentLength = 0;
+        } else if (in.position() - bodyStart < contentLength) {
+            // Wait for the rest of the body
+            return false;
+        }
+        method = requestLine[0];
+        path = requestLine.length > 1 ? requestLine[1] : "/";
+        body = new String(data, bodyStart, contentLength, StandardCharsets.UTF_8);
+        return true;
+    }
+    
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= length; i++) {
+            int j = 0;
+            while (j < pattern.length && data[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    String getMethod() {
+        return method;
+    }
+    
+    /**
+     * @return True if the request's Content-Length was not a valid length
+     */
+    boolean isBadRequest() {
+        return badRequest;
+    }
+    
+    String getPath() {
+        return path;
+    }
+    
+    String getBody() {
+        return body;
+    }
+    
+    /**
+     * @return True if this connection is an open event stream
+     */
+    boolean isStream() {
+        return stream;
+    }
+    
+    /**
+     * Queue a complete response. The connection is closed once it has been written.
+     * @param status Status code and reason, for example "200 OK"
+     * @param contentType MIME type of the body
+     * @param responseBody Response body
+     */
+    void respond(String status, String contentType, String responseBody) {
+        byte[] content = responseBody.getBytes(StandardCharsets.UTF_8);
+        queue(("HTTP/1.1 " + status + "\r\nContent-Type: " + contentType 
+                + "\r\nContent-Length: " + content.length + "\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+        queue(content);
+        closeWhenWritten = true;
+    }
+    
+    /**
+     * Start a Server-Sent Events stream. The connection stays open.
+     */
+    void startStream() {
+        queue(("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\n"
+                + "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        stream = true;
+    }
+    
+    /**
+     * @param data Bytes to send. Shared between connections, so must not be modified
+     */
+    void queue(byte[] data) {
+        out.add(ByteBuffer.wrap(data));
+        outBytes += data.length;
+    }
+    
+    /**
+     * @return Number of bytes waiting to be written
+     */
+    int getQueuedBytes() {
+        return outBytes;
+    }
+    
+    /**
+     * Write as much as the socket will accept without blocking
+     * @return True if everything queued has been written
+     * @throws IOException 
+     */
+    boolean write() throws IOException {
+        while (!out.isEmpty()) {
+            ByteBuffer buffer = out.peek();
+            outBytes -= channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return false;
+            }
+            out.poll();
+        }
+        return true;
+    }
+    
+    /**
+     * @return True if the connection should be closed once everything has been written
+     */
+    boolean isCloseWhenWritten() {
+        return closeWhenWritten;
+    }
+}
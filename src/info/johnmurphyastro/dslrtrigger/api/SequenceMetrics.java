@@ -0,0 +1,307 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.api;
+
+import info.johnmurphyastro.dslrtrigger.TimingListener;
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Sequence counters, gauges and latency histograms, written in the Prometheus
+ * text format. Every value is preallocated. Each value has a single writer:
+ * the Intervalometer thread for timing values and the JVM's notification
+ * thread for garbage collection values, so recording an event is a read and
+ * an ordered store without locks or allocation. Only switch errors, which
+ * may also come from the watchdog thread, use an atomic increment.
+ * @author John Murphy
+ */
+class SequenceMetrics implements TimingListener {
+    /** Garbage collector notification type (com.sun.management.GarbageCollectionNotificationInfo) */
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+    /** Number of recent wait targets checked against each garbage collection pause */
+    private static final int RECENT_WAITS = 32;
+    
+    // Indexes into counters. Only written by the Intervalometer thread
+    private static final int SHOTS_TAKEN = 0;
+    private static final int SHOTS_CANCELLED = 1;
+    private static final int OVERRUNS = 2;
+    private static final int OVERRUN_MS = 3;
+    private static final int NEXT_SHOT_TIME = 4;
+    private static final int COUNTERS = 5;
+    
+    // Indexes into gcCounters. Only written by the notification thread
+    private static final int GC_PAUSES = 0;
+    private static final int GC_PAUSE_MS = 1;
+    private static final int GC_PAUSES_OVERLAPPING = 2;
+    private static final int GC_COUNTERS = 3;
+    
+    /**
+     * A histogram with fixed millisecond bucket bounds. Bucket counts are not
+     * cumulative until they are written out.
+     */
+    private static class Histogram {
+        private static final long[] BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 250, 500, 1000};
+        /** One count per bound, one for +Inf, then the sum in ms */
+        private final AtomicLongArray values = new AtomicLongArray(BOUNDS_MS.length + 2);
+        private final String name;
+        private final String help;
+        
+        Histogram(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+        
+        /**
+         * Single writer only
+         * @param ms Value in milliseconds
+         */
+        void record(long ms) {
+            int i = 0;
+            while (i < BOUNDS_MS.length && ms > BOUNDS_MS[i]) {
+                i++;
+            }
+            values.lazySet(i, values.get(i) + 1);
+            int sum = values.length() - 1;
+            values.lazySet(sum, values.get(sum) + ms);
+        }
+        
+        void write(StringBuilder sb) {
+            sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(name).append(" histogram\n");
+            long count = 0;
+            for (int i = 0; i <= BOUNDS_MS.length; i++) {
+                count += values.get(i);
+                String le = i < BOUNDS_MS.length ? seconds(BOUNDS_MS[i]) : "+Inf";
+                sb.append(name).append("_bucket{le=\"").append(le).append("\"} ").append(count).append('\n');
+            }
+            sb.append(name).append("_sum ").append(seconds(values.get(values.length() - 1))).append('\n');
+            sb.append(name).append("_count ").append(count).append('\n');
+        }
+    }
+    
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+    private final AtomicLongArray gcCounters = new AtomicLongArray(GC_COUNTERS);
+    private final AtomicLong switchErrors = new AtomicLong();
+    private final Histogram pressLateness = new Histogram("dslrtrigger_press_lateness_seconds",
+            "Time from the scheduled to the actual shutter button press");
+    private final Histogram releaseLateness = new Histogram("dslrtrigger_release_lateness_seconds",
+            "Time from the scheduled to the actual shutter button release");
+    private final Histogram mirrorLockLateness = new Histogram("dslrtrigger_mirror_lock_lateness_seconds",
+            "Time from the scheduled to the actual mirror lock button press");
+    private final Histogram wakeUpLateness = new Histogram("dslrtrigger_wake_up_lateness_seconds",
+            "Time from the scheduled to the actual end of each wait");
+    private final Histogram logWriteTime = new Histogram("dslrtrigger_log_write_seconds",
+            "Time from the shutter button release to the log file row being written");
+    /** Targets of the most recent waits, in ms. Written by the Intervalometer thread */
+    private final AtomicLongArray recentWaits = new AtomicLongArray(RECENT_WAITS);
+    private volatile int recentWaitIndex;
+    
+    // Only used by the Intervalometer thread
+    private int cancelledShot = -1;
+    private int lastWaitShot = -1;
+    private long lastReleaseTime;
+    
+    private final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+    private final NotificationListener gcListener = this::gcNotification;
+    
+    /**
+     * Start listening for garbage collection pauses
+     */
+    SequenceMetrics() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(gcListener, 
+                        n -> GC_NOTIFICATION.equals(n.getType()), null);
+            }
+        }
+    }
+    
+    /**
+     * Stop listening for garbage collection pauses
+     */
+    void close() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) gc).removeNotificationListener(gcListener);
+                } catch (javax.management.ListenerNotFoundException ex) {
+                    // Not registered
+                }
+            }
+        }
+    }
+
+    @Override
+    public void timingEvent(Event event, int shot, long scheduledTime, long actualTime) {
+        long late = actualTime - scheduledTime;
+        switch (event) {
+            case WAIT_BEGIN:
+                if (shot == cancelledShot) {
+                    // The shot is being retaken after a pause. Only the
+                    // cancelled attempt's clean up events are excluded.
+                    cancelledShot = -1;
+                }
+                int i = recentWaitIndex;
+                recentWaits.lazySet(i, scheduledTime);
+                recentWaitIndex = (i + 1) % RECENT_WAITS;
+                if (shot != lastWaitShot) {
+                    // The first wait of each shot is for its first button press
+                    lastWaitShot = shot;
+                    counters.lazySet(NEXT_SHOT_TIME, scheduledTime);
+                }
+                break;
+            case WAIT_END:
+                wakeUpLateness.record(late);
+                break;
+            case MIRROR_LOCK_PRESS:
+                mirrorLockLateness.record(late);
+                break;
+            case SHUTTER_PRESS:
+                if (shot != cancelledShot) {
+                    pressLateness.record(late);
+                }
+                break;
+            case SHUTTER_RELEASE:
+                if (shot != cancelledShot) {
+                    releaseLateness.record(late);
+                }
+                lastReleaseTime = actualTime;
+                break;
+            case LOG_ROW:
+                if (shot != cancelledShot) {
+                    increment(SHOTS_TAKEN);
+                    logWriteTime.record(actualTime - lastReleaseTime);
+                }
+                break;
+            case CANCEL:
+                cancelledShot = shot;
+                // A retaken shot's first wait updates the next shot time
+                lastWaitShot = -1;
+                increment(SHOTS_CANCELLED);
+                break;
+            case OVERRUN:
+                increment(OVERRUNS);
+                counters.lazySet(OVERRUN_MS, counters.get(OVERRUN_MS) + late);
+                break;
+            case SWITCH_ERROR:
+                switchErrors.incrementAndGet();
+                break;
+        }
+    }
+    
+    /**
+     * Single writer only
+     */
+    private void increment(int counter) {
+        counters.lazySet(counter, counters.get(counter) + 1);
+    }
+    
+    /**
+     * Count stop the world pauses, and the pauses that may have delayed a 
+     * button press or release because a wait was due to end during the pause.
+     */
+    private void gcNotification(Notification notification, Object handback) {
+        if (!(notification.getUserData() instanceof CompositeData)) {
+            return;
+        }
+        CompositeData data = (CompositeData) notification.getUserData();
+        String gcName = String.valueOf(data.get("gcName"));
+        if (gcName.contains("Concurrent") || gcName.endsWith("Cycles")) {
+            // Runs alongside the application threads; not a pause
+            return;
+        }
+        CompositeData gcInfo = (CompositeData) data.get("gcInfo");
+        // The pause times are ms since the JVM started. The wait targets are trigger clock times.
+        long jvmStartTime = TriggerClock.currentTimeMillis() - runtime.getUptime();
+        long start = jvmStartTime + (Long) gcInfo.get("startTime");
+        long end = jvmStartTime + (Long) gcInfo.get("endTime");
+        gcCounters.lazySet(GC_PAUSES, gcCounters.get(GC_PAUSES) + 1);
+        gcCounters.lazySet(GC_PAUSE_MS, gcCounters.get(GC_PAUSE_MS) + (Long) gcInfo.get("duration"));
+        for (int i = 0; i < RECENT_WAITS; i++) {
+            long waitTarget = recentWaits.get(i);
+            // A wait that ended as the pause began was not delayed by it
+            if (waitTarget > start && waitTarget <= end) {
+                gcCounters.lazySet(GC_PAUSES_OVERLAPPING, gcCounters.get(GC_PAUSES_OVERLAPPING) + 1);
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Write every metric in the Prometheus text exposition format
+     * @param sb Append to this
+     */
+    void write(StringBuilder sb) {
+        counter(sb, "dslrtrigger_shots_taken_total", "Shots taken and logged", 
+                counters.get(SHOTS_TAKEN));
+        counter(sb, "dslrtrigger_shots_cancelled_total", "Shots cancelled by Pause or Stop", 
+                counters.get(SHOTS_CANCELLED));
+        counter(sb, "dslrtrigger_overruns_total", "Shots that started later than their time grid slot", 
+                counters.get(OVERRUNS));
+        counter(sb, "dslrtrigger_overrun_seconds_total", "Total time shots started after their time grid slot", 
+                seconds(counters.get(OVERRUN_MS)));
+        counter(sb, "dslrtrigger_switch_errors_total", "Failed USB switch commands", 
+                switchErrors.get());
+        counter(sb, "dslrtrigger_gc_pauses_total", "Garbage collection pauses", 
+                gcCounters.get(GC_PAUSES));
+        counter(sb, "dslrtrigger_gc_pause_seconds_total", "Total garbage collection pause time", 
+                seconds(gcCounters.get(GC_PAUSE_MS)));
+        counter(sb, "dslrtrigger_gc_pauses_overlapping_total", 
+                "Garbage collection pauses during which a scheduled button press or release was due", 
+                gcCounters.get(GC_PAUSES_OVERLAPPING));
+        long toNextShot = Math.max(0, counters.get(NEXT_SHOT_TIME) - TriggerClock.currentTimeMillis());
+        gauge(sb, "dslrtrigger_time_to_next_shot_seconds", 
+                "Time until the next shot's first button press, or 0 if none is scheduled", seconds(toNextShot));
+        pressLateness.write(sb);
+        releaseLateness.write(sb);
+        mirrorLockLateness.write(sb);
+        wakeUpLateness.write(sb);
+        logWriteTime.write(sb);
+    }
+    
+    static void counter(StringBuilder sb, String name, String help, Object value) {
+        metric(sb, name, help, "counter", value);
+    }
+    
+    static void gauge(StringBuilder sb, String name, String help, Object value) {
+        metric(sb, name, help, "gauge", value);
+    }
+    
+    private static void metric(StringBuilder sb, String name, String help, String type, Object value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+    
+    /**
+     * @return Milliseconds as seconds, without rounding
+     */
+    private static String seconds(long ms) {
+        return String.format(Locale.ROOT, "%.3f", ms / 1000.0);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.calibration;
+
+/**
+ * One test shot of a shutter lag calibration session. Immutable class.
+ * @author John Murphy
+ */
+public class CalibrationShot {
+    private final int round;
+    private final int delay;
+    private final int pressed;
+    private final long time;
+    private final Boolean ledVisible;
+    
+    /**
+     * @param round Calibration round, starting at 1
+     * @param delay Requested delay in ms
+     * @param pressed Measured delay in ms, or -1 if not taken yet
+     * @param time Start of the measured delay, or 0 if not taken yet
+     * @param ledVisible True if the switch LED is visible in the image, 
+     * false if not, or null if the image has not been checked yet
+     */
+    CalibrationShot(int round, int delay, int pressed, long time, Boolean ledVisible) {
+        this.round = round;
+        this.delay = delay;
+        this.pressed = pressed;
+        this.time = time;
+        this.ledVisible = ledVisible;
+    }
+    
+    /**
+     * @param startTime Start of the measured delay
+     * @param endTime End of the measured delay
+     * @return This shot after it was taken
+     */
+    CalibrationShot taken(long startTime, long endTime) {
+        return new CalibrationShot(round, delay, (int) (endTime - startTime), startTime, null);
+    }
+    
+    /**
+     * @return Calibration round, starting at 1
+     */
+    public int getRound() {
+        return round;
+    }
+    
+    /**
+     * @return Requested delay in ms. For open lag, the time the switch is 
+     * pressed for. For close lag, the time from the end of the bulb exposure
+     * to the LED pulse
+     */
+    public int getDelay() {
+        return delay;
+    }
+    
+    /**
+     * @return Measured delay in ms, or -1 if not taken yet
+     */
+    public int getPressed() {
+        return pressed;
+    }
+    
+    /**
+     * @return Start of the measured delay, or 0 if not taken yet
+     */
+    public long getTime() {
+        return time;
+    }
+    
+    /**
+     * @return True if the shot has been taken
+     */
+    public boolean isTaken() {
+        return pressed >= 0;
+    }
+    
+    /**
+     * @return True if the LED is visible, false if not, null if not checked yet
+     */
+    public Boolean isLedVisible() {
+        return ledVisible;
+    }
+}
@@ -0,0 +1,566 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.calibration;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import info.johnmurphyastro.dslrtrigger.calibration.LagEstimator.Dose;
+import info.johnmurphyastro.dslrtrigger.data.MinTime;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * A shutter open or close lag calibration session. Each round takes a batch of
+ * LED test shots at delays spread across the range that still contains the lag.
+ * Once the user has marked which images show the switch LED, the next round is 
+ * spread across the narrower range between the longest delay that was always
+ * shorter than the lag and the shortest delay that was always longer. The 
+ * session ends when the lag's 95% confidence interval is within +/- TOLERANCE_MS.
+ * 
+ * The session file is both the plan and the log. It is rewritten after every
+ * shot, and the user marks each shot's 'led' column with y or n.
+ * Immutable class.
+ * @author John Murphy
+ */
+public class LagCalibrationSession {
+    public static final int DEFAULT_SHOTS_PER_ROUND = 8;
+    public static final int DEFAULT_REPEATS = 2;
+    /** The session is complete when the 95% confidence interval is within +/- this value */
+    public static final double TOLERANCE_MS = 2.0;
+    /** 
+     * Close lag test shots pulse the switch LED for this long. It is shorter 
+     * than MinTime.EXPOSURE_MS so that the camera should not start another shot.
+     * This is a limit of the camera that cannot be checked here: a camera that
+     * does register the pulse takes an extra image, or with mirror lock flips
+     * the mirror up and gets out of step. See getRoundWarning()
+     */
+    public static final int LED_PULSE_MS = MinTime.EXPOSURE_MS / 2;
+    
+    private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+    private static final String SESSION = "[session]";
+    private static final String SHOTS = "[shots]";
+    private static final String NOT_TAKEN = "-";
+    private static final String UNMARKED = "?";
+    
+    private final LagType type;
+    private final String camera;
+    private final boolean mirrorLock;
+    private final boolean bulbMode;
+    private final String comPort;
+    private final int lower;
+    private final int upper;
+    private final int exposure;
+    private final int shotsPerRound;
+    private final int repeats;
+    private final List<CalibrationShot> shots;
+
+    /**
+     * Create a session with no shots. Use withNextRound() to plan the first round.
+     * @param type Open or close lag
+     * @param camera Camera model
+     * @param mirrorLock True if the camera is in mirror lock mode
+     * @param bulbMode True if the camera is in bulb mode
+     * @param comPort USB switch COM port, or null to use the current setting
+     * @param lower Shortest delay of the first round in ms
+     * @param upper Longest delay of the first round in ms
+     * @param exposure Close lag only: bulb exposure before each LED pulse in ms. 
+     * Must be longer than the shutter open lag
+     * @param shotsPerRound Number of delays tested in each round
+     * @param repeats Number of shots taken at each delay
+     * @throws InvalidDataException 
+     */
+    public LagCalibrationSession(LagType type, String camera, boolean mirrorLock, boolean bulbMode, 
+            String comPort, int lower, int upper, int exposure, int shotsPerRound, int repeats) 
+            throws InvalidDataException {
+        this(type, camera, mirrorLock, bulbMode, comPort, lower, upper, exposure, shotsPerRound, repeats, 
+                Collections.<CalibrationShot>emptyList());
+        if (lower < type.getMinDelay()) {
+            throw new InvalidDataException("Shortest calibration delay must be at least " + type.getMinDelay() + " ms");
+        }
+        if (upper <= lower) {
+            throw new InvalidDataException("Longest calibration delay must be longer than the shortest");
+        }
+        if (shotsPerRound < 2 || shotsPerRound > 50) {
+            throw new InvalidDataException("Calibration shots per round must be 2 - 50");
+        }
+        if (repeats < 1 || repeats > 10) {
+            throw new InvalidDataException("Calibration repeats must be 1 - 10");
+        }
+        if (type == LagType.CLOSE) {
+            if (!bulbMode) {
+                throw new InvalidDataException("Shutter close lag can only be calibrated in bulb mode");
+            }
+            if (exposure < MinTime.EXPOSURE_MS) {
+                throw new InvalidDataException("Calibration exposure must be at least " + MinTime.EXPOSURE_MS + " ms");
+            }
+        }
+    }
+    
+    private LagCalibrationSession(LagType type, String camera, boolean mirrorLock, boolean bulbMode, 
+            String comPort, int lower, int upper, int exposure, int shotsPerRound, int repeats, 
+            List<CalibrationShot> shots) {
+        this.type = type;
+        this.camera = camera;
+        this.mirrorLock = mirrorLock;
+        this.bulbMode = bulbMode;
+        this.comPort = comPort;
+        this.lower = lower;
+        this.upper = upper;
+        this.exposure = exposure;
+        this.shotsPerRound = shotsPerRound;
+        this.repeats = repeats;
+        this.shots = Collections.unmodifiableList(shots);
+    }
+    
+    private LagCalibrationSession withShots(List<CalibrationShot> newShots) {
+        return new LagCalibrationSession(type, camera, mirrorLock, bulbMode, comPort, 
+                lower, upper, exposure, shotsPerRound, repeats, newShots);
+    }
+    
+    /**
+     * @return Open or close lag
+     */
+    public LagType getType() {
+        return type;
+    }
+
+    /**
+     * @return A warning to show after each round is taken, or null if there is none
+     */
+    public String getRoundWarning() {
+        if (type != LagType.CLOSE) {
+            return null;
+        }
+        return "Each shot must give exactly one image. An extra image, or with mirror lock a missing "
+                + "or short one, means the camera took the LED pulse as a button press, and the round's "
+                + "shots are not valid";
+    }
+
+    /**
+     * @return Camera model
+     */
+    public String getCamera() {
+        return camera;
+    }
+
+    /**
+     * @return True if the camera is in mirror lock mode
+     */
+    public boolean isMirrorLock() {
+        return mirrorLock;
+    }
+
+    /**
+     * @return True if the camera is in bulb mode
+     */
+    public boolean isBulbMode() {
+        return bulbMode;
+    }
+
+    /**
+     * @return USB switch COM port, or null to use the current setting
+     */
+    public String getComPort() {
+        return comPort;
+    }
+
+    /**
+     * @return Close lag only: bulb exposure before each LED pulse in ms
+     */
+    public int getExposure() {
+        return exposure;
+    }
+
+    /**
+     * @return Every shot in the session, in the order they are taken
+     */
+    public List<CalibrationShot> getShots() {
+        return shots;
+    }
+    
+    /**
+     * @return The current round, or 0 if no round has been planned
+     */
+    public int getRound() {
+        return shots.isEmpty() ? 0 : shots.get(shots.size() - 1).getRound();
+    }
+    
+    /**
+     * @return Indexes of the shots that have not been taken yet
+     */
+    public List<Integer> getPendingShots() {
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < shots.size(); i++) {
+            if (!shots.get(i).isTaken()) {
+                pending.add(i);
+            }
+        }
+        return pending;
+    }
+    
+    /**
+     * @return Number of taken shots whose LED column has not been marked
+     */
+    public int getUnmarkedShots() {
+        int n = 0;
+        for (CalibrationShot shot : shots) {
+            if (shot.isTaken() && shot.isLedVisible() == null) {
+                n++;
+            }
+        }
+        return n;
+    }
+    
+    /**
+     * The time between pressing the switch for consecutive shots. This is long
+     * enough to lock the mirror, hold the switch for the longest pending delay
+     * (or for a close lag shot, the exposure, longest delay and LED pulse),
+     * and leave the camera MinTime.BEFORE_SHOT_MS before the next shot.
+     * @return Interval in ms, rounded up to a tenth of a second
+     */
+    public int getShotInterval() {
+        int maxDelay = 0;
+        for (int i : getPendingShots()) {
+            maxDelay = Math.max(maxDelay, shots.get(i).getDelay());
+        }
+        if (type == LagType.CLOSE) {
+            maxDelay += exposure + LED_PULSE_MS;
+        }
+        int interval = (mirrorLock ? MinTime.MIRROR_MOVE_MS : 0) + maxDelay + MinTime.BEFORE_SHOT_MS;
+        return ((interval + 99) / 100) * 100;
+    }
+    
+    /**
+     * @param index Shot index
+     * @param startTime Start of the measured delay. The switch press for 
+     * open lag, or the end of the bulb exposure for close lag
+     * @param endTime End of the measured delay. The switch release for open 
+     * lag, or the start of the LED pulse for close lag
+     * @return A copy of this session with the shot taken
+     */
+    public LagCalibrationSession withShotTaken(int index, long startTime, long endTime) {
+        List<CalibrationShot> newShots = new ArrayList<>(shots);
+        newShots.set(index, shots.get(index).taken(startTime, endTime));
+        return withShots(newShots);
+    }
+    
+    /**
+     * @return The lag estimate from the marked shots, or null if none have been marked
+     */
+    public LagEstimate getEstimate() {
+        return LagEstimator.estimate(shots, type);
+    }
+    
+    /**
+     * @return True if every shot has been marked, and the lag is known to 
+     * within TOLERANCE_MS or the range can not be narrowed any further
+     */
+    public boolean isComplete() {
+        if (!isRoundMarked()) {
+            return false;
+        }
+        LagEstimate estimate = getEstimate();
+        if (estimate == null || !estimate.isBracketed()) {
+            return false;
+        }
+        if (estimate.getConfidenceHalfWidth() <= TOLERANCE_MS) {
+            return true;
+        }
+        try {
+            return getNextDelays().isEmpty();
+        } catch (InvalidDataException ex) {
+            return false;
+        }
+    }
+    
+    /**
+     * @return True if every shot has been taken and marked
+     */
+    private boolean isRoundMarked() {
+        return getPendingShots().isEmpty() && getUnmarkedShots() == 0;
+    }
+    
+    /**
+     * Plan the next round. Each delay is repeated, and the shots are shuffled
+     * so that a drift in the lag during the round does not bias the result.
+     * @return A copy of this session with the next round's shots added
+     * @throws InvalidDataException The current round has not been taken and 
+     * marked, or the session is complete
+     */
+    public LagCalibrationSession withNextRound() throws InvalidDataException {
+        if (!getPendingShots().isEmpty()) {
+            throw new InvalidDataException("Round " + getRound() + " has not been taken yet");
+        }
+        if (getUnmarkedShots() > 0) {
+            throw new InvalidDataException("Mark the 'led' column of every shot in round " 
+                    + getRound() + " with y or n");
+        }
+        List<Integer> delays = getNextDelays();
+        if (delays.isEmpty()) {
+            throw new InvalidDataException("The calibration session is complete");
+        }
+        int round = getRound() + 1;
+        List<CalibrationShot> roundShots = new ArrayList<>();
+        for (int delay : delays) {
+            for (int i = 0; i < repeats; i++) {
+                roundShots.add(new CalibrationShot(round, delay, -1, 0, null));
+            }
+        }
+        Collections.shuffle(roundShots, new Random(round));
+        List<CalibrationShot> newShots = new ArrayList<>(shots);
+        newShots.addAll(roundShots);
+        return withShots(newShots);
+    }
+    
+    /**
+     * @return Delays for the next round. Empty if the range can not be narrowed
+     * @throws InvalidDataException The lag is shorter than the shortest possible delay
+     */
+    private List<Integer> getNextDelays() throws InvalidDataException {
+        List<Dose> doses = LagEstimator.getDoses(shots, type);
+        if (doses.isEmpty()) {
+            return spread(lower, upper);
+        }
+        Dose first = doses.get(0);
+        Dose last = doses.get(doses.size() - 1);
+        int span = Math.max(last.delay - first.delay, upper - lower);
+        int from;
+        if (first.p > 0) {
+            // Even the shortest delay was longer than the lag; extend the range downwards
+            if (first.delay <= type.getMinDelay()) {
+                throw new InvalidDataException(type.getDescription() + " is shorter than the shortest possible delay of "
+                        + type.getMinDelay() + " ms. Check the camera settings");
+            }
+            from = Math.max(type.getMinDelay(), first.delay - span);
+        } else {
+            int longestShorter = first.delay;
+            for (Dose dose : doses) {
+                if (dose.p == 0) {
+                    longestShorter = dose.delay;
+                }
+            }
+            from = longestShorter + 1;
+        }
+        int to = -1;
+        for (Dose dose : doses) {
+            if (dose.p == 1) {
+                // Shortest delay that was always longer than the lag
+                to = dose.delay - 1;
+                break;
+            }
+        }
+        if (to < 0) {
+            // Even the longest delay was not always longer than the lag; extend the range upwards
+            to = last.delay + span;
+        }
+        return spread(from, to);
+    }
+    
+    /**
+     * @return Up to shotsPerRound delays evenly spread from 'from' to 'to' inclusive
+     */
+    private List<Integer> spread(int from, int to) {
+        TreeSet<Integer> delays = new TreeSet<>();
+        if (to >= from) {
+            for (int i = 0; i < shotsPerRound; i++) {
+                delays.add(from + Math.round((to - from) * i / (float) (shotsPerRound - 1)));
+            }
+        }
+        return new ArrayList<>(delays);
+    }
+    
+    /**
+     * @param file Session file
+     * @return The session
+     * @throws IOException
+     * @throws InvalidDataException The file is not a valid calibration session
+     */
+    public static LagCalibrationSession load(File file) throws IOException, InvalidDataException {
+        LagType type = LagType.OPEN;
+        String camera = "";
+        boolean mirrorLock = false;
+        boolean bulbMode = false;
+        String comPort = null;
+        int lower = -1;
+        int upper = -1;
+        int exposure = 0;
+        int shotsPerRound = DEFAULT_SHOTS_PER_ROUND;
+        int repeats = DEFAULT_REPEATS;
+        List<CalibrationShot> shots = new ArrayList<>();
+        SimpleDateFormat timeFormat = new SimpleDateFormat(TIME_FORMAT);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String section = null;
+            String text;
+            int lineNumber = 0;
+            while ((text = reader.readLine()) != null) {
+                lineNumber++;
+                String line = text.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String where = file.getName() + " line " + lineNumber + ": ";
+                if (line.startsWith("[")) {
+                    section = line.toLowerCase();
+                    if (!SESSION.equals(section) && !SHOTS.equals(section)) {
+                        throw new InvalidDataException(where + "Unknown section " + line);
+                    }
+                    continue;
+                }
+                try {
+                    if (SESSION.equals(section)) {
+                        int equals = line.indexOf('=');
+                        if (equals < 1) {
+                            throw new InvalidDataException(where + "Expected 'key = value'");
+                        }
+                        String key = line.substring(0, equals).trim().toLowerCase();
+                        String value = line.substring(equals + 1).trim();
+                        switch (key) {
+                            case "lag":
+                                type = LagType.fromKey(value);
+                                if (type == null) {
+                                    throw new InvalidDataException(where + "'lag' must be open or close");
+                                }
+                                break;
+                            case "camera": camera = value; break;
+                            case "mirror_lock": mirrorLock = Boolean.parseBoolean(value); break;
+                            case "bulb_mode": bulbMode = Boolean.parseBoolean(value); break;
+                            case "com_port": comPort = value.isEmpty() ? null : value; break;
+                            case "lower_ms": lower = Integer.parseInt(value); break;
+                            case "upper_ms": upper = Integer.parseInt(value); break;
+                            case "exposure_ms": exposure = Integer.parseInt(value); break;
+                            case "shots_per_round": shotsPerRound = Integer.parseInt(value); break;
+                            case "repeats": repeats = Integer.parseInt(value); break;
+                            default: throw new InvalidDataException(where + "Unknown key '" + key + "'");
+                        }
+                    } else if (SHOTS.equals(section)) {
+                        shots.add(parseShot(line, timeFormat, where));
+                    } else {
+                        throw new InvalidDataException(where + "Expected [session] or [shots]");
+                    }
+                } catch (NumberFormatException | ParseException ex) {
+                    throw new InvalidDataException(where + ex.getMessage());
+                }
+            }
+        }
+        LagCalibrationSession session = new LagCalibrationSession(type, 
+                camera, mirrorLock, bulbMode, comPort, lower, upper, exposure, shotsPerRound, repeats);
+        return session.withShots(shots);
+    }
+    
+    /**
+     * @param line shot, round, delay_ms, pressed_ms, time, led. For close lag
+     * the measured delay is gap_ms, and the time is the end of the bulb exposure
+     */
+    private static CalibrationShot parseShot(String line, SimpleDateFormat timeFormat, String where) 
+            throws InvalidDataException, ParseException {
+        String[] columns = line.split(",");
+        if (columns.length != 6) {
+            throw new InvalidDataException(where + "Expected 'shot, round, delay_ms, measured_ms, time, led'");
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = columns[i].trim();
+        }
+        int round = Integer.parseInt(columns[1]);
+        int delay = Integer.parseInt(columns[2]);
+        boolean taken = !NOT_TAKEN.equals(columns[3]);
+        int pressed = taken ? Integer.parseInt(columns[3]) : -1;
+        long time = taken ? timeFormat.parse(columns[4]).getTime() : 0;
+        Boolean led;
+        switch (columns[5].toLowerCase()) {
+            case "y": led = Boolean.TRUE; break;
+            case "n": led = Boolean.FALSE; break;
+            case UNMARKED: led = null; break;
+            default: throw new InvalidDataException(where + "Mark the 'led' column with y, n or ?");
+        }
+        if (led != null && !taken) {
+            throw new InvalidDataException(where + "Shot " + columns[0] + " has not been taken");
+        }
+        return new CalibrationShot(round, delay, pressed, time, led);
+    }
+    
+    /**
+     * Save the session. A temporary file is written and then renamed, so a 
+     * crash while saving leaves the previous version intact.
+     * @param file Session file
+     * @throws IOException 
+     */
+    public void save(File file) throws IOException {
+        SimpleDateFormat timeFormat = new SimpleDateFormat(TIME_FORMAT);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.println("# DSLR Trigger " + type.getDescription().toLowerCase() + " calibration session");
+            writer.println("# After each round, mark each shot's 'led' column with y if the");
+            writer.println("# switch LED is visible in the image, or n if it is not.");
+            if (type == LagType.CLOSE) {
+                writer.println("# Each shot is a bulb exposure of exposure_ms. The switch LED is pulsed");
+                writer.println("# gap_ms after the switch is released at 'time'.");
+                writer.println("# Each shot must give exactly one image. An extra image, or with mirror");
+                writer.println("# lock a missing or short one, means the camera took the LED pulse as a");
+                writer.println("# button press, and the round's shots are not valid.");
+            }
+            writer.println(SESSION);
+            writer.println("lag = " + type.getKey());
+            writer.println("camera = " + camera);
+            writer.println("mirror_lock = " + mirrorLock);
+            writer.println("bulb_mode = " + bulbMode);
+            if (comPort != null) {
+                writer.println("com_port = " + comPort);
+            }
+            writer.println("lower_ms = " + lower);
+            writer.println("upper_ms = " + upper);
+            if (type == LagType.CLOSE) {
+                writer.println("exposure_ms = " + exposure);
+            }
+            writer.println("shots_per_round = " + shotsPerRound);
+            writer.println("repeats = " + repeats);
+            writer.println(SHOTS);
+            writer.println(type == LagType.CLOSE ? "# shot, round, delay_ms, gap_ms, time, led" 
+                    : "# shot, round, delay_ms, pressed_ms, time, led");
+            for (int i = 0; i < shots.size(); i++) {
+                CalibrationShot shot = shots.get(i);
+                String led = shot.isLedVisible() == null ? UNMARKED : shot.isLedVisible() ? "y" : "n";
+                writer.println((i + 1) + ", " + shot.getRound() + ", " + shot.getDelay() + ", "
+                        + (shot.isTaken() ? shot.getPressed() + ", " + timeFormat.format(shot.getTime()) 
+                                : NOT_TAKEN + ", " + NOT_TAKEN)
+                        + ", " + led);
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), 
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
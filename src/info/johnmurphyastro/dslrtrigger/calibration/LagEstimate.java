@@ -0,0 +1,126 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.calibration;
+
+import java.util.Locale;
+
+/**
+ * Shutter lag estimated from a calibration session's marked shots, with its
+ * 95% confidence interval. Immutable class.
+ * @author John Murphy
+ */
+public class LagEstimate {
+    /** Normal distribution 97.5 percentile */
+    private static final double Z_95 = 1.96;
+    
+    private final double lag;
+    private final double standardError;
+    private final int lower;
+    private final int upper;
+    private final int nShots;
+    private final String problem;
+    
+    /**
+     * @param lag Estimated lag in ms
+     * @param standardError Standard error of the estimate in ms
+     * @param lower Longest tested delay that never showed the response
+     * @param upper Shortest tested delay that always showed the response
+     * @param nShots Number of marked shots used
+     */
+    LagEstimate(double lag, double standardError, int lower, int upper, int nShots) {
+        this.lag = lag;
+        this.standardError = standardError;
+        this.lower = lower;
+        this.upper = upper;
+        this.nShots = nShots;
+        this.problem = null;
+    }
+    
+    /**
+     * The tested delays do not bracket the lag
+     * @param problem Which way to move the delays
+     * @param nShots Number of marked shots used
+     */
+    LagEstimate(String problem, int nShots) {
+        this.lag = Double.NaN;
+        this.standardError = Double.NaN;
+        this.lower = -1;
+        this.upper = -1;
+        this.nShots = nShots;
+        this.problem = problem;
+    }
+    
+    /**
+     * @return True if the tested delays bracket the lag, so that it could be estimated
+     */
+    public boolean isBracketed() {
+        return problem == null;
+    }
+    
+    /**
+     * @return Estimated lag in ms, or NaN if not bracketed
+     */
+    public double getLag() {
+        return lag;
+    }
+    
+    /**
+     * @return Standard error of the estimate in ms
+     */
+    public double getStandardError() {
+        return standardError;
+    }
+    
+    /**
+     * @return Half the width of the 95% confidence interval in ms
+     */
+    public double getConfidenceHalfWidth() {
+        return Z_95 * standardError;
+    }
+    
+    /**
+     * @return Longest tested delay that never showed the response
+     */
+    public int getLower() {
+        return lower;
+    }
+    
+    /**
+     * @return Shortest tested delay that always showed the response
+     */
+    public int getUpper() {
+        return upper;
+    }
+    
+    /**
+     * @return Number of marked shots used
+     */
+    public int getNumberOfShots() {
+        return nShots;
+    }
+
+    @Override
+    public String toString() {
+        if (problem != null) {
+            return problem;
+        }
+        return String.format(Locale.ROOT, "%.1f ms, 95%% confidence %.1f to %.1f ms (%d shots)", 
+                lag, lag - getConfidenceHalfWidth(), lag + getConfidenceHalfWidth(), nShots);
+    }
+}
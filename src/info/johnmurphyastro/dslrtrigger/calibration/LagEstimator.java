@@ -0,0 +1,161 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.calibration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Estimates the shutter lag from marked calibration shots. Each tested delay
+ * is a 'dose' and a delay longer than the lag is the 'response': a visible 
+ * LED for the open lag, or a missing LED for the close lag. The response proportions
+ * are pooled so that they never decrease with the delay (pool adjacent 
+ * violators), and the lag is the Spearman-Karber estimate of the delay at 
+ * which the response is seen half the time.
+ * @author John Murphy
+ */
+class LagEstimator {
+    
+    /** The shots taken at one measured delay */
+    static class Dose {
+        final int delay;
+        final int n;
+        final int responses;
+        /** Pooled proportion of shots that showed the response */
+        double p;
+        Dose(int delay, int n, int responses) {
+            this.delay = delay;
+            this.n = n;
+            this.responses = responses;
+            this.p = responses / (double) n;
+        }
+    }
+    
+    private LagEstimator() {
+    }
+    
+    /**
+     * @param shots Calibration shots. Only taken and marked shots are used
+     * @param type Open or close lag
+     * @return Doses in order of increasing delay, with pooled proportions
+     */
+    static List<Dose> getDoses(List<CalibrationShot> shots, LagType type) {
+        Map<Integer, int[]> counts = new TreeMap<>();
+        for (CalibrationShot shot : shots) {
+            if (shot.isTaken() && shot.isLedVisible() != null) {
+                int[] count = counts.computeIfAbsent(shot.getPressed(), d -> new int[2]);
+                count[0]++;
+                if (shot.isLedVisible() == type.isLedSeenAboveLag()) {
+                    count[1]++;
+                }
+            }
+        }
+        List<Dose> doses = new ArrayList<>(counts.size());
+        for (Map.Entry<Integer, int[]> entry : counts.entrySet()) {
+            doses.add(new Dose(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        poolAdjacentViolators(doses);
+        return doses;
+    }
+    
+    /**
+     * A longer delay can not make the response less likely. Merge 
+     * neighbouring doses whose proportions decrease until they do not.
+     */
+    private static void poolAdjacentViolators(List<Dose> doses) {
+        // Each block: first dose index, number of shots, number of responses
+        List<int[]> blocks = new ArrayList<>();
+        for (int i = 0; i < doses.size(); i++) {
+            Dose dose = doses.get(i);
+            int[] block = {i, dose.n, dose.responses};
+            while (!blocks.isEmpty()) {
+                int[] last = blocks.get(blocks.size() - 1);
+                if ((double) last[2] / last[1] <= (double) block[2] / block[1]) {
+                    break;
+                }
+                blocks.remove(blocks.size() - 1);
+                block = new int[]{last[0], last[1] + block[1], last[2] + block[2]};
+            }
+            blocks.add(block);
+        }
+        for (int b = 0; b < blocks.size(); b++) {
+            int[] block = blocks.get(b);
+            int end = b + 1 < blocks.size() ? blocks.get(b + 1)[0] : doses.size();
+            for (int i = block[0]; i < end; i++) {
+                doses.get(i).p = (double) block[2] / block[1];
+            }
+        }
+    }
+    
+    /**
+     * @param shots Calibration shots. Only taken and marked shots are used
+     * @param type Open or close lag
+     * @return The lag estimate, or null if no shots have been marked
+     */
+    static LagEstimate estimate(List<CalibrationShot> shots, LagType type) {
+        List<Dose> doses = getDoses(shots, type);
+        if (doses.isEmpty()) {
+            return null;
+        }
+        int nShots = 0;
+        for (Dose dose : doses) {
+            nShots += dose.n;
+        }
+        Dose first = doses.get(0);
+        Dose last = doses.get(doses.size() - 1);
+        if (first.p > 0) {
+            return new LagEstimate(String.format(Locale.ROOT, 
+                    "The LED was %s at the shortest delay (%d ms): the lag is shorter", 
+                    type.isLedSeenAboveLag() ? "seen" : "not seen", first.delay), nShots);
+        }
+        if (last.p < 1) {
+            return new LagEstimate(String.format(Locale.ROOT, 
+                    "The LED was %s at the longest delay (%d ms): the lag is longer", 
+                    type.isLedSeenAboveLag() ? "not always seen" : "sometimes seen", last.delay), nShots);
+        }
+        double mean = 0;
+        double variance = 0;
+        int lower = first.delay;
+        int upper = -1;
+        for (int i = 0; i < doses.size(); i++) {
+            Dose dose = doses.get(i);
+            if (dose.p == 0) {
+                lower = dose.delay;
+            } else if (dose.p == 1 && upper < 0) {
+                upper = dose.delay;
+            }
+            if (i + 1 < doses.size()) {
+                Dose next = doses.get(i + 1);
+                double step = next.p - dose.p;
+                double gap = next.delay - dose.delay;
+                mean += step * (dose.delay + next.delay) / 2.0;
+                // The lag could be anywhere between the two delays
+                variance += step * gap * gap / 12.0;
+            }
+            if (i > 0 && i + 1 < doses.size()) {
+                double width = (doses.get(i + 1).delay - doses.get(i - 1).delay) / 2.0;
+                variance += dose.p * (1 - dose.p) / Math.max(dose.n - 1, 1) * width * width;
+            }
+        }
+        return new LagEstimate(mean, Math.sqrt(variance), lower, upper, nShots);
+    }
+}
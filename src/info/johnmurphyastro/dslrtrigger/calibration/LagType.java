@@ -0,0 +1,91 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.calibration;
+
+import info.johnmurphyastro.dslrtrigger.data.MinTime;
+
+/**
+ * The shutter lag measured by a calibration session
+ * @author John Murphy
+ */
+public enum LagType {
+    /** 
+     * Time from pressing the switch to the shutter opening. Each test shot
+     * presses the switch for the tested delay; the switch LED is visible if 
+     * the delay is longer than the lag.
+     */
+    OPEN("open", "Shutter open lag", MinTime.EXPOSURE_MS),
+    /** 
+     * Time from releasing the switch at the end of a bulb exposure to the 
+     * shutter closing. Each test shot pulses the switch LED the tested delay
+     * after the release; the LED is visible if the delay is shorter than the lag.
+     */
+    CLOSE("close", "Shutter close lag", 0);
+    
+    private final String key;
+    private final String description;
+    private final int minDelay;
+    
+    private LagType(String key, String description, int minDelay) {
+        this.key = key;
+        this.description = description;
+        this.minDelay = minDelay;
+    }
+    
+    /**
+     * @return Name used in the session file
+     */
+    public String getKey() {
+        return key;
+    }
+    
+    /**
+     * @return For example 'Shutter open lag'
+     */
+    public String getDescription() {
+        return description;
+    }
+    
+    /**
+     * @return Shortest delay that can be tested, in ms
+     */
+    public int getMinDelay() {
+        return minDelay;
+    }
+    
+    /**
+     * @return True if a longer delay makes the LED more likely to be visible
+     */
+    boolean isLedSeenAboveLag() {
+        return this == OPEN;
+    }
+    
+    /**
+     * @param key Name used in the session file
+     * @return The lag type, or null if the name is not recognised
+     */
+    static LagType fromKey(String key) {
+        for (LagType type : values()) {
+            if (type.key.equalsIgnoreCase(key)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
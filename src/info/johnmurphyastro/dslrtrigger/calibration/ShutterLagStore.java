@@ -0,0 +1,196 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.calibration;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import info.johnmurphyastro.dslrtrigger.data.LagStatistics;
+import info.johnmurphyastro.dslrtrigger.data.ShutterLagProfile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Shutter lag calibrations for every camera body and mode, kept in the
+ * Preferences store. Each profile holds the running mean and variance of the
+ * open and close lags, so every calibration run refines it.
+ * @author John Murphy
+ */
+public class ShutterLagStore {
+    private static final String NODE = "shutter_lag";
+    private static final String CAMERA = "camera";
+    private static final String MIRROR_LOCK = "mirror_lock";
+    private static final String BULB_MODE = "bulb_mode";
+    private static final String OPEN = "open_";
+    private static final String CLOSE = "close_";
+    private static final String COUNT = "n";
+    private static final String MEAN = "mean";
+    private static final String SUM_SQUARES = "sum_squares";
+    
+    private final Preferences store;
+    
+    /**
+     * Use the current user's Preferences store
+     */
+    public ShutterLagStore() {
+        this(Preferences.userNodeForPackage(ShutterLagStore.class).node(NODE));
+    }
+    
+    /**
+     * @param store Each profile is a child node of this node
+     */
+    ShutterLagStore(Preferences store) {
+        this.store = store;
+    }
+    
+    /**
+     * @param camera Camera model
+     * @param mirrorLock True for mirror lock mode
+     * @param bulbMode True for bulb mode
+     * @return The profile, or null if this camera has not been calibrated in this mode
+     */
+    public synchronized ShutterLagProfile find(String camera, boolean mirrorLock, boolean bulbMode) {
+        try {
+            String name = nodeName(camera, mirrorLock, bulbMode);
+            if (!store.nodeExists(name)) {
+                return null;
+            }
+            return read(store.node(name));
+        } catch (BackingStoreException | InvalidDataException ex) {
+            return null;
+        }
+    }
+    
+    /**
+     * @return Every profile, sorted by name
+     */
+    public synchronized List<ShutterLagProfile> getProfiles() {
+        List<ShutterLagProfile> profiles = new ArrayList<>();
+        try {
+            for (String name : store.childrenNames()) {
+                try {
+                    profiles.add(read(store.node(name)));
+                } catch (InvalidDataException ex) {
+                    // Damaged entry. Ignore it
+                }
+            }
+        } catch (BackingStoreException ex) {
+            // Nothing can be read
+        }
+        profiles.sort((a, b) -> a.getName().compareToIgnoreCase(b.getName()));
+        return profiles;
+    }
+    
+    /**
+     * Add a shutter open lag calibration result
+     * @param camera Camera model
+     * @param mirrorLock True if calibrated in mirror lock mode
+     * @param bulbMode True if calibrated in bulb mode
+     * @param lag Shutter open lag in ms
+     * @return The updated profile
+     * @throws BackingStoreException The result could not be saved
+     */
+    public synchronized ShutterLagProfile addOpenLag(String camera, boolean mirrorLock, boolean bulbMode, 
+            double lag) throws BackingStoreException {
+        ShutterLagProfile profile = findOrCreate(camera, mirrorLock, bulbMode).addOpenLag(lag);
+        write(profile);
+        return profile;
+    }
+    
+    /**
+     * Add a shutter close lag calibration result
+     * @param camera Camera model
+     * @param mirrorLock True if calibrated in mirror lock mode
+     * @param bulbMode True if calibrated in bulb mode
+     * @param lag Shutter close lag in ms
+     * @return The updated profile
+     * @throws BackingStoreException The result could not be saved
+     */
+    public synchronized ShutterLagProfile addCloseLag(String camera, boolean mirrorLock, boolean bulbMode, 
+            double lag) throws BackingStoreException {
+        ShutterLagProfile profile = findOrCreate(camera, mirrorLock, bulbMode).addCloseLag(lag);
+        write(profile);
+        return profile;
+    }
+    
+    /**
+     * Forget a profile's calibrations, for example after the camera is serviced
+     * @param profile The profile to remove
+     * @throws BackingStoreException 
+     */
+    public synchronized void remove(ShutterLagProfile profile) throws BackingStoreException {
+        String name = nodeName(profile.getCamera(), profile.isMirrorLockSet(), profile.inBulbMode());
+        if (store.nodeExists(name)) {
+            store.node(name).removeNode();
+            store.flush();
+        }
+    }
+    
+    private ShutterLagProfile findOrCreate(String camera, boolean mirrorLock, boolean bulbMode) {
+        ShutterLagProfile profile = find(camera, mirrorLock, bulbMode);
+        return profile != null ? profile : ShutterLagProfile.empty(camera, mirrorLock, bulbMode);
+    }
+    
+    private void write(ShutterLagProfile profile) throws BackingStoreException {
+        Preferences node = store.node(nodeName(profile.getCamera(), profile.isMirrorLockSet(), profile.inBulbMode()));
+        node.put(CAMERA, profile.getCamera());
+        node.putBoolean(MIRROR_LOCK, profile.isMirrorLockSet());
+        node.putBoolean(BULB_MODE, profile.inBulbMode());
+        write(node, OPEN, profile.getOpenLag());
+        write(node, CLOSE, profile.getCloseLag());
+        node.flush();
+    }
+    
+    private static void write(Preferences node, String prefix, LagStatistics lag) {
+        node.putInt(prefix + COUNT, lag.getCount());
+        node.putDouble(prefix + MEAN, lag.getMean());
+        node.putDouble(prefix + SUM_SQUARES, lag.getSumSquares());
+    }
+    
+    private static ShutterLagProfile read(Preferences node) throws InvalidDataException {
+        return new ShutterLagProfile(node.get(CAMERA, ""), 
+                node.getBoolean(MIRROR_LOCK, false), node.getBoolean(BULB_MODE, false),
+                read(node, OPEN), read(node, CLOSE));
+    }
+    
+    private static LagStatistics read(Preferences node, String prefix) throws InvalidDataException {
+        return new LagStatistics(node.getInt(prefix + COUNT, 0), 
+                node.getDouble(prefix + MEAN, 0), node.getDouble(prefix + SUM_SQUARES, 0));
+    }
+    
+    /**
+     * Preferences node names may not contain '/' and are at most 80 characters.
+     * Camera names that differ only in case or spacing share a profile.
+     */
+    private static String nodeName(String camera, boolean mirrorLock, boolean bulbMode) {
+        String key = camera == null ? "" : camera.trim().replaceAll("\\s+", " ").toLowerCase();
+        try {
+            key = URLEncoder.encode(key, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+        String mode = (mirrorLock ? "_ml" : "_noml") + (bulbMode ? "_bulb" : "_manual");
+        if (key.length() + mode.length() > Preferences.MAX_NAME_LENGTH) {
+            key = Integer.toHexString(key.hashCode());
+        }
+        return key + mode;
+    }
+}
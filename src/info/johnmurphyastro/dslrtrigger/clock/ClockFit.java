@@ -0,0 +1,114 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.clock;
+
+/**
+ * Least squares fit of reference UTC against System.nanoTime over the most
+ * recent samples, giving the offset and the drift rate. A sample far from
+ * the current model is rejected as an outlier; if the reference keeps 
+ * disagreeing, it has stepped, so the fit is restarted.
+ * Only used by the TimeSource thread.
+ * @author John Murphy
+ */
+class ClockFit {
+    /** Number of samples in the fit */
+    private static final int WINDOW = 64;
+    /** The model is usable once it has this many samples */
+    static final int MIN_SAMPLES = 4;
+    /** Samples further than this from the model are outliers */
+    private static final double MAX_RESIDUAL_MS = 200;
+    /** After this many outliers in a row, start again */
+    private static final int MAX_OUTLIERS = 8;
+    /** A rate further than this from nominal is not believable */
+    private static final double MAX_DRIFT = 500e-6;
+    
+    private final String source;
+    private final long[] nanos = new long[WINDOW];
+    private final long[] utc = new long[WINDOW];
+    private int n;
+    private int next;
+    private int outliers;
+    private ClockModel model;
+    
+    /**
+     * @param source Name of the reference clock
+     */
+    ClockFit(String source) {
+        this.source = source;
+    }
+    
+    /**
+     * @param sampleNanos System.nanoTime at the reference time
+     * @param sampleUtc Reference UTC in ms since the epoch
+     * @return The new model, or null if there are not yet enough samples or
+     * the sample was rejected
+     */
+    ClockModel add(long sampleNanos, long sampleUtc) {
+        if (model != null && Math.abs(model.toUtc(sampleNanos) - sampleUtc) > MAX_RESIDUAL_MS) {
+            if (++outliers < MAX_OUTLIERS) {
+                return null;
+            }
+            n = 0;
+            model = null;
+        }
+        outliers = 0;
+        nanos[next] = sampleNanos;
+        utc[next] = sampleUtc;
+        next = (next + 1) % WINDOW;
+        n = Math.min(n + 1, WINDOW);
+        if (n < MIN_SAMPLES) {
+            return null;
+        }
+        model = fit(sampleNanos, sampleUtc);
+        return model;
+    }
+    
+    /**
+     * Fit relative to the newest sample, so that the sums stay small
+     */
+    private ClockModel fit(long refNanos, long refUtc) {
+        double sumX = 0;
+        double sumY = 0;
+        for (int i = 0; i < n; i++) {
+            sumX += (nanos[i] - refNanos) * 1e-6;
+            sumY += utc[i] - refUtc;
+        }
+        double meanX = sumX / n;
+        double meanY = sumY / n;
+        double sxx = 0;
+        double sxy = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = (nanos[i] - refNanos) * 1e-6 - meanX;
+            sxx += dx * dx;
+            sxy += dx * (utc[i] - refUtc - meanY);
+        }
+        double slope = sxx > 0 ? sxy / sxx : 1;
+        if (Math.abs(slope - 1) > MAX_DRIFT) {
+            // Too few or too close together to measure the drift
+            slope = 1;
+        }
+        double intercept = meanY - slope * meanX;
+        double sumSquares = 0;
+        for (int i = 0; i < n; i++) {
+            double residual = utc[i] - refUtc - (intercept + slope * (nanos[i] - refNanos) * 1e-6);
+            sumSquares += residual * residual;
+        }
+        return new ClockModel(source, refNanos, refUtc + intercept, slope * 1e-6, n, Math.sqrt(sumSquares / n));
+    }
+}
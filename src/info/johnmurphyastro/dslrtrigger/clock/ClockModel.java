@@ -0,0 +1,111 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.clock;
+
+import java.util.Locale;
+
+/**
+ * Maps System.nanoTime to reference UTC with an offset and a rate, so that 
+ * the reference time can be read at any moment without asking the reference.
+ * Immutable class.
+ * @author John Murphy
+ */
+public class ClockModel {
+    private final String source;
+    private final long refNanos;
+    private final double refUtc;
+    private final double rate;
+    private final int samples;
+    private final double jitter;
+    
+    /**
+     * @param source Name of the reference clock
+     * @param refNanos A System.nanoTime value
+     * @param refUtc Reference UTC at refNanos, in ms since the epoch
+     * @param rate Reference milliseconds per System.nanoTime nanosecond (nominally 1e-6)
+     * @param samples Number of samples the model was fitted to
+     * @param jitter RMS difference between the samples and the model, in ms
+     */
+    ClockModel(String source, long refNanos, double refUtc, double rate, int samples, double jitter) {
+        this.source = source;
+        this.refNanos = refNanos;
+        this.refUtc = refUtc;
+        this.rate = rate;
+        this.samples = samples;
+        this.jitter = jitter;
+    }
+    
+    /**
+     * @param nanos A System.nanoTime value
+     * @return Reference UTC in ms since the epoch
+     */
+    public double toUtc(long nanos) {
+        return refUtc + (nanos - refNanos) * rate;
+    }
+    
+    /**
+     * @param nanos A System.nanoTime value
+     * @return Reference UTC in whole ms since the epoch
+     */
+    public long toUtcMillis(long nanos) {
+        return (long) Math.floor(toUtc(nanos));
+    }
+    
+    /**
+     * @return Name of the reference clock
+     */
+    public String getSource() {
+        return source;
+    }
+    
+    /**
+     * @return How much faster System.nanoTime runs than the reference, in parts per million
+     */
+    public double getDriftPpm() {
+        return (1e-6 / rate - 1) * 1e6;
+    }
+    
+    /**
+     * @return Number of samples the model was fitted to
+     */
+    public int getSamples() {
+        return samples;
+    }
+    
+    /**
+     * @return RMS difference between the samples and the model, in ms
+     */
+    public double getJitter() {
+        return jitter;
+    }
+    
+    /**
+     * @return Reference UTC minus the computer's clock now, in ms
+     */
+    public double getOffset() {
+        long nanos = System.nanoTime();
+        return toUtc(nanos) - System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s, offset from computer clock %+.1f ms, drift %+.2f ppm, jitter %.2f ms",
+                source, getOffset(), getDriftPpm(), jitter);
+    }
+}
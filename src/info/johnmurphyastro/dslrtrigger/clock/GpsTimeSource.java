@@ -0,0 +1,225 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.clock;
+
+import info.johnmurphyastro.dslrtrigger.usbswitch.InvalidSerialPortNameException;
+import info.johnmurphyastro.dslrtrigger.usbswitch.SerialComPortsAvailable;
+import gnu.io.PortInUseException;
+import gnu.io.SerialPort;
+import gnu.io.SerialPortEvent;
+import gnu.io.UnsupportedCommOperationException;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.TooManyListenersException;
+
+/**
+ * GPS receiver time source. Each second the receiver sends a burst of NMEA
+ * sentences; the RMC or ZDA sentence gives the UTC second. 
+ * <p>
+ * With the pulse per second (PPS) output wired to the serial port's DCD line,
+ * the time of the PPS edge is the sample time, so the sample is as good as 
+ * the serial driver's event latency. Without PPS, the time the first byte of
+ * the burst arrived is used; the receiver's variable NMEA output delay limits
+ * this to tens of milliseconds.
+ * <p>
+ * A recorded NMEA file can be replayed instead, paced by the times in the 
+ * file, as a stand-in for a receiver when testing. The trigger clock then
+ * follows the recorded times.
+ * @author John Murphy
+ */
+class GpsTimeSource extends TimeSource {
+    /** A gap longer than this between bytes starts a new burst */
+    private static final long BURST_GAP_NANOS = 200_000_000L;
+    /** An NMEA time labels the PPS edge up to this long before it */
+    private static final long PPS_MAX_AGE_NANOS = 1_000_000_000L;
+    /** Replayed seconds further apart than this are not waited for */
+    private static final long MAX_REPLAY_GAP_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 1000;
+    
+    private final SerialPort serialPort;
+    private final boolean usePps;
+    private final Thread thread;
+    private volatile boolean closed;
+    /** Time of the latest PPS edge. Written by the serial event thread */
+    private volatile long ppsNanos;
+    /** UTC of the latest sample, so that RMC and ZDA for the same second are only used once */
+    private long lastUtc;
+    
+    /**
+     * Read a serial GPS
+     * @param serialPorts Available serial ports
+     * @param comPortName GPS serial COM port name. Must not be the USB switch port
+     * @param baud GPS serial port speed
+     * @param usePps True if the PPS output is wired to DCD
+     * @throws PortInUseException
+     * @throws InvalidSerialPortNameException
+     * @throws UnsupportedCommOperationException
+     * @throws TooManyListenersException
+     * @throws IOException 
+     */
+    GpsTimeSource(SerialComPortsAvailable serialPorts, String comPortName, int baud, boolean usePps) 
+            throws PortInUseException, InvalidSerialPortNameException, UnsupportedCommOperationException, 
+            TooManyListenersException, IOException {
+        super("GPS " + comPortName + (usePps ? " PPS" : " NMEA"));
+        this.usePps = usePps;
+        serialPort = serialPorts.openSerialPort(comPortName);
+        InputStream input;
+        try {
+            serialPort.setSerialPortParams(baud, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+            serialPort.enableReceiveTimeout(READ_TIMEOUT_MS);
+            if (usePps) {
+                serialPort.addEventListener(event -> {
+                    if (event.getEventType() == SerialPortEvent.CD && event.getNewValue()) {
+                        ppsNanos = System.nanoTime();
+                    }
+                });
+                serialPort.notifyOnCarrierDetect(true);
+            }
+            input = serialPort.getInputStream();
+        } catch (UnsupportedCommOperationException | TooManyListenersException | IOException | RuntimeException ex) {
+            serialPort.close();
+            throw ex;
+        }
+        thread = new Thread(() -> readSerial(input), "GPS Thread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Replay a recorded NMEA file
+     * @param file NMEA sentences, one per line
+     * @throws IOException The file could not be opened
+     */
+    GpsTimeSource(File file) throws IOException {
+        super("GPS replay " + file.getName());
+        serialPort = null;
+        usePps = false;
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII));
+        thread = new Thread(() -> replay(reader), "GPS Replay Thread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    private void readSerial(InputStream input) {
+        byte[] buffer = new byte[512];
+        StringBuilder line = new StringBuilder(128);
+        long lastByteNanos = 0;
+        long burstNanos = 0;
+        try {
+            while (!closed) {
+                int n = input.read(buffer);
+                long now = System.nanoTime();
+                if (n <= 0) {
+                    continue;
+                }
+                if (now - lastByteNanos > BURST_GAP_NANOS) {
+                    burstNanos = now;
+                }
+                lastByteNanos = now;
+                for (int i = 0; i < n; i++) {
+                    char c = (char) (buffer[i] & 0xFF);
+                    if (c == '\n' || c == '\r') {
+                        if (line.length() > 0) {
+                            sentence(line.toString(), burstNanos);
+                            line.setLength(0);
+                        }
+                    } else if (line.length() < 128) {
+                        line.append(c);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            if (!closed) {
+                System.err.println(getName() + ": " + ex.getMessage());
+            }
+        }
+    }
+    
+    private void replay(BufferedReader reader) {
+        long lastReplayUtc = 0;
+        long burstNanos = System.nanoTime();
+        try (BufferedReader in = reader) {
+            String line;
+            while (!closed && (line = in.readLine()) != null) {
+                long utc = NmeaSentence.parseUtc(line.trim());
+                if (utc > 0 && utc != lastReplayUtc) {
+                    if (lastReplayUtc > 0 && utc > lastReplayUtc && utc - lastReplayUtc <= MAX_REPLAY_GAP_MS) {
+                        // Wait as long as the receiver did between these seconds
+                        long due = burstNanos + (utc - lastReplayUtc) * 1_000_000L;
+                        long delay = due - System.nanoTime();
+                        if (delay > 0) {
+                            Thread.sleep(delay / 1_000_000L, (int) (delay % 1_000_000L));
+                        }
+                        burstNanos = due;
+                    } else {
+                        burstNanos = System.nanoTime();
+                    }
+                    lastReplayUtc = utc;
+                }
+                sentence(line.trim(), burstNanos);
+            }
+        } catch (IOException ex) {
+            System.err.println(getName() + ": " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            // Closed
+        }
+    }
+    
+    /**
+     * @param text One NMEA sentence
+     * @param burstNanos Time the burst containing this sentence started to arrive
+     */
+    private void sentence(String text, long burstNanos) {
+        long utc = NmeaSentence.parseUtc(text);
+        if (utc < 0 || utc == lastUtc) {
+            return;
+        }
+        lastUtc = utc;
+        if (usePps) {
+            long pps = ppsNanos;
+            // The NMEA burst follows the PPS edge that it labels
+            if (pps != 0 && burstNanos - pps >= 0 && burstNanos - pps < PPS_MAX_AGE_NANOS) {
+                sample(pps, utc);
+            }
+        } else {
+            sample(burstNanos, utc);
+        }
+    }
+
+    @Override
+    protected void closeInput() {
+        closed = true;
+        thread.interrupt();
+        if (serialPort != null) {
+            serialPort.removeEventListener();
+            serialPort.close();
+        }
+        try {
+            thread.join(READ_TIMEOUT_MS * 2);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
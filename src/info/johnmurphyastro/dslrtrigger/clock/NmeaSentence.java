@@ -0,0 +1,104 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.clock;
+
+import java.time.LocalDate;
+
+/**
+ * Reads the UTC time from NMEA 0183 RMC and ZDA sentences.
+ * @author John Murphy
+ */
+class NmeaSentence {
+    private static final long DAY_MS = 86_400_000L;
+    
+    private NmeaSentence() {
+    }
+    
+    /**
+     * @param sentence One NMEA sentence, for example
+     * "$GPRMC,021500.00,A,5130.0,N,00010.0,W,0.0,,120819,,,A*61"
+     * @return UTC in ms since the epoch, or -1 if the sentence is not a valid
+     * RMC or ZDA sentence with a time fix
+     */
+    static long parseUtc(String sentence) {
+        if (!sentence.startsWith("$") || !isChecksumValid(sentence)) {
+            return -1;
+        }
+        String[] fields = sentence.substring(1, sentence.indexOf('*')).split(",", -1);
+        if (fields[0].length() != 5) {
+            return -1;
+        }
+        try {
+            switch (fields[0].substring(2)) {
+                case "RMC":
+                    // Status A is a valid fix. Date is ddmmyy
+                    if (fields.length < 10 || !"A".equals(fields[2]) || fields[9].length() != 6) {
+                        return -1;
+                    }
+                    int yy = Integer.parseInt(fields[9].substring(4, 6));
+                    return toUtc(fields[1], yy < 80 ? 2000 + yy : 1900 + yy,
+                            Integer.parseInt(fields[9].substring(2, 4)), Integer.parseInt(fields[9].substring(0, 2)));
+                case "ZDA":
+                    // Fields are empty until the receiver knows the time
+                    if (fields.length < 5 || fields[4].isEmpty()) {
+                        return -1;
+                    }
+                    return toUtc(fields[1], Integer.parseInt(fields[4]),
+                            Integer.parseInt(fields[3]), Integer.parseInt(fields[2]));
+                default:
+                    return -1;
+            }
+        } catch (RuntimeException ex) {
+            // Number format, date or truncated field
+            return -1;
+        }
+    }
+    
+    /**
+     * @param time hhmmss or hhmmss.sss
+     */
+    private static long toUtc(String time, int year, int month, int day) {
+        if (time.length() < 6) {
+            return -1;
+        }
+        long ms = Integer.parseInt(time.substring(0, 2)) * 3_600_000L
+                + Integer.parseInt(time.substring(2, 4)) * 60_000L
+                + Math.round(Double.parseDouble(time.substring(4)) * 1000);
+        return LocalDate.of(year, month, day).toEpochDay() * DAY_MS + ms;
+    }
+    
+    /**
+     * @return True if the two hex digits after '*' are the XOR of the characters between '$' and '*'
+     */
+    private static boolean isChecksumValid(String sentence) {
+        int star = sentence.indexOf('*');
+        if (star < 1 || star + 3 > sentence.length()) {
+            return false;
+        }
+        int checksum = 0;
+        for (int i = 1; i < star; i++) {
+            checksum ^= sentence.charAt(i);
+        }
+        try {
+            return checksum == Integer.parseInt(sentence.substring(star + 1, star + 3), 16);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+}
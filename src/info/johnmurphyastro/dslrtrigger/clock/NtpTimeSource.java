@@ -0,0 +1,190 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.clock;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+
+/**
+ * NTP server time source. A low priority thread queries the server with
+ * SNTP, keeps the offset and delay of the most recent replies, and publishes
+ * the offset of the reply with the shortest round trip (the least affected 
+ * by network queuing) as the TriggerClock's monitor. The Intervalometer 
+ * thread only reads the published estimate, so polling never delays a shot.
+ * <p>
+ * The offset is measured against the TriggerClock, so with a GPS it shows
+ * how far the GPS disciplined clock is from the server. If the offset is 
+ * applied, the replies also discipline the TriggerClock, and the offset 
+ * then shows what remains after the correction.
+ * @author John Murphy
+ */
+class NtpTimeSource extends TimeSource {
+    /** Number of recent replies in the estimate */
+    private static final int WINDOW = 8;
+    /** The first queries are this close together, so that the clock locks quickly */
+    private static final int BURST_POLLS = ClockFit.MIN_SAMPLES;
+    private static final long BURST_POLL_MS = 2000;
+    private static final int REPLY_TIMEOUT_MS = 2000;
+    
+    private final InetAddress address;
+    private final int port;
+    private final long pollMs;
+    private final boolean apply;
+    private final DatagramSocket socket;
+    private final Thread thread;
+    private volatile boolean closed;
+    private final double[] offsets = new double[WINDOW];
+    private final double[] delays = new double[WINDOW];
+    private int n;
+    private int next;
+    /** True once the replies are disciplining the TriggerClock */
+    private boolean applied;
+    
+    /**
+     * @param host NTP server host name or address
+     * @param port NTP server UDP port
+     * @param pollSeconds Seconds between queries
+     * @param apply True to discipline the TriggerClock to the server
+     * @throws IOException The host is unknown, or the socket could not be opened
+     */
+    NtpTimeSource(String host, int port, int pollSeconds, boolean apply) throws IOException {
+        super("NTP " + host + (port == 123 ? "" : ":" + port));
+        this.address = InetAddress.getByName(host);
+        this.port = port;
+        this.pollMs = pollSeconds * 1000L;
+        this.apply = apply;
+        socket = new DatagramSocket();
+        socket.setSoTimeout(REPLY_TIMEOUT_MS);
+        thread = new Thread(this::poll, "NTP Thread");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+    
+    private void poll() {
+        byte[] reply = new byte[SntpPacket.LENGTH];
+        int polls = 0;
+        try {
+            while (!closed) {
+                try {
+                    if (query(reply)) {
+                        // Measure the offset from the newly disciplined clock straight away
+                        continue;
+                    }
+                } catch (SocketTimeoutException ex) {
+                    // No reply. Try again at the next poll
+                } catch (IOException ex) {
+                    if (closed) {
+                        return;
+                    }
+                    System.err.println(getName() + ": " + ex.getMessage());
+                }
+                Thread.sleep(++polls < BURST_POLLS ? BURST_POLL_MS : pollMs);
+            }
+        } catch (InterruptedException ex) {
+            // Closed
+        }
+    }
+    
+    /**
+     * Send one request and wait for its reply
+     * @param reply Buffer for the reply
+     * @return True if this reply started disciplining the TriggerClock
+     * @throws IOException 
+     */
+    private boolean query(byte[] reply) throws IOException {
+        long sendNanos = System.nanoTime();
+        long sendTime = TriggerClock.currentTimeMillis();
+        byte[] request = SntpPacket.createRequest(sendTime);
+        socket.send(new DatagramPacket(request, request.length, address, port));
+        DatagramPacket packet = new DatagramPacket(reply, reply.length);
+        double[] serverTimes;
+        do {
+            // Ignore late replies to earlier requests
+            socket.receive(packet);
+            serverTimes = SntpPacket.parseReply(reply, packet.getLength(), sendTime);
+        } while (serverTimes == null);
+        long receiveNanos = System.nanoTime();
+        
+        // Assume the request and reply took equal times, so the server's 
+        // time half way between its receive and transmit times was the 
+        // client's time half way between send and receive
+        double roundTrip = (receiveNanos - sendNanos) / 1e6;
+        double serverMid = (serverTimes[0] + serverTimes[1]) / 2;
+        double offset = serverMid - (sendTime + roundTrip / 2);
+        double delay = Math.max(0, roundTrip - (serverTimes[1] - serverTimes[0]));
+        OffsetEstimate estimate = add(offset, delay, receiveNanos);
+        TriggerClock.setMonitor(estimate);
+        if (apply) {
+            // Only a reply with a near minimum round trip is accurate enough to fit
+            if (delay <= 2 * estimate.getDelay() + 1) {
+                sample(sendNanos + (receiveNanos - sendNanos) / 2, Math.round(serverMid));
+            }
+            if (!applied && TriggerClock.getModel() != null) {
+                // The earlier offsets were measured against the computer's clock
+                applied = true;
+                n = 0;
+                next = 0;
+                return true;
+            }
+        } else {
+            monitoring();
+        }
+        return false;
+    }
+    
+    /**
+     * @return The estimate from the most recent replies, including this one
+     */
+    private OffsetEstimate add(double offset, double delay, long replyNanos) {
+        offsets[next] = offset;
+        delays[next] = delay;
+        next = (next + 1) % WINDOW;
+        n = Math.min(n + 1, WINDOW);
+        int best = 0;
+        for (int i = 1; i < n; i++) {
+            if (delays[i] < delays[best]) {
+                best = i;
+            }
+        }
+        double sumSquares = 0;
+        for (int i = 0; i < n; i++) {
+            double d = offsets[i] - offsets[best];
+            sumSquares += d * d;
+        }
+        double jitter = n > 1 ? Math.sqrt(sumSquares / (n - 1)) : 0;
+        return new OffsetEstimate(getName(), offsets[best], delays[best], jitter, n, replyNanos);
+    }
+
+    @Override
+    protected void closeInput() {
+        closed = true;
+        thread.interrupt();
+        socket.close();
+        try {
+            thread.join(REPLY_TIMEOUT_MS * 2);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        TriggerClock.setMonitor(null);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.clock;
+
+import java.util.Locale;
+
+/**
+ * Latest estimate of an NTP server's UTC minus the trigger clock, from the
+ * most recent replies. Immutable class.
+ * @author John Murphy
+ */
+public class OffsetEstimate {
+    private final String source;
+    private final double offset;
+    private final double delay;
+    private final double jitter;
+    private final int samples;
+    private final long replyNanos;
+    
+    /**
+     * @param source Name of the server
+     * @param offset Server UTC minus the trigger clock in ms
+     * @param delay Round trip network delay of the reply the offset was taken from, in ms
+     * @param jitter RMS difference between the recent offsets and this offset, in ms
+     * @param samples Number of replies the estimate is taken from
+     * @param replyNanos System.nanoTime when the latest reply arrived
+     */
+    OffsetEstimate(String source, double offset, double delay, double jitter, int samples, long replyNanos) {
+        this.source = source;
+        this.offset = offset;
+        this.delay = delay;
+        this.jitter = jitter;
+        this.samples = samples;
+        this.replyNanos = replyNanos;
+    }
+    
+    /**
+     * @return Name of the server
+     */
+    public String getSource() {
+        return source;
+    }
+    
+    /**
+     * @return Server UTC minus the trigger clock in ms
+     */
+    public double getOffset() {
+        return offset;
+    }
+    
+    /**
+     * @return Round trip network delay in ms. The offset's error is at most half of this.
+     */
+    public double getDelay() {
+        return delay;
+    }
+    
+    /**
+     * @return RMS difference between the recent offsets and this offset, in ms
+     */
+    public double getJitter() {
+        return jitter;
+    }
+    
+    /**
+     * @return Number of replies the estimate is taken from
+     */
+    public int getSamples() {
+        return samples;
+    }
+    
+    /**
+     * @return Seconds since the latest reply
+     */
+    public long getAgeSeconds() {
+        return (System.nanoTime() - replyNanos) / 1_000_000_000L;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s, offset %+.1f ms, delay %.1f ms, jitter %.2f ms",
+                source, offset, delay, jitter);
+    }
+}
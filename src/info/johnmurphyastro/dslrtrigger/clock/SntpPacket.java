@@ -0,0 +1,98 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.clock;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Simple Network Time Protocol (RFC 4330) client request and server reply.
+ * NTP timestamps are seconds since 1900 with a 32 bit binary fraction; they 
+ * are converted to ms since the Java epoch.
+ * @author John Murphy
+ */
+class SntpPacket {
+    static final int LENGTH = 48;
+    /** Seconds from 1900 to 1970 */
+    private static final long EPOCH_OFFSET_S = 2_208_988_800L;
+    /** Leap indicator 0, version 4, mode 3 (client) */
+    private static final byte CLIENT_REQUEST = 0x23;
+    private static final int MODE_SERVER = 4;
+    private static final int ORIGINATE_OFFSET = 24;
+    private static final int RECEIVE_OFFSET = 32;
+    private static final int TRANSMIT_OFFSET = 40;
+    
+    private SntpPacket() {
+    }
+    
+    /**
+     * @param transmitTime The client's time in ms since the epoch. The server 
+     * copies it into its reply, which identifies the reply.
+     * @return A client request
+     */
+    static byte[] createRequest(long transmitTime) {
+        byte[] request = new byte[LENGTH];
+        request[0] = CLIENT_REQUEST;
+        ByteBuffer.wrap(request).putLong(TRANSMIT_OFFSET, toNtp(transmitTime));
+        return request;
+    }
+    
+    /**
+     * @param reply The server's reply
+     * @param length Number of bytes received
+     * @param transmitTime The request's transmit time
+     * @return The server's receive and transmit times in ms since the epoch,
+     * or null if this is not a valid reply to the request
+     */
+    static double[] parseReply(byte[] reply, int length, long transmitTime) {
+        if (length < LENGTH || (reply[0] & 0x07) != MODE_SERVER) {
+            return null;
+        }
+        int leap = (reply[0] >> 6) & 0x03;
+        int stratum = reply[1] & 0xFF;
+        // Leap indicator 3 is an unsynchronised server, stratum 0 a 'kiss of death'
+        if (leap == 3 || stratum == 0 || stratum > 15) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(reply);
+        if (buffer.getLong(ORIGINATE_OFFSET) != toNtp(transmitTime)) {
+            return null;
+        }
+        return new double[]{fromNtp(buffer.getLong(RECEIVE_OFFSET)), fromNtp(buffer.getLong(TRANSMIT_OFFSET))};
+    }
+    
+    /**
+     * @param ms Time in ms since the epoch
+     * @return NTP timestamp
+     */
+    private static long toNtp(long ms) {
+        long seconds = Math.floorDiv(ms, 1000L);
+        long fraction = (Math.floorMod(ms, 1000L) << 32) / 1000L;
+        return ((seconds + EPOCH_OFFSET_S) << 32) | fraction;
+    }
+    
+    /**
+     * @param ntp NTP timestamp
+     * @return Time in ms since the epoch
+     */
+    private static double fromNtp(long ntp) {
+        long seconds = (ntp >>> 32) - EPOCH_OFFSET_S;
+        double fraction = (ntp & 0xFFFFFFFFL) / 4294967296.0;
+        return (seconds + fraction) * 1000.0;
+    }
+}
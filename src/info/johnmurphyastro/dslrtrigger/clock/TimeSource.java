@@ -0,0 +1,153 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.clock;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import info.johnmurphyastro.dslrtrigger.data.ClockData;
+import info.johnmurphyastro.dslrtrigger.usbswitch.InvalidSerialPortNameException;
+import info.johnmurphyastro.dslrtrigger.usbswitch.SerialComPortsAvailable;
+import gnu.io.PortInUseException;
+import gnu.io.UnsupportedCommOperationException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TooManyListenersException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a reference clock on its own thread and disciplines the TriggerClock
+ * to it. The Intervalometer thread never waits for the reference; it only 
+ * reads the latest ClockModel.
+ * @author John Murphy
+ */
+public abstract class TimeSource {
+    private final String name;
+    private final ClockFit fit;
+    private final CountDownLatch locked = new CountDownLatch(1);
+    /** True once this source has set the TriggerClock's model */
+    private volatile boolean disciplining;
+    
+    /**
+     * @param name Name of the reference clock, for the log file
+     */
+    protected TimeSource(String name) {
+        this.name = name;
+        fit = new ClockFit(name);
+    }
+    
+    /**
+     * Open the reference clocks and start reading them
+     * @param data Reference clock settings
+     * @param serialPorts Used to open a serial GPS
+     * @return The GPS time source, if set, followed by the NTP time source, 
+     * if set. Each must be closed after use.
+     * @throws IOException
+     * @throws InvalidDataException A reference clock could not be opened
+     */
+    public static List<TimeSource> open(ClockData data, SerialComPortsAvailable serialPorts)
+            throws IOException, InvalidDataException {
+        List<TimeSource> sources = new ArrayList<>(2);
+        if (data.getGpsReplay() != null) {
+            sources.add(new GpsTimeSource(data.getGpsReplay()));
+        } else if (data.getGpsPort() != null) {
+            try {
+                sources.add(new GpsTimeSource(serialPorts, data.getGpsPort(), data.getGpsBaud(), data.isPpsOnDcd()));
+            } catch (PortInUseException | InvalidSerialPortNameException 
+                    | UnsupportedCommOperationException | TooManyListenersException ex) {
+                throw new InvalidDataException("GPS " + data.getGpsPort() + ": " + ex.getMessage());
+            }
+        }
+        if (data.getNtpHost() != null) {
+            try {
+                sources.add(new NtpTimeSource(data.getNtpHost(), data.getNtpPort(), 
+                        data.getNtpPoll(), data.isNtpApplied()));
+            } catch (IOException ex) {
+                close(sources);
+                throw ex;
+            }
+        }
+        return sources;
+    }
+    
+    /**
+     * @param sources Time sources to close
+     */
+    public static void close(List<TimeSource> sources) {
+        for (TimeSource source : sources) {
+            source.close();
+        }
+    }
+    
+    /**
+     * @return Name of the reference clock
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Wait until the TriggerClock is following the reference, or a monitor 
+     * has its first measurement
+     * @param timeoutMs Maximum wait
+     * @return True if locked
+     * @throws InterruptedException 
+     */
+    public boolean waitForLock(long timeoutMs) throws InterruptedException {
+        return locked.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Add a reference time sample. Called by the reading thread.
+     * @param sampleNanos System.nanoTime when the reference had this time
+     * @param sampleUtc Reference UTC in ms since the epoch
+     */
+    protected void sample(long sampleNanos, long sampleUtc) {
+        ClockModel model = fit.add(sampleNanos, sampleUtc);
+        if (model != null) {
+            disciplining = true;
+            TriggerClock.setModel(model);
+            locked.countDown();
+        }
+    }
+    
+    /**
+     * Release waitForLock without disciplining the TriggerClock. Used by a
+     * source that only monitors the TriggerClock.
+     */
+    protected void monitoring() {
+        locked.countDown();
+    }
+    
+    /**
+     * Stop reading the reference. If this source was disciplining the 
+     * TriggerClock, it returns to the computer's clock.
+     */
+    public void close() {
+        closeInput();
+        if (disciplining) {
+            TriggerClock.setModel(null);
+        }
+    }
+    
+    /**
+     * Stop the reading thread and release the input
+     */
+    protected abstract void closeInput();
+}
@@ -0,0 +1,89 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.clock;
+
+/**
+ * The clock used to schedule and log every button press and release. It is
+ * the computer's clock unless a TimeSource is disciplining it to a reference, 
+ * in which case it is the reference's UTC, interpolated with System.nanoTime.
+ * An NTP monitor can also publish its latest measurement of the offset.
+ * @author John Murphy
+ */
+public final class TriggerClock {
+    /** Null when the computer's clock is used. Only written by the TimeSource thread */
+    private static volatile ClockModel model;
+    /** Null unless an NTP server is monitored. Only written by the NTP thread */
+    private static volatile OffsetEstimate monitor;
+    
+    private TriggerClock() {
+    }
+    
+    /**
+     * @return The current time in ms since the epoch
+     */
+    public static long currentTimeMillis() {
+        ClockModel m = model;
+        return m == null ? System.currentTimeMillis() : m.toUtcMillis(System.nanoTime());
+    }
+    
+    /**
+     * @return The model in use, or null if the computer's clock is used
+     */
+    public static ClockModel getModel() {
+        return model;
+    }
+    
+    /**
+     * @return Reference UTC minus the computer's clock in ms, or 0 if the computer's clock is used
+     */
+    public static double getOffset() {
+        ClockModel m = model;
+        return m == null ? 0 : m.getOffset();
+    }
+    
+    /**
+     * @return A description of the clock for the log file
+     */
+    public static String describe() {
+        ClockModel m = model;
+        return m == null ? "computer clock" : m.toString();
+    }
+    
+    /**
+     * @param clockModel The new model, or null to use the computer's clock
+     */
+    static void setModel(ClockModel clockModel) {
+        model = clockModel;
+    }
+    
+    /**
+     * @return The NTP server's latest offset from this clock, or null if no
+     * server is monitored or it has not replied yet
+     */
+    public static OffsetEstimate getMonitor() {
+        return monitor;
+    }
+    
+    /**
+     * @param estimate The latest offset, or null when monitoring stops
+     */
+    static void setMonitor(OffsetEstimate estimate) {
+        monitor = estimate;
+    }
+}
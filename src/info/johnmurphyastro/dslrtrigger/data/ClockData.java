@@ -0,0 +1,218 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import java.io.File;
+
+/**
+ * Reference clock settings. The trigger clock is disciplined to GPS time from
+ * a serial GPS receiver, or from a recorded NMEA file for testing. An NTP 
+ * server can also be polled to monitor the trigger clock's offset from UTC
+ * or, without a GPS, to discipline it.
+ * Immutable class.
+ * @author John Murphy
+ */
+public class ClockData {
+    /** u-blox receivers send NMEA at 9600 baud by default */
+    public final static int DEFAULT_GPS_BAUD = 9600;
+    /** NTP servers rate limit clients that poll more often than every 16 seconds */
+    public final static int DEFAULT_NTP_POLL_S = 16;
+    public final static int DEFAULT_NTP_PORT = 123;
+    
+    private final String gpsPort;
+    private final int gpsBaud;
+    private final boolean ppsOnDcd;
+    private final File gpsReplay;
+    private final String ntpHost;
+    private final int ntpPort;
+    private final int ntpPoll;
+    private final boolean ntpApply;
+    
+    /**
+     * @param gpsPort GPS serial COM port name, or null if replaying a file
+     * @param gpsBaud GPS serial port speed
+     * @param ppsOnDcd True if the GPS pulse per second is wired to the port's 
+     * Data Carrier Detect (DCD) line
+     * @param gpsReplay Recorded NMEA file to replay instead of a GPS, or null
+     * @throws InvalidDataException 
+     */
+    public ClockData(String gpsPort, int gpsBaud, boolean ppsOnDcd, File gpsReplay) throws InvalidDataException {
+        this(gpsPort, gpsBaud, ppsOnDcd, gpsReplay, null, DEFAULT_NTP_POLL_S, false);
+    }
+    
+    /**
+     * @param gpsPort GPS serial COM port name, or null if replaying a file or not using a GPS
+     * @param gpsBaud GPS serial port speed
+     * @param ppsOnDcd True if the GPS pulse per second is wired to the port's 
+     * Data Carrier Detect (DCD) line
+     * @param gpsReplay Recorded NMEA file to replay instead of a GPS, or null
+     * @param ntpServer NTP server 'host' or 'host:port', or null
+     * @param ntpPoll Seconds between NTP server queries
+     * @param ntpApply True to discipline the trigger clock to the NTP server.
+     * Otherwise the server is only used to measure the offset.
+     * @throws InvalidDataException 
+     */
+    public ClockData(String gpsPort, int gpsBaud, boolean ppsOnDcd, File gpsReplay,
+            String ntpServer, int ntpPoll, boolean ntpApply) throws InvalidDataException {
+        if (gpsPort != null && gpsPort.trim().isEmpty()) {
+            gpsPort = null;
+        }
+        if (ntpServer != null && ntpServer.trim().isEmpty()) {
+            ntpServer = null;
+        }
+        if (gpsPort == null && gpsReplay == null && ntpServer == null) {
+            throw new InvalidDataException("GPS port, GPS replay file or NTP server is not set");
+        }
+        if (gpsPort != null && gpsReplay != null) {
+            throw new InvalidDataException("Set either a GPS port or a GPS replay file, not both");
+        }
+        if (gpsBaud < 300) {
+            throw new InvalidDataException("Minimum GPS baud rate is 300");
+        }
+        if (ppsOnDcd && gpsReplay != null) {
+            throw new InvalidDataException("A GPS replay file has no pulse per second");
+        }
+        if (ntpServer != null) {
+            ntpServer = ntpServer.trim();
+            int colon = ntpServer.lastIndexOf(':');
+            if (colon > 0 && ntpServer.indexOf(':') == colon) {
+                ntpHost = ntpServer.substring(0, colon);
+                try {
+                    ntpPort = Integer.parseInt(ntpServer.substring(colon + 1));
+                } catch (NumberFormatException ex) {
+                    throw new InvalidDataException("NTP server port '" + ntpServer.substring(colon + 1) 
+                            + "' is not a number");
+                }
+                if (ntpPort < 1 || ntpPort > 65535) {
+                    throw new InvalidDataException("NTP server port must be between 1 and 65535");
+                }
+            } else {
+                ntpHost = ntpServer;
+                ntpPort = DEFAULT_NTP_PORT;
+            }
+            if (ntpPoll < 1 || ntpPoll > 1024) {
+                throw new InvalidDataException("NTP poll interval must be between 1 and 1024 seconds");
+            }
+            if (ntpApply && (gpsPort != null || gpsReplay != null)) {
+                throw new InvalidDataException("The NTP offset cannot be applied when a GPS disciplines the clock");
+            }
+        } else {
+            if (ntpApply) {
+                throw new InvalidDataException("NTP server is not set");
+            }
+            ntpHost = null;
+            ntpPort = DEFAULT_NTP_PORT;
+        }
+        this.gpsPort = gpsPort != null ? gpsPort.trim() : null;
+        this.gpsBaud = gpsBaud;
+        this.ppsOnDcd = ppsOnDcd;
+        this.gpsReplay = gpsReplay;
+        this.ntpPoll = ntpPoll;
+        this.ntpApply = ntpApply;
+    }
+    
+    /**
+     * @return True if a GPS receiver or GPS replay file is set
+     */
+    public boolean hasGps() {
+        return gpsPort != null || gpsReplay != null;
+    }
+    
+    /**
+     * @return GPS serial COM port name, or null if replaying a file
+     */
+    public String getGpsPort() {
+        return gpsPort;
+    }
+    
+    /**
+     * @return GPS serial port speed
+     */
+    public int getGpsBaud() {
+        return gpsBaud;
+    }
+    
+    /**
+     * @return True if the GPS pulse per second is on the port's DCD line
+     */
+    public boolean isPpsOnDcd() {
+        return ppsOnDcd;
+    }
+    
+    /**
+     * @return Recorded NMEA file to replay, or null
+     */
+    public File getGpsReplay() {
+        return gpsReplay;
+    }
+    
+    /**
+     * @return NTP server host name or address, or null if NTP is not used
+     */
+    public String getNtpHost() {
+        return ntpHost;
+    }
+    
+    /**
+     * @return NTP server UDP port
+     */
+    public int getNtpPort() {
+        return ntpPort;
+    }
+    
+    /**
+     * @return NTP server as written in the plan file: 'host', or 'host:port' if not the default port
+     */
+    public String getNtpServer() {
+        if (ntpHost == null) {
+            return null;
+        }
+        return ntpPort == DEFAULT_NTP_PORT ? ntpHost : ntpHost + ":" + ntpPort;
+    }
+    
+    /**
+     * @return Seconds between NTP server queries
+     */
+    public int getNtpPoll() {
+        return ntpPoll;
+    }
+    
+    /**
+     * @return True if the trigger clock is disciplined to the NTP server
+     */
+    public boolean isNtpApplied() {
+        return ntpApply;
+    }
+
+    @Override
+    public String toString() {
+        String gps = null;
+        if (gpsReplay != null) {
+            gps = "GPS replay " + gpsReplay.getName();
+        } else if (gpsPort != null) {
+            gps = "GPS " + gpsPort + (ppsOnDcd ? " with PPS on DCD" : " (NMEA only)");
+        }
+        if (ntpHost == null) {
+            return gps;
+        }
+        String ntp = "NTP " + getNtpServer() + (ntpApply ? "" : " (monitor only)");
+        return gps == null ? ntp : gps + ", " + ntp;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+
+/**
+ * Describes how the exposure changes during a segment, for example for 
+ * day to night time-lapse. A LINEAR or LOGARITHMIC ramp goes from the 
+ * start exposure at the first shot to the end exposure at the last shot. 
+ * A TABLE ramp is keyed by the nominal time since the segment started;
+ * exposures are linearly interpolated between table points, and held at the
+ * first and last values outside the table. Immutable class.
+ * @author John Murphy
+ */
+public class ExposureRamp {
+    private final RampCurve curve;
+    /** Start and end exposures in milliseconds */
+    private final int startExposure;
+    private final int endExposure;
+    /** TABLE only. Times since segment start in milliseconds, in ascending order */
+    private final long[] tableTimes;
+    /** TABLE only. Exposures in milliseconds */
+    private final int[] tableExposures;
+
+    /**
+     * @param curve LINEAR or LOGARITHMIC
+     * @param startExposureSec Exposure of the first shot in seconds
+     * @param endExposureSec Exposure of the last shot in seconds
+     * @throws InvalidDataException 
+     */
+    public ExposureRamp(RampCurve curve, float startExposureSec, float endExposureSec) throws InvalidDataException {
+        if (curve == RampCurve.TABLE) {
+            throw new InvalidDataException("A TABLE exposure ramp needs a table of times and exposures");
+        }
+        this.curve = curve;
+        this.startExposure = (int) (1000 * startExposureSec + 0.5F);
+        this.endExposure = (int) (1000 * endExposureSec + 0.5F);
+        if (startExposure < MinTime.EXPOSURE_MS || endExposure < MinTime.EXPOSURE_MS) {
+            throw new InvalidDataException("Minimum ramp exposure is " + MinTime.EXPOSURE_MS / 1000.0 + " s");
+        }
+        this.tableTimes = null;
+        this.tableExposures = null;
+    }
+
+    /**
+     * @param timesSec Nominal time since the segment start in seconds, in ascending order
+     * @param exposuresSec Exposure at each time in seconds
+     * @throws InvalidDataException 
+     */
+    public ExposureRamp(float[] timesSec, float[] exposuresSec) throws InvalidDataException {
+        if (timesSec.length == 0 || timesSec.length != exposuresSec.length) {
+            throw new InvalidDataException("An exposure ramp table needs one exposure for each time");
+        }
+        this.curve = RampCurve.TABLE;
+        tableTimes = new long[timesSec.length];
+        tableExposures = new int[timesSec.length];
+        for (int i = 0; i < timesSec.length; i++) {
+            tableTimes[i] = (long) (1000 * (double) timesSec[i] + 0.5);
+            tableExposures[i] = (int) (1000 * exposuresSec[i] + 0.5F);
+            if (i > 0 && tableTimes[i] <= tableTimes[i - 1]) {
+                throw new InvalidDataException("Exposure ramp table times must be in ascending order");
+            }
+            if (tableExposures[i] < MinTime.EXPOSURE_MS) {
+                throw new InvalidDataException("Minimum ramp exposure is " + MinTime.EXPOSURE_MS / 1000.0 + " s");
+            }
+        }
+        this.startExposure = tableExposures[0];
+        this.endExposure = tableExposures[tableExposures.length - 1];
+    }
+
+    /**
+     * @param shot Shot index within the segment
+     * @param nShots Number of shots in the segment
+     * @param elapsed Nominal time since the segment started in milliseconds
+     * @return The shot's exposure in milliseconds
+     */
+    public int getExposure(int shot, int nShots, long elapsed) {
+        if (curve == RampCurve.TABLE) {
+            return interpolate(elapsed);
+        }
+        if (nShots < 2) {
+            return startExposure;
+        }
+        double fraction = (double) shot / (nShots - 1);
+        if (curve == RampCurve.LOGARITHMIC) {
+            return (int) Math.round(startExposure * Math.pow((double) endExposure / startExposure, fraction));
+        }
+        return (int) Math.round(startExposure + (endExposure - startExposure) * fraction);
+    }
+
+    private int interpolate(long elapsed) {
+        int last = tableTimes.length - 1;
+        if (elapsed <= tableTimes[0]) {
+            return tableExposures[0];
+        }
+        if (elapsed >= tableTimes[last]) {
+            return tableExposures[last];
+        }
+        int i = 1;
+        while (tableTimes[i] < elapsed) {
+            i++;
+        }
+        double fraction = (double) (elapsed - tableTimes[i - 1]) / (tableTimes[i] - tableTimes[i - 1]);
+        return (int) Math.round(tableExposures[i - 1] + (tableExposures[i] - tableExposures[i - 1]) * fraction);
+    }
+
+    /**
+     * @return The shape of the ramp
+     */
+    public RampCurve getCurve() {
+        return curve;
+    }
+
+    /**
+     * @return Exposure of the first shot (or first table entry) in milliseconds
+     */
+    public int getStartExposure() {
+        return startExposure;
+    }
+
+    /**
+     * @return Exposure of the last shot (or last table entry) in milliseconds
+     */
+    public int getEndExposure() {
+        return endExposure;
+    }
+
+    /**
+     * @return The longest exposure the ramp can produce in milliseconds
+     */
+    public int getMaximumExposure() {
+        int max = Math.max(startExposure, endExposure);
+        if (tableExposures != null) {
+            for (int exposure : tableExposures) {
+                max = Math.max(max, exposure);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return TABLE only: number of table entries, otherwise 0
+     */
+    public int getTableSize() {
+        return tableTimes == null ? 0 : tableTimes.length;
+    }
+
+    /**
+     * @param i Table index
+     * @return Nominal time since the segment start in milliseconds
+     */
+    public long getTableTime(int i) {
+        return tableTimes[i];
+    }
+
+    /**
+     * @param i Table index
+     * @return Exposure in milliseconds
+     */
+    public int getTableExposure(int i) {
+        return tableExposures[i];
+    }
+
+    @Override
+    public String toString() {
+        if (curve == RampCurve.TABLE) {
+            StringBuilder sb = new StringBuilder("table");
+            for (int i = 0; i < tableTimes.length; i++) {
+                sb.append(i == 0 ? " " : ", ").append(tableTimes[i]).append(':').append(tableExposures[i]);
+            }
+            return sb.toString();
+        }
+        return curve.name().toLowerCase() + " " + startExposure + " to " + endExposure;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+
+/**
+ * External trigger settings. Instead of waiting for the start after time, 
+ * each exposure is started by an event from other software or hardware, 
+ * for example meteor detection or occultation timing software.
+ * Immutable class.
+ * @author John Murphy
+ */
+public class ExternalTriggerData {
+    /** Default maximum time from receiving a 'fire now' event to the exposure start */
+    public final static int DEFAULT_DEADLINE_MS = 500;
+    
+    private final TriggerInput input;
+    private final String address;
+    private final int deadline;
+    
+    /**
+     * @param input Where the trigger events are read from
+     * @param address UDP port number, named pipe path or serial COM port name
+     * @param deadlineMs If an exposure cannot start within this number of 
+     * milliseconds of its requested time, the event is rejected
+     * @throws InvalidDataException 
+     */
+    public ExternalTriggerData(TriggerInput input, String address, int deadlineMs) throws InvalidDataException {
+        if (input == null) {
+            throw new InvalidDataException("External trigger input is not set");
+        }
+        if (address == null || address.trim().isEmpty()) {
+            throw new InvalidDataException("External trigger " + input.name().toLowerCase() + " address is not set");
+        }
+        if (input == TriggerInput.UDP) {
+            int port;
+            try {
+                port = Integer.parseInt(address.trim());
+            } catch (NumberFormatException ex) {
+                port = -1;
+            }
+            if (port < 1 || port > 65535) {
+                throw new InvalidDataException("External trigger UDP port must be 1 to 65535: " + address);
+            }
+        }
+        if (deadlineMs < 0) {
+            throw new InvalidDataException("External trigger deadline must not be negative");
+        }
+        this.input = input;
+        this.address = address.trim();
+        this.deadline = deadlineMs;
+    }
+    
+    /**
+     * @return Where the trigger events are read from
+     */
+    public TriggerInput getInput() {
+        return input;
+    }
+    
+    /**
+     * @return UDP port number, named pipe path or serial COM port name
+     */
+    public String getAddress() {
+        return address;
+    }
+    
+    /**
+     * @return UDP port number. Only valid for TriggerInput.UDP
+     */
+    public int getPort() {
+        return Integer.parseInt(address);
+    }
+    
+    /**
+     * @return Maximum time in milliseconds from the requested exposure start to the actual exposure start
+     */
+    public int getDeadline() {
+        return deadline;
+    }
+
+    @Override
+    public String toString() {
+        return input.name().toLowerCase() + " " + address + ", deadline " + deadline + " ms";
+    }
+}
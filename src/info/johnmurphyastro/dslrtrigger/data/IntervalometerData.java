@@ -38,6 +38,10 @@ public class IntervalometerData {
     private final int mirrorUpDuration;
     private final int nExposures;
     private final int repeatInterval;
+    private final StartAlignment startAlignment;
+    private final OverrunPolicy overrunPolicy;
+    /** Null if every shot uses the same exposure */
+    private final ExposureRamp exposureRamp;
     
     /**
      * @param isMirrorLockSet Set to true if the camera is in mirror lock mode
@@ -49,6 +53,9 @@ public class IntervalometerData {
      * @param mirrorUpDurationSec Mirror up duration in seconds
      * @param nExposures Number of shots to take
      * @param repeatIntervalSec Time from the start of one shot to the start of the next one.
+     * Millisecond resolution.
+     * @param startAlignment Exposure start times are rounded to this grid
+     * @param overrunPolicy What to do if a shot cannot start on time
      * @throws InvalidDataException 
      */
     public IntervalometerData(
@@ -60,7 +67,43 @@ public class IntervalometerData {
             final float exposureSec,
             final float mirrorUpDurationSec,
             final int nExposures,
-            final int repeatIntervalSec
+            final float repeatIntervalSec,
+            final StartAlignment startAlignment,
+            final OverrunPolicy overrunPolicy
+    ) throws InvalidDataException {
+        this(isMirrorLockSet, inBulbMode, shutterOpenDelayMs, shutterCloseDelayMs, startAfterTime, exposureSec,
+                mirrorUpDurationSec, nExposures, repeatIntervalSec, startAlignment, overrunPolicy, null);
+    }
+    
+    /**
+     * @param isMirrorLockSet Set to true if the camera is in mirror lock mode
+     * @param inBulbMode Set to true if the camera is in bulb mode
+     * @param shutterOpenDelayMs Shutter open lag in milliseconds
+     * @param shutterCloseDelayMs Shutter close lag in milliseconds
+     * @param startAfterTime Try to take the first shot at this time. Ignored if in past.
+     * @param exposureSec Length of exposure in seconds. Ignored if exposureRamp is set.
+     * @param mirrorUpDurationSec Mirror up duration in seconds
+     * @param nExposures Number of shots to take
+     * @param repeatIntervalSec Time from the start of one shot to the start of the next one.
+     * Millisecond resolution.
+     * @param startAlignment Exposure start times are rounded to this grid
+     * @param overrunPolicy What to do if a shot cannot start on time
+     * @param exposureRamp Exposure of each shot, or null if every shot uses exposureSec
+     * @throws InvalidDataException 
+     */
+    public IntervalometerData(
+            final boolean isMirrorLockSet,
+            final boolean inBulbMode,
+            final int shutterOpenDelayMs,
+            final int shutterCloseDelayMs,
+            final long startAfterTime,
+            final float exposureSec,
+            final float mirrorUpDurationSec,
+            final int nExposures,
+            final float repeatIntervalSec,
+            final StartAlignment startAlignment,
+            final OverrunPolicy overrunPolicy,
+            final ExposureRamp exposureRamp
     ) throws InvalidDataException {
         this.isMirrorLockSet = isMirrorLockSet;
         this.inBulbMode = inBulbMode;
@@ -73,9 +116,16 @@ public class IntervalometerData {
         }
         
         this.startAfterTime = startAfterTime;
-        this.exposure = (int) (1000 * exposureSec + 0.5);
+        this.exposureRamp = exposureRamp;
+        if (exposureRamp != null) {
+            this.exposure = exposureRamp.getExposure(0, nExposures, 0);
+        } else {
+            this.exposure = (int) (1000 * exposureSec + 0.5);
+        }
         this.nExposures = nExposures;
-        this.repeatInterval = 1000 * repeatIntervalSec;
+        this.repeatInterval = (int) (1000 * repeatIntervalSec + 0.5F);
+        this.startAlignment = startAlignment;
+        this.overrunPolicy = overrunPolicy;
         if (isMirrorLockSet){
             this.mirrorUpDuration = (int)(1000 * mirrorUpDurationSec + 0.5F);
         } else {
@@ -132,6 +182,43 @@ public class IntervalometerData {
         return repeatInterval;
     }
 
+    /**
+     * @return The grid that exposure start times are rounded to
+     */
+    public StartAlignment getStartAlignment() {
+        return startAlignment;
+    }
+    
+    /**
+     * @return What to do if a shot cannot start on time
+     */
+    public OverrunPolicy getOverrunPolicy() {
+        return overrunPolicy;
+    }
+    
+    /**
+     * The shortest fire interval that leaves time for the mirror to lock up,
+     * the exposure, the minimum gap between shots and the trigger latency.
+     * The next shot's button is pressed 'shutter open delay' before its exposure
+     * starts, but this shot's button is released only 'shutter close delay'
+     * before its exposure ends, so the difference is also needed.
+     * @param triggerLatencyMs Measured wake up and switch write latency, or 0 if unknown
+     * @return Minimum fire interval in milliseconds
+     */
+    public int getMinimumRepeatInterval(long triggerLatencyMs) {
+        return getMinimumRepeatInterval(getMaximumExposure(), triggerLatencyMs);
+    }
+
+    /**
+     * @param exposureMs Exposure of the shot in milliseconds
+     * @param triggerLatencyMs Measured wake up and switch write latency, or 0 if unknown
+     * @return Minimum fire interval for a shot with this exposure in milliseconds
+     */
+    public int getMinimumRepeatInterval(int exposureMs, long triggerLatencyMs) {
+        return (int) (mirrorUpDuration + exposureMs + shutterOpenDelay - shutterCloseDelay
+                + MinTime.BEFORE_SHOT_MS + triggerLatencyMs);
+    }
+
     /**
      * @return Time the mirror is locked up before the shot in milliseconds
      */    
@@ -140,9 +227,35 @@ public class IntervalometerData {
     }
     
     /**
-     * @return The exposure time in milliseconds
+     * @return The exposure time in milliseconds. If the exposure is ramped, 
+     * the first shot's exposure
      */
     public int getExposure(){
         return exposure;
     }
+    
+    /**
+     * @param shot Shot index within this segment
+     * @return The shot's exposure time in milliseconds
+     */
+    public int getExposure(int shot){
+        if (exposureRamp == null) {
+            return exposure;
+        }
+        return exposureRamp.getExposure(shot, nExposures, (long) shot * repeatInterval);
+    }
+    
+    /**
+     * @return The longest exposure of any shot in milliseconds
+     */
+    public int getMaximumExposure(){
+        return exposureRamp == null ? exposure : exposureRamp.getMaximumExposure();
+    }
+    
+    /**
+     * @return The exposure ramp, or null if every shot uses the same exposure
+     */
+    public ExposureRamp getExposureRamp(){
+        return exposureRamp;
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import java.util.Locale;
+
+/**
+ * Running mean and variance of a shutter lag, updated one calibration at a 
+ * time with Welford's method so that the individual results need not be 
+ * kept. Immutable class.
+ * @author John Murphy
+ */
+public class LagStatistics {
+    /** No calibrations */
+    public static final LagStatistics EMPTY = new LagStatistics();
+    
+    private final int count;
+    private final double mean;
+    /** Sum of squared differences from the mean */
+    private final double sumSquares;
+    
+    private LagStatistics() {
+        count = 0;
+        mean = 0;
+        sumSquares = 0;
+    }
+    
+    /**
+     * @param count Number of calibrations
+     * @param mean Mean lag in ms
+     * @param sumSquares Sum of squared differences from the mean, in ms squared
+     * @throws InvalidDataException 
+     */
+    public LagStatistics(int count, double mean, double sumSquares) throws InvalidDataException {
+        if (count < 0 || sumSquares < 0 || Double.isNaN(mean) || Double.isNaN(sumSquares)) {
+            throw new InvalidDataException("Invalid shutter lag statistics");
+        }
+        this.count = count;
+        this.mean = count > 0 ? mean : 0;
+        this.sumSquares = count > 1 ? sumSquares : 0;
+    }
+    
+    /**
+     * @param lag A new calibration result in ms
+     * @return The statistics including this result
+     */
+    public LagStatistics add(double lag) {
+        int n = count + 1;
+        double delta = lag - mean;
+        double newMean = mean + delta / n;
+        double newSumSquares = sumSquares + delta * (lag - newMean);
+        try {
+            return new LagStatistics(n, newMean, newSumSquares);
+        } catch (InvalidDataException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+    
+    /**
+     * @return Number of calibrations
+     */
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * @return Mean lag in ms
+     */
+    public double getMean() {
+        return mean;
+    }
+    
+    /**
+     * @return Mean lag rounded to whole ms
+     */
+    public int getRoundedMean() {
+        return (int) Math.round(mean);
+    }
+    
+    /**
+     * @return Sum of squared differences from the mean, in ms squared
+     */
+    public double getSumSquares() {
+        return sumSquares;
+    }
+    
+    /**
+     * @return Sample variance in ms squared, or 0 if there are fewer than 2 calibrations
+     */
+    public double getVariance() {
+        return count > 1 ? sumSquares / (count - 1) : 0;
+    }
+    
+    /**
+     * @return Sample standard deviation in ms
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+    
+    /**
+     * @return Standard error of the mean in ms; the uncertainty of the lag used
+     */
+    public double getStandardError() {
+        return count > 1 ? getStandardDeviation() / Math.sqrt(count) : 0;
+    }
+
+    @Override
+    public String toString() {
+        if (count == 0) {
+            return "not calibrated";
+        }
+        if (count == 1) {
+            return String.format(Locale.ROOT, "%.1f ms (1 calibration)", mean);
+        }
+        return String.format(Locale.ROOT, "%.1f +/- %.1f ms (s.d. %.1f ms, %d calibrations)", 
+                mean, getStandardError(), getStandardDeviation(), count);
+    }
+}
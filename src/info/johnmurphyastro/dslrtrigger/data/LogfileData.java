@@ -62,6 +62,13 @@ public class LogfileData {
         return new File(logFolder, logFilenamePrefix + "_" + logFilename + ".txt");
     }
     
+    /**
+     * @return Folder the log file is created in
+     */
+    public File getLogFolder() {
+        return logFolder;
+    }
+    
     /**
      * @return filename prefix eg ISS or RD
      */
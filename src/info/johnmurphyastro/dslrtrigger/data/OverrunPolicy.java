@@ -0,0 +1,33 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+/**
+ * What to do when a shot cannot start on time because the previous one
+ * finished late
+ * @author John Murphy
+ */
+public enum OverrunPolicy {
+    /** Keep the original time grid. Missed grid slots are skipped */
+    SKIP,
+    /** Keep the original time grid. Take the late shot as soon as possible, then catch up with the grid */
+    CATCH_UP,
+    /** Start the late shot as soon as possible. All later shots shift by the same amount */
+    SLIP
+}
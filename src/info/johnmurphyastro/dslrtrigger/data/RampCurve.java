@@ -0,0 +1,32 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+/**
+ * How the exposure changes from shot to shot during an exposure ramp
+ * @author John Murphy
+ */
+public enum RampCurve {
+    /** Exposure changes by the same number of milliseconds each shot */
+    LINEAR,
+    /** Exposure changes by the same ratio each shot (equal steps in stops) */
+    LOGARITHMIC,
+    /** Exposure is interpolated from a table of (time since segment start, exposure) points */
+    TABLE
+}
@@ -0,0 +1,120 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered list of sequence segments that are taken in one session.
+ * Each segment has its own exposure, fire interval, number of shots, mirror lock
+ * and start after time. A segment whose start after time is in the past starts
+ * straight after the previous segment. Bulb mode and the shutter delays are
+ * camera settings, so they must be the same for every segment.
+ * @author John Murphy
+ */
+public class SequencePlan {
+    private final List<IntervalometerData> segments;
+    private final int nShots;
+    private final boolean mirrorLockUsed;
+    private final boolean exposureRamped;
+    
+    /**
+     * @param segments The segments in the order they will be taken
+     * @throws InvalidDataException 
+     */
+    public SequencePlan(List<IntervalometerData> segments) throws InvalidDataException {
+        if (segments.isEmpty()) {
+            throw new InvalidDataException("The sequence plan has no segments");
+        }
+        IntervalometerData first = segments.get(0);
+        int total = 0;
+        boolean mirrorLock = false;
+        boolean ramped = false;
+        for (int i = 0; i < segments.size(); i++) {
+            IntervalometerData segment = segments.get(i);
+            if (segment.inBulbMode() != first.inBulbMode()) {
+                throw new InvalidDataException("Segment " + (i + 1) + ": 'Bulb mode' must be the same for every segment");
+            }
+            if (segment.getShutterOpenDelay() != first.getShutterOpenDelay()
+                    || segment.getShutterCloseDelay() != first.getShutterCloseDelay()) {
+                throw new InvalidDataException("Segment " + (i + 1) + ": shutter delays must be the same for every segment");
+            }
+            total += segment.getNumberOfShots();
+            mirrorLock |= segment.isMirrorLockSet();
+            ramped |= segment.getExposureRamp() != null;
+        }
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+        this.nShots = total;
+        this.mirrorLockUsed = mirrorLock;
+        this.exposureRamped = ramped;
+    }
+    
+    /**
+     * @param segment The only segment
+     * @throws InvalidDataException 
+     */
+    public SequencePlan(IntervalometerData segment) throws InvalidDataException {
+        this(Collections.singletonList(segment));
+    }
+    
+    /**
+     * @return The segments in the order they will be taken
+     */
+    public List<IntervalometerData> getSegments() {
+        return segments;
+    }
+    
+    /**
+     * @return The first segment
+     */
+    public IntervalometerData getFirstSegment() {
+        return segments.get(0);
+    }
+    
+    /**
+     * @return Total number of shots in all segments
+     */
+    public int getNumberOfShots() {
+        return nShots;
+    }
+    
+    /**
+     * @return True if any segment uses mirror lock
+     */
+    public boolean isMirrorLockUsed() {
+        return mirrorLockUsed;
+    }
+    
+    /**
+     * @return True if any segment uses an exposure ramp
+     */
+    public boolean isExposureRamped() {
+        return exposureRamped;
+    }
+    
+    /**
+     * @return True if in bulb mode
+     */
+    public boolean inBulbMode() {
+        return getFirstSegment().inBulbMode();
+    }
+}
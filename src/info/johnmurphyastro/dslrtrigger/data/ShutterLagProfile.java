@@ -0,0 +1,141 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+/**
+ * Shutter open and close lag calibrations for one camera body in one mode.
+ * The lag depends on whether the mirror is already locked up and, for the
+ * close lag, on bulb mode, so each combination has its own profile.
+ * Immutable class.
+ * @author John Murphy
+ */
+public class ShutterLagProfile {
+    private final String camera;
+    private final boolean mirrorLock;
+    private final boolean bulbMode;
+    private final LagStatistics openLag;
+    private final LagStatistics closeLag;
+    
+    /**
+     * @param camera Camera model, as entered in the observer details
+     * @param mirrorLock True if the calibrations were taken in mirror lock mode
+     * @param bulbMode True if the calibrations were taken in bulb mode
+     * @param openLag Shutter open lag calibrations
+     * @param closeLag Shutter close lag calibrations
+     */
+    public ShutterLagProfile(String camera, boolean mirrorLock, boolean bulbMode,
+            LagStatistics openLag, LagStatistics closeLag) {
+        this.camera = camera == null ? "" : camera.trim();
+        this.mirrorLock = mirrorLock;
+        this.bulbMode = bulbMode;
+        this.openLag = openLag;
+        this.closeLag = closeLag;
+    }
+    
+    /**
+     * @param camera Camera model
+     * @param mirrorLock True for mirror lock mode
+     * @param bulbMode True for bulb mode
+     * @return A profile with no calibrations
+     */
+    public static ShutterLagProfile empty(String camera, boolean mirrorLock, boolean bulbMode) {
+        return new ShutterLagProfile(camera, mirrorLock, bulbMode, LagStatistics.EMPTY, LagStatistics.EMPTY);
+    }
+    
+    /**
+     * @param lag Shutter open lag calibration result in ms
+     * @return This profile including the result
+     */
+    public ShutterLagProfile addOpenLag(double lag) {
+        return new ShutterLagProfile(camera, mirrorLock, bulbMode, openLag.add(lag), closeLag);
+    }
+    
+    /**
+     * @param lag Shutter close lag calibration result in ms
+     * @return This profile including the result
+     */
+    public ShutterLagProfile addCloseLag(double lag) {
+        return new ShutterLagProfile(camera, mirrorLock, bulbMode, openLag, closeLag.add(lag));
+    }
+    
+    /**
+     * @return Camera model
+     */
+    public String getCamera() {
+        return camera;
+    }
+    
+    /**
+     * @return True for mirror lock mode
+     */
+    public boolean isMirrorLockSet() {
+        return mirrorLock;
+    }
+    
+    /**
+     * @return True for bulb mode
+     */
+    public boolean inBulbMode() {
+        return bulbMode;
+    }
+    
+    /**
+     * @return Shutter open lag calibrations
+     */
+    public LagStatistics getOpenLag() {
+        return openLag;
+    }
+    
+    /**
+     * @return Shutter close lag calibrations
+     */
+    public LagStatistics getCloseLag() {
+        return closeLag;
+    }
+    
+    /**
+     * @param defaultDelay Used if the open lag has not been calibrated
+     * @return Shutter open delay to use in ms
+     */
+    public int getShutterOpenDelay(int defaultDelay) {
+        return openLag.getCount() > 0 ? openLag.getRoundedMean() : defaultDelay;
+    }
+    
+    /**
+     * @param defaultDelay Used if the close lag has not been calibrated
+     * @return Shutter close delay to use in ms
+     */
+    public int getShutterCloseDelay(int defaultDelay) {
+        return closeLag.getCount() > 0 ? closeLag.getRoundedMean() : defaultDelay;
+    }
+    
+    /**
+     * @return Camera and mode, for example 'Canon 5D Mk2, mirror lock, bulb'
+     */
+    public String getName() {
+        return (camera.isEmpty() ? "Unnamed camera" : camera) 
+                + (mirrorLock ? ", mirror lock" : ", no mirror lock") 
+                + (bulbMode ? ", bulb" : ", manual");
+    }
+
+    @Override
+    public String toString() {
+        return getName() + ": open " + openLag + ", close " + closeLag;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+/**
+ * The grid that exposure start times are aligned to
+ * @author John Murphy
+ */
+public enum StartAlignment {
+    /** Start times are not rounded */
+    NONE(1),
+    /** Start times are rounded to the nearest 100 ms */
+    TENTH_SECOND(100),
+    /** Start times are rounded to the nearest second */
+    SECOND(1000);
+    
+    private final int millis;
+    
+    private StartAlignment(int millis) {
+        this.millis = millis;
+    }
+    
+    /**
+     * @return Grid spacing in milliseconds
+     */
+    public int getMillis() {
+        return millis;
+    }
+    
+    /**
+     * @param timeMs Time in milliseconds
+     * @return True if the time is a whole number of grid spacings
+     */
+    public boolean isAligned(long timeMs) {
+        return timeMs % millis == 0;
+    }
+    
+    /**
+     * @param repeatIntervalMs Fire interval in milliseconds
+     * @return The coarsest grid that keeps every shot of the sequence aligned
+     */
+    public static StartAlignment coarsestFor(int repeatIntervalMs) {
+        if (SECOND.isAligned(repeatIntervalMs)) {
+            return SECOND;
+        }
+        if (TENTH_SECOND.isAligned(repeatIntervalMs)) {
+            return TENTH_SECOND;
+        }
+        return NONE;
+    }
+}
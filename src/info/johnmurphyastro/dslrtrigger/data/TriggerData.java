@@ -0,0 +1,93 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+
+/**
+ * Shutter trigger settings that apply to every sequence
+ * @author John Murphy
+ */
+public class TriggerData {
+    /** Default time a button release may be late before the watchdog releases it */
+    public final static int DEFAULT_WATCHDOG_MARGIN_MS = 500;
+    
+    private final int watchdogMargin;
+    private final ExternalTriggerData externalTrigger;
+    private final ClockData clock;
+    
+    /**
+     * @param watchdogMarginMs If the shutter button release is this many
+     * milliseconds late, the watchdog releases the button itself
+     * @throws InvalidDataException 
+     */
+    public TriggerData(int watchdogMarginMs) throws InvalidDataException {
+        this(watchdogMarginMs, null);
+    }
+    
+    /**
+     * @param watchdogMarginMs If the shutter button release is this many
+     * milliseconds late, the watchdog releases the button itself
+     * @param externalTrigger If not null, each exposure is started by an external event
+     * @throws InvalidDataException 
+     */
+    public TriggerData(int watchdogMarginMs, ExternalTriggerData externalTrigger) throws InvalidDataException {
+        this(watchdogMarginMs, externalTrigger, null);
+    }
+    
+    /**
+     * @param watchdogMarginMs If the shutter button release is this many
+     * milliseconds late, the watchdog releases the button itself
+     * @param externalTrigger If not null, each exposure is started by an external event
+     * @param clock If not null, the trigger clock is disciplined to this reference
+     * @throws InvalidDataException 
+     */
+    public TriggerData(int watchdogMarginMs, ExternalTriggerData externalTrigger, ClockData clock) 
+            throws InvalidDataException {
+        if (watchdogMarginMs < MinTime.EXPOSURE_MS) {
+            throw new InvalidDataException(
+                    "Minimum 'Watchdog margin' is " + MinTime.EXPOSURE_MS + " ms");
+        }
+        this.watchdogMargin = watchdogMarginMs;
+        this.externalTrigger = externalTrigger;
+        this.clock = clock;
+    }
+    
+    /**
+     * @return Time in milliseconds a button release may be late before the
+     * watchdog releases the button
+     */
+    public int getWatchdogMargin() {
+        return watchdogMargin;
+    }
+    
+    /**
+     * @return External trigger settings, or null if exposures are started by the time plan
+     */
+    public ExternalTriggerData getExternalTrigger() {
+        return externalTrigger;
+    }
+    
+    /**
+     * @return Reference clock settings, or null to use the computer's clock
+     */
+    public ClockData getClock() {
+        return clock;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.data;
+
+/**
+ * Where external trigger events are read from
+ * @author John Murphy
+ */
+public enum TriggerInput {
+    /** Text datagrams sent to a UDP port on this computer */
+    UDP,
+    /** Text lines written to a named pipe (or any file that blocks until written to) */
+    PIPE,
+    /** Clear To Send (CTS) edge on a serial port */
+    SERIAL
+}
@@ -0,0 +1,274 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.eventlog;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import info.johnmurphyastro.dslrtrigger.logfile.LogFormatter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts a binary event log into the text log file format, a CSV file 
+ * with one row per event, or JSON. The text log is regenerated from the
+ * saved header, settings and button times, so it contains everything but 
+ * the row comments.
+ * @author John Murphy
+ */
+public class EventLogExport {
+    private final EventLogReader reader;
+    private final EventLogFormat format;
+    private final EventRecord[] events;
+    private int nRows;
+    private int nCancelled;
+    private int nOverruns;
+    private long maxLate;
+
+    /**
+     * The button times of one shot, collected until its log row event
+     */
+    private static class Row {
+        long mlPress;
+        long mlRelease;
+        long sbPress;
+        long sbRelease;
+        long scheduledPress;
+        long scheduledRelease;
+        boolean cancelled;
+    }
+    
+    private EventLogExport(EventLogReader reader) throws InvalidDataException {
+        this.reader = reader;
+        format = reader.getFormat();
+        events = new EventRecord[reader.getNumberOfEvents()];
+        for (int i = 0; i < events.length; i++) {
+            EventRecord event = events[i] = reader.getEvent(i);
+            switch (event.getEvent()) {
+                case LOG_ROW:
+                    nRows++;
+                    break;
+                case CANCEL:
+                    nCancelled++;
+                    break;
+                case OVERRUN:
+                    nOverruns++;
+                    break;
+                case MIRROR_LOCK_PRESS:
+                case SHUTTER_PRESS:
+                    maxLate = Math.max(maxLate, event.getActualTime() - event.getScheduledTime());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * @param eventsFile Event log written during a sequence
+     * @return The events, ready to export
+     * @throws IOException
+     * @throws InvalidDataException If the file is not an event log
+     */
+    public static EventLogExport read(File eventsFile) throws IOException, InvalidDataException {
+        return new EventLogExport(EventLogReader.open(eventsFile));
+    }
+    
+    /**
+     * @return Number of events, rows, cancellations, overruns and the worst button lateness
+     */
+    public String getSummary() {
+        return String.format("%s: %d events, %d log rows, %d cancelled, %d overruns, button presses up to %d ms late",
+                reader.getFile().getName(), events.length, nRows, nCancelled, nOverruns, maxLate);
+    }
+    
+    /**
+     * Write the text log, CSV and JSON files
+     * @param reportFile Text log file
+     * @param csvFile CSV file
+     * @param jsonFile JSON file
+     * @throws IOException 
+     */
+    public void export(File reportFile, File csvFile, File jsonFile) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(reportFile), StandardCharsets.UTF_8))) {
+            writeReport(writer);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
+            writeCsv(writer);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(jsonFile), StandardCharsets.UTF_8))) {
+            writeJson(writer);
+        }
+    }
+    
+    /**
+     * Write the text log file. The header is the one saved when the sequence
+     * started, and the key, column headers and rows are written by the same 
+     * LogFormatter as the live log, so the log file readers and analysis tools
+     * accept it. Rows only have a Cancelled or Overrun comment. The Commanded
+     * column is the scheduled exposure.
+     * @param writer Destination. Not closed by this method.
+     * @throws IOException 
+     */
+    public void writeReport(BufferedWriter writer) throws IOException {
+        final int openDelay = format.getShutterOpenDelay();
+        final int closeDelay = format.getShutterCloseDelay();
+        LogFormatter formatter = new LogFormatter(format.getFilenamePrefix(), format.hasMillisecondFilenames(),
+                format.isTabSeparated(), format.logAllEvents(), format.getMirrorUpDuration() > 0, 
+                format.inBulbMode(), format.isExposureRamped(), format.hasNtpOffsetColumn());
+        writer.write(reader.getHeaderText());
+        formatter.writeKey(writer);
+        formatter.writeColumnHeaders(writer);
+        
+        Map<Integer, Row> pending = new HashMap<>();
+        Set<Integer> overruns = new HashSet<>();
+        int n = 0;
+        for (EventRecord event : events) {
+            Integer shot = event.getShot();
+            Row row = pending.get(shot);
+            if (row == null) {
+                row = new Row();
+                pending.put(shot, row);
+            }
+            switch (event.getEvent()) {
+                case MIRROR_LOCK_PRESS:
+                    row.mlPress = event.getActualTime();
+                    break;
+                case MIRROR_LOCK_RELEASE:
+                    row.mlRelease = event.getActualTime();
+                    break;
+                case SHUTTER_PRESS:
+                    row.sbPress = event.getActualTime();
+                    row.scheduledPress = event.getScheduledTime();
+                    break;
+                case SHUTTER_RELEASE:
+                    row.sbRelease = event.getActualTime();
+                    row.scheduledRelease = event.getScheduledTime();
+                    break;
+                case CANCEL:
+                    row.cancelled = true;
+                    break;
+                case OVERRUN:
+                    overruns.add(shot);
+                    break;
+                case LOG_ROW:
+                    pending.remove(shot);
+                    Date start = row.sbPress == 0 ? null : new Date(row.sbPress + openDelay);
+                    Date end = row.sbRelease == 0 || !format.inBulbMode() ? null : new Date(row.sbRelease + closeDelay);
+                    int commanded = (int) (row.scheduledRelease - row.scheduledPress + closeDelay - openDelay);
+                    String comment = "";
+                    if (row.cancelled) {
+                        comment = "Cancelled";
+                    } else if (overruns.remove(shot)) {
+                        comment = "Overrun";
+                    }
+                    formatter.writeRow(writer, ++n, start, end, commanded, row.mlPress, row.mlRelease, 
+                            row.sbPress, row.sbRelease, event.getNtpOffset(), comment);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Write one row per event. Run counts the times the sequence was started
+     * or resumed, Nanos is the monotonic time since the first event of the 
+     * same run and Step is the time since the previous event of the same shot.
+     * @param writer Destination. Not closed by this method.
+     * @throws IOException 
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        long[] origins = getRunOrigins();
+        StringBuilder sb = new StringBuilder(128);
+        writer.write("Run,Nanos,Time (UTC),Scheduled (UTC),Late (ms),Step (us),Shot,Event\n");
+        for (EventRecord event : events) {
+            sb.setLength(0);
+            sb.append(event.getRun()).append(',')
+              .append(event.getNanoTime() - origins[event.getRun()]).append(',')
+              .append(Instant.ofEpochMilli(event.getActualTime())).append(',')
+              .append(Instant.ofEpochMilli(event.getScheduledTime())).append(',')
+              .append(event.getActualTime() - event.getScheduledTime()).append(',');
+            if (event.getStepNanos() >= 0) {
+                sb.append(event.getStepNanos() / 1000);
+            }
+            sb.append(',').append(event.getShot()).append(',').append(event.getEvent()).append('\n');
+            writer.append(sb);
+        }
+    }
+    
+    /**
+     * Write the events as a JSON array, using the same names as the control
+     * server's event stream.
+     * @param writer Destination. Not closed by this method.
+     * @throws IOException 
+     */
+    public void writeJson(Writer writer) throws IOException {
+        long[] origins = getRunOrigins();
+        StringBuilder sb = new StringBuilder(192);
+        writer.write("{\"events\":[");
+        for (int i = 0; i < events.length; i++) {
+            EventRecord event = events[i];
+            sb.setLength(0);
+            sb.append(i == 0 ? "\n" : ",\n")
+              .append("{\"event\":\"").append(event.getEvent().name())
+              .append("\",\"shot\":").append(event.getShot())
+              .append(",\"scheduled\":").append(event.getScheduledTime())
+              .append(",\"actual\":").append(event.getActualTime())
+              .append(",\"late\":").append(event.getActualTime() - event.getScheduledTime())
+              .append(",\"run\":").append(event.getRun())
+              .append(",\"nanos\":").append(event.getNanoTime() - origins[event.getRun()])
+              .append(",\"stepNs\":").append(event.getStepNanos() >= 0 ? Long.toString(event.getStepNanos()) : "null")
+              .append('}');
+            writer.append(sb);
+        }
+        writer.write("\n]}\n");
+    }
+    
+    /**
+     * @return System.nanoTime of the first event of each run, indexed by run
+     */
+    private long[] getRunOrigins() {
+        int nRuns = reader.getNumberOfRuns();
+        for (EventRecord event : events) {
+            nRuns = Math.max(nRuns, event.getRun() + 1);
+        }
+        long[] origins = new long[nRuns];
+        boolean[] found = new boolean[nRuns];
+        for (EventRecord event : events) {
+            if (!found[event.getRun()]) {
+                found[event.getRun()] = true;
+                origins[event.getRun()] = event.getNanoTime();
+            }
+        }
+        return origins;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.eventlog;
+
+/**
+ * The sequence settings saved in an event log header, so that the text log
+ * rows can be regenerated from the events. Immutable class.
+ * @author John Murphy
+ */
+public class EventLogFormat {
+    /** Longest filename prefix that is saved, in UTF-8 bytes */
+    static final int MAX_PREFIX_BYTES = 64;
+    
+    private final String filenamePrefix;
+    private final boolean millisecondFilenames;
+    private final boolean tabSeparated;
+    private final boolean allEvents;
+    private final boolean bulbMode;
+    private final int mirrorUpDuration;
+    private final boolean exposureRamped;
+    private final boolean ntpOffsetColumn;
+    private final int shutterOpenDelay;
+    private final int shutterCloseDelay;
+    private final int exposure;
+    private final int fireInterval;
+
+    /**
+     * @param filenamePrefix Log and image filename prefix
+     * @param millisecondFilenames True if image filenames include milliseconds
+     * @param tabSeparated True if the text log is tab separated
+     * @param allEvents True if the text log includes every button press and release
+     * @param bulbMode True if the camera is in bulb mode
+     * @param mirrorUpDuration Longest mirror up duration of any segment in ms, or 0 if mirror lock is not used
+     * @param exposureRamped True if the text log has a Commanded column
+     * @param ntpOffsetColumn True if the text log has an NTP offset column
+     * @param shutterOpenDelay Shutter open delay in ms
+     * @param shutterCloseDelay Shutter close delay in ms
+     * @param exposure First segment's exposure in ms
+     * @param fireInterval First segment's fire interval in ms
+     */
+    public EventLogFormat(String filenamePrefix, boolean millisecondFilenames, boolean tabSeparated, 
+            boolean allEvents, boolean bulbMode, int mirrorUpDuration, boolean exposureRamped,
+            boolean ntpOffsetColumn, int shutterOpenDelay, int shutterCloseDelay, int exposure, int fireInterval) {
+        this.filenamePrefix = filenamePrefix;
+        this.millisecondFilenames = millisecondFilenames;
+        this.tabSeparated = tabSeparated;
+        this.allEvents = allEvents;
+        this.bulbMode = bulbMode;
+        this.mirrorUpDuration = mirrorUpDuration;
+        this.exposureRamped = exposureRamped;
+        this.ntpOffsetColumn = ntpOffsetColumn;
+        this.shutterOpenDelay = shutterOpenDelay;
+        this.shutterCloseDelay = shutterCloseDelay;
+        this.exposure = exposure;
+        this.fireInterval = fireInterval;
+    }
+
+    /**
+     * @return Log and image filename prefix
+     */
+    public String getFilenamePrefix() {
+        return filenamePrefix;
+    }
+
+    /**
+     * @return True if image filenames include milliseconds
+     */
+    public boolean hasMillisecondFilenames() {
+        return millisecondFilenames;
+    }
+
+    /**
+     * @return True if the text log is tab separated
+     */
+    public boolean isTabSeparated() {
+        return tabSeparated;
+    }
+
+    /**
+     * @return True if the text log includes every button press and release
+     */
+    public boolean logAllEvents() {
+        return allEvents;
+    }
+
+    /**
+     * @return True if the camera is in bulb mode
+     */
+    public boolean inBulbMode() {
+        return bulbMode;
+    }
+
+    /**
+     * @return Longest mirror up duration of any segment in ms, or 0 if mirror lock is not used
+     */
+    public int getMirrorUpDuration() {
+        return mirrorUpDuration;
+    }
+
+    /**
+     * @return True if the text log has a Commanded column
+     */
+    public boolean isExposureRamped() {
+        return exposureRamped;
+    }
+
+    /**
+     * @return True if the text log has an NTP offset column
+     */
+    public boolean hasNtpOffsetColumn() {
+        return ntpOffsetColumn;
+    }
+
+    /**
+     * @return Shutter open delay in ms
+     */
+    public int getShutterOpenDelay() {
+        return shutterOpenDelay;
+    }
+
+    /**
+     * @return Shutter close delay in ms
+     */
+    public int getShutterCloseDelay() {
+        return shutterCloseDelay;
+    }
+
+    /**
+     * @return First segment's exposure in ms
+     */
+    public int getExposure() {
+        return exposure;
+    }
+
+    /**
+     * @return First segment's fire interval in ms
+     */
+    public int getFireInterval() {
+        return fireInterval;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.eventlog;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import info.johnmurphyastro.dslrtrigger.TimingListener.Event;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an event log written by EventLogWriter. The file is memory mapped,
+ * so any event can be read directly.
+ * @author John Murphy
+ */
+public class EventLogReader {
+    private static final Event[] EVENTS = Event.values();
+    
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final EventLogFormat format;
+    
+    private EventLogReader(File file) throws IOException, InvalidDataException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < EventLogWriter.HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new InvalidDataException(file.getName() + " is not an event log");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != EventLogWriter.MAGIC || buffer.getInt(4) != EventLogWriter.VERSION
+                || buffer.getInt(8) != EventLogWriter.RECORD_BYTES) {
+            throw new InvalidDataException(file.getName() + " is not a version " 
+                    + EventLogWriter.VERSION + " event log");
+        }
+        // A file that is still being written may have more space than events
+        count = Math.min(buffer.getInt(EventLogWriter.COUNT), 
+                (buffer.limit() - EventLogWriter.HEADER_BYTES) / EventLogWriter.RECORD_BYTES);
+        int flags = buffer.getInt(EventLogWriter.FLAGS);
+        int prefixLength = Math.min(buffer.getShort(EventLogWriter.PREFIX), EventLogFormat.MAX_PREFIX_BYTES);
+        byte[] prefix = new byte[Math.max(prefixLength, 0)];
+        for (int i = 0; i < prefix.length; i++) {
+            prefix[i] = buffer.get(EventLogWriter.PREFIX + 2 + i);
+        }
+        format = new EventLogFormat(new String(prefix, StandardCharsets.UTF_8),
+                (flags & EventLogWriter.MILLISECOND_FILENAMES) != 0,
+                (flags & EventLogWriter.TAB_SEPARATED) != 0,
+                (flags & EventLogWriter.ALL_EVENTS) != 0,
+                (flags & EventLogWriter.BULB_MODE) != 0,
+                buffer.getInt(EventLogWriter.MIRROR_UP),
+                (flags & EventLogWriter.EXPOSURE_RAMPED) != 0,
+                (flags & EventLogWriter.NTP_OFFSET) != 0,
+                buffer.getInt(EventLogWriter.OPEN_DELAY),
+                buffer.getInt(EventLogWriter.CLOSE_DELAY),
+                buffer.getInt(EventLogWriter.EXPOSURE),
+                buffer.getInt(EventLogWriter.FIRE_INTERVAL));
+    }
+    
+    /**
+     * @param file Event log file
+     * @return The reader
+     * @throws IOException
+     * @throws InvalidDataException If the file is not an event log
+     */
+    public static EventLogReader open(File file) throws IOException, InvalidDataException {
+        return new EventLogReader(file);
+    }
+
+    /**
+     * @return Event log file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Sequence settings
+     */
+    public EventLogFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return Number of events
+     */
+    public int getNumberOfEvents() {
+        return count;
+    }
+
+    /**
+     * @return Number of times the sequence was started or resumed
+     */
+    public int getNumberOfRuns() {
+        return buffer.getInt(EventLogWriter.RUNS);
+    }
+
+    /**
+     * @return Clock time when the file was created, in ms since 1970 (UTC)
+     */
+    public long getOriginTime() {
+        return buffer.getLong(EventLogWriter.ORIGIN_MILLIS);
+    }
+    
+    /**
+     * @return The header written at the top of the text log, or an empty 
+     * string if the sequence stopped before it was written
+     */
+    public String getHeaderText() {
+        int length = Math.max(0, Math.min(buffer.getInt(EventLogWriter.TEXT_BYTES), EventLogWriter.MAX_TEXT_BYTES));
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = buffer.get(EventLogWriter.TEXT + i);
+        }
+        return new String(text, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * @param i Event index, from 0
+     * @return The event
+     * @throws InvalidDataException If the event type is unknown
+     */
+    public EventRecord getEvent(int i) throws InvalidDataException {
+        int position = EventLogWriter.HEADER_BYTES + i * EventLogWriter.RECORD_BYTES;
+        int type = buffer.getShort(position + 36);
+        if (type < 0 || type >= EVENTS.length) {
+            throw new InvalidDataException(file.getName() + ": event " + (i + 1) + " has unknown type " + type);
+        }
+        int run = buffer.getShort(position + 38);
+        if (run < 0) {
+            throw new InvalidDataException(file.getName() + ": event " + (i + 1) + " has invalid run " + run);
+        }
+        return new EventRecord(EVENTS[type], buffer.getInt(position + 32), run,
+                buffer.getLong(position), buffer.getLong(position + 8), buffer.getLong(position + 16), 
+                buffer.getLong(position + 24), buffer.getDouble(position + 40));
+    }
+}
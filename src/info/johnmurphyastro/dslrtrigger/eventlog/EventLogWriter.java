@@ -0,0 +1,255 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.eventlog;
+
+import info.johnmurphyastro.dslrtrigger.TimingListener;
+import info.johnmurphyastro.dslrtrigger.clock.OffsetEstimate;
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records every timing event of a sequence as a fixed size binary record in
+ * a memory mapped file, next to the text log. The file is preallocated for
+ * the expected number of events, so recording an event is a few stores into
+ * the mapped buffer with no formatting, allocation or system call. The 
+ * operating system writes the pages to disk, so the events survive a crash
+ * of this program. If the file fills up it is mapped again at twice the size.
+ * 
+ * The file is a 128 byte header holding the event count, the number of runs,
+ * the clock time when it was created and the EventLogFormat, then the text
+ * log's header, padded to HEADER_BYTES, followed by one 48 byte record per
+ * event: System.nanoTime, actual and scheduled time in ms since 1970 (UTC),
+ * nanoseconds since the shot's previous event, shot index, event type, run
+ * and, for a log row, the NTP offset written in it. A resumed sequence 
+ * appends to its existing file as a new run, because System.nanoTime values
+ * from different runs of this program cannot be compared.
+ * @author John Murphy
+ */
+public class EventLogWriter implements TimingListener {
+    /** "DTEV" */
+    static final int MAGIC = 0x44544556;
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 8192;
+    static final int RECORD_BYTES = 48;
+    // Header positions
+    static final int COUNT = 12;
+    static final int RUNS = 16;
+    static final int TEXT_BYTES = 20;
+    static final int ORIGIN_MILLIS = 24;
+    static final int FLAGS = 32;
+    static final int OPEN_DELAY = 36;
+    static final int CLOSE_DELAY = 40;
+    static final int MIRROR_UP = 44;
+    static final int EXPOSURE = 48;
+    static final int FIRE_INTERVAL = 52;
+    static final int PREFIX = 56;
+    /** Start of the text log header */
+    static final int TEXT = 128;
+    static final int MAX_TEXT_BYTES = HEADER_BYTES - TEXT;
+    // Flags
+    static final int MILLISECOND_FILENAMES = 1;
+    static final int TAB_SEPARATED = 2;
+    static final int ALL_EVENTS = 4;
+    static final int BULB_MODE = 8;
+    static final int EXPOSURE_RAMPED = 16;
+    static final int NTP_OFFSET = 32;
+    
+    private final File file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int count;
+    /** Run number written in every record, from 0 */
+    private short run;
+    /** True to save the NTP offset with each log row */
+    private boolean ntpOffsetColumn;
+    private int lastShot = -1;
+    private long lastNanos;
+    
+    private EventLogWriter(File file, EventLogFormat format, int expectedEvents) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, 
+                StandardOpenOption.CREATE);
+        try {
+            boolean resume = channel.size() >= HEADER_BYTES;
+            if (resume) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw new IOException(file.getName() + " is not a version " + VERSION + " event log");
+                }
+                count = buffer.getInt(COUNT);
+                run = (short) Math.min(buffer.getInt(RUNS), Short.MAX_VALUE);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 
+                    HEADER_BYTES + (long) (count + Math.max(expectedEvents, 1024)) * RECORD_BYTES);
+            if (!resume) {
+                writeHeader(format);
+            }
+            buffer.putInt(RUNS, run + 1);
+            ntpOffsetColumn = (buffer.getInt(FLAGS) & NTP_OFFSET) != 0;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Create an event log, or open it to append events if it already exists
+     * @param file Event log file
+     * @param format Sequence settings. Ignored if the file already exists
+     * @param expectedEvents Number of events to preallocate space for
+     * @return The event log
+     * @throws IOException 
+     */
+    public static EventLogWriter open(File file, EventLogFormat format, int expectedEvents) throws IOException {
+        return new EventLogWriter(file, format, expectedEvents);
+    }
+    
+    private void writeHeader(EventLogFormat format) {
+        int flags = (format.hasMillisecondFilenames() ? MILLISECOND_FILENAMES : 0)
+                | (format.isTabSeparated() ? TAB_SEPARATED : 0)
+                | (format.logAllEvents() ? ALL_EVENTS : 0)
+                | (format.inBulbMode() ? BULB_MODE : 0)
+                | (format.isExposureRamped() ? EXPOSURE_RAMPED : 0)
+                | (format.hasNtpOffsetColumn() ? NTP_OFFSET : 0);
+        byte[] prefix = format.getFilenamePrefix().getBytes(StandardCharsets.UTF_8);
+        int prefixLength = Math.min(prefix.length, EventLogFormat.MAX_PREFIX_BYTES);
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_BYTES).putInt(COUNT, 0)
+                .putLong(ORIGIN_MILLIS, TriggerClock.currentTimeMillis())
+                .putInt(FLAGS, flags)
+                .putInt(OPEN_DELAY, format.getShutterOpenDelay())
+                .putInt(CLOSE_DELAY, format.getShutterCloseDelay())
+                .putInt(MIRROR_UP, format.getMirrorUpDuration())
+                .putInt(EXPOSURE, format.getExposure())
+                .putInt(FIRE_INTERVAL, format.getFireInterval())
+                .putShort(PREFIX, (short) prefixLength);
+        for (int i = 0; i < prefixLength; i++) {
+            buffer.put(PREFIX + 2 + i, prefix[i]);
+        }
+    }
+
+    /**
+     * Save the header written at the top of the text log, so that 
+     * EventLogExport can regenerate the log. A header that does not fit is
+     * cut at the end of a line. Ignored if the header has already been saved.
+     * @param text Header text, up to the key
+     */
+    public synchronized void setHeaderText(String text) {
+        if (buffer == null || buffer.getInt(TEXT_BYTES) > 0) {
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        if (length > MAX_TEXT_BYTES) {
+            length = MAX_TEXT_BYTES;
+            while (length > 0 && bytes[length - 1] != '\n') {
+                length--;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            buffer.put(TEXT + i, bytes[i]);
+        }
+        buffer.putInt(TEXT_BYTES, length);
+    }
+
+    /**
+     * Append the event. Synchronized because switch errors may come from
+     * the shutter watchdog thread; on the Intervalometer thread the lock is
+     * never contended.
+     */
+    @Override
+    public synchronized void timingEvent(Event event, int shot, long scheduledTime, long actualTime) {
+        if (buffer == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        int position = HEADER_BYTES + count * RECORD_BYTES;
+        if (position + RECORD_BYTES > buffer.capacity()) {
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 
+                        HEADER_BYTES + 2L * buffer.capacity());
+            } catch (IOException | IllegalArgumentException ex) {
+                // Stop recording rather than delay the sequence. Also reached at the 2 GB mapping limit
+                buffer = null;
+                return;
+            }
+        }
+        long stepNanos = shot >= 0 && shot == lastShot ? now - lastNanos : -1;
+        double ntpOffset = Double.NaN;
+        if (event == Event.LOG_ROW && ntpOffsetColumn) {
+            // The latest estimate, as read by the row that has just been written
+            OffsetEstimate ntp = TriggerClock.getMonitor();
+            if (ntp != null) {
+                ntpOffset = ntp.getOffset();
+            }
+        }
+        buffer.putLong(position, now)
+                .putLong(position + 8, actualTime)
+                .putLong(position + 16, scheduledTime)
+                .putLong(position + 24, stepNanos)
+                .putInt(position + 32, shot)
+                .putShort(position + 36, (short) event.ordinal())
+                .putShort(position + 38, run)
+                .putDouble(position + 40, ntpOffset);
+        // The count is written last, so a crash never leaves a partial record
+        buffer.putInt(COUNT, ++count);
+        if (shot >= 0) {
+            lastShot = shot;
+            lastNanos = now;
+        }
+    }
+
+    /**
+     * @return Number of events in the file
+     */
+    public synchronized int getNumberOfEvents() {
+        return count;
+    }
+
+    /**
+     * @return Event log file
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * Write the events to disk and close the file. Later events are ignored.
+     * @throws IOException 
+     */
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        try {
+            // Remove the unused preallocated space. Windows cannot truncate a mapped file,
+            // but readers only use the counted records anyway
+            channel.truncate(HEADER_BYTES + (long) count * RECORD_BYTES);
+        } catch (IOException ex) {
+            // Leave the file at its preallocated size
+        } finally {
+            channel.close();
+        }
+    }
+}
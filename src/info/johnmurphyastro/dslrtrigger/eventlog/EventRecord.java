@@ -0,0 +1,119 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.eventlog;
+
+import info.johnmurphyastro.dslrtrigger.TimingListener.Event;
+
+/**
+ * One timing event read from an event log. Immutable class.
+ * @author John Murphy
+ */
+public class EventRecord {
+    private final Event event;
+    private final int shot;
+    private final int run;
+    private final long nanoTime;
+    private final long actualTime;
+    private final long scheduledTime;
+    private final long stepNanos;
+    private final double ntpOffset;
+
+    /**
+     * @param event What happened
+     * @param shot Shot index in the sequence, from 0, or -1 if not known
+     * @param run Run of this program that recorded the event, from 0
+     * @param nanoTime System.nanoTime when the event was recorded
+     * @param actualTime When it happened, in ms since 1970 (UTC)
+     * @param scheduledTime When it should have happened, in ms since 1970 (UTC)
+     * @param stepNanos Nanoseconds since the previous event of the same shot, or -1
+     * @param ntpOffset NTP offset written in the log row in ms, or NaN
+     */
+    EventRecord(Event event, int shot, int run, long nanoTime, long actualTime, long scheduledTime, long stepNanos,
+            double ntpOffset) {
+        this.event = event;
+        this.shot = shot;
+        this.run = run;
+        this.nanoTime = nanoTime;
+        this.actualTime = actualTime;
+        this.scheduledTime = scheduledTime;
+        this.stepNanos = stepNanos;
+        this.ntpOffset = ntpOffset;
+    }
+
+    /**
+     * @return What happened
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * @return Shot index in the sequence, from 0, or -1 if not known
+     */
+    public int getShot() {
+        return shot;
+    }
+
+    /**
+     * @return Run of this program that recorded the event, from 0. A resumed
+     * sequence is a new run
+     */
+    public int getRun() {
+        return run;
+    }
+
+    /**
+     * @return System.nanoTime when the event was recorded. Only comparable 
+     * with other events of the same run
+     */
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
+    /**
+     * @return When it happened, in ms since 1970 (UTC)
+     */
+    public long getActualTime() {
+        return actualTime;
+    }
+
+    /**
+     * @return When it should have happened, in ms since 1970 (UTC)
+     */
+    public long getScheduledTime() {
+        return scheduledTime;
+    }
+
+    /**
+     * @return Nanoseconds since the previous event of the same shot, or -1.
+     * For a button press this is the USB switch write time after the wait
+     * ended, and for a log row it is the time taken to write the text row.
+     */
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    /**
+     * @return The NTP offset in ms written in a log row, or NaN. Only set
+     * for LOG_ROW events when the text log has an NTP offset column
+     */
+    public double getNtpOffset() {
+        return ntpOffset;
+    }
+}
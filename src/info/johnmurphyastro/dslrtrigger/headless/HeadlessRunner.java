@@ -0,0 +1,494 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.headless;
+
+import info.johnmurphyastro.dslrtrigger.ArmedListener;
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import info.johnmurphyastro.dslrtrigger.MessageListener;
+import info.johnmurphyastro.dslrtrigger.ProgressListener;
+import info.johnmurphyastro.dslrtrigger.WaitTimeListener;
+import info.johnmurphyastro.dslrtrigger.calibration.LagCalibrationSession;
+import info.johnmurphyastro.dslrtrigger.calibration.LagEstimate;
+import info.johnmurphyastro.dslrtrigger.calibration.LagType;
+import info.johnmurphyastro.dslrtrigger.calibration.ShutterLagStore;
+import info.johnmurphyastro.dslrtrigger.data.ShutterLagProfile;
+import info.johnmurphyastro.dslrtrigger.eventlog.EventLogExport;
+import info.johnmurphyastro.dslrtrigger.images.ImageCorrelation;
+import info.johnmurphyastro.dslrtrigger.images.ImageInfo;
+import info.johnmurphyastro.dslrtrigger.images.ImageRenamer;
+import info.johnmurphyastro.dslrtrigger.images.ImageScanner;
+import info.johnmurphyastro.dslrtrigger.images.MatchStatus;
+import info.johnmurphyastro.dslrtrigger.intervalometer.ArmingReport;
+import info.johnmurphyastro.dslrtrigger.intervalometer.Checkpoint;
+import info.johnmurphyastro.dslrtrigger.intervalometer.DryRun;
+import info.johnmurphyastro.dslrtrigger.intervalometer.IntervalometerController;
+import info.johnmurphyastro.dslrtrigger.intervalometer.SelfTestReport;
+import info.johnmurphyastro.dslrtrigger.logfile.ExposureIndex;
+import info.johnmurphyastro.dslrtrigger.logfile.IndexedFrame;
+import info.johnmurphyastro.dslrtrigger.logfile.LogArchiveAnalyzer;
+import info.johnmurphyastro.dslrtrigger.logfile.LogReader;
+import info.johnmurphyastro.dslrtrigger.logfile.LogRow;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFile;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFileReader;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFileWriter;
+import info.johnmurphyastro.dslrtrigger.plan.PlanException;
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.prefs.BackingStoreException;
+
+/**
+ * Runs a sequence plan file without the user interface. Progress and error
+ * messages are written to the console. Ctrl-C stops the sequence. Running the
+ * same plan again resumes it from the last checkpoint.
+ * @author John Murphy
+ */
+public class HeadlessRunner implements ProgressListener, WaitTimeListener, ArmedListener, MessageListener {
+    /** Only report the wait time when it changes by at least this amount */
+    private static final long WAIT_REPORT_MS = 10_000;
+    
+    private final int totalShots;
+    private long lastWaitReport = Long.MAX_VALUE;
+    private boolean failed;
+
+    private HeadlessRunner(int totalShots) {
+        this.totalShots = totalShots;
+    }
+    
+    /**
+     * Read the plan file and take the sequence. Returns when the sequence has finished.
+     * @param file Sequence plan file
+     * @return Process exit code. 0 if successful.
+     */
+    public static int run(File file) {
+        PlanFile planFile = readPlan(file);
+        if (planFile == null) {
+            return 2;
+        }
+        if (planFile.getComPort() == null) {
+            System.err.println(file.getName() + ": [trigger] 'com_port' is required");
+            return 2;
+        }
+        
+        HeadlessRunner runner = new HeadlessRunner(planFile.getSequencePlan().getNumberOfShots());
+        IntervalometerController controller = new IntervalometerController();
+        Thread stopHook = new Thread(() -> controller.close(runner, true), "Stop Hook");
+        Runtime.getRuntime().addShutdownHook(stopHook);
+        Checkpoint checkpoint = readCheckpoint(planFile);
+        if (checkpoint != null) {
+            System.out.println("Resuming at shot " + (checkpoint.getNextShot() + 1) 
+                    + " of " + checkpoint.getNumberOfShots() + ", appending to " + checkpoint.getLogFile());
+            controller.resume(checkpoint, runner, runner, runner, runner);
+        } else {
+            controller.start(planFile.getComPort(), planFile.getSequencePlan(), 
+                    planFile.getObserverData(), planFile.getLogfileData(), planFile.getTriggerData(),
+                    runner, runner, runner, runner);
+        }
+        controller.close(runner);
+        return runner.hasFailed() ? 1 : 0;
+    }
+    
+    /**
+     * Simulate the plan file without using the USB switch. The timeline is 
+     * written next to the plan file as CSV and Chrome trace JSON files.
+     * @param file Sequence plan file
+     * @return Process exit code. 0 if successful.
+     */
+    public static int dryRun(File file) {
+        PlanFile planFile = readPlan(file);
+        if (planFile == null) {
+            return 2;
+        }
+        DryRun dryRun = DryRun.simulate(planFile.getSequencePlan(), System.currentTimeMillis());
+        System.out.println(dryRun.getSummary());
+        File csvFile = new File(file.getPath() + "_dryrun.csv");
+        File traceFile = new File(file.getPath() + "_dryrun.json");
+        try {
+            dryRun.export(csvFile, traceFile);
+        } catch (IOException ex) {
+            System.err.println("Failed to write timeline: " + ex.getMessage());
+            return 1;
+        }
+        System.out.println("Timeline written to " + csvFile + " and " + traceFile);
+        return 0;
+    }
+    
+    /**
+     * Run the pre-flight self test for the plan file. If the plan has a COM
+     * port, the USB switch is sent release commands; no shot is taken.
+     * @param file Sequence plan file
+     * @return Process exit code. 0 for go, 1 for no-go.
+     */
+    public static int selfTest(File file) {
+        PlanFile planFile = readPlan(file);
+        if (planFile == null) {
+            return 2;
+        }
+        final int cycles = IntervalometerController.SELF_TEST_CYCLES;
+        HeadlessRunner runner = new HeadlessRunner(cycles);
+        IntervalometerController controller = new IntervalometerController();
+        SelfTestReport report = controller.selfTest(planFile, cycles, 
+                completed -> System.out.println("Self test cycles: " + completed + " / " + cycles), runner);
+        controller.close(runner);
+        if (report == null) {
+            return 2;
+        }
+        System.out.println(report);
+        return report.isGo() ? 0 : 1;
+    }
+    
+    /**
+     * Match the images in a folder to the rows of a log file, using their EXIF
+     * times. The matches are written next to the log file as a CSV file.
+     * @param logFile ExposureReport log file
+     * @param folder Image folder
+     * @return Process exit code. 0 if every image matched, 1 if there are
+     * missing, extra or mirror lock desync images.
+     */
+    public static int correlate(File logFile, File folder) {
+        ImageCorrelation correlation = readCorrelation(logFile, folder);
+        if (correlation == null) {
+            return 2;
+        }
+        System.out.println(correlation.getSummary());
+        File csvFile = new File(logFile.getPath() + "_images.csv");
+        try {
+            correlation.export(csvFile);
+        } catch (IOException ex) {
+            System.err.println("Failed to write matches: " + ex.getMessage());
+            return 2;
+        }
+        System.out.println("Matches written to " + csvFile);
+        for (int i = 0; i < correlation.getMatches().size(); i++) {
+            if (correlation.getMatches().get(i).getStatus() != MatchStatus.MATCHED) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * Rename or copy the images in a folder to the filenames in their log rows.
+     * An undo journal is written next to the log file.
+     * @param logFile ExposureReport log file
+     * @param folder Image folder
+     * @param destFolder Folder for the renamed images, or null to rename them in place
+     * @param copy True to copy the images, leaving the originals
+     * @param dryRun True to list the new filenames without renaming
+     * @return Process exit code. 0 if every matched image was renamed.
+     */
+    public static int rename(File logFile, File folder, File destFolder, boolean copy, boolean dryRun) {
+        ImageCorrelation correlation = readCorrelation(logFile, folder);
+        if (correlation == null) {
+            return 2;
+        }
+        System.out.println(correlation.getSummary());
+        ImageRenamer renamer = ImageRenamer.plan(correlation, destFolder);
+        if (!dryRun) {
+            File journalFile = new File(logFile.getPath() + "_rename_journal.txt");
+            try {
+                renamer.execute(copy, journalFile);
+            } catch (IOException ex) {
+                System.err.println("Failed to write undo journal: " + ex.getMessage());
+                return 2;
+            }
+            System.out.println("Undo journal written to " + journalFile);
+        }
+        System.out.println(renamer.getSummary(dryRun, copy));
+        return renamer.getConflicts().isEmpty() && renamer.getErrors().isEmpty() ? 0 : 1;
+    }
+    
+    /**
+     * Undo the renames and copies recorded in an undo journal
+     * @param journalFile Undo journal written by rename
+     * @return Process exit code. 0 if everything was undone.
+     */
+    public static int undoRename(File journalFile) {
+        try {
+            List<String> problems = ImageRenamer.undo(journalFile);
+            for (String problem : problems) {
+                System.err.println(problem);
+            }
+            if (!problems.isEmpty()) {
+                return 1;
+            }
+        } catch (IOException | InvalidDataException ex) {
+            System.err.println(journalFile.getName() + ": " + ex.getMessage());
+            return 2;
+        }
+        System.out.println("Undone " + journalFile);
+        return 0;
+    }
+    
+    /**
+     * Analyse the timing of any number of log files. One CSV row per log is
+     * written next to the first path.
+     * @param paths Log files or folders of log files
+     * @return Process exit code. 0 if successful.
+     */
+    public static int analyze(List<File> paths) {
+        File csvFile = new File(paths.get(0).getPath() + "_sessions.csv");
+        LogArchiveAnalyzer analyzer;
+        try {
+            analyzer = LogArchiveAnalyzer.analyze(paths, TimeZone.getDefault(), csvFile);
+        } catch (IOException ex) {
+            System.err.println("Failed to write " + csvFile + ": " + ex.getMessage());
+            return 2;
+        }
+        System.out.println(analyzer.getSummary());
+        System.out.println("Sessions written to " + csvFile);
+        return analyzer.getNumberOfSessions() > 0 ? 0 : 1;
+    }
+    
+    /**
+     * Add new and changed log files to a time index of every exposure
+     * @param indexFile Index file, created if it does not exist
+     * @param paths Log files or folders of log files
+     * @return Process exit code. 0 if successful.
+     */
+    public static int index(File indexFile, List<File> paths) {
+        try {
+            int nRead = ExposureIndex.update(indexFile, paths, TimeZone.getDefault());
+            ExposureIndex index = ExposureIndex.open(indexFile);
+            System.out.println("Logs read: " + nRead);
+            System.out.println("Index: " + index.getNumberOfFrames() + " exposures from " 
+                    + index.getNumberOfSessions() + " files");
+        } catch (IOException | InvalidDataException ex) {
+            System.err.println(indexFile.getName() + ": " + ex.getMessage());
+            return 2;
+        }
+        return 0;
+    }
+    
+    /**
+     * List the exposures that were open at a time, or during a time range
+     * @param indexFile Index file
+     * @param from UTC time, for example 2019-05-12T21:03:05.250Z, or ms since 1970
+     * @param to End of the time range, or null for a single time
+     * @return Process exit code. 0 if an exposure was found, 1 if none.
+     */
+    public static int query(File indexFile, String from, String to) {
+        long fromTime;
+        long toTime;
+        try {
+            fromTime = parseUtcTime(from);
+            toTime = to != null ? parseUtcTime(to) : fromTime;
+        } catch (DateTimeParseException | NumberFormatException ex) {
+            System.err.println("Times must be ms since 1970 or UTC, for example 2019-05-12T21:03:05.250Z");
+            return 2;
+        }
+        List<IndexedFrame> frames;
+        long queryNanos;
+        try {
+            ExposureIndex index = ExposureIndex.open(indexFile);
+            long startNanos = System.nanoTime();
+            frames = index.find(fromTime, toTime);
+            queryNanos = System.nanoTime() - startNanos;
+        } catch (IOException | InvalidDataException ex) {
+            System.err.println(indexFile.getName() + ": " + ex.getMessage());
+            return 2;
+        }
+        for (IndexedFrame frame : frames) {
+            System.out.println(Instant.ofEpochMilli(frame.getStart()) + " to " + Instant.ofEpochMilli(frame.getEnd()) 
+                    + ": frame " + frame.getFrame() + " of " + frame.getSession());
+        }
+        System.out.println("Exposures: " + frames.size() + " (query " + queryNanos / 1000 + " us)");
+        return frames.isEmpty() ? 1 : 0;
+    }
+    
+    /**
+     * Convert a binary event log to the text log format, CSV and JSON.
+     * The files are written next to the event log.
+     * @param eventsFile Event log written during a sequence
+     * @return Process exit code. 0 if successful.
+     */
+    public static int exportEvents(File eventsFile) {
+        String path = eventsFile.getPath();
+        try {
+            EventLogExport export = EventLogExport.read(eventsFile);
+            export.export(new File(path + ".txt"), new File(path + ".csv"), new File(path + ".json"));
+            System.out.println(export.getSummary());
+        } catch (IOException | InvalidDataException ex) {
+            System.err.println(eventsFile.getName() + ": " + ex.getMessage());
+            return 2;
+        }
+        System.out.println("Written to " + path + ".txt, .csv and .json");
+        return 0;
+    }
+    
+    private static long parseUtcTime(String time) {
+        if (time.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(time);
+        }
+        return Instant.parse(time).toEpochMilli();
+    }
+    
+    /**
+     * Read the log file and the images' EXIF values, then match them
+     * @return The matches, or null if the log or folder could not be read
+     */
+    private static ImageCorrelation readCorrelation(File logFile, File folder) {
+        TimeZone zone = TimeZone.getDefault();
+        try (LogReader reader = new LogReader(logFile, zone)) {
+            List<LogRow> rows = reader.readAll();
+            ImageInfo[] images = ImageScanner.scan(folder, zone);
+            return ImageCorrelation.correlate(reader.getHeader(), rows, images);
+        } catch (IOException | InvalidDataException ex) {
+            System.err.println(logFile.getName() + ": " + ex.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Continue a shutter open or close lag calibration session. Takes the next round of
+     * shots, or once the lag is known, adds it to the shutter lag profile.
+     * The session file must have a [session] com_port.
+     * @param file Calibration session file
+     * @return Process exit code. 0 if successful, 1 if shots need to be marked or failed.
+     */
+    public static int calibrate(File file) {
+        LagCalibrationSession session;
+        try {
+            session = LagCalibrationSession.load(file);
+            if (session.getComPort() == null) {
+                System.err.println(file.getName() + ": [session] 'com_port' is required");
+                return 2;
+            }
+            if (session.getPendingShots().isEmpty()) {
+                if (session.getUnmarkedShots() > 0) {
+                    System.out.println("Mark the 'led' column of " + session.getUnmarkedShots() 
+                            + " shots with y or n, then run again");
+                    return 1;
+                }
+                LagEstimate estimate = session.getEstimate();
+                if (session.isComplete()) {
+                    ShutterLagStore store = new IntervalometerController().getShutterLagStore();
+                    ShutterLagProfile profile = session.getType() == LagType.CLOSE
+                            ? store.addCloseLag(session.getCamera(), session.isMirrorLock(), 
+                                    session.isBulbMode(), estimate.getLag())
+                            : store.addOpenLag(session.getCamera(), session.isMirrorLock(), 
+                                    session.isBulbMode(), estimate.getLag());
+                    System.out.println(profile.getName() + ": " 
+                            + session.getType().getDescription().toLowerCase() + " " + estimate);
+                    return 0;
+                }
+                if (estimate != null) {
+                    System.out.println("So far: " + estimate);
+                }
+                session = session.withNextRound();
+                session.save(file);
+            }
+        } catch (IOException | InvalidDataException | BackingStoreException ex) {
+            System.err.println(file.getName() + ": " + ex.getMessage());
+            return 2;
+        }
+        final int nShots = session.getPendingShots().size();
+        System.out.println("Round " + session.getRound() + ": " + nShots + " shots, one every " 
+                + session.getShotInterval() + " ms");
+        HeadlessRunner runner = new HeadlessRunner(nShots);
+        IntervalometerController controller = new IntervalometerController();
+        LagCalibrationSession result = controller.takeCalibrationRound(session.getComPort(), session, file, 
+                runner, runner);
+        controller.close(runner);
+        if (result == null) {
+            return 1;
+        }
+        System.out.println("Mark the 'led' column of each shot in " + file + " with y or n, then run again");
+        if (result.getRoundWarning() != null) {
+            System.out.println(result.getRoundWarning());
+        }
+        return 0;
+    }
+    
+    /**
+     * @return The plan, or null if it could not be read. Problems are written to System.err
+     */
+    private static PlanFile readPlan(File file) {
+        try {
+            return PlanFileReader.read(file);
+        } catch (PlanException ex) {
+            System.err.println(ex.getMessage());
+        } catch (IOException ex) {
+            System.err.println("Failed to read " + file + ": " + ex.getMessage());
+        }
+        return null;
+    }
+    
+    /**
+     * @return The checkpoint of an interrupted run of this plan, or null if 
+     * there is none. A checkpoint for a different plan is reported and ignored.
+     */
+    private static Checkpoint readCheckpoint(PlanFile planFile) {
+        File file = Checkpoint.getFile(planFile.getLogfileData().getLogFolder());
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            Checkpoint checkpoint = Checkpoint.load(file);
+            if (checkpoint.getPlanHash().equals(PlanFileWriter.getHash(planFile))) {
+                return checkpoint;
+            }
+            System.out.println("Ignoring " + file + ": it belongs to a different plan");
+        } catch (IOException | InvalidDataException ex) {
+            System.err.println("Ignoring " + file + ": " + ex.getMessage());
+        }
+        return null;
+    }
+    
+    private synchronized boolean hasFailed() {
+        return failed;
+    }
+
+    @Override
+    public void setProgress(int completed) {
+        System.out.println("Shots taken: " + completed + " / " + totalShots);
+    }
+
+    @Override
+    public synchronized void setWaitTime(long waitTime) {
+        if (waitTime == 0 || Math.abs(lastWaitReport - waitTime) >= WAIT_REPORT_MS) {
+            lastWaitReport = waitTime;
+            System.out.println("Time until first shot: " + (waitTime + 500) / 1000 + " s");
+        }
+    }
+
+    @Override
+    public void setArmed(ArmingReport report) {
+        System.out.println("Armed: " + report);
+    }
+
+    @Override
+    public synchronized void showErrorMessage(Throwable exception) {
+        showErrorMessage(exception.getLocalizedMessage());
+    }
+
+    @Override
+    public synchronized void showErrorMessage(String message) {
+        failed = true;
+        System.err.println(message);
+    }
+
+    @Override
+    public void showMessage(String message, String title) {
+        System.out.println(title + ": " + message);
+    }
+}
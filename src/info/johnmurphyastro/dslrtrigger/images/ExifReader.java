@@ -0,0 +1,391 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.images;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Reads the EXIF date, sub-seconds, exposure time and shutter count from the
+ * start of an image file. Only the first HEADER_BYTES of the file are memory
+ * mapped, and only the pages holding the EXIF block are actually read.
+ * 
+ * Supports JPEG, TIFF based RAW files (CR2, NEF, NRW, ARW, SR2, DNG, PEF, 
+ * ORF, RW2, TIF), Fujifilm RAF (its embedded JPEG) and Canon CR3.
+ * @author John Murphy
+ */
+class ExifReader {
+    /** Bytes mapped from the start of each file */
+    static final int HEADER_BYTES = 512 * 1024;
+    
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_EXPOSURE_TIME = 0x829A;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_SUB_SEC_TIME_ORIGINAL = 0x9291;
+    private static final int TAG_MAKER_NOTE = 0x927C;
+    private static final int NIKON_SHUTTER_COUNT = 0x00A7;
+    private static final int CANON_FILE_NUMBER = 0x0008;
+    /** Size in bytes of each TIFF field type */
+    private static final int[] TYPE_SIZES = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8};
+    
+    private final ByteBuffer buffer;
+    private String model = "";
+    private String dateTime;
+    private String dateTimeOriginal;
+    private String subSecond;
+    private double exposure = Double.NaN;
+    private long shutterCount = -1;
+    
+    private ExifReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+    
+    /**
+     * @param file Image file
+     * @param zone Time zone of the camera clock
+     * @return The image's EXIF values. If the file has no EXIF date, the time is NO_TIME
+     * @throws IOException 
+     */
+    static ImageInfo read(File file, TimeZone zone) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 16) {
+                return new ImageInfo(file, "File is too short");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_BYTES));
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            ExifReader reader = new ExifReader(buffer);
+            try {
+                reader.parse();
+            } catch (IndexOutOfBoundsException ex) {
+                // Damaged or truncated EXIF block. Keep what was read
+            }
+            return reader.toImageInfo(file, zone);
+        }
+    }
+    
+    private void parse() {
+        if (buffer.get(0) == (byte) 0xFF && buffer.get(1) == (byte) 0xD8) {
+            parseJpeg(0);
+        } else if (startsWith(buffer, 0, "FUJIFILMCCD-RAW")) {
+            // Big endian offset of the embedded JPEG, which holds the EXIF block
+            parseJpeg(buffer.getInt(84));
+        } else if (startsWith(buffer, 4, "ftyp")) {
+            parseCr3();
+        } else {
+            ByteBuffer tiff = getTiff(buffer, 0);
+            if (tiff != null) {
+                parseIfd0(tiff, tiff.getInt(4));
+            }
+        }
+    }
+    
+    /**
+     * @param start Position of the JPEG start of image marker
+     */
+    private void parseJpeg(int start) {
+        int pos = start + 2;
+        while (pos + 4 <= buffer.limit()) {
+            if (buffer.get(pos) != (byte) 0xFF) {
+                return;
+            }
+            int marker = buffer.get(pos + 1) & 0xFF;
+            if (marker == 0xFF) {
+                // Fill byte
+                pos++;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                // Start of scan or end of image. The EXIF block comes before these
+                return;
+            }
+            int length = buffer.getShort(pos + 2) & 0xFFFF;
+            if (marker == 0xE1 && startsWith(buffer, pos + 4, "Exif\0\0")) {
+                ByteBuffer tiff = getTiff(buffer, pos + 10);
+                if (tiff != null) {
+                    parseIfd0(tiff, tiff.getInt(4));
+                }
+                return;
+            }
+            pos += 2 + length;
+        }
+    }
+    
+    /**
+     * Canon CR3 files keep the IFD0, EXIF and maker note blocks in CMT1, CMT2
+     * and CMT3 boxes, each a TIFF structure
+     */
+    private void parseCr3() {
+        int limit = buffer.limit() - 12;
+        for (int pos = 8; pos < limit; pos++) {
+            if (buffer.get(pos) != 'C' || buffer.get(pos + 1) != 'M' || buffer.get(pos + 2) != 'T') {
+                continue;
+            }
+            ByteBuffer tiff = getTiff(buffer, pos + 4);
+            if (tiff == null) {
+                continue;
+            }
+            switch (buffer.get(pos + 3)) {
+                case '1':
+                    parseIfd0(tiff, tiff.getInt(4));
+                    break;
+                case '2':
+                    parseExifIfd(tiff, tiff.getInt(4));
+                    break;
+                case '3':
+                    shutterCount = getUnsigned(tiff, tiff.getInt(4), CANON_FILE_NUMBER);
+                    // CMT4 (GPS) is not needed
+                    return;
+                default:
+                    break;
+            }
+        }
+    }
+    
+    private void parseIfd0(ByteBuffer tiff, int ifd) {
+        String value = getAscii(tiff, ifd, TAG_MODEL);
+        if (value != null) {
+            model = value;
+        }
+        dateTime = getAscii(tiff, ifd, TAG_DATE_TIME);
+        long exifIfd = getUnsigned(tiff, ifd, TAG_EXIF_IFD);
+        if (exifIfd > 0) {
+            parseExifIfd(tiff, (int) exifIfd);
+        }
+    }
+    
+    private void parseExifIfd(ByteBuffer tiff, int ifd) {
+        dateTimeOriginal = getAscii(tiff, ifd, TAG_DATE_TIME_ORIGINAL);
+        subSecond = getAscii(tiff, ifd, TAG_SUB_SEC_TIME_ORIGINAL);
+        exposure = getRational(tiff, ifd, TAG_EXPOSURE_TIME);
+        int entry = findEntry(tiff, ifd, TAG_MAKER_NOTE);
+        if (entry >= 0) {
+            parseMakerNote(tiff, getValueOffset(tiff, entry));
+        }
+    }
+    
+    /**
+     * Read the shutter count from the Nikon or Canon maker note
+     * @param offset Position of the maker note in the TIFF structure
+     */
+    private void parseMakerNote(ByteBuffer tiff, int offset) {
+        if (startsWith(tiff, offset, "Nikon\0")) {
+            // Nikon type 3 maker notes have their own TIFF header
+            ByteBuffer nikon = getTiff(tiff, offset + 10);
+            if (nikon != null) {
+                shutterCount = getUnsigned(nikon, nikon.getInt(4), NIKON_SHUTTER_COUNT);
+            }
+        } else if (model.startsWith("Canon")) {
+            // Canon maker notes are a plain IFD, with offsets relative to the TIFF header
+            shutterCount = getUnsigned(tiff, offset, CANON_FILE_NUMBER);
+        }
+    }
+    
+    private ImageInfo toImageInfo(File file, TimeZone zone) {
+        String date = dateTimeOriginal != null ? dateTimeOriginal : dateTime;
+        long time = parseExifDate(date, zone);
+        if (time == ImageInfo.NO_TIME) {
+            return new ImageInfo(file, "No EXIF date");
+        }
+        int millis = parseSubSecond(subSecond);
+        return new ImageInfo(file, millis < 0 ? time : time + millis, millis >= 0, 
+                exposure, shutterCount, model);
+    }
+    
+    /**
+     * @param date EXIF date, for example "2019:05:12 21:03:05"
+     * @param zone Time zone of the camera clock
+     * @return Milliseconds since 1970, or NO_TIME
+     */
+    static long parseExifDate(String date, TimeZone zone) {
+        if (date == null || date.length() < 19) {
+            return ImageInfo.NO_TIME;
+        }
+        try {
+            Calendar calendar = new GregorianCalendar(zone, Locale.ROOT);
+            calendar.clear();
+            calendar.set(Integer.parseInt(date.substring(0, 4)), Integer.parseInt(date.substring(5, 7)) - 1,
+                    Integer.parseInt(date.substring(8, 10)), Integer.parseInt(date.substring(11, 13)),
+                    Integer.parseInt(date.substring(14, 16)), Integer.parseInt(date.substring(17, 19)));
+            return calendar.getTimeInMillis();
+        } catch (NumberFormatException ex) {
+            // Unset camera clocks write "    :  :     :  :  "
+            return ImageInfo.NO_TIME;
+        }
+    }
+    
+    /**
+     * @param subSecond EXIF SubSecTimeOriginal, for example "12" for 0.12 seconds
+     * @return Milliseconds, or -1 if not recorded
+     */
+    static int parseSubSecond(String subSecond) {
+        if (subSecond == null) {
+            return -1;
+        }
+        String digits = subSecond.trim();
+        if (digits.isEmpty()) {
+            return -1;
+        }
+        int millis = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = i < digits.length() ? digits.charAt(i) : '0';
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            millis = millis * 10 + (c - '0');
+        }
+        return millis;
+    }
+    
+    /**
+     * @param buffer Buffer
+     * @param start Position of the "II" or "MM" TIFF byte order mark
+     * @return The TIFF structure, with offsets relative to its start and its
+     * byte order set, or null if there is no TIFF header at start
+     */
+    private static ByteBuffer getTiff(ByteBuffer buffer, int start) {
+        if (start < 0 || start + 8 > buffer.limit()) {
+            return null;
+        }
+        ByteOrder order;
+        if (buffer.get(start) == 'I' && buffer.get(start + 1) == 'I') {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else if (buffer.get(start) == 'M' && buffer.get(start + 1) == 'M') {
+            order = ByteOrder.BIG_ENDIAN;
+        } else {
+            return null;
+        }
+        ByteBuffer tiff = buffer.duplicate();
+        tiff.position(start);
+        tiff = tiff.slice().order(order);
+        // 42 for TIFF, or the Olympus and Panasonic RAW variants
+        int magic = tiff.getShort(2) & 0xFFFF;
+        if (magic != 42 && magic != 0x4F52 && magic != 0x5352 && magic != 0x55) {
+            return null;
+        }
+        return tiff;
+    }
+    
+    /**
+     * @return Position of the IFD entry with this tag, or -1
+     */
+    private static int findEntry(ByteBuffer tiff, int ifd, int tag) {
+        if (ifd < 0 || ifd + 2 > tiff.limit()) {
+            return -1;
+        }
+        int nEntries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < nEntries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) {
+                return -1;
+            }
+            if ((tiff.getShort(entry) & 0xFFFF) == tag) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @return Position of the entry's value. Values of up to 4 bytes are held in the entry
+     */
+    private static int getValueOffset(ByteBuffer tiff, int entry) {
+        int type = tiff.getShort(entry + 2) & 0xFFFF;
+        long size = (type < TYPE_SIZES.length ? TYPE_SIZES[type] : 1) * (tiff.getInt(entry + 4) & 0xFFFFFFFFL);
+        return size <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+    }
+    
+    /**
+     * @return The ASCII value, or null if the tag is not present
+     */
+    private static String getAscii(ByteBuffer tiff, int ifd, int tag) {
+        int entry = findEntry(tiff, ifd, tag);
+        if (entry < 0) {
+            return null;
+        }
+        int count = tiff.getInt(entry + 4);
+        int offset = getValueOffset(tiff, entry);
+        if (count <= 0 || offset < 0 || offset + count > tiff.limit()) {
+            return null;
+        }
+        byte[] bytes = new byte[count];
+        int length = 0;
+        while (length < count && tiff.get(offset + length) != 0) {
+            bytes[length] = tiff.get(offset + length);
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII).trim();
+    }
+    
+    /**
+     * @return The first SHORT or LONG value, or -1 if the tag is not present
+     */
+    private static long getUnsigned(ByteBuffer tiff, int ifd, int tag) {
+        int entry = findEntry(tiff, ifd, tag);
+        if (entry < 0) {
+            return -1;
+        }
+        int type = tiff.getShort(entry + 2) & 0xFFFF;
+        int offset = getValueOffset(tiff, entry);
+        if (type == 3) {
+            return tiff.getShort(offset) & 0xFFFF;
+        }
+        if (type == 4) {
+            return tiff.getInt(offset) & 0xFFFFFFFFL;
+        }
+        return -1;
+    }
+    
+    /**
+     * @return The first RATIONAL value, or NaN if the tag is not present
+     */
+    private static double getRational(ByteBuffer tiff, int ifd, int tag) {
+        int entry = findEntry(tiff, ifd, tag);
+        if (entry < 0 || (tiff.getShort(entry + 2) & 0xFFFF) != 5) {
+            return Double.NaN;
+        }
+        int offset = tiff.getInt(entry + 8);
+        long numerator = tiff.getInt(offset) & 0xFFFFFFFFL;
+        long denominator = tiff.getInt(offset + 4) & 0xFFFFFFFFL;
+        return denominator == 0 ? Double.NaN : (double) numerator / denominator;
+    }
+    
+    private static boolean startsWith(ByteBuffer buffer, int pos, String text) {
+        if (pos < 0 || pos + text.length() > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer.get(pos + i) != (byte) text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.images;
+
+import info.johnmurphyastro.dslrtrigger.logfile.LogRow;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One log row and the images of that shot. A RAW and JPEG pair are both
+ * listed. Immutable class.
+ * @author John Murphy
+ */
+public class FrameMatch {
+    private final List<ImageInfo> images;
+    private final LogRow row;
+    private final long residual;
+    private final MatchStatus status;
+
+    /**
+     * @param images The shot's images, or an empty list if it is missing
+     * @param row The log row, or null if the images are extra
+     * @param residual Corrected image time minus the expected log time in ms
+     * @param status Match status
+     */
+    FrameMatch(List<ImageInfo> images, LogRow row, long residual, MatchStatus status) {
+        this.images = Collections.unmodifiableList(images);
+        this.row = row;
+        this.residual = residual;
+        this.status = status;
+    }
+
+    /**
+     * @return The shot's images, or an empty list if it is missing
+     */
+    public List<ImageInfo> getImages() {
+        return images;
+    }
+
+    /**
+     * @return The log row, or null if the images are extra
+     */
+    public LogRow getRow() {
+        return row;
+    }
+
+    /**
+     * @return Image time, corrected by the camera clock offset, minus the 
+     * expected log time in ms. Zero if the image or row is missing
+     */
+    public long getResidual() {
+        return residual;
+    }
+
+    /**
+     * @return Match status
+     */
+    public MatchStatus getStatus() {
+        return status;
+    }
+}
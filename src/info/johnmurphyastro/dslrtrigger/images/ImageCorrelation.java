@@ -0,0 +1,590 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.images;
+
+import info.johnmurphyastro.dslrtrigger.logfile.LogHeader;
+import info.johnmurphyastro.dslrtrigger.logfile.LogRow;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Matches the images taken during a sequence to the rows of its log file.
+ * 
+ * The camera clock offset is found in two steps. A histogram of every image
+ * time minus every log time within MAX_OFFSET gives a coarse offset, and the
+ * median residual of the images near that offset refines it. Each image is
+ * then matched to the nearest unclaimed log row. An image taken when the 
+ * mirror lock button was pressed, instead of at the exposure start, shows
+ * the camera lost step with the mirror lock presses.
+ * 
+ * If the fire interval is constant and the camera clock offset is more than
+ * half an interval, every interval gives a similar histogram peak. The 
+ * offset is then ambiguous, and the images may be matched to the wrong rows.
+ * @author John Murphy
+ */
+public class ImageCorrelation {
+    /** Largest camera clock offset that is searched for, in ms */
+    public static final long MAX_OFFSET = 3_600_000L;
+    /** Match tolerance for images with EXIF sub-seconds */
+    private static final long SUB_SECOND_TOLERANCE = 250;
+    /** Match tolerance for images with whole second EXIF times */
+    private static final long SECOND_TOLERANCE = 1000;
+    /** A RAW and JPEG pair of the same shot must be within this time */
+    private static final long PAIR_TIME = 1000;
+    /** Converts the median absolute deviation to a standard deviation */
+    private static final double MAD_TO_SD = 1.4826;
+    
+    private final List<FrameMatch> matches = new ArrayList<>();
+    private final List<String> shutterCountGaps = new ArrayList<>();
+    private final int nImages;
+    private final int nUnreadable;
+    private final int nRows;
+    private long offset;
+    private double offsetSpread;
+    private long tolerance;
+    private boolean ambiguous;
+    private int nMatched;
+    private int nDesync;
+    private int nExtra;
+    private int nMissing;
+    
+    /**
+     * An image, or a RAW and JPEG pair, of one shot
+     */
+    private static class Shot {
+        final List<ImageInfo> images = new ArrayList<>();
+        /** Camera time, moved to the middle of the second if there are no sub-seconds */
+        long time;
+        boolean matched;
+        
+        Shot(ImageInfo image) {
+            images.add(image);
+            time = image.hasSubSecond() ? image.getTime() : image.getTime() + 500;
+        }
+        
+        long getShutterCount() {
+            for (ImageInfo image : images) {
+                if (image.getShutterCount() >= 0) {
+                    return image.getShutterCount();
+                }
+            }
+            return -1;
+        }
+        
+        double getExposure() {
+            for (ImageInfo image : images) {
+                if (!Double.isNaN(image.getExposure())) {
+                    return image.getExposure();
+                }
+            }
+            return Double.NaN;
+        }
+    }
+    
+    /**
+     * A possible match between a shot and a log row
+     */
+    private static class Candidate {
+        final Shot shot;
+        final int row;
+        final long residual;
+        final boolean desync;
+        
+        Candidate(Shot shot, int row, long residual, boolean desync) {
+            this.shot = shot;
+            this.row = row;
+            this.residual = residual;
+            this.desync = desync;
+        }
+    }
+    
+    private ImageCorrelation(LogHeader header, List<LogRow> logRows, ImageInfo[] images, long maxOffset) {
+        nImages = images.length;
+        nRows = logRows.size();
+        
+        // Cancelled and paused shots may or may not have taken an image, so they are not expected
+        List<LogRow> rows = new ArrayList<>();
+        for (LogRow row : logRows) {
+            if (!row.isCancelled()) {
+                rows.add(row);
+            }
+        }
+        rows.sort(Comparator.comparingLong(LogRow::getStart));
+        long[] starts = new long[rows.size()];
+        long[] desyncStarts = new long[rows.size()];
+        for (int i = 0; i < starts.length; i++) {
+            LogRow row = rows.get(i);
+            starts[i] = row.getStart();
+            desyncStarts[i] = getDesyncStart(header, row);
+        }
+        
+        int unreadable = 0;
+        List<Shot> shots = groupShots(images);
+        for (ImageInfo image : images) {
+            if (image.getTime() == ImageInfo.NO_TIME) {
+                matches.add(new FrameMatch(Collections.singletonList(image), null, 0, MatchStatus.NO_TIME));
+                unreadable++;
+            }
+        }
+        nUnreadable = unreadable;
+        
+        boolean subSeconds = true;
+        for (Shot shot : shots) {
+            subSeconds &= shot.images.get(0).hasSubSecond();
+        }
+        tolerance = subSeconds ? SUB_SECOND_TOLERANCE : SECOND_TOLERANCE;
+        for (int i = 1; i < starts.length; i++) {
+            long spacing = starts[i] - starts[i - 1];
+            if (spacing > 1) {
+                tolerance = Math.min(tolerance, spacing / 2);
+            }
+        }
+        
+        boolean[] rowMatched = new boolean[starts.length];
+        if (!shots.isEmpty() && starts.length > 0) {
+            long coarse = findCoarseOffset(shots, starts, maxOffset);
+            offset = refineOffset(shots, starts, coarse);
+            matchShots(header, rows, shots, starts, desyncStarts, rowMatched);
+        }
+        
+        for (int i = 0; i < rows.size(); i++) {
+            if (!rowMatched[i]) {
+                matches.add(new FrameMatch(Collections.emptyList(), rows.get(i), 0, MatchStatus.MISSING));
+                nMissing++;
+            }
+        }
+        for (Shot shot : shots) {
+            if (!shot.matched) {
+                matches.add(new FrameMatch(shot.images, null, 0, MatchStatus.EXTRA));
+                nExtra++;
+            }
+        }
+        matches.sort(Comparator.comparingLong(this::getSortTime));
+        findShutterCountGaps();
+    }
+
+    /**
+     * Match the images to the log rows
+     * @param header The log header
+     * @param rows The log rows
+     * @param images The images, from ImageScanner
+     * @param maxOffset Largest camera clock offset to search for in ms
+     * @return The matches
+     */
+    public static ImageCorrelation correlate(LogHeader header, List<LogRow> rows, ImageInfo[] images, long maxOffset) {
+        return new ImageCorrelation(header, rows, images, maxOffset);
+    }
+
+    /**
+     * Match the images to the log rows, searching camera clock offsets of up to MAX_OFFSET
+     * @param header The log header
+     * @param rows The log rows
+     * @param images The images, from ImageScanner
+     * @return The matches
+     */
+    public static ImageCorrelation correlate(LogHeader header, List<LogRow> rows, ImageInfo[] images) {
+        return new ImageCorrelation(header, rows, images, MAX_OFFSET);
+    }
+    
+    /**
+     * @return Expected image time if the mirror lock press took the image, 
+     * or NO_TIME if mirror lock was not used
+     */
+    private static long getDesyncStart(LogHeader header, LogRow row) {
+        long shift;
+        if (row.getMirrorLockPress() != LogRow.NO_TIME && row.getShutterPress() != LogRow.NO_TIME) {
+            shift = row.getShutterPress() - row.getMirrorLockPress();
+        } else if (header.isMirrorLockSet() && header.getMirrorUpDuration() > 0) {
+            shift = header.getMirrorUpDuration();
+        } else {
+            return LogRow.NO_TIME;
+        }
+        return row.getStart() - shift;
+    }
+    
+    /**
+     * Sort the images by time and put a RAW and JPEG pair into one shot
+     */
+    private static List<Shot> groupShots(ImageInfo[] images) {
+        List<ImageInfo> timed = new ArrayList<>();
+        for (ImageInfo image : images) {
+            if (image.getTime() != ImageInfo.NO_TIME) {
+                timed.add(image);
+            }
+        }
+        timed.sort(Comparator.comparingLong(ImageInfo::getTime));
+        List<Shot> shots = new ArrayList<>();
+        for (ImageInfo image : timed) {
+            Shot pair = null;
+            for (int i = shots.size() - 1; i >= 0; i--) {
+                Shot shot = shots.get(i);
+                ImageInfo first = shot.images.get(0);
+                if (image.getTime() - first.getTime() > PAIR_TIME) {
+                    break;
+                }
+                if (first.getBaseName().equals(image.getBaseName())) {
+                    pair = shot;
+                    break;
+                }
+            }
+            if (pair != null) {
+                pair.images.add(image);
+                if (image.hasSubSecond() && !pair.images.get(0).hasSubSecond()) {
+                    pair.time = image.getTime();
+                }
+            } else {
+                shots.add(new Shot(image));
+            }
+        }
+        return shots;
+    }
+    
+    /**
+     * Vote for every image time minus log time within maxOffset. Each bin is
+     * the match tolerance wide, and a peak is scored over two adjacent bins
+     * so that an offset on a bin edge is not split.
+     * @return The camera clock offset at the best peak
+     */
+    private long findCoarseOffset(List<Shot> shots, long[] starts, long maxOffset) {
+        int nBins = (int) (2 * maxOffset / tolerance) + 2;
+        int[] votes = new int[nBins];
+        for (Shot shot : shots) {
+            int first = lowerBound(starts, shot.time - maxOffset);
+            for (int i = first; i < starts.length && starts[i] <= shot.time + maxOffset; i++) {
+                votes[(int) ((shot.time - starts[i] + maxOffset) / tolerance)]++;
+            }
+        }
+        int best = -1;
+        int bestScore = 0;
+        long bestDistance = Long.MAX_VALUE;
+        for (int b = 0; b + 1 < nBins; b++) {
+            int score = votes[b] + votes[b + 1];
+            long distance = Math.abs(getBinEdge(b, maxOffset));
+            if (score > bestScore || (score == bestScore && score > 0 && distance < bestDistance)) {
+                best = b;
+                bestScore = score;
+                bestDistance = distance;
+            }
+        }
+        if (best < 0) {
+            return 0;
+        }
+        for (int b = 0; b + 1 < nBins; b++) {
+            if (Math.abs(b - best) > 2 && votes[b] + votes[b + 1] >= 0.9 * bestScore) {
+                ambiguous = true;
+                break;
+            }
+        }
+        return getBinEdge(best, maxOffset);
+    }
+    
+    /**
+     * @return The offset between bin b and bin b + 1
+     */
+    private long getBinEdge(int b, long maxOffset) {
+        return (b + 1) * tolerance - maxOffset;
+    }
+    
+    /**
+     * @return The coarse offset plus the median residual of the images within 
+     * tolerance of a log time
+     */
+    private long refineOffset(List<Shot> shots, long[] starts, long coarse) {
+        List<Long> residuals = new ArrayList<>();
+        for (Shot shot : shots) {
+            int nearest = findNearest(starts, shot.time - coarse);
+            long residual = shot.time - coarse - starts[nearest];
+            if (Math.abs(residual) <= tolerance) {
+                residuals.add(residual);
+            }
+        }
+        if (residuals.isEmpty()) {
+            return coarse;
+        }
+        long median = median(residuals);
+        List<Long> deviations = new ArrayList<>();
+        for (long residual : residuals) {
+            deviations.add(Math.abs(residual - median));
+        }
+        offsetSpread = median(deviations) * MAD_TO_SD;
+        return coarse + median;
+    }
+    
+    /**
+     * Greedy one to one matching, closest candidates first. A match at the 
+     * exposure start is preferred to a mirror lock desync at the same distance.
+     * @param rowMatched Set to true for each matched row
+     */
+    private void matchShots(LogHeader header, List<LogRow> rows, List<Shot> shots, long[] starts, 
+            long[] desyncStarts, boolean[] rowMatched) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (Shot shot : shots) {
+            long t = shot.time - offset;
+            for (int i = lowerBound(starts, t - tolerance); i < starts.length && starts[i] <= t + tolerance; i++) {
+                candidates.add(new Candidate(shot, i, t - starts[i], false));
+            }
+            for (int i = 0; i < desyncStarts.length; i++) {
+                if (desyncStarts[i] != LogRow.NO_TIME && Math.abs(t - desyncStarts[i]) <= tolerance) {
+                    candidates.add(new Candidate(shot, i, t - desyncStarts[i], true));
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingLong((Candidate c) -> Math.abs(c.residual))
+                .thenComparing(c -> c.desync));
+        for (Candidate c : candidates) {
+            if (c.shot.matched || rowMatched[c.row]) {
+                continue;
+            }
+            c.shot.matched = true;
+            rowMatched[c.row] = true;
+            LogRow row = rows.get(c.row);
+            boolean desync = c.desync || isDesyncExposure(header, row, c.shot.getExposure());
+            matches.add(new FrameMatch(c.shot.images, row, c.residual, 
+                    desync ? MatchStatus.MIRROR_LOCK_DESYNC : MatchStatus.MATCHED));
+            if (desync) {
+                nDesync++;
+            } else {
+                nMatched++;
+            }
+        }
+    }
+    
+    /**
+     * In bulb mode a mirror lock desync ends the exposure when the mirror 
+     * lock button is released, half the mirror up duration after it was pressed
+     * @param exposure EXIF exposure time in seconds, or NaN
+     * @return True if the exposure is closer to the mirror lock press duration than the logged exposure
+     */
+    private static boolean isDesyncExposure(LogHeader header, LogRow row, double exposure) {
+        if (Double.isNaN(exposure) || row.getExposure() < 0) {
+            return false;
+        }
+        long mlDuration;
+        if (row.getMirrorLockPress() != LogRow.NO_TIME && row.getMirrorLockRelease() != LogRow.NO_TIME) {
+            mlDuration = row.getMirrorLockRelease() - row.getMirrorLockPress();
+        } else if (header.isMirrorLockSet() && header.getMirrorUpDuration() > 0) {
+            mlDuration = header.getMirrorUpDuration() / 2;
+        } else {
+            return false;
+        }
+        double ms = exposure * 1000;
+        return Math.abs(ms - mlDuration) < Math.abs(ms - row.getExposure());
+    }
+    
+    /**
+     * Record where the shutter count of consecutive images increases by more
+     * than one. The camera took shots that are not in the image folder.
+     */
+    private void findShutterCountGaps() {
+        FrameMatch previous = null;
+        for (FrameMatch match : matches) {
+            if (match.getImages().isEmpty() || match.getImages().get(0).getShutterCount() < 0) {
+                continue;
+            }
+            if (previous != null) {
+                long from = previous.getImages().get(0).getShutterCount();
+                long to = match.getImages().get(0).getShutterCount();
+                if (to - from != 1) {
+                    shutterCountGaps.add("Shutter count " + from + " to " + to + " before " 
+                            + match.getImages().get(0).getFile().getName());
+                }
+            }
+            previous = match;
+        }
+    }
+    
+    private long getSortTime(FrameMatch match) {
+        if (match.getRow() != null) {
+            return match.getRow().getStart();
+        }
+        ImageInfo image = match.getImages().get(0);
+        return image.getTime() == ImageInfo.NO_TIME ? Long.MAX_VALUE : image.getTime() - offset;
+    }
+    
+    /**
+     * @return Index of the first value that is not less than key
+     */
+    private static int lowerBound(long[] sorted, long key) {
+        int i = Arrays.binarySearch(sorted, key);
+        if (i < 0) {
+            return -i - 1;
+        }
+        while (i > 0 && sorted[i - 1] == key) {
+            i--;
+        }
+        return i;
+    }
+    
+    /**
+     * @return Index of the value nearest to key. The array must not be empty
+     */
+    private static int findNearest(long[] sorted, long key) {
+        int i = lowerBound(sorted, key);
+        if (i == sorted.length) {
+            return i - 1;
+        }
+        if (i > 0 && key - sorted[i - 1] < sorted[i] - key) {
+            return i - 1;
+        }
+        return i;
+    }
+    
+    private static long median(List<Long> values) {
+        Collections.sort(values);
+        int n = values.size();
+        return n % 2 == 1 ? values.get(n / 2) : (values.get(n / 2 - 1) + values.get(n / 2)) / 2;
+    }
+
+    /**
+     * @return The matches, in log time order. Images without an EXIF time are last
+     */
+    public List<FrameMatch> getMatches() {
+        return Collections.unmodifiableList(matches);
+    }
+
+    /**
+     * @return Camera clock minus log clock in ms
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return Standard deviation of the matched image times about the offset in ms,
+     * estimated from the median absolute deviation
+     */
+    public double getOffsetSpread() {
+        return offsetSpread;
+    }
+
+    /**
+     * @return True if another camera clock offset matched nearly as many images
+     */
+    public boolean isAmbiguous() {
+        return ambiguous;
+    }
+
+    /**
+     * @return Where the shutter count jumps between consecutive images
+     */
+    public List<String> getShutterCountGaps() {
+        return Collections.unmodifiableList(shutterCountGaps);
+    }
+
+    /**
+     * @return Summary of the correlation for display to the user
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Images: ").append(nImages);
+        if (nUnreadable > 0) {
+            sb.append(" (").append(nUnreadable).append(" without an EXIF time)");
+        }
+        sb.append('\n');
+        sb.append("Log rows: ").append(nRows).append('\n');
+        sb.append(String.format("Camera clock offset: %+d ms (s.d. %.0f ms, match tolerance %d ms)", 
+                offset, offsetSpread, tolerance)).append('\n');
+        if (ambiguous) {
+            sb.append("Warning: another camera clock offset matches nearly as well. "
+                    + "Check the offset against a known image.\n");
+        }
+        sb.append("Matched: ").append(nMatched).append('\n');
+        sb.append("Mirror lock desync: ").append(nDesync).append('\n');
+        sb.append("Extra images: ").append(nExtra).append('\n');
+        sb.append("Missing images: ").append(nMissing);
+        for (String gap : shutterCountGaps) {
+            sb.append('\n').append(gap);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the CSV file
+     * @param csvFile CSV file
+     * @throws IOException 
+     */
+    public void export(File csvFile) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
+            writeCsv(writer);
+        }
+    }
+
+    /**
+     * Write one row per match. Times are local time with millisecond resolution.
+     * @param writer Destination. Not closed by this method.
+     * @throws IOException 
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        StringBuilder sb = new StringBuilder(256);
+        writer.write("N,Log filename,Images,Status,Start time,Image time,Residual,Exposure,Shutter count\n");
+        for (FrameMatch match : matches) {
+            sb.setLength(0);
+            LogRow row = match.getRow();
+            if (row != null) {
+                sb.append(row.getN()).append(',').append(row.getFilename()).append(',');
+            } else {
+                sb.append(",,");
+            }
+            sb.append('"');
+            for (int i = 0; i < match.getImages().size(); i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(match.getImages().get(i).getFile().getName().replace("\"", "\"\""));
+            }
+            sb.append("\",").append(match.getStatus().getDescription()).append(',');
+            if (row != null) {
+                sb.append(sdf.format(new Date(row.getStart())));
+            }
+            sb.append(',');
+            ImageInfo image = match.getImages().isEmpty() ? null : match.getImages().get(0);
+            if (image != null && image.getTime() != ImageInfo.NO_TIME) {
+                sb.append(sdf.format(new Date(image.getTime())));
+            }
+            sb.append(',');
+            if (row != null && image != null) {
+                sb.append(match.getResidual());
+            }
+            sb.append(',');
+            if (image != null && !Double.isNaN(image.getExposure())) {
+                sb.append(image.getExposure());
+            }
+            sb.append(',');
+            if (image != null && image.getShutterCount() >= 0) {
+                sb.append(image.getShutterCount());
+            }
+            sb.append('\n');
+            writer.append(sb);
+        }
+    }
+}
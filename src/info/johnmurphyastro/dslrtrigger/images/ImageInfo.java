@@ -0,0 +1,132 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.images;
+
+import java.io.File;
+
+/**
+ * The EXIF values of one image file that are used to match it to a log row.
+ * Immutable class.
+ * @author John Murphy
+ */
+public class ImageInfo {
+    /** The image has no EXIF date */
+    public static final long NO_TIME = Long.MIN_VALUE;
+    
+    private final File file;
+    private final long time;
+    private final boolean subSecond;
+    private final double exposure;
+    private final long shutterCount;
+    private final String model;
+    private final String error;
+
+    /**
+     * @param file Image file
+     * @param time Camera clock time the image was taken, or NO_TIME
+     * @param subSecond True if the time includes the EXIF SubSecTimeOriginal
+     * @param exposure Exposure time in seconds, or NaN
+     * @param shutterCount Camera shutter count or file number, or -1
+     * @param model Camera model, or an empty string
+     */
+    ImageInfo(File file, long time, boolean subSecond, double exposure, long shutterCount, String model) {
+        this.file = file;
+        this.time = time;
+        this.subSecond = subSecond;
+        this.exposure = exposure;
+        this.shutterCount = shutterCount;
+        this.model = model;
+        this.error = null;
+    }
+    
+    /**
+     * @param file Image file that could not be read
+     * @param error Why it could not be read
+     */
+    ImageInfo(File file, String error) {
+        this.file = file;
+        this.time = NO_TIME;
+        this.subSecond = false;
+        this.exposure = Double.NaN;
+        this.shutterCount = -1;
+        this.model = "";
+        this.error = error;
+    }
+
+    /**
+     * @return Image file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Camera clock time the image was taken in ms since 1970, or NO_TIME.
+     * If the camera does not record sub-seconds, this is the start of the second
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return True if the time includes the EXIF SubSecTimeOriginal
+     */
+    public boolean hasSubSecond() {
+        return subSecond;
+    }
+
+    /**
+     * @return Exposure time in seconds, or NaN
+     */
+    public double getExposure() {
+        return exposure;
+    }
+
+    /**
+     * @return Nikon shutter count or Canon file number, or -1 if unknown.
+     * Increases by one for every shot the camera takes
+     */
+    public long getShutterCount() {
+        return shutterCount;
+    }
+
+    /**
+     * @return Camera model, or an empty string
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * @return Why the file could not be read, or null
+     */
+    public String getError() {
+        return error;
+    }
+    
+    /**
+     * @return The filename without its extension, in lower case. A RAW and 
+     * JPEG pair of the same shot share this name
+     */
+    String getBaseName() {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0 ? name.substring(0, dot) : name).toLowerCase();
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.images;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renames, or copies, the matched images to the filenames in their log rows.
+ * The image keeps its extension, so a RAW and JPEG pair become 
+ * Prefix_2019y05m12d_21h03m05s.NEF and Prefix_2019y05m12d_21h03m05s.JPG.
+ * 
+ * Each finished operation is appended to an undo journal before the next
+ * one can be recorded, so a renamer stopped part way can still be undone.
+ * Within a file system, images are moved with an atomic rename. Across file
+ * systems they are copied with FileChannel.transferTo to a temporary file, 
+ * which is then renamed, and the source is deleted if moving. The move is
+ * journalled before the source is deleted, so an image whose source could
+ * not be deleted can also be undone.
+ * @author John Murphy
+ */
+public class ImageRenamer {
+    /** First line of an undo journal */
+    static final String JOURNAL_HEADER = "# DSLR Trigger rename journal";
+    private static final String MOVE = "move";
+    private static final String COPY = "copy";
+    /** Operations run by one fork/join task without splitting */
+    private static final int LEAF_SIZE = 4;
+    /** On Windows a file that was memory mapped cannot be renamed until the 
+     * mapping is garbage collected */
+    private static final int MAPPED_FILE_RETRIES = 3;
+    
+    private final List<RenameOperation> operations = new ArrayList<>();
+    private final List<String> conflicts = new ArrayList<>();
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    private int nDone;
+    
+    private ImageRenamer(ImageCorrelation correlation, File destFolder) {
+        Set<File> targets = new HashSet<>();
+        for (FrameMatch match : correlation.getMatches()) {
+            if (match.getStatus() != MatchStatus.MATCHED && match.getStatus() != MatchStatus.MIRROR_LOCK_DESYNC) {
+                continue;
+            }
+            for (ImageInfo image : match.getImages()) {
+                File source = image.getFile();
+                File folder = destFolder != null ? destFolder : source.getParentFile();
+                File target = new File(folder, match.getRow().getFilename() + getExtension(source));
+                if (target.equals(source)) {
+                    // Already renamed
+                    continue;
+                }
+                if (!targets.add(target)) {
+                    conflicts.add(source.getName() + ": another image is also renamed to " + target.getName());
+                } else if (target.exists()) {
+                    conflicts.add(source.getName() + ": " + target + " already exists");
+                } else {
+                    operations.add(new RenameOperation(source, target, match.getRow().getN()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Work out the new filename of each matched image. Nothing is renamed yet,
+     * so this is also the dry run.
+     * @param correlation The matched images
+     * @param destFolder Folder for the renamed images, or null to rename them in place
+     * @return The renamer
+     */
+    public static ImageRenamer plan(ImageCorrelation correlation, File destFolder) {
+        return new ImageRenamer(correlation, destFolder);
+    }
+    
+    private static String getExtension(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot) : "";
+    }
+
+    /**
+     * @return The planned renames
+     */
+    public List<RenameOperation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * @return Images that are not renamed because the new filename is taken
+     */
+    public List<String> getConflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    /**
+     * @return Operations that failed when executed
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Rename or copy the images in parallel. An operation that fails is 
+     * recorded in the errors and the rest continue.
+     * @param copy True to copy the images, leaving the originals
+     * @param journalFile Undo journal. Must not exist
+     * @return Number of images renamed or copied
+     * @throws IOException If the journal cannot be written
+     */
+    public int execute(boolean copy, File journalFile) throws IOException {
+        if (journalFile.exists()) {
+            throw new IOException(journalFile + " already exists");
+        }
+        nDone = 0;
+        errors.clear();
+        try (Journal journal = new Journal(journalFile)) {
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            try {
+                pool.invoke(new RenameTask(copy, journal, 0, operations.size()));
+            } finally {
+                pool.shutdown();
+            }
+            nDone = journal.getCount();
+        }
+        return nDone;
+    }
+    
+    /**
+     * Rename or copy one image, and record it in the journal
+     */
+    private static void transfer(RenameOperation op, boolean copy, Journal journal) throws IOException {
+        File target = op.getTarget();
+        if (!copy) {
+            try {
+                moveFile(op.getSource(), target);
+                journal.record(op, true);
+                return;
+            } catch (AtomicMoveNotSupportedException ex) {
+                // Different file system. Fall back to copy and delete
+            }
+        }
+        File tmpFile = new File(target.getPath() + ".tmp");
+        try {
+            copyFile(op.getSource(), tmpFile);
+            moveFile(tmpFile, target);
+        } catch (IOException ex) {
+            Files.deleteIfExists(tmpFile.toPath());
+            throw ex;
+        }
+        journal.record(op, !copy);
+        if (!copy) {
+            Files.delete(op.getSource().toPath());
+        }
+    }
+    
+    /**
+     * Atomic rename within a file system. Never replaces an existing file.
+     */
+    private static void moveFile(File source, File target) throws IOException {
+        if (target.exists()) {
+            throw new IOException(target + " already exists");
+        }
+        for (int retry = 0; ; retry++) {
+            try {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return;
+            } catch (AtomicMoveNotSupportedException ex) {
+                throw ex;
+            } catch (FileSystemException ex) {
+                // ExifReader memory maps the images. Windows will not rename a
+                // mapped file until the MappedByteBuffer has been collected
+                if (retry == MAPPED_FILE_RETRIES) {
+                    throw ex;
+                }
+                System.gc();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copy without passing the data through the Java heap. The copy is forced
+     * to disk before it is renamed.
+     */
+    private static void copyFile(File source, File target) throws IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE, 
+                        StandardOpenOption.CREATE_NEW)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            out.force(true);
+        }
+    }
+
+    /**
+     * Undo the renames and copies in a journal, last first. Renamed images
+     * get their camera filenames back, and copies are deleted. A move whose
+     * source was not deleted has its copy deleted.
+     * @param journalFile Undo journal written by execute
+     * @return Problems that stopped an entry being undone. Empty if all were undone
+     * @throws IOException If the journal cannot be read
+     * @throws InvalidDataException If the file is not an undo journal
+     */
+    public static List<String> undo(File journalFile) throws IOException, InvalidDataException {
+        List<String[]> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            if (!JOURNAL_HEADER.equals(reader.readLine())) {
+                throw new InvalidDataException(journalFile.getName() + " is not a rename journal");
+            }
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] entry = line.split("\t");
+                if (entry.length != 3 || !(MOVE.equals(entry[0]) || COPY.equals(entry[0]))) {
+                    throw new InvalidDataException("Line " + lineNumber + ": expected 'move' or 'copy', "
+                            + "source and target separated by tabs");
+                }
+                entries.add(entry);
+            }
+        }
+        List<String> problems = new ArrayList<>();
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            String[] entry = entries.get(i);
+            File source = new File(entry[1]);
+            File target = new File(entry[2]);
+            try {
+                if (MOVE.equals(entry[0]) && source.exists() && source.length() == target.length()) {
+                    // Moved across file systems, but the source could not be deleted
+                    Files.delete(target.toPath());
+                } else if (MOVE.equals(entry[0])) {
+                    try {
+                        moveFile(target, source);
+                    } catch (AtomicMoveNotSupportedException ex) {
+                        copyFile(target, source);
+                        Files.delete(target.toPath());
+                    }
+                } else {
+                    Files.delete(target.toPath());
+                }
+            } catch (IOException ex) {
+                problems.add(target.getName() + ": " + ex.getMessage());
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * @param dryRun True if the images have not been renamed
+     * @param copy True if the images were copied
+     * @return Summary for display to the user
+     */
+    public String getSummary(boolean dryRun, boolean copy) {
+        StringBuilder sb = new StringBuilder();
+        String verb = copy ? "copied" : "renamed";
+        if (dryRun) {
+            for (RenameOperation op : operations) {
+                sb.append(op).append('\n');
+            }
+            sb.append("Images to be ").append(verb).append(": ").append(operations.size());
+        } else {
+            sb.append("Images ").append(verb).append(": ").append(nDone).append(" of ").append(operations.size());
+        }
+        for (String conflict : conflicts) {
+            sb.append("\nSkipped ").append(conflict);
+        }
+        for (String error : errors) {
+            sb.append("\nFailed ").append(error);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * The undo journal. Each entry is flushed as soon as its operation has
+     * finished.
+     */
+    private static class Journal implements AutoCloseable {
+        private final Writer writer;
+        private int count;
+        
+        Journal(File file) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file), StandardCharsets.UTF_8));
+            writer.write(JOURNAL_HEADER);
+            writer.write('\n');
+            writer.flush();
+        }
+        
+        synchronized void record(RenameOperation op, boolean moved) throws IOException {
+            writer.write((moved ? MOVE : COPY) + '\t' + op.getSource().getAbsolutePath() + '\t' 
+                    + op.getTarget().getAbsolutePath() + '\n');
+            writer.flush();
+            count++;
+        }
+        
+        synchronized int getCount() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+    
+    /**
+     * Runs operations[from] to operations[to - 1], splitting the range in half
+     * until it is no more than LEAF_SIZE operations
+     */
+    private class RenameTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final boolean copy;
+        private final Journal journal;
+        private final int from;
+        private final int to;
+        
+        RenameTask(boolean copy, Journal journal, int from, int to) {
+            this.copy = copy;
+            this.journal = journal;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    RenameOperation op = operations.get(i);
+                    try {
+                        transfer(op, copy, journal);
+                    } catch (IOException ex) {
+                        errors.add(op.getSource().getName() + ": " + ex);
+                    }
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RenameTask(copy, journal, from, mid), 
+                        new RenameTask(copy, journal, mid, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.images;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads the EXIF values of every image in a folder. The files are split 
+ * between the processors with a fork/join pool, so a folder of several 
+ * thousand RAW files on an SSD is read in a few seconds.
+ * @author John Murphy
+ */
+public class ImageScanner {
+    /** Files read by one fork/join task without splitting */
+    private static final int LEAF_SIZE = 8;
+    private static final Set<String> EXTENSIONS = new HashSet<>(Arrays.asList(
+            "jpg", "jpeg", "cr2", "cr3", "nef", "nrw", "arw", "srf", "sr2", 
+            "dng", "pef", "orf", "rw2", "raf", "tif", "tiff"));
+    
+    private ImageScanner() {
+    }
+    
+    /**
+     * @param file File
+     * @return True if the file extension is a supported image format
+     */
+    public static boolean isImage(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+    
+    /**
+     * Read the EXIF values of the images in the folder. Sub folders are not searched.
+     * @param folder Image folder
+     * @param zone Time zone of the camera clock
+     * @return One entry per image, sorted by filename. Files that could not 
+     * be read have an error and no time
+     * @throws IOException If the folder cannot be listed
+     */
+    public static ImageInfo[] scan(File folder, TimeZone zone) throws IOException {
+        File[] files = folder.listFiles(f -> f.isFile() && isImage(f));
+        if (files == null) {
+            throw new IOException("Cannot read folder " + folder);
+        }
+        Arrays.sort(files);
+        ImageInfo[] images = new ImageInfo[files.length];
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            pool.invoke(new ScanTask(files, images, zone, 0, files.length));
+        } finally {
+            pool.shutdown();
+        }
+        return images;
+    }
+    
+    /**
+     * Reads files[from] to files[to - 1], splitting the range in half until 
+     * it is no more than LEAF_SIZE files
+     */
+    private static class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final File[] files;
+        private final ImageInfo[] images;
+        private final TimeZone zone;
+        private final int from;
+        private final int to;
+        
+        ScanTask(File[] files, ImageInfo[] images, TimeZone zone, int from, int to) {
+            this.files = files;
+            this.images = images;
+            this.zone = zone;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        images[i] = ExifReader.read(files[i], zone);
+                    } catch (IOException ex) {
+                        images[i] = new ImageInfo(files[i], ex.getMessage());
+                    }
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScanTask(files, images, zone, from, mid), 
+                        new ScanTask(files, images, zone, mid, to));
+            }
+        }
+    }
+}
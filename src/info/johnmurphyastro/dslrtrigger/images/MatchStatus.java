@@ -0,0 +1,51 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.images;
+
+/**
+ * How an image and a log row were matched
+ * @author John Murphy
+ */
+public enum MatchStatus {
+    /** The image was taken at the logged exposure start */
+    MATCHED("Matched"),
+    /** The image was taken when the mirror lock button was pressed. The 
+     * camera lost step with the mirror lock presses, so the mirror lock
+     * press took the image and the shutter press only raised the mirror */
+    MIRROR_LOCK_DESYNC("Mirror lock desync"),
+    /** An image without a log row */
+    EXTRA("Extra image"),
+    /** A log row without an image */
+    MISSING("Missing image"),
+    /** The image has no EXIF date, so it could not be matched */
+    NO_TIME("No EXIF time");
+    
+    private final String description;
+    
+    private MatchStatus(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return Description for display to the user
+     */
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.images;
+
+import java.io.File;
+
+/**
+ * Gives one image its log row filename. Immutable class.
+ * @author John Murphy
+ */
+public class RenameOperation {
+    private final File source;
+    private final File target;
+    private final int n;
+
+    /**
+     * @param source Image file
+     * @param target Image file with the log row filename and the image's extension
+     * @param n Log row number
+     */
+    RenameOperation(File source, File target, int n) {
+        this.source = source;
+        this.target = target;
+        this.n = n;
+    }
+
+    /**
+     * @return Image file
+     */
+    public File getSource() {
+        return source;
+    }
+
+    /**
+     * @return Image file with the log row filename and the image's extension
+     */
+    public File getTarget() {
+        return target;
+    }
+
+    /**
+     * @return Log row number
+     */
+    public int getN() {
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return source.getName() + " -> " + target;
+    }
+}
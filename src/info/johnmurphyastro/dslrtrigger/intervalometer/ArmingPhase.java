@@ -0,0 +1,144 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
+import info.johnmurphyastro.dslrtrigger.usbswitch.NoOpSwitch;
+import info.johnmurphyastro.dslrtrigger.usbswitch.ShutterSwitch;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+/**
+ * Pre-flight arming phase, run in the gap before the first button press.
+ * Without it, the first shot of the night runs IntervalometerCalc, the switch
+ * commands, the log formatting and the wait loop in interpreted mode, so it
+ * would be the least accurate shot of the sequence.
+ * 
+ * The hot path is run many times against a NoOpSwitch so that the JIT compiles
+ * it, the wait loop's wake up error is measured, and the real USB switch is
+ * checked by sending it the (harmless) release command.
+ * @author John Murphy
+ */
+class ArmingPhase {
+    /** Enough invocations for the hot path to be fully compiled */
+    private static final int WARM_UP_CYCLES = 20_000;
+    /** Every Nth warm up cycle waits for a future time so the fine tune sleep runs */
+    private static final int FINE_TUNE_EVERY = 50;
+    private static final int FINE_TUNE_WAIT_MS = 2;
+    private static final int JITTER_SAMPLES = 50;
+    private static final int JITTER_WAIT_MS = 10;
+    private static final int SWITCH_CHECKS = 3;
+    
+    private final IntervalometerData intervalometerData;
+    private final ExposureReport report;
+
+    /**
+     * @param intervalometerData Sequence settings used to drive the hot path
+     * @param report The sequence report. It is not written to.
+     */
+    ArmingPhase(IntervalometerData intervalometerData, ExposureReport report) {
+        this.intervalometerData = intervalometerData;
+        this.report = report;
+    }
+
+    /**
+     * Warm up the hot path, measure the wait loop jitter and check the switch.
+     * The warm up and jitter measurement stop early if the deadline is reached.
+     * @param usbSwitch The switch that will take the shots
+     * @param deadline Finish by this time (ms since epoch)
+     * @return Arming measurements
+     * @throws IOException If the switch could not be written to
+     * @throws InterruptedException If the user pressed stop
+     */
+    ArmingReport arm(ShutterSwitch usbSwitch, long deadline) throws IOException, InterruptedException {
+        long warmUpStart = TriggerClock.currentTimeMillis();
+        ShutterSwitch noOpSwitch = new NoOpSwitch();
+        // Use a copy of the report so that the shot count is not incremented
+        ExposureReport warmUpReport = report.createWarmUpCopy();
+        BufferedWriter nullWriter = new BufferedWriter(new NullWriter());
+        int cycles = 0;
+        for (; cycles < WARM_UP_CYCLES && TriggerClock.currentTimeMillis() < deadline; cycles++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            IntervalometerCalc times = new IntervalometerCalc(intervalometerData, TriggerClock.currentTimeMillis());
+            long now = TriggerClock.currentTimeMillis();
+            if (cycles % FINE_TUNE_EVERY == 0 && now + FINE_TUNE_WAIT_MS < deadline) {
+                // A few ms ahead, so the loop runs its short sleep branch
+                Intervalometer.waitUntilTime(now + FINE_TUNE_WAIT_MS, null);
+            } else {
+                // A time in the past, so the wait returns immediately
+                Intervalometer.waitUntilTime(times.getMirrorLockButtonPressTime() - 60_000, null);
+            }
+            long pressTime = noOpSwitch.pressShutterButton();
+            Date exposureStartTime = times.getExposureStartTime(pressTime);
+            long releaseTime = noOpSwitch.releaseShutterButton();
+            Date exposureEndTime = times.getExposureEndTime(releaseTime);
+            warmUpReport.logExposureTime(nullWriter, exposureStartTime, exposureEndTime, times.getExposure(),
+                    pressTime, releaseTime, pressTime, releaseTime);
+        }
+        long warmUpDuration = TriggerClock.currentTimeMillis() - warmUpStart;
+        
+        // Measure how late the wait loop wakes up
+        long totalLate = 0;
+        long maxLate = 0;
+        int samples = 0;
+        for (; samples < JITTER_SAMPLES 
+                && TriggerClock.currentTimeMillis() + JITTER_WAIT_MS < deadline; samples++) {
+            long target = TriggerClock.currentTimeMillis() + JITTER_WAIT_MS;
+            Intervalometer.waitUntilTime(target, null);
+            long late = TriggerClock.currentTimeMillis() - target;
+            totalLate += late;
+            maxLate = Math.max(maxLate, late);
+        }
+        double meanLate = samples > 0 ? (double) totalLate / samples : 0;
+        
+        // The button is not pressed yet, so releasing it checks the switch without taking a shot
+        long maxWriteTime = 0;
+        for (int i = 0; i < SWITCH_CHECKS; i++) {
+            long start = TriggerClock.currentTimeMillis();
+            long end = usbSwitch.releaseShutterButton();
+            maxWriteTime = Math.max(maxWriteTime, end - start);
+            if (TriggerClock.currentTimeMillis() >= deadline) {
+                break;
+            }
+        }
+        return new ArmingReport(cycles, warmUpDuration, samples, meanLate, maxLate, maxWriteTime);
+    }
+    
+    /**
+     * Discards everything written to it
+     */
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
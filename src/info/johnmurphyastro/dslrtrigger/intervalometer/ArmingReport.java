@@ -0,0 +1,99 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+/**
+ * Results of the pre-flight arming phase. Immutable class.
+ * @author John Murphy
+ */
+public class ArmingReport {
+    private final int warmUpCycles;
+    private final long warmUpDuration;
+    private final int jitterSamples;
+    private final double meanWakeUpError;
+    private final long maxWakeUpError;
+    private final long maxSwitchWriteTime;
+
+    /**
+     * @param warmUpCycles Number of times the hot path was run against the no-op switch
+     * @param warmUpDuration Time taken to run the warm up cycles in milliseconds
+     * @param jitterSamples Number of timed waits used to measure wake up error
+     * @param meanWakeUpError Mean wake up lateness in milliseconds
+     * @param maxWakeUpError Maximum wake up lateness in milliseconds
+     * @param maxSwitchWriteTime Maximum time taken to write a USB switch command in milliseconds
+     */
+    ArmingReport(int warmUpCycles, long warmUpDuration, int jitterSamples,
+            double meanWakeUpError, long maxWakeUpError, long maxSwitchWriteTime) {
+        this.warmUpCycles = warmUpCycles;
+        this.warmUpDuration = warmUpDuration;
+        this.jitterSamples = jitterSamples;
+        this.meanWakeUpError = meanWakeUpError;
+        this.maxWakeUpError = maxWakeUpError;
+        this.maxSwitchWriteTime = maxSwitchWriteTime;
+    }
+
+    /**
+     * @return Number of times the hot path was run against the no-op switch
+     */
+    public int getWarmUpCycles() {
+        return warmUpCycles;
+    }
+
+    /**
+     * @return Time taken to run the warm up cycles in milliseconds
+     */
+    public long getWarmUpDuration() {
+        return warmUpDuration;
+    }
+
+    /**
+     * @return Number of timed waits used to measure the wake up error
+     */
+    public int getJitterSamples() {
+        return jitterSamples;
+    }
+
+    /**
+     * @return Mean wake up lateness in milliseconds
+     */
+    public double getMeanWakeUpError() {
+        return meanWakeUpError;
+    }
+
+    /**
+     * @return Maximum wake up lateness in milliseconds
+     */
+    public long getMaxWakeUpError() {
+        return maxWakeUpError;
+    }
+
+    /**
+     * @return Maximum time taken to write a USB switch command in milliseconds
+     */
+    public long getMaxSwitchWriteTime() {
+        return maxSwitchWriteTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Armed: %d warm up cycles in %d ms. "
+                + "Wake up error mean %.1f ms, max %d ms. Switch write max %d ms",
+                warmUpCycles, warmUpDuration, meanWakeUpError, maxWakeUpError, maxSwitchWriteTime);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.MessageListener;
+import info.johnmurphyastro.dslrtrigger.calibration.CalibrationShot;
+import info.johnmurphyastro.dslrtrigger.calibration.LagCalibrationSession;
+import info.johnmurphyastro.dslrtrigger.usbswitch.ShutterSwitch;
+import java.io.IOException;
+
+/**
+ * Take a bulb image of the USB Switch LED to determine shutter close time delay
+ * @author John Murphy
+ */
+class CalibrateShutterClose {
+
+    private final ShutterSwitch usbSwitch;
+
+    /**
+     * @param usbSwitch USB Switch
+     */
+    CalibrateShutterClose(ShutterSwitch usbSwitch) {
+        this.usbSwitch = usbSwitch;
+    }
+
+    /**
+     * Take a test shot to help determine the shutter close lag time.
+     * The DSLR should be in bulb mode. The USB switch is pressed for exposure
+     * milliseconds, released, and then pulsed for LagCalibrationSession.LED_PULSE_MS
+     * after shutterCloseDelay milliseconds. The pulse should be too short to 
+     * start another shot, but the switch's 'Pressed' LED lights up. Whether the
+     * camera ignores it cannot be detected, so the user is warned to check for
+     * extra images (see LagCalibrationSession.getRoundWarning()).
+     * Due to the shutter close lag, the shutter is still open after the switch 
+     * is released. If the captured image shows the 'Pressed' LED pulse, the 
+     * shutterCloseDelay is too short. If not, it is too long. The aim is to
+     * find the transition.
+     * 
+     * @param shutterCloseDelay Pulse the LED this number of milliseconds after the release
+     * @param exposure Bulb exposure in milliseconds. Must be longer than the shutter open lag
+     * @param mirrorLock True if the camera is using mirror lock mode
+     * @param listener Display messages to the user
+     * @throws IOException 
+     */
+    void takeCalibrationImage(int shutterCloseDelay, int exposure, boolean mirrorLock, 
+            MessageListener listener) throws IOException {
+        if (mirrorLock){
+            CalibrateShutterOpen.lockMirror(usbSwitch);
+        }
+        long[] times;
+        try {
+            times = takeBulbExposure(shutterCloseDelay, exposure);
+        } catch (InterruptedException ex) {
+            return;
+        }
+        // Tell the user the actual delay between the release and the LED pulse
+        listener.showMessage(
+                "LED was pulsed " + (times[1] - times[0]) + " ms after the switch was released",
+                "Calibrate shutter close delay");
+    }
+    
+    /**
+     * Take one of a calibration session's test shots. A bulb exposure of
+     * session.getExposure() is followed by an LED pulse the shot's delay
+     * after the switch is released.
+     * @param session Calibration session
+     * @param index Index of the shot to take
+     * @return The session with the shot taken
+     * @throws IOException
+     * @throws InterruptedException 
+     */
+    LagCalibrationSession takeTestShot(LagCalibrationSession session, int index) 
+            throws IOException, InterruptedException {
+        if (session.isMirrorLock()) {
+            CalibrateShutterOpen.lockMirror(usbSwitch);
+        }
+        CalibrationShot shot = session.getShots().get(index);
+        long[] times = takeBulbExposure(shot.getDelay(), session.getExposure());
+        return session.withShotTaken(index, times[0], times[1]);
+    }
+    
+    /**
+     * Relies on the camera ignoring the LED_PULSE_MS pulse. If it does not, it
+     * starts another exposure, or with mirror lock flips the mirror up. 
+     * @param shutterCloseDelay Pulse the LED this number of milliseconds after the release
+     * @param exposure Bulb exposure in milliseconds
+     * @return The time the switch was released, and the time the LED pulse started
+     * @throws IOException
+     * @throws InterruptedException The switch is released, but the LED might not have been pulsed
+     */
+    private long[] takeBulbExposure(int shutterCloseDelay, int exposure) 
+            throws IOException, InterruptedException {
+        long pressTime = usbSwitch.pressShutterButton();
+        long releaseTime;
+        try {
+            Intervalometer.waitUntilTime(pressTime + exposure, null);
+        } finally {
+            // Never leave the switch pressed
+            releaseTime = usbSwitch.releaseShutterButton();
+        }
+        Intervalometer.waitUntilTime(releaseTime + shutterCloseDelay, null);
+        long pulseTime = usbSwitch.pressShutterButton();
+        try {
+            Intervalometer.waitUntilTime(pulseTime + LagCalibrationSession.LED_PULSE_MS, null);
+        } finally {
+            usbSwitch.releaseShutterButton();
+        }
+        return new long[]{releaseTime, pulseTime};
+    }
+}
@@ -19,8 +19,10 @@
 package info.johnmurphyastro.dslrtrigger.intervalometer;
 
 import info.johnmurphyastro.dslrtrigger.MessageListener;
+import info.johnmurphyastro.dslrtrigger.calibration.CalibrationShot;
+import info.johnmurphyastro.dslrtrigger.calibration.LagCalibrationSession;
 import info.johnmurphyastro.dslrtrigger.data.MinTime;
-import info.johnmurphyastro.dslrtrigger.usbswitch.UsbSwitch;
+import info.johnmurphyastro.dslrtrigger.usbswitch.ShutterSwitch;
 import java.io.IOException;
 
 /**
@@ -29,12 +31,12 @@ import java.io.IOException;
  */
 class CalibrateShutterOpen {
 
-    private final UsbSwitch usbSwitch;
+    private final ShutterSwitch usbSwitch;
 
     /**
      * @param usbSwitch USB Switch
      */
-    CalibrateShutterOpen(UsbSwitch usbSwitch) {
+    CalibrateShutterOpen(ShutterSwitch usbSwitch) {
         this.usbSwitch = usbSwitch;
     }
 
@@ -55,18 +57,7 @@ class CalibrateShutterOpen {
      */
     void takeCalibrationImage(int shutterOpenDelay, boolean mirrorLock, MessageListener listener) throws IOException {
         if (mirrorLock){
-            // The first press will flip up the mirror
-            usbSwitch.pressShutterButton();
-            try {
-                // Make this first press long enough to ensure that the camera wakes up
-                Thread.sleep(MinTime.MIRROR_MOVE_MS / 2);
-            } catch (InterruptedException ex) {}
-            // The mirror stays up when the button is released.
-            usbSwitch.releaseShutterButton();
-            try {
-                // Wait enough time so that the camera detects the button release
-                Thread.sleep(MinTime.MIRROR_MOVE_MS / 2);
-            } catch (InterruptedException ex) {}
+            lockMirror(usbSwitch);
         }
         // Press the switch for shutterOpenDelay milliseconds
         long pressTime = usbSwitch.pressShutterButton();
@@ -79,4 +70,50 @@ class CalibrateShutterOpen {
                 "LED was illuminated for " + (releaseTime - pressTime) + " ms",
                 "Calibrate shutter open delay");
     }
+    
+    /**
+     * Take one of a calibration session's test shots. The switch is pressed
+     * for the shot's delay.
+     * @param session Calibration session
+     * @param index Index of the shot to take
+     * @return The session with the shot taken
+     * @throws IOException
+     * @throws InterruptedException 
+     */
+    LagCalibrationSession takeTestShot(LagCalibrationSession session, int index) 
+            throws IOException, InterruptedException {
+        if (session.isMirrorLock()) {
+            lockMirror(usbSwitch);
+        }
+        CalibrationShot shot = session.getShots().get(index);
+        long pressTime = usbSwitch.pressShutterButton();
+        long releaseTime;
+        try {
+            Intervalometer.waitUntilTime(pressTime + shot.getDelay(), null);
+        } finally {
+            // Never leave the switch pressed
+            releaseTime = usbSwitch.releaseShutterButton();
+        }
+        return session.withShotTaken(index, pressTime, releaseTime);
+    }
+    
+    /**
+     * Flip the mirror up. Takes MinTime.MIRROR_MOVE_MS
+     * @param usbSwitch USB Switch
+     * @throws IOException 
+     */
+    static void lockMirror(ShutterSwitch usbSwitch) throws IOException {
+        // The first press will flip up the mirror
+        usbSwitch.pressShutterButton();
+        try {
+            // Make this first press long enough to ensure that the camera wakes up
+            Thread.sleep(MinTime.MIRROR_MOVE_MS / 2);
+        } catch (InterruptedException ex) {}
+        // The mirror stays up when the button is released.
+        usbSwitch.releaseShutterButton();
+        try {
+            // Wait enough time so that the camera detects the button release
+            Thread.sleep(MinTime.MIRROR_MOVE_MS / 2);
+        } catch (InterruptedException ex) {}
+    }
 }
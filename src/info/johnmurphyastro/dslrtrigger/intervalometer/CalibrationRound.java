@@ -0,0 +1,76 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.ProgressListener;
+import info.johnmurphyastro.dslrtrigger.calibration.LagCalibrationSession;
+import info.johnmurphyastro.dslrtrigger.calibration.LagType;
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import info.johnmurphyastro.dslrtrigger.data.MinTime;
+import info.johnmurphyastro.dslrtrigger.usbswitch.ShutterSwitch;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Takes a shutter open or close lag calibration session's pending test shots
+ * @author John Murphy
+ */
+class CalibrationRound {
+    
+    private final CalibrateShutterOpen openLag;
+    private final CalibrateShutterClose closeLag;
+    
+    /**
+     * @param usbSwitch USB Switch
+     */
+    CalibrationRound(ShutterSwitch usbSwitch) {
+        this.openLag = new CalibrateShutterOpen(usbSwitch);
+        this.closeLag = new CalibrateShutterClose(usbSwitch);
+    }
+    
+    /**
+     * Take the session's pending test shots back to back, one every 
+     * session.getShotInterval() milliseconds. The session file is saved after
+     * every shot, so it always logs the shots taken so far.
+     * @param session Calibration session with a planned round
+     * @param sessionFile Session file
+     * @param listener Told the number of shots taken
+     * @return The session with the shots taken
+     * @throws IOException
+     * @throws InterruptedException The round was stopped. The file logs the shots already taken
+     */
+    LagCalibrationSession take(LagCalibrationSession session, File sessionFile, 
+            ProgressListener listener) throws IOException, InterruptedException {
+        final int interval = session.getShotInterval();
+        long nextPressTime = TriggerClock.currentTimeMillis() + MinTime.BEFORE_SHOT_MS;
+        int completed = 0;
+        for (int index : session.getPendingShots()) {
+            Intervalometer.waitUntilTime(nextPressTime, null);
+            nextPressTime += interval;
+            if (session.getType() == LagType.CLOSE) {
+                session = closeLag.takeTestShot(session, index);
+            } else {
+                session = openLag.takeTestShot(session, index);
+            }
+            session.save(sessionFile);
+            listener.setProgress(++completed);
+        }
+        return session;
+    }
+}
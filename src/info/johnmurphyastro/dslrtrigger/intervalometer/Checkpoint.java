@@ -0,0 +1,220 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Sequence progress that is saved after every shot, so that a sequence can be
+ * resumed on the same time grid after a crash or reboot. Immutable class.
+ * @author John Murphy
+ */
+public class Checkpoint {
+    /** Checkpoint file name. The file is saved in the log folder */
+    private static final String FILENAME = "DSLRtrigger.checkpoint";
+    
+    private static final String PLAN_HASH = "plan_hash";
+    private static final String PLAN_FILE = "plan_file";
+    private static final String LOG_FILE = "log_file";
+    private static final String NEXT_SHOT = "next_shot";
+    private static final String N_SHOTS = "n_shots";
+    private static final String LOG_ROWS = "log_rows";
+    private static final String GRID_ORIGIN = "grid_origin";
+    private static final String GRID_OFFSET = "grid_offset";
+    
+    private final String planHash;
+    private final File planFile;
+    private final File logFile;
+    private final int nextShot;
+    private final int nShots;
+    private final int logRows;
+    private final long gridOrigin;
+    private final long gridOffset;
+
+    /**
+     * @param planHash Hash of the plan, used to check the plan has not changed
+     * @param planFile Copy of the plan saved when the sequence started
+     * @param logFile The sequence log file
+     * @param nShots Total number of shots in the plan
+     */
+    Checkpoint(String planHash, File planFile, File logFile, int nShots) {
+        this(planHash, planFile, logFile, 0, nShots, 0, 0, 0);
+    }
+
+    private Checkpoint(String planHash, File planFile, File logFile, int nextShot, int nShots,
+            int logRows, long gridOrigin, long gridOffset) {
+        this.planHash = planHash;
+        this.planFile = planFile;
+        this.logFile = logFile;
+        this.nextShot = nextShot;
+        this.nShots = nShots;
+        this.logRows = logRows;
+        this.gridOrigin = gridOrigin;
+        this.gridOffset = gridOffset;
+    }
+
+    /**
+     * @param nextShot Index of the next shot to take
+     * @param logRows Number of rows written to the log file
+     * @param gridOrigin Nominal exposure start time of the first shot
+     * @param gridOffset Amount the grid has been shifted by overruns or pauses
+     * @return A copy of this checkpoint with the new progress
+     */
+    Checkpoint withProgress(int nextShot, int logRows, long gridOrigin, long gridOffset) {
+        return new Checkpoint(planHash, planFile, logFile, nextShot, nShots, logRows, gridOrigin, gridOffset);
+    }
+
+    /**
+     * @param logFolder The sequence log folder
+     * @return The checkpoint file for sequences logged in this folder
+     */
+    public static File getFile(File logFolder) {
+        return new File(logFolder, FILENAME);
+    }
+
+    /**
+     * @param file Checkpoint file
+     * @return The checkpoint
+     * @throws IOException
+     * @throws InvalidDataException The file is not a valid checkpoint
+     */
+    public static Checkpoint load(File file) throws IOException, InvalidDataException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        try {
+            return new Checkpoint(
+                    getRequired(properties, PLAN_HASH),
+                    new File(getRequired(properties, PLAN_FILE)),
+                    new File(getRequired(properties, LOG_FILE)),
+                    Integer.parseInt(getRequired(properties, NEXT_SHOT)),
+                    Integer.parseInt(getRequired(properties, N_SHOTS)),
+                    Integer.parseInt(getRequired(properties, LOG_ROWS)),
+                    Long.parseLong(getRequired(properties, GRID_ORIGIN)),
+                    Long.parseLong(getRequired(properties, GRID_OFFSET)));
+        } catch (NumberFormatException ex) {
+            throw new InvalidDataException("Invalid checkpoint " + file + ": " + ex.getMessage());
+        }
+    }
+
+    private static String getRequired(Properties properties, String key) throws InvalidDataException {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new InvalidDataException("Checkpoint has no '" + key + "'");
+        }
+        return value;
+    }
+
+    /**
+     * Save the checkpoint. A temporary file is written and then renamed, so a
+     * crash while saving leaves the previous checkpoint intact.
+     * @param file Checkpoint file
+     * @throws IOException 
+     */
+    void save(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(PLAN_HASH, planHash);
+        properties.setProperty(PLAN_FILE, planFile.getPath());
+        properties.setProperty(LOG_FILE, logFile.getPath());
+        properties.setProperty(NEXT_SHOT, Integer.toString(nextShot));
+        properties.setProperty(N_SHOTS, Integer.toString(nShots));
+        properties.setProperty(LOG_ROWS, Integer.toString(logRows));
+        properties.setProperty(GRID_ORIGIN, Long.toString(gridOrigin));
+        properties.setProperty(GRID_OFFSET, Long.toString(gridOffset));
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            properties.store(out, null);
+            out.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), 
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return True if at least one shot was taken before the checkpoint was saved
+     */
+    public boolean isResume() {
+        return nextShot > 0;
+    }
+
+    /**
+     * @return Hash of the plan, used to check the plan has not changed
+     */
+    public String getPlanHash() {
+        return planHash;
+    }
+
+    /**
+     * @return Copy of the plan saved when the sequence started
+     */
+    public File getPlanFile() {
+        return planFile;
+    }
+
+    /**
+     * @return The sequence log file
+     */
+    public File getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * @return Index of the next shot to take
+     */
+    public int getNextShot() {
+        return nextShot;
+    }
+
+    /**
+     * @return Total number of shots in the plan
+     */
+    public int getNumberOfShots() {
+        return nShots;
+    }
+
+    /**
+     * @return Number of rows written to the log file
+     */
+    public int getLogRows() {
+        return logRows;
+    }
+
+    /**
+     * @return Nominal exposure start time of the first shot
+     */
+    public long getGridOrigin() {
+        return gridOrigin;
+    }
+
+    /**
+     * @return Amount the grid has been shifted by overruns or pauses
+     */
+    public long getGridOffset() {
+        return gridOffset;
+    }
+}
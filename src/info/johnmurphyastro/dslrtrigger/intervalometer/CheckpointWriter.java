@@ -0,0 +1,138 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Saves checkpoints on its own thread. Checkpoint.save syncs the file to disk
+ * and renames it, which can take a long time on an SD card or USB disk. Done
+ * on the Intervalometer thread, that time would come out of the gap before
+ * the next shot.
+ *
+ * If a checkpoint is submitted while the previous one is still being saved,
+ * only the latest is kept.
+ * @author John Murphy
+ */
+class CheckpointWriter extends Thread {
+    private final File file;
+    /** Waiting to be saved, or null */
+    private Checkpoint pending;
+    private boolean saving;
+    private boolean running = true;
+
+    /**
+     * After construction, use Thread.start() to start saving.
+     * @param file The checkpoint file
+     */
+    CheckpointWriter(File file) {
+        super("Checkpoint Writer Thread");
+        this.file = file;
+        setDaemon(true);
+    }
+
+    /**
+     * Save the checkpoint. Returns without waiting for it to be saved.
+     * @param checkpoint The latest sequence progress
+     */
+    synchronized void submit(Checkpoint checkpoint) {
+        pending = checkpoint;
+        notifyAll();
+    }
+
+    /**
+     * Wait until every submitted checkpoint has been saved, or until the time
+     * is reached. If the thread is interrupted, returns at once and leaves
+     * the interrupt set for the caller's next wait.
+     * @param time Stop waiting at this time
+     * @return True if the checkpoints have been saved
+     */
+    synchronized boolean awaitSaved(long time) {
+        while (pending != null || saving) {
+            long delay = time - TriggerClock.currentTimeMillis();
+            if (delay <= 0) {
+                return false;
+            }
+            try {
+                wait(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Save the last submitted checkpoint, then stop. Waits for the thread to
+     * finish, so the checkpoint file can then be deleted safely.
+     */
+    void shutdown() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        boolean interrupted = false;
+        while (isAlive()) {
+            try {
+                join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Checkpoint checkpoint;
+            synchronized (this) {
+                while (pending == null && running) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // Not interrupted by this program. Keep saving until shutdown
+                    }
+                }
+                if (pending == null) {
+                    return;
+                }
+                checkpoint = pending;
+                pending = null;
+                saving = true;
+            }
+            try {
+                checkpoint.save(file);
+            } catch (IOException ex) {
+                // The sequence is more important than the checkpoint
+                System.err.println("Failed to save checkpoint: " + ex.getMessage());
+            } finally {
+                synchronized (this) {
+                    saving = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
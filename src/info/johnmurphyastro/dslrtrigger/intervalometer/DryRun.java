@@ -0,0 +1,315 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
+import info.johnmurphyastro.dslrtrigger.data.SequencePlan;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Simulates a sequence plan without using the USB switch. The shots are 
+ * scheduled by the same Timeline, ShotScheduler and IntervalometerCalc code
+ * as a real run, so the start alignment rounding, earliest start push forward
+ * and overrun policies all apply. Every button press and release is assumed
+ * to happen exactly on time.
+ * @author John Murphy
+ */
+public class DryRun {
+    private final int nShots;
+    private final int[] segment;
+    /** Mirror lock button press and release times, or 0 if mirror lock is not used */
+    private final long[] mlPress;
+    private final long[] mlRelease;
+    private final long[] sbPress;
+    private final long[] sbRelease;
+    private final long[] exposureStart;
+    private final long[] exposureEnd;
+    /** Segment start or overrun comments, mostly null */
+    private final String[] comments;
+    private int nOverruns;
+    /** Time taken to run the simulation in milliseconds */
+    private final long simulationTime;
+
+    /**
+     * @param plan The sequence plan
+     * @param now Simulate starting the sequence at this time
+     */
+    private DryRun(SequencePlan plan, long now) {
+        long startNanos = System.nanoTime();
+        Timeline timeline = Timeline.compile(plan, now);
+        nShots = timeline.getNumberOfShots();
+        segment = new int[nShots];
+        mlPress = new long[nShots];
+        mlRelease = new long[nShots];
+        sbPress = new long[nShots];
+        sbRelease = new long[nShots];
+        exposureStart = new long[nShots];
+        exposureEnd = new long[nShots];
+        comments = new String[nShots];
+        
+        ShotScheduler scheduler = new ShotScheduler(timeline);
+        IntervalometerCalc times = scheduler.first(now);
+        for (int n = 0; ; n++) {
+            IntervalometerData data = scheduler.getSegment();
+            segment[n] = scheduler.getSegmentIndex();
+            if (data.isMirrorLockSet() && data.getMirrorUpDuration() > 0) {
+                mlPress[n] = times.getMirrorLockButtonPressTime();
+                mlRelease[n] = times.getMirrorLockButtonReleaseTime();
+            }
+            sbPress[n] = times.getShutterButtonPressTime();
+            sbRelease[n] = times.getShutterButtonReleaseTime();
+            exposureStart[n] = times.getStartT();
+            exposureEnd[n] = data.inBulbMode() 
+                    ? times.getExposureEndTime(sbRelease[n]).getTime() 
+                    : exposureStart[n] + times.getExposure();
+            comments[n] = scheduler.getShotComment();
+            if (comments[n] != null && comments[n].contains("Overrun")) {
+                nOverruns++;
+            }
+            if (!scheduler.hasNext()) {
+                break;
+            }
+            // The next shot is calculated as soon as the log row has been written
+            times = scheduler.next(sbRelease[n], sbRelease[n]);
+        }
+        simulationTime = (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Simulate the sequence plan
+     * @param plan The sequence plan
+     * @param now Simulate starting the sequence at this time
+     * @return The simulated timeline
+     */
+    public static DryRun simulate(SequencePlan plan, long now) {
+        return new DryRun(plan, now);
+    }
+
+    /**
+     * @return Number of shots
+     */
+    public int getNumberOfShots() {
+        return nShots;
+    }
+
+    /**
+     * @return Time from the first button press to the end of the last exposure in milliseconds
+     */
+    public long getTotalDuration() {
+        return exposureEnd[nShots - 1] - getFirstPressTime();
+    }
+
+    /**
+     * @return Fraction of the time from the first exposure start to the last 
+     * exposure end that the shutter is open
+     */
+    public double getDutyCycle() {
+        long span = exposureEnd[nShots - 1] - exposureStart[0];
+        if (span <= 0) {
+            return 0;
+        }
+        long open = 0;
+        for (int n = 0; n < nShots; n++) {
+            open += exposureEnd[n] - exposureStart[n];
+        }
+        return (double) open / span;
+    }
+
+    /**
+     * @return Number of shots that could not start on their grid time
+     */
+    public int getNumberOfOverruns() {
+        return nOverruns;
+    }
+
+    /**
+     * @param n Shot index (from 1). Must be less than the number of shots.
+     * @return Time from the end of the previous exposure to the start of this one in milliseconds
+     */
+    public long getGap(int n) {
+        return exposureStart[n] - exposureEnd[n - 1];
+    }
+
+    /**
+     * @return Summary of the dry run for display to the user
+     */
+    public String getSummary() {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        StringBuilder sb = new StringBuilder();
+        sb.append("Shots: ").append(nShots).append('\n');
+        sb.append("First button press: ").append(sdf.format(new Date(getFirstPressTime()))).append('\n');
+        sb.append("Last exposure end: ").append(sdf.format(new Date(exposureEnd[nShots - 1]))).append('\n');
+        sb.append("Total duration: ").append(formatDuration(getTotalDuration())).append('\n');
+        sb.append(String.format("Duty cycle: %.1f%%", 100 * getDutyCycle())).append('\n');
+        if (nShots > 1) {
+            int minGapShot = 1;
+            int maxGapShot = 1;
+            for (int n = 2; n < nShots; n++) {
+                if (getGap(n) < getGap(minGapShot)) {
+                    minGapShot = n;
+                }
+                if (getGap(n) > getGap(maxGapShot)) {
+                    maxGapShot = n;
+                }
+            }
+            sb.append("Shortest gap: ").append(getGap(minGapShot)).append(" ms before shot ")
+                    .append(minGapShot + 1).append('\n');
+            sb.append("Longest gap: ").append(formatDuration(getGap(maxGapShot))).append(" before shot ")
+                    .append(maxGapShot + 1).append('\n');
+        }
+        sb.append("Overruns: ").append(nOverruns).append('\n');
+        sb.append("Simulation time: ").append(simulationTime).append(" ms");
+        return sb.toString();
+    }
+
+    /**
+     * Write the CSV and Chrome trace files
+     * @param csvFile CSV file
+     * @param traceFile Chrome trace JSON file
+     * @throws IOException 
+     */
+    public void export(File csvFile, File traceFile) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
+            writeCsv(writer);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(traceFile), StandardCharsets.UTF_8))) {
+            writeChromeTrace(writer);
+        }
+    }
+
+    /**
+     * Write one row per shot. Times are local time with millisecond resolution.
+     * @param writer Destination. Not closed by this method.
+     * @throws IOException 
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        TimeFormatter tf = new TimeFormatter();
+        StringBuilder sb = new StringBuilder(256);
+        writer.write("Shot,Segment,ML press,ML release,SB press,SB release,Start time,End time,Exposure,Comment\n");
+        for (int n = 0; n < nShots; n++) {
+            sb.setLength(0);
+            sb.append(n + 1).append(',').append(segment[n] + 1).append(',');
+            if (mlPress[n] != 0) {
+                tf.append(sb, mlPress[n]).append(',');
+                tf.append(sb, mlRelease[n]).append(',');
+            } else {
+                sb.append(",,");
+            }
+            tf.append(sb, sbPress[n]).append(',');
+            tf.append(sb, sbRelease[n]).append(',');
+            tf.append(sb, exposureStart[n]).append(',');
+            tf.append(sb, exposureEnd[n]).append(',');
+            sb.append(exposureEnd[n] - exposureStart[n]).append(',');
+            if (comments[n] != null) {
+                sb.append('"').append(comments[n].replace("\"", "\"\"")).append('"');
+            }
+            sb.append('\n');
+            writer.append(sb);
+        }
+    }
+
+    /**
+     * Write the timeline in the Chrome trace event format, for viewing in 
+     * chrome://tracing or Perfetto. Each shot is shown as an exposure, a 
+     * shutter button press and, if used, a mirror lock button press.
+     * Times are in microseconds from the first button press.
+     * @param writer Destination. Not closed by this method.
+     * @throws IOException 
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+        long origin = getFirstPressTime();
+        StringBuilder sb = new StringBuilder(512);
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":1,\"args\":{\"name\":\"Exposure\"}},\n");
+        writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":2,\"args\":{\"name\":\"Shutter button\"}},\n");
+        writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":3,\"args\":{\"name\":\"Mirror lock button\"}}");
+        for (int n = 0; n < nShots; n++) {
+            sb.setLength(0);
+            String name = "Shot " + (n + 1);
+            appendTraceEvent(sb, name, 1, exposureStart[n] - origin, exposureEnd[n] - exposureStart[n], n);
+            appendTraceEvent(sb, name, 2, sbPress[n] - origin, sbRelease[n] - sbPress[n], n);
+            if (mlPress[n] != 0) {
+                appendTraceEvent(sb, name, 3, mlPress[n] - origin, mlRelease[n] - mlPress[n], n);
+            }
+            writer.append(sb);
+        }
+        writer.write("\n]}\n");
+    }
+
+    private void appendTraceEvent(StringBuilder sb, String name, int tid, long startMs, long durationMs, int n) {
+        sb.append(",\n{\"name\":\"").append(name).append("\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(tid)
+                .append(",\"ts\":").append(startMs * 1000).append(",\"dur\":").append(durationMs * 1000)
+                .append(",\"args\":{\"segment\":").append(segment[n] + 1);
+        if (comments[n] != null && tid == 1) {
+            sb.append(",\"comment\":\"").append(comments[n].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        sb.append("}}");
+    }
+
+    private long getFirstPressTime() {
+        return mlPress[0] != 0 ? mlPress[0] : sbPress[0];
+    }
+
+    private static String formatDuration(long ms) {
+        long seconds = ms / 1000;
+        return String.format("%dh %02dm %02d.%03ds", seconds / 3600, (seconds / 60) % 60, seconds % 60, ms % 1000);
+    }
+
+    /**
+     * Formats times as yyyy-MM-dd HH:mm:ss.SSS. SimpleDateFormat is only used
+     * when the minute changes, so a large timeline can be written quickly.
+     */
+    private static class TimeFormatter {
+        private final SimpleDateFormat minuteFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:");
+        private long minuteStart = Long.MIN_VALUE;
+        private String minutePrefix;
+
+        StringBuilder append(StringBuilder sb, long time) {
+            if (time < minuteStart || time >= minuteStart + 60_000) {
+                minuteStart = time - Math.floorMod(time, 60_000L);
+                minutePrefix = minuteFormat.format(new Date(minuteStart));
+            }
+            int msInMinute = (int) (time - minuteStart);
+            int seconds = msInMinute / 1000;
+            int ms = msInMinute % 1000;
+            sb.append(minutePrefix);
+            if (seconds < 10) {
+                sb.append('0');
+            }
+            sb.append(seconds).append('.');
+            if (ms < 100) {
+                sb.append('0');
+            }
+            if (ms < 10) {
+                sb.append('0');
+            }
+            return sb.append(ms);
+        }
+    }
+}
@@ -18,44 +18,91 @@
  */
 package info.johnmurphyastro.dslrtrigger.intervalometer;
 
+import info.johnmurphyastro.dslrtrigger.clock.OffsetEstimate;
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import info.johnmurphyastro.dslrtrigger.data.ClockData;
+import info.johnmurphyastro.dslrtrigger.data.ExternalTriggerData;
 import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
+import info.johnmurphyastro.dslrtrigger.data.LagStatistics;
 import info.johnmurphyastro.dslrtrigger.data.LogfileData;
 import info.johnmurphyastro.dslrtrigger.data.ObserverData;
+import info.johnmurphyastro.dslrtrigger.data.SequencePlan;
+import info.johnmurphyastro.dslrtrigger.data.ShutterLagProfile;
+import info.johnmurphyastro.dslrtrigger.data.StartAlignment;
+import info.johnmurphyastro.dslrtrigger.data.TriggerData;
+import info.johnmurphyastro.dslrtrigger.eventlog.EventLogFormat;
+import info.johnmurphyastro.dslrtrigger.eventlog.EventLogWriter;
+import info.johnmurphyastro.dslrtrigger.logfile.LogFormatter;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 
 /**
  *
  * @author John Murphy
  */
 class ExposureReport {
-    private final SimpleDateFormat sdf = new SimpleDateFormat("yyyy'y'LL'm'dd'd'_HH'h'mm'm'ss's'");
-    private final SimpleDateFormat imageTime = new SimpleDateFormat("HH.mm.ss.SSS");
     private final SimpleDateFormat observingDate = new SimpleDateFormat("dd MMM YYYY");
     private final ObserverData observerData;
+    private final SequencePlan plan;
+    /** The first segment. Provides the header values */
     private final IntervalometerData intervalometerData;
     private final LogfileData logfileData;
-    private final String colSep;
-    private final int timeStrLength;
+    /** Writes the key, column headers and rows */
+    private final LogFormatter formatter;
+    /** Reference clock settings, or null */
+    private final ClockData clock;
+    /** True to log the NTP server's offset in every row */
+    private final boolean ntpOffsetColumn;
+    /** Calibrations for this camera and mode, or null */
+    private final ShutterLagProfile lagProfile;
+    private final boolean millisecondFilenames;
+    /** Also saves the header, or null */
+    private EventLogWriter eventLog;
     private int nthEntry;
-    private int EXPOSURE_LENGTH = 8;
     
     /**
-     * @param logFileWriter Writes the log file
+     * @param logfileData Log file settings
      * @param observerData
-     * @param columnSeparator 
+     * @param plan The sequence plan. All segments are logged in the same report
      */
     ExposureReport(LogfileData logfileData, ObserverData observerData, 
-            IntervalometerData intervalometerData){
+            SequencePlan plan){
+        this(logfileData, observerData, plan, null, null);
+    }
+    
+    /**
+     * @param logfileData Log file settings
+     * @param observerData
+     * @param plan The sequence plan. All segments are logged in the same report
+     * @param clock Reference clock settings, or null. If an NTP server is set,
+     * each row includes its latest offset.
+     * @param lagProfile Shutter lag calibrations for this camera and mode, or null
+     */
+    ExposureReport(LogfileData logfileData, ObserverData observerData, 
+            SequencePlan plan, ClockData clock, ShutterLagProfile lagProfile){
         this.logfileData = logfileData;
         this.observerData = observerData;
-        this.intervalometerData = intervalometerData;
-        colSep = logfileData.tabSeparatedData() ? "\t" : ", ";
+        this.plan = plan;
+        this.intervalometerData = plan.getFirstSegment();
+        this.clock = clock;
+        this.lagProfile = lagProfile;
+        ntpOffsetColumn = clock != null && clock.getNtpHost() != null;
+        boolean wholeSeconds = true;
+        for (IntervalometerData segment : plan.getSegments()) {
+            wholeSeconds &= segment.getRepeatInterval() % 1000 == 0 
+                    && segment.getStartAlignment() == StartAlignment.SECOND;
+        }
+        // Sub-second cadence. Include milliseconds so that the filenames are unique
+        millisecondFilenames = !wholeSeconds;
+        formatter = new LogFormatter(logfileData.getFilenamePrefix(), millisecondFilenames,
+                logfileData.tabSeparatedData(), logfileData.logAllEvents(), plan.isMirrorLockUsed(),
+                intervalometerData.inBulbMode(), plan.isExposureRamped(), ntpOffsetColumn);
         nthEntry = 0;
-        timeStrLength = formatTime(new Date()).length();
     }
     
     File getLogFile(){
@@ -63,149 +110,219 @@ class ExposureReport {
     }
     
     /**
-     * Write the observer's details at the top of the log file
+     * @return Number of rows written to the log file
+     */
+    int getNumberOfEntries(){
+        return nthEntry;
+    }
+    
+    /**
+     * Continue the row numbering of an existing log file
+     * @param nEntries Number of rows already in the log file
+     */
+    void setNumberOfEntries(int nEntries){
+        nthEntry = nEntries;
+    }
+    
+    /**
+     * @return A new report with the same settings and its own shot count.
+     * Used to exercise the formatting code before the first shot.
+     */
+    ExposureReport createWarmUpCopy(){
+        return new ExposureReport(logfileData, observerData, plan, clock, lagProfile);
+    }
+    
+    /**
+     * @param eventLog Also save the log header in this event log, so that
+     * the text log can be regenerated from it
+     */
+    void setEventLog(EventLogWriter eventLog){
+        this.eventLog = eventLog;
+    }
+    
+    /**
+     * @return The settings needed to regenerate this report's rows from a
+     * binary event log
+     */
+    EventLogFormat createEventLogFormat(){
+        int mirrorUpDuration = 0;
+        for (IntervalometerData segment : plan.getSegments()) {
+            if (segment.isMirrorLockSet()) {
+                mirrorUpDuration = Math.max(mirrorUpDuration, segment.getMirrorUpDuration());
+            }
+        }
+        return new EventLogFormat(logfileData.getFilenamePrefix(), millisecondFilenames,
+                logfileData.tabSeparatedData(), logfileData.logAllEvents(), 
+                intervalometerData.inBulbMode(), mirrorUpDuration, plan.isExposureRamped(), ntpOffsetColumn,
+                intervalometerData.getShutterOpenDelay(), intervalometerData.getShutterCloseDelay(),
+                intervalometerData.getExposure(), intervalometerData.getRepeatInterval());
+    }
+    
+    /**
+     * Write the observer's details at the top of the log file. They are also
+     * saved in the event log, if there is one.
      * @param startTime The time of the first shot provides the report date
+     * @param armingReport Pre-flight measurements, or null if not armed
+     * @param triggerData Shutter trigger settings
      * @throws IOException 
      */
-    void writeHeader(BufferedWriter logFileWriter, Date startTime) throws IOException{
-        logFileWriter.write(rightPadding("Name:", 10) + observerData.getName());
+    void writeHeader(BufferedWriter logFileWriter, Date startTime, ArmingReport armingReport,
+            TriggerData triggerData) throws IOException{
+        StringWriter header = new StringWriter();
+        try (BufferedWriter headerWriter = new BufferedWriter(header)) {
+            writeParameters(headerWriter, startTime, armingReport, triggerData);
+        }
+        logFileWriter.write(header.toString());
+        if (eventLog != null) {
+            eventLog.setHeaderText(header.toString());
+        }
+    }
+    
+    private void writeParameters(BufferedWriter logFileWriter, Date startTime, ArmingReport armingReport,
+            TriggerData triggerData) throws IOException{
+        ExternalTriggerData externalTrigger = triggerData.getExternalTrigger();
+        logFileWriter.write(LogFormatter.rightPadding("Name:", 10) + observerData.getName());
         logFileWriter.newLine();
-        logFileWriter.write(rightPadding("Email:", 10) + observerData.getEmail());
+        logFileWriter.write(LogFormatter.rightPadding("Email:", 10) + observerData.getEmail());
         logFileWriter.newLine();
-        logFileWriter.write(rightPadding("Date:", 10) + observingDate.format(startTime));
+        logFileWriter.write(LogFormatter.rightPadding("Date:", 10) + observingDate.format(startTime));
         logFileWriter.newLine();
-        logFileWriter.write(rightPadding("Location:", 10) + observerData.getLocation());
+        logFileWriter.write(LogFormatter.rightPadding("Location:", 10) + observerData.getLocation());
         logFileWriter.newLine();
         logFileWriter.newLine();
-        logFileWriter.write(rightPadding("CCD/camera:", 20) + observerData.getCamera());
+        logFileWriter.write(LogFormatter.rightPadding("CCD/camera:", 20) + observerData.getCamera());
         logFileWriter.newLine();
-        logFileWriter.write(rightPadding("Telescope/lens:", 20) + observerData.getLens());
+        logFileWriter.write(LogFormatter.rightPadding("Telescope/lens:", 20) + observerData.getLens());
         logFileWriter.newLine();
-        logFileWriter.write(rightPadding("Image exposure (s):", 20) + (intervalometerData.getExposure() / 1000.0));
+        logFileWriter.write(LogFormatter.rightPadding("Image exposure (s):", 20) + (intervalometerData.getExposure() / 1000.0));
         logFileWriter.newLine();
         logFileWriter.write("Image link (if applicable):");
         logFileWriter.newLine();
         logFileWriter.newLine();
         logFileWriter.write("DSLRtrigger parameters");
         logFileWriter.newLine();
-        logFileWriter.write(rightPadding("Shots:", 26) + intervalometerData.getNumberOfShots());
+        logFileWriter.write(LogFormatter.rightPadding("Shots:", 26) + plan.getNumberOfShots());
         logFileWriter.newLine();
-        logFileWriter.write(rightPadding("Shutter open delay (ms):", 26) + intervalometerData.getShutterOpenDelay());
+        LagStatistics openLag = lagProfile == null ? null : lagProfile.getOpenLag();
+        LagStatistics closeLag = lagProfile == null ? null : lagProfile.getCloseLag();
+        int openDelay = intervalometerData.getShutterOpenDelay();
+        int closeDelay = intervalometerData.getShutterCloseDelay();
+        logFileWriter.write(LogFormatter.rightPadding("Shutter open delay (ms):", 26) + describeDelay(openDelay, openLag));
         logFileWriter.newLine();
-        logFileWriter.write(rightPadding("Shutter close delay (ms):", 26) + intervalometerData.getShutterCloseDelay());
+        logFileWriter.write(LogFormatter.rightPadding("Shutter close delay (ms):", 26) + describeDelay(closeDelay, closeLag));
         logFileWriter.newLine();
+        if (isCalibratedMean(openDelay, openLag) || isCalibratedMean(closeDelay, closeLag)) {
+            logFileWriter.write(LogFormatter.rightPadding("Shutter lag profile:", 26) + lagProfile.getName());
+            logFileWriter.newLine();
+        }
         if (intervalometerData.isMirrorLockSet()) {
-            logFileWriter.write(rightPadding("Mirror Lock (ms):", 26) + intervalometerData.getMirrorUpDuration());
+            logFileWriter.write(LogFormatter.rightPadding("Mirror Lock (ms):", 26) + intervalometerData.getMirrorUpDuration());
         } else {
-            logFileWriter.write(rightPadding("Mirror Lock:", 26) + "off");
+            logFileWriter.write(LogFormatter.rightPadding("Mirror Lock:", 26) + "off");
         }
         logFileWriter.newLine();
         String bulbMode = intervalometerData.inBulbMode() ? "on" : "off";
-        logFileWriter.write(rightPadding("Bulb mode:", 26) + bulbMode);
+        logFileWriter.write(LogFormatter.rightPadding("Bulb mode:", 26) + bulbMode);
         logFileWriter.newLine();
         if (intervalometerData.inBulbMode()) {
-            logFileWriter.write(rightPadding("Bulb Exposure (ms):", 26) + intervalometerData.getExposure());
+            logFileWriter.write(LogFormatter.rightPadding("Bulb Exposure (ms):", 26) + intervalometerData.getExposure());
         } else {
-            logFileWriter.write(rightPadding("Exposure (ms):     ", 26) + intervalometerData.getExposure());
+            logFileWriter.write(LogFormatter.rightPadding("Exposure (ms):     ", 26) + intervalometerData.getExposure());
         }
         logFileWriter.newLine();
-        logFileWriter.write(rightPadding("Fire interval (ms):", 26) + intervalometerData.getRepeatInterval());
+        if (intervalometerData.getExposureRamp() != null) {
+            logFileWriter.write(LogFormatter.rightPadding("Exposure ramp (ms):", 26) + intervalometerData.getExposureRamp());
+            logFileWriter.newLine();
+        }
+        logFileWriter.write(LogFormatter.rightPadding("Fire interval (ms):", 26) + intervalometerData.getRepeatInterval());
         logFileWriter.newLine();
+        if (externalTrigger != null) {
+            // The fire interval is the minimum time between triggered exposures
+            logFileWriter.write(LogFormatter.rightPadding("External trigger:", 26) + externalTrigger);
+            logFileWriter.newLine();
+        }
+        if (triggerData.getClock() != null) {
+            // Every time in this log is reference UTC, not the computer's clock
+            logFileWriter.write(LogFormatter.rightPadding("Clock:", 26) + TriggerClock.describe());
+            logFileWriter.newLine();
+        }
+        OffsetEstimate ntp = TriggerClock.getMonitor();
+        if (ntpOffsetColumn && ntp != null) {
+            logFileWriter.write(LogFormatter.rightPadding("NTP:", 26) + ntp);
+            logFileWriter.newLine();
+        }
+        logFileWriter.write(LogFormatter.rightPadding("Start alignment (ms):", 26) + intervalometerData.getStartAlignment().getMillis());
         logFileWriter.newLine();
-    }
-    
-    void writeKey(BufferedWriter logFileWriter) throws IOException{
-        final boolean allEvents = logfileData.logAllEvents();
-        logFileWriter.write("Key");
+        logFileWriter.write(LogFormatter.rightPadding("Overrun policy:", 26) + intervalometerData.getOverrunPolicy());
         logFileWriter.newLine();
-        if (allEvents){
-            if (intervalometerData.isMirrorLockSet()){
-                logFileWriter.write(rightPadding("ML press:", 12) + "Shutter button pressed; instructs DSLR to lock up mirror.");
-                logFileWriter.newLine();
-                logFileWriter.write(rightPadding("ML release:", 12) + "Shutter button released; mirror stays up, but the camera is now ready for the next shot.");
+        if (plan.getSegments().size() > 1) {
+            // The values above are for the first segment
+            int i = 0;
+            for (IntervalometerData segment : plan.getSegments()) {
+                logFileWriter.write(LogFormatter.rightPadding("Segment " + (++i) + ":", 26) + describeSegment(segment));
                 logFileWriter.newLine();
             }
-            logFileWriter.write(rightPadding("SB press:", 12) + "Shutter button pressed; instructs DSLR to take an image.)");
-            logFileWriter.newLine();
-            logFileWriter.write(rightPadding("SB release:", 12) + "Shutter button released; if in bulb mode, instruct DSLR to end exposure.");
-            logFileWriter.newLine();
         }
-        logFileWriter.write(rightPadding("Start time:", 12) + "The exposure start time; equal to 'Shutter button press time' + 'Shutter open delay'.");
-        logFileWriter.newLine();
-        if (intervalometerData.inBulbMode()){
-            logFileWriter.write(rightPadding("End time:", 12) + "The exposure end time; equal to 'Shutter button release time' + 'Shutter close delay'.");
+        if (armingReport != null) {
+            logFileWriter.write(LogFormatter.rightPadding("Wake up error (ms):", 26) 
+                    + String.format("mean %.1f, max %d", armingReport.getMeanWakeUpError(), armingReport.getMaxWakeUpError()));
+            logFileWriter.newLine();
+            logFileWriter.write(LogFormatter.rightPadding("Switch write (ms):", 26) + "max " + armingReport.getMaxSwitchWriteTime());
             logFileWriter.newLine();
         }
         logFileWriter.newLine();
     }
     
-    void writeColumnHeaders(BufferedWriter logFileWriter) throws IOException {
-        int filenameLength = createFilename(new Date()).length();
-        final boolean allEvents = logfileData.logAllEvents();
-        StringBuilder columnHeaders = new StringBuilder()
-                .append("N")
-                .append(colSep).append(rightPadding("Filename", filenameLength));
-        if (allEvents) {
-            if (intervalometerData.isMirrorLockSet()){
-                columnHeaders
-                    .append(colSep).append(rightPadding("ML press", timeStrLength))
-                    .append(colSep).append(rightPadding("ML release", timeStrLength));
-            }
-            columnHeaders.append(colSep).append(rightPadding("SB press", timeStrLength));
-            columnHeaders.append(colSep).append(rightPadding("SB release", timeStrLength));
+    /**
+     * @param delay Shutter delay used in ms
+     * @param lag Calibrations of this delay, or null
+     * @return The delay, with its uncertainty if it is the calibrated mean
+     */
+    private static String describeDelay(int delay, LagStatistics lag) {
+        if (!isCalibratedMean(delay, lag)) {
+            // Not calibrated, or set by hand
+            return Integer.toString(delay);
         }
-        columnHeaders.append(colSep).append(rightPadding("Start time", timeStrLength));
-        if (intervalometerData.inBulbMode()){
-            columnHeaders.append(colSep).append(rightPadding("End time", timeStrLength));
-            columnHeaders.append(colSep).append(rightPadding("Exposure", EXPOSURE_LENGTH));
+        if (lag.getCount() == 1) {
+            return delay + " (1 calibration, uncertainty unknown)";
         }
-        columnHeaders.append(colSep).append("Comment");
-
-        logFileWriter.write(columnHeaders.toString());
-        logFileWriter.newLine();
+        return String.format(Locale.ROOT, "%d +/- %.1f (s.d. %.1f, %d calibrations)", 
+                delay, lag.getStandardError(), lag.getStandardDeviation(), lag.getCount());
     }
     
     /**
-     * Write an exposure time data row to the log file
-     * @param n nth shot
-     * @param filename Suggested filename (user will rename image saved by camera)
-     * @param startTime
-     * @param endTime
-     * @param mirrorLockButtonPressTimeMs USB button press to start mirror lock time
-     * @param mirrorLockButtonReleaseTimeMs USB button release time (mirror still locked up)
-     * @param shutterButtonPressTimeMs USB button press time (tells camera to start exposure)
-     * @param shutterButtonReleaseTimeMs USB button release time (tells camera to finish exposure)
-     * @param comment User comment, or aborted shot information.
-     * @throws IOException 
+     * @param delay Shutter delay used in ms
+     * @param lag Calibrations of this delay, or null
+     * @return True if the delay is the calibrated mean
      */
-    private void writeColumnData(BufferedWriter logFileWriter, int n,
-            String filename, Date startTime, Date endTime,
-            long mirrorLockButtonPressTimeMs, long mirrorLockButtonReleaseTimeMs,
-            long shutterButtonPressTimeMs, long shutterButtonReleaseTimeMs,
-            String comment) throws IOException {
-        
-        final boolean allEvents = logfileData.logAllEvents();
-        StringBuilder columnData = new StringBuilder()
-                .append(Integer.toString(n)).append(colSep)
-                .append(filename);
-        if (allEvents) {
-            if (intervalometerData.isMirrorLockSet()){
-                columnData
-                    .append(colSep).append(formatTime(mirrorLockButtonPressTimeMs))
-                    .append(colSep).append(formatTime(mirrorLockButtonReleaseTimeMs));
-            }   
-            columnData.append(colSep).append(formatTime(shutterButtonPressTimeMs));
-            columnData.append(colSep).append(formatTime(shutterButtonReleaseTimeMs));
-        }
-        columnData.append(colSep).append(formatTime(startTime));
-        if (intervalometerData.inBulbMode()){
-            columnData.append(colSep).append(formatTime(endTime));
-            columnData.append(colSep).append(String.format("%8d", endTime.getTime() - startTime.getTime()));
+    private static boolean isCalibratedMean(int delay, LagStatistics lag) {
+        return lag != null && lag.getCount() > 0 && lag.getRoundedMean() == delay;
+    }
+    
+    /**
+     * @param segment Sequence plan segment
+     * @return One line description of the segment
+     */
+    private String describeSegment(IntervalometerData segment) {
+        StringBuilder sb = new StringBuilder()
+                .append("shots ").append(segment.getNumberOfShots())
+                .append(", exposure (ms) ").append(segment.getExposureRamp() != null 
+                        ? segment.getExposureRamp().toString() : Integer.toString(segment.getExposure()))
+                .append(", fire interval (ms) ").append(segment.getRepeatInterval())
+                .append(", mirror lock (ms) ").append(segment.isMirrorLockSet() ? Integer.toString(segment.getMirrorUpDuration()) : "off")
+                .append(", overrun ").append(segment.getOverrunPolicy());
+        if (segment.getStartAfterTime() > 0) {
+            sb.append(", start after ").append(formatter.formatTime(segment.getStartAfterTime()));
         }
-        columnData.append(colSep).append(comment);
-
-        logFileWriter.write(columnData.toString());
-        logFileWriter.newLine();
+        return sb.toString();
+    }
+    
+    void writeKey(BufferedWriter logFileWriter) throws IOException{
+        formatter.writeKey(logFileWriter);
+    }
+    
+    void writeColumnHeaders(BufferedWriter logFileWriter) throws IOException {
+        formatter.writeColumnHeaders(logFileWriter);
     }
     
     /**
@@ -213,17 +330,18 @@ class ExposureReport {
      * @param logFileWriter
      * @param startTime Time that the exposure actually started (shutterButtonPressTimeMs + shutter open lag)
      * @param endTime Time that the exposure actually finished (shutterButtonReleaseTimeMs + shutter close lag)
+     * @param commandedExposure Exposure requested for this shot in ms
      * @param mirrorLockButtonPressTimeMs USB button press to start mirror lock time
      * @param mirrorLockButtonReleaseTimeMs USB button release time (mirror still locked up)
      * @param shutterButtonPressTimeMs USB button press time (tells camera to start exposure)
      * @param shutterButtonReleaseTimeMs USB button release time (tells camera to finish exposure)
      * @throws IOException 
      */
-    void logExposureTime(final BufferedWriter logFileWriter, Date startTime, Date endTime,
+    void logExposureTime(final BufferedWriter logFileWriter, Date startTime, Date endTime, int commandedExposure,
             long mirrorLockButtonPressTimeMs, long mirrorLockButtonReleaseTimeMs,
             long shutterButtonPressTimeMs, long shutterButtonReleaseTimeMs) throws IOException {
         
-        logExposureTime(logFileWriter, startTime, endTime,
+        logExposureTime(logFileWriter, startTime, endTime, commandedExposure,
             mirrorLockButtonPressTimeMs, mirrorLockButtonReleaseTimeMs,
             shutterButtonPressTimeMs, shutterButtonReleaseTimeMs, observerData.getComment());
     }
@@ -233,6 +351,7 @@ class ExposureReport {
      * @param logFileWriter
      * @param startTime Time that the exposure actually started (shutterButtonPressTimeMs + shutter open lag)
      * @param endTime Time that the exposure actually finished (shutterButtonReleaseTimeMs + shutter close lag)
+     * @param commandedExposure Exposure requested for this shot in ms
      * @param mirrorLockButtonPressTimeMs USB button press to start mirror lock time
      * @param mirrorLockButtonReleaseTimeMs USB button release time (mirror still locked up)
      * @param shutterButtonPressTimeMs USB button press time (tells camera to start exposure)
@@ -240,64 +359,31 @@ class ExposureReport {
      * @param comment User comment, or aborted shot information.
      * @throws IOException 
      */
-    void logExposureTime(final BufferedWriter logFileWriter, Date startTime, Date endTime,
+    void logExposureTime(final BufferedWriter logFileWriter, Date startTime, Date endTime, int commandedExposure,
             long mirrorLockButtonPressTimeMs, long mirrorLockButtonReleaseTimeMs,
             long shutterButtonPressTimeMs, long shutterButtonReleaseTimeMs,
             String comment) throws IOException {
         
         nthEntry++;
-        String filename = createFilename(startTime);
-        
-        writeColumnData(logFileWriter, nthEntry, filename, startTime, endTime, 
+        double ntpOffset = Double.NaN;
+        if (ntpOffsetColumn) {
+            // Only reads the NTP thread's latest estimate, so this never waits for the server
+            OffsetEstimate ntp = TriggerClock.getMonitor();
+            if (ntp != null) {
+                ntpOffset = ntp.getOffset();
+            }
+        }
+        formatter.writeRow(logFileWriter, nthEntry, startTime, endTime, commandedExposure,
                 mirrorLockButtonPressTimeMs, mirrorLockButtonReleaseTimeMs,
-                shutterButtonPressTimeMs, shutterButtonReleaseTimeMs, comment);
+                shutterButtonPressTimeMs, shutterButtonReleaseTimeMs, ntpOffset, comment);
     }
 
-    /**
-     * Pad the end of a string with blank spaces
-     * @param str String to pad
-     * @param num Pad until the string contains this number of characters
-     * @return The padded string
-     */
-    static String rightPadding(String str, int num) {
-        return String.format("%1$-" + num + "s", str);
-    }
-    
     /**
      * Create a formatted time in "HH.mm.ss.SSS" format
      * @param eventTime convert this time to a string
      * @return The time as a formatted string
      */
     String formatTime(long eventTime){
-        if (eventTime == 0){
-            return "00.00.00.000";
-        }
-        return formatTime(new Date(eventTime));
-    }
-    
-    /**
-     * Create a formatted time in "HH.mm.ss.SSS" format
-     * @param eventTime convert this time to a string
-     * @return The time as a formatted string
-     */
-    private String formatTime(Date eventTime) {
-        if (eventTime == null){
-            return "00.00.00.000";
-        }
-        String time = imageTime.format(eventTime);
-        return time;
-    }
-
-    /**
-     * Create the suggested filename for the image taken at startTime.
-     * This will be used when writing the image times to the log file
-     * The user will rename each image saved from the camera to the corresponding name
-     * @param userData Data entered by observer
-     * @param startTime The time the exposure actually started.
-     * @return 
-     */
-    private String createFilename(Date startTime) {
-        String filename = logfileData.getFilenamePrefix() + '_' + sdf.format(startTime);
-        return filename;
+        return formatter.formatTime(eventTime);
     }
 }
@@ -18,49 +18,102 @@
  */
 package info.johnmurphyastro.dslrtrigger.intervalometer;
 
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import info.johnmurphyastro.dslrtrigger.ArmedListener;
 import info.johnmurphyastro.dslrtrigger.MessageListener;
 import info.johnmurphyastro.dslrtrigger.ProgressListener;
+import info.johnmurphyastro.dslrtrigger.TimingListener;
+import info.johnmurphyastro.dslrtrigger.TimingListener.Event;
 import info.johnmurphyastro.dslrtrigger.WaitTimeListener;
 import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
 import info.johnmurphyastro.dslrtrigger.data.MinTime;
-import info.johnmurphyastro.dslrtrigger.usbswitch.UsbSwitch;
+import info.johnmurphyastro.dslrtrigger.data.SequencePlan;
+import info.johnmurphyastro.dslrtrigger.data.TriggerData;
+import info.johnmurphyastro.dslrtrigger.trigger.TriggerEvent;
+import info.johnmurphyastro.dslrtrigger.trigger.TriggerSource;
+import info.johnmurphyastro.dslrtrigger.usbswitch.ShutterSwitch;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.Date;
+import java.util.List;
 
 /**
  * An intervalometer which instructs a DSLR to take a sequence of shots.
  * @author John Murphy
  */
 class Intervalometer extends Thread {
+    /** Stop waiting for the checkpoint to be saved this long before the next shot's first button press */
+    private static final int CHECKPOINT_MARGIN_MS = 100;
     /** USB switch */
-    private final UsbSwitch usbSwitch;
-    private final IntervalometerData intervalometerData;
+    private final ShutterSwitch usbSwitch;
+    private final SequencePlan plan;
+    private final TriggerData triggerData;
     private final ExposureReport report;
     /** Tells UI how many images have been taken */
     private final ProgressListener progressListener;
     /** Tells UI time before first shot of the sequence */
     private final WaitTimeListener waitTimeListener;
+    /** Tells UI the pre-flight arming results */
+    private final ArmedListener armedListener;
     private final MessageListener msgListener;
+    /** Releases the shutter button if this thread misses a release */
+    private ShutterWatchdog watchdog;
+    /** Saves the checkpoint after every shot without delaying the next one */
+    private CheckpointWriter checkpointWriter;
+    /** Time the shutter button was released at the end of the last shot */
+    private long lastShutterButtonReleaseTime;
+    /** Guards pauseRequested, paused and stopRequested */
+    private final Object pauseLock = new Object();
+    /** Set by pauseSequence(). Cleared by this thread when the pause starts */
+    private boolean pauseRequested;
+    private boolean paused;
+    private boolean stopRequested;
+    /** If set when the sequence is stopped, the checkpoint is kept so that the sequence can be resumed */
+    private boolean keepCheckpoint;
+    /** True once the log file header has been written. The sequence can then be paused */
+    private volatile boolean armed;
+    /** Progress saved after every shot. If it has progress when the thread starts, the sequence is resumed */
+    private Checkpoint checkpoint;
+    private final File checkpointFile;
+    /** If not null, each shot is started by an event from this source instead of the time plan */
+    private final TriggerSource triggerSource;
+    /** Told about every wait, button press, release and log row. May be null */
+    private final TimingListener timingListener;
 
     /**
      * After construction, use Thread.start() base class method to run the sequence of shots.
-     * To abort a sequence, interrupt the Intervalometer thread.
+     * To abort a sequence, use stopSequence().
+     * To pause and resume, use pauseSequence() and resumeSequence().
      * @param usbSwitch USB switch
-     * @param userData Data entered by observer
+     * @param plan The sequence plan. All segments are taken in this session
+     * @param triggerData Shutter trigger settings
      * @param listener Update UI with number of shots taken
      * @param waitTimeListener Update UI with time until sequence starts
+     * @param armedListener Update UI with the pre-flight arming results
+     * @param checkpoint A new checkpoint, or a loaded checkpoint to resume a sequence
+     * @param checkpointFile The checkpoint is saved to this file after every shot
+     * @param triggerSource External trigger events, or null to follow the time plan
+     * @param timingListener Told about every wait, button press, release and log row, or null
      */
-    Intervalometer(UsbSwitch usbSwitch, IntervalometerData intervalometerData,
-            ExposureReport report, ProgressListener listener, 
-            WaitTimeListener waitTimeListener, MessageListener msgListener) {
-        this.usbSwitch = usbSwitch;
-        this.intervalometerData = intervalometerData;
+    Intervalometer(ShutterSwitch usbSwitch, SequencePlan plan,
+            TriggerData triggerData, ExposureReport report, ProgressListener listener, 
+            WaitTimeListener waitTimeListener, ArmedListener armedListener, MessageListener msgListener,
+            Checkpoint checkpoint, File checkpointFile, TriggerSource triggerSource, 
+            TimingListener timingListener) {
+        this.usbSwitch = timingListener == null ? usbSwitch : new ReportingSwitch(usbSwitch, timingListener);
+        this.plan = plan;
+        this.triggerData = triggerData;
         this.report = report;
+        this.checkpoint = checkpoint;
+        this.checkpointFile = checkpointFile;
+        this.triggerSource = triggerSource;
+        this.timingListener = timingListener;
         this.progressListener = listener;
         this.waitTimeListener = waitTimeListener;
+        this.armedListener = armedListener;
         this.msgListener = msgListener;
     }
     
@@ -70,51 +123,269 @@ class Intervalometer extends Thread {
      */
     @Override
     public void run() {
-        try (BufferedWriter reportWriter = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream(report.getLogFile())))) {
+        watchdog = new ShutterWatchdog(usbSwitch, triggerData.getWatchdogMargin());
+        watchdog.start();
+        checkpointWriter = new CheckpointWriter(checkpointFile);
+        checkpointWriter.start();
+        final boolean isResume = checkpoint.isResume();
+        boolean finished = false;
+        // When resuming after a crash, append to the original log file
+        try (FileOutputStream reportStream = new FileOutputStream(checkpoint.getLogFile(), isResume);
+                BufferedWriter reportWriter = new BufferedWriter(new OutputStreamWriter(reportStream))) {
             // If mirror up is being used, make the first mirror up at least 1000 ms to help ensure the camera wakes up
-            IntervalometerCalc times = new IntervalometerCalc(intervalometerData, intervalometerData.getStartAfterTime());
+            long now = TriggerClock.currentTimeMillis();
+            Timeline timeline;
+            IntervalometerCalc times;
+            ShotScheduler scheduler;
+            if (isResume) {
+                timeline = Timeline.compileFromOrigin(plan, checkpoint.getGridOrigin());
+                scheduler = new ShotScheduler(timeline);
+                times = scheduler.resumeAt(checkpoint.getNextShot(), checkpoint.getGridOffset(), now);
+                report.setNumberOfEntries(checkpoint.getLogRows());
+            } else {
+                timeline = Timeline.compile(plan, now);
+                scheduler = new ShotScheduler(timeline);
+                times = scheduler.first(now);
+            }
             
-            // Write the log file header information
-            //ExposureReport report = new ExposureReport(reportWriter, intervalometerData);
-            report.writeHeader(reportWriter,new Date(times.getStartT()));
-            report.writeKey(reportWriter);
-            report.writeColumnHeaders(reportWriter);
+            // Use the gap before the first shot to compile the hot path and check the switch.
+            // Leave the last half second for the wait below.
+            ArmingReport armingReport;
+            try {
+                armingReport = new ArmingPhase(plan.getFirstSegment(), report)
+                        .arm(usbSwitch, times.getFirstButtonPressTime() - 500);
+            } catch (InterruptedException ex) {
+                return;
+            } catch (IOException ex) {
+                msgListener.showErrorMessage("USB switch failed pre-flight check:\n" + ex.getLocalizedMessage());
+                return;
+            }
+            // The button press and release can each be late by the wake up error plus the switch write time
+            long latency = 2 * (armingReport.getMaxWakeUpError() + armingReport.getMaxSwitchWriteTime());
+            List<IntervalometerData> segments = plan.getSegments();
+            for (int i = 0; i < segments.size(); i++) {
+                IntervalometerData segment = segments.get(i);
+                int minInterval = segment.getMinimumRepeatInterval(latency);
+                // A single shot segment's interval is only used if another segment follows it
+                boolean intervalUsed = segment.getNumberOfShots() > 1 || i + 1 < segments.size();
+                if (intervalUsed && segment.getRepeatInterval() < minInterval) {
+                    msgListener.showErrorMessage("Fire interval " + segment.getRepeatInterval() 
+                            + " ms is too short for this computer.\nMinimum is " + minInterval 
+                            + " ms (includes " + latency + " ms measured trigger latency)");
+                    return;
+                }
+            }
+            
+            if (!isResume) {
+                // Write the log file header information
+                report.writeHeader(reportWriter, new Date(times.getStartT()), armingReport, triggerData);
+                report.writeKey(reportWriter);
+                report.writeColumnHeaders(reportWriter);
+            }
+            // Make sure the file has been created on disk before the first shot
+            reportWriter.flush();
+            reportStream.getFD().sync();
+            if (armedListener != null) {
+                armedListener.setArmed(armingReport);
+            }
+            armed = true;
 
+            String resumeComment = isResume ? "Resumed after restart at shot " + (checkpoint.getNextShot() + 1) : null;
             // If the user has set a start after time, wait until a half second before this time
             // The actual shot will then be aligned with the second boundary
             try {
                 // Show progress on GUI while we wait for first shot, until it is half second to go
                 waitUntilTime(times.getFirstButtonPressTime() - 500, waitTimeListener);
             } catch (InterruptedException ex) {
+                long pauseStart = TriggerClock.currentTimeMillis();
+                if (!waitWhilePaused()) {
+                    return;
+                }
+                resumeComment = getResumeComment(pauseStart);
+                times = scheduler.resume(TriggerClock.currentTimeMillis());
+            }
+            
+            if (triggerSource != null) {
+                finished = takeTriggeredShots(reportWriter, resumeComment);
                 return;
             }
         
             // Take the shots
-            for (int n = 0; n < intervalometerData.getNumberOfShots(); n++) {
-                updateProgress(n);
-                boolean pleaseStop = TakeImage(times, reportWriter);
+            while (true) {
+                updateProgress(scheduler.getShot());
+                String comment = scheduler.getShotComment();
+                if (resumeComment != null) {
+                    comment = comment == null ? resumeComment : appendComment(comment, resumeComment);
+                    resumeComment = null;
+                }
+                if (scheduler.getOverrun() > 0) {
+                    timing(Event.OVERRUN, scheduler.getShot(), scheduler.getOverrunSlot(), 
+                            scheduler.getOverrunSlot() + scheduler.getOverrun());
+                }
+                boolean pleaseStop = TakeImage(scheduler.getShot(), times, scheduler.getSegment(), reportWriter, comment);
                 if (pleaseStop){
-                    // The thread has been interupted; the user pressed stop or exit
-                    return;
+                    // The thread has been interupted; the user pressed pause, stop or exit
+                    long pauseStart = TriggerClock.currentTimeMillis();
+                    // The interrupted shot will be retaken
+                    saveCheckpoint(reportWriter, scheduler.getShot(), timeline, scheduler);
+                    // Not timing critical, so make sure it is on disk before waiting
+                    checkpointWriter.awaitSaved(Long.MAX_VALUE);
+                    if (!waitWhilePaused()) {
+                        return;
+                    }
+                    // Retake the interrupted shot on the original time grid
+                    resumeComment = getResumeComment(pauseStart);
+                    times = scheduler.resume(TriggerClock.currentTimeMillis());
+                    continue;
+                }
+                saveCheckpoint(reportWriter, scheduler.getShot() + 1, timeline, scheduler);
+                if (!scheduler.hasNext()) {
+                    finished = true;
+                    break;
+                }
+                times = scheduler.next(lastShutterButtonReleaseTime, TriggerClock.currentTimeMillis());
+                // The checkpoint is saved during the wait. A slow disk must not delay the shot,
+                // so stop waiting for it shortly before the first button press
+                if (!checkpointWriter.awaitSaved(times.getFirstButtonPressTime() - CHECKPOINT_MARGIN_MS)) {
+                    System.err.println("Checkpoint for shot " + scheduler.getShot() + " not saved before the shot");
                 }
-                long nextTime = times.getStartT() + intervalometerData.getRepeatInterval();
-                times = new IntervalometerCalc(intervalometerData, nextTime);
             }
         } catch (IOException ex) {
             msgListener.showErrorMessage("Failed to write to logfile:\n" + ex.getLocalizedMessage());
+        } finally {
+            watchdog.shutdown();
+            // Finish saving before the checkpoint is deleted
+            checkpointWriter.shutdown();
+            synchronized (pauseLock) {
+                finished |= stopRequested && !keepCheckpoint;
+            }
+            if (finished && !checkpointFile.delete() && checkpointFile.exists()) {
+                System.err.println("Failed to delete " + checkpointFile);
+            }
+        }
+    }
+    
+    /**
+     * Take a shot for each external trigger event until the first segment's
+     * number of shots have been taken. The segment's fire interval is the 
+     * minimum time between exposure starts. If an exposure cannot start within
+     * the deadline of its requested start time, the event is rejected.
+     * Rejected events are counted in the next shot's comment.
+     * @param reportWriter Log file writer
+     * @param comment Comment for the first shot, or null
+     * @return True if all the shots were taken, false if the sequence was stopped
+     * @throws IOException Failed to write to the log file
+     */
+    private boolean takeTriggeredShots(BufferedWriter reportWriter, String comment) throws IOException {
+        IntervalometerData segment = plan.getFirstSegment();
+        int deadline = triggerData.getExternalTrigger().getDeadline();
+        // Time from the first button press to the exposure start
+        int lead = segment.getShutterOpenDelay() + (segment.isMirrorLockSet() ? segment.getMirrorUpDuration() : 0);
+        long nextAllowedStart = 0;
+        int nRateLimited = 0;
+        int nTooLate = 0;
+        // Ignore events received before the start after time
+        triggerSource.clear();
+        int shot = 0;
+        updateProgress(shot);
+        while (shot < segment.getNumberOfShots()) {
+            TriggerEvent event;
+            try {
+                event = triggerSource.take();
+            } catch (InterruptedException ex) {
+                long pauseStart = TriggerClock.currentTimeMillis();
+                if (!waitWhilePaused()) {
+                    return false;
+                }
+                int nIgnored = triggerSource.clear();
+                comment = appendComment(comment, getResumeComment(pauseStart) + ", " + nIgnored + " triggers ignored");
+                continue;
+            }
+            long requestedStart = event.getRequestedStartTime();
+            long earliestStart = Math.max(TriggerClock.currentTimeMillis() + lead, requestedStart);
+            long start = Math.max(earliestStart, nextAllowedStart);
+            if (start - requestedStart > deadline) {
+                if (start > earliestStart) {
+                    nRateLimited++;
+                } else {
+                    nTooLate++;
+                }
+                continue;
+            }
+            
+            String shotComment = comment;
+            if (nRateLimited > 0 || nTooLate > 0) {
+                shotComment = appendComment(shotComment, "Rejected triggers: " + nRateLimited 
+                        + " within fire interval, " + nTooLate + " missed deadline");
+            }
+            IntervalometerCalc times = IntervalometerCalc.startingAt(segment, segment.getExposure(shot), start);
+            boolean pleaseStop = TakeImage(shot, times, segment, reportWriter, shotComment, event);
+            comment = null;
+            nRateLimited = 0;
+            nTooLate = 0;
+            nextAllowedStart = times.getStartT() + segment.getRepeatInterval();
+            if (pleaseStop) {
+                long pauseStart = TriggerClock.currentTimeMillis();
+                if (!waitWhilePaused()) {
+                    return false;
+                }
+                // The cancelled shot is not retaken. Its trigger has passed.
+                int nIgnored = triggerSource.clear();
+                comment = getResumeComment(pauseStart) + ", " + nIgnored + " triggers ignored";
+                continue;
+            }
+            reportWriter.flush();
+            updateProgress(++shot);
         }
+        return true;
+    }
+    
+    /**
+     * Flush the log file and save the progress, so that the sequence can be 
+     * resumed after a crash. The checkpoint is saved by the CheckpointWriter thread.
+     * @param reportWriter Log file writer
+     * @param nextShot Index of the next shot to take
+     * @param timeline The compiled sequence plan
+     * @param scheduler Provides the grid offset
+     * @throws IOException Failed to write to the log file
+     */
+    private void saveCheckpoint(BufferedWriter reportWriter, int nextShot, Timeline timeline,
+            ShotScheduler scheduler) throws IOException {
+        reportWriter.flush();
+        checkpoint = checkpoint.withProgress(nextShot, report.getNumberOfEntries(),
+                timeline.getOrigin(), scheduler.getOffset());
+        checkpointWriter.submit(checkpoint);
     }
     
     /**
      * Take an image
+     * @param shot Shot index, from 0
      * @param times Calculated button press times
-     * @param report Write the event times to this log
+     * @param intervalometerData The segment this shot belongs to
      * @param reportWriter Append to the log using this writer
+     * @param shotComment Segment start or overrun details, or null
      * @return If the thread has been cancelled, return true to indicate 'please stop'
      * @throws IOException 
      */
-    private boolean TakeImage(IntervalometerCalc times, BufferedWriter reportWriter) throws IOException {
+    private boolean TakeImage(int shot, IntervalometerCalc times, IntervalometerData intervalometerData,
+            BufferedWriter reportWriter, String shotComment) throws IOException {
+        return TakeImage(shot, times, intervalometerData, reportWriter, shotComment, null);
+    }
+    
+    /**
+     * Take an image
+     * @param shot Shot index, from 0
+     * @param times Calculated button press times
+     * @param intervalometerData The segment this shot belongs to
+     * @param reportWriter Append to the log using this writer
+     * @param shotComment Segment start or overrun details, or null
+     * @param event The external trigger event that requested this shot, or null.
+     * The input to shutter button press latency is added to the comment.
+     * @return If the thread has been cancelled, return true to indicate 'please stop'
+     * @throws IOException 
+     */
+    private boolean TakeImage(int shot, IntervalometerCalc times, IntervalometerData intervalometerData,
+            BufferedWriter reportWriter, String shotComment, TriggerEvent event) throws IOException {
         boolean isMirrorLockButtonDown = false;
         boolean isShutterButtonDown = false;
         boolean isMirrorLockedUp = false;
@@ -123,84 +394,293 @@ class Intervalometer extends Thread {
         long mirrorLockButtonReleaseTimeMs = 0;
         long shutterButtonPressTimeMs = 0;
         long shutterButtonReleaseTimeMs = 0;
+        String comment = shotComment;
         
         try {
             if (intervalometerData.isMirrorLockSet() && intervalometerData.getMirrorUpDuration() > 0) {
                 // Flip the mirror up
-                waitUntilTime(times.getMirrorLockButtonPressTime(), null);
-                mirrorLockButtonPressTimeMs = usbSwitch.pressShutterButton();
+                waitUntilTime(shot, times.getMirrorLockButtonPressTime());
+                mirrorLockButtonPressTimeMs = pressButton(times.getMirrorLockButtonReleaseTime());
+                timing(Event.MIRROR_LOCK_PRESS, shot, times.getMirrorLockButtonPressTime(), mirrorLockButtonPressTimeMs);
                 isMirrorLockButtonDown = true;
                 isMirrorLockedUp = true;
 
                 // Get ready for taking the shot (release the shutter button so we can press it again)
                 // Note that the mirror stays locked up
-                waitUntilTime(times.getMirrorLockButtonReleaseTime(), null);
+                waitUntilTime(shot, times.getMirrorLockButtonReleaseTime());
                 mirrorLockButtonReleaseTimeMs = usbSwitch.releaseShutterButton();
+                long watchdogReleaseTimeMs = watchdog.buttonReleased();
+                if (watchdogReleaseTimeMs != 0) {
+                    mirrorLockButtonReleaseTimeMs = watchdogReleaseTimeMs;
+                    comment = appendComment(comment, getWatchdogComment("mirror lock", 
+                            watchdogReleaseTimeMs, times.getMirrorLockButtonReleaseTime()));
+                }
+                timing(Event.MIRROR_LOCK_RELEASE, shot, times.getMirrorLockButtonReleaseTime(), mirrorLockButtonReleaseTimeMs);
                 isMirrorLockButtonDown = false;
             }
 
             // Take the shot
-            waitUntilTime(times.getShutterButtonPressTime(), null);
-            shutterButtonPressTimeMs = usbSwitch.pressShutterButton();
+            waitUntilTime(shot, times.getShutterButtonPressTime());
+            shutterButtonPressTimeMs = pressButton(times.getShutterButtonReleaseTime());
+            timing(Event.SHUTTER_PRESS, shot, times.getShutterButtonPressTime(), shutterButtonPressTimeMs);
             // Write the shutter button press time to the log file
             Date exposureStartTime = times.getExposureStartTime(shutterButtonPressTimeMs);
             isMirrorLockedUp = false;
             isShutterButtonDown = true;
+            if (event != null) {
+                comment = appendComment(comment, getTriggerComment(event, shutterButtonPressTimeMs));
+            }
 
             // If in bulb mode, this ends the shot. 
-            waitUntilTime(times.getShutterButtonReleaseTime(), null);
+            waitUntilTime(shot, times.getShutterButtonReleaseTime());
             shutterButtonReleaseTimeMs = usbSwitch.releaseShutterButton();
+            long watchdogReleaseTimeMs = watchdog.buttonReleased();
+            if (watchdogReleaseTimeMs != 0) {
+                shutterButtonReleaseTimeMs = watchdogReleaseTimeMs;
+                comment = appendComment(comment, getWatchdogComment("shutter", 
+                        watchdogReleaseTimeMs, times.getShutterButtonReleaseTime()));
+            }
+            timing(Event.SHUTTER_RELEASE, shot, times.getShutterButtonReleaseTime(), shutterButtonReleaseTimeMs);
+            lastShutterButtonReleaseTime = shutterButtonReleaseTimeMs;
             Date exposureEndTime = intervalometerData.inBulbMode() ? times.getExposureEndTime(shutterButtonReleaseTimeMs): null;
             
-            report.logExposureTime(reportWriter, exposureStartTime, exposureEndTime, 
-                    mirrorLockButtonPressTimeMs, mirrorLockButtonReleaseTimeMs,
-                    shutterButtonPressTimeMs, shutterButtonReleaseTimeMs);
+            if (comment == null) {
+                report.logExposureTime(reportWriter, exposureStartTime, exposureEndTime, times.getExposure(),
+                        mirrorLockButtonPressTimeMs, mirrorLockButtonReleaseTimeMs,
+                        shutterButtonPressTimeMs, shutterButtonReleaseTimeMs);
+            } else {
+                report.logExposureTime(reportWriter, exposureStartTime, exposureEndTime, times.getExposure(),
+                        mirrorLockButtonPressTimeMs, mirrorLockButtonReleaseTimeMs,
+                        shutterButtonPressTimeMs, shutterButtonReleaseTimeMs, comment);
+            }
+            timing(Event.LOG_ROW, shot, times.getStartT(), TriggerClock.currentTimeMillis());
 
         } catch (InterruptedException ex) {
-            String comment = null;
+            timing(Event.CANCEL, shot, times.getStartT(), TriggerClock.currentTimeMillis());
+            comment = null;
             // If we were taking a shot we must finish it.
             // If we are using mirror lock, it is vital we don't get out of step
             if (isMirrorLockButtonDown) {
                 // The mirror is probably already locked up. An extra wait makes sure.
-                deepSleep(System.currentTimeMillis() + MinTime.MIRROR_MOVE_MS / 2);
+                long releaseTime = TriggerClock.currentTimeMillis() + MinTime.MIRROR_MOVE_MS / 2;
+                watchdog.buttonPressed(releaseTime);
+                deepSleep(releaseTime);
                 // Release the mirror lock button press. This leaves the mirror up.
                 mirrorLockButtonReleaseTimeMs = usbSwitch.releaseShutterButton();
+                watchdog.buttonReleased();
+                timing(Event.MIRROR_LOCK_RELEASE, shot, releaseTime, mirrorLockButtonReleaseTimeMs);
                 isMirrorLockedUp = true;
             }
             if (isMirrorLockedUp){
-                deepSleep(System.currentTimeMillis() + MinTime.MIRROR_MOVE_MS / 2);
+                deepSleep(TriggerClock.currentTimeMillis() + MinTime.MIRROR_MOVE_MS / 2);
                 // We have flipped the mirror up, so we must take a shot
                 // to avoid getting out of step
-                shutterButtonPressTimeMs = usbSwitch.pressShutterButton();
+                // Re-armed below with the actual release time
+                shutterButtonPressTimeMs = pressButton(TriggerClock.currentTimeMillis() + MinTime.BEFORE_SHOT_MS);
+                timing(Event.SHUTTER_PRESS, shot, shutterButtonPressTimeMs, shutterButtonPressTimeMs);
                 isShutterButtonDown = true;
-                comment = "Cancelled. Exposure taken to cancel mirror lock";
+                comment = getCancelReason() + ". Exposure taken to cancel mirror lock";
             }
             
             if (isShutterButtonDown) {
-                deepSleep(System.currentTimeMillis() + MinTime.BEFORE_SHOT_MS);
+                long releaseTime = TriggerClock.currentTimeMillis() + MinTime.BEFORE_SHOT_MS;
+                watchdog.buttonPressed(releaseTime);
+                deepSleep(releaseTime);
                 // Finish taking the last shot
                 shutterButtonReleaseTimeMs = usbSwitch.releaseShutterButton();
+                watchdog.buttonReleased();
+                timing(Event.SHUTTER_RELEASE, shot, releaseTime, shutterButtonReleaseTimeMs);
                 if (!intervalometerData.inBulbMode()) {
                     // Releasing the shutter button has not stopped the exposure
                     // Hence wait until exposure ends
-                    deepSleep(shutterButtonPressTimeMs + intervalometerData.getExposure());
+                    deepSleep(shutterButtonPressTimeMs + times.getExposure());
                 }
                 if (comment == null){
-                    comment = "Cancelled. Exposure had not finished";
+                    comment = getCancelReason() + ". Exposure had not finished";
                 }
             }
             if (comment != null){
                 Date exposureStartTime = times.getExposureStartTime(shutterButtonPressTimeMs);
                 Date exposureEndTime = intervalometerData.inBulbMode() ? times.getExposureEndTime(shutterButtonReleaseTimeMs): null;
-                report.logExposureTime(reportWriter, exposureStartTime, exposureEndTime,
+                report.logExposureTime(reportWriter, exposureStartTime, exposureEndTime, times.getExposure(),
                         mirrorLockButtonPressTimeMs, mirrorLockButtonReleaseTimeMs,
                         shutterButtonPressTimeMs, shutterButtonReleaseTimeMs, comment);
+                timing(Event.LOG_ROW, shot, times.getStartT(), TriggerClock.currentTimeMillis());
             }
             return true; // Interrupted (Stop or Exit)
         }
         return false; // Shot completed
     }
 
+    /**
+     * Pause the sequence. The current shot is finished or cancelled in the 
+     * same way as Stop. Ignored until the sequence has been armed.
+     * @return True if the sequence is pausing or paused
+     */
+    boolean pauseSequence() {
+        if (!armed) {
+            return false;
+        }
+        synchronized (pauseLock) {
+            if (paused || stopRequested) {
+                return paused;
+            }
+            pauseRequested = true;
+            paused = true;
+        }
+        interrupt();
+        return true;
+    }
+    
+    /**
+     * Resume a paused sequence. The next shot starts on the original time grid.
+     */
+    void resumeSequence() {
+        synchronized (pauseLock) {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+    
+    /**
+     * Abort the sequence, including a paused sequence
+     * @param keepCheckpoint If true, the sequence can be resumed later. Used 
+     * when the process is terminated, for example by a reboot.
+     */
+    void stopSequence(boolean keepCheckpoint) {
+        synchronized (pauseLock) {
+            stopRequested = true;
+            this.keepCheckpoint = keepCheckpoint;
+            paused = false;
+            pauseLock.notifyAll();
+        }
+        interrupt();
+    }
+    
+    /**
+     * @return True if the sequence is paused
+     */
+    boolean isPaused() {
+        synchronized (pauseLock) {
+            return paused;
+        }
+    }
+    
+    /**
+     * Called after this thread has been interrupted. If it was a pause, wait 
+     * until resumed.
+     * @return True if the sequence should continue, false if it should stop
+     */
+    private boolean waitWhilePaused() {
+        synchronized (pauseLock) {
+            if (!pauseRequested || stopRequested) {
+                return false;
+            }
+            pauseRequested = false;
+            try {
+                while (paused && !stopRequested) {
+                    pauseLock.wait();
+                }
+            } catch (InterruptedException ex) {
+                return false;
+            }
+            return !stopRequested;
+        }
+    }
+    
+    /**
+     * @return "Paused" if the current shot is being cancelled by a pause, otherwise "Cancelled"
+     */
+    private String getCancelReason() {
+        synchronized (pauseLock) {
+            return pauseRequested && !stopRequested ? "Paused" : "Cancelled";
+        }
+    }
+    
+    /**
+     * @param pauseStart The time the pause started
+     * @return Log file comment recording the paused interval
+     */
+    private String getResumeComment(long pauseStart) {
+        long now = TriggerClock.currentTimeMillis();
+        return "Resumed after pause from " + report.formatTime(pauseStart) + " to " 
+                + report.formatTime(now) + " (" + (now - pauseStart) / 1000 + " s)";
+    }
+    
+    /**
+     * @param comment Existing comment, or null
+     * @param extra Text to add to the comment
+     * @return The combined comment
+     */
+    private static String appendComment(String comment, String extra) {
+        return comment == null ? extra : comment + "; " + extra;
+    }
+    
+    /**
+     * @param event The external trigger event
+     * @param shutterButtonPressTime Time the shutter button was pressed
+     * @return Log file comment recording the input to shutter button press latency
+     */
+    private String getTriggerComment(TriggerEvent event, long shutterButtonPressTime) {
+        String comment = "Trigger " + event.getSource();
+        if (!event.isFireNow()) {
+            comment += " for " + report.formatTime(event.getRequestedStartTime());
+        }
+        return comment + ", input to press " + (shutterButtonPressTime - event.getReceivedTime()) + " ms";
+    }
+    
+    /**
+     * @param button Name of the button the watchdog released
+     * @param watchdogReleaseTime Time the watchdog released the button
+     * @param scheduledReleaseTime Time the button should have been released
+     * @return Log file comment describing the watchdog override
+     */
+    private static String getWatchdogComment(String button, long watchdogReleaseTime, long scheduledReleaseTime) {
+        return "Watchdog released " + button + " button " 
+                + (watchdogReleaseTime - scheduledReleaseTime) + " ms late";
+    }
+    
+    /**
+     * Press the shutter button. The watchdog is armed first, so the button is
+     * never held down without it, even if this thread stalls after the press.
+     * @param scheduledReleaseTime The time the button should be released
+     * @return Time when the switch command returned
+     * @throws IOException The watchdog is disarmed
+     */
+    private long pressButton(long scheduledReleaseTime) throws IOException {
+        watchdog.buttonPressed(scheduledReleaseTime);
+        try {
+            return usbSwitch.pressShutterButton();
+        } catch (IOException | RuntimeException ex) {
+            watchdog.buttonReleased();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Sleep until the scheduled time, telling the timing listener when the wait begins and ends
+     * @param shot Shot index, from 0
+     * @param time Sleep until this time
+     * @throws InterruptedException 
+     */
+    private void waitUntilTime(int shot, long time) throws InterruptedException {
+        timing(Event.WAIT_BEGIN, shot, time, TriggerClock.currentTimeMillis());
+        waitUntilTime(time, null);
+        timing(Event.WAIT_END, shot, time, TriggerClock.currentTimeMillis());
+    }
+    
+    /**
+     * @param event What happened
+     * @param shot Shot index, from 0
+     * @param scheduledTime When it should have happened
+     * @param actualTime When it happened
+     */
+    private void timing(Event event, int shot, long scheduledTime, long actualTime) {
+        if (timingListener != null) {
+            timingListener.timingEvent(event, shot, scheduledTime, actualTime);
+        }
+    }
+    
     /**
      * A sleep that should not be interrupted. If it is, this is an error.
      * @param sleep until this time
@@ -220,8 +700,8 @@ class Intervalometer extends Thread {
      * @throws InterruptedException 
      */
     static void waitUntilTime(long time, WaitTimeListener listener) throws InterruptedException{
-        for (long delta = time - System.currentTimeMillis(); delta > 0; 
-                delta = time - System.currentTimeMillis()){
+        for (long delta = time - TriggerClock.currentTimeMillis(); delta > 0; 
+                delta = time - TriggerClock.currentTimeMillis()){
             if (delta < 200){
                 // Sleep is not very precise. Fine tune the end of the sleep
                 Thread.sleep(1);
@@ -18,6 +18,7 @@
  */
 package info.johnmurphyastro.dslrtrigger.intervalometer;
 
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
 import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
 import info.johnmurphyastro.dslrtrigger.data.MinTime;
 import java.util.Date;
@@ -34,6 +35,8 @@ class IntervalometerCalc {
     private final int shutterCloseDelay;
     /** Time the exposure will actually start in ms */
     private final long exposureStartTime;
+    /** Commanded exposure length in ms */
+    private final int exposure;
     /** Button press time to start mirror lock in ms */
     private long mirrorLockButtonDownT;
     /** Mirror lock button release time (does not cancel mirror lock) in ms */
@@ -48,29 +51,77 @@ class IntervalometerCalc {
      * @param startAfterTime If in future, try to take first at this time
      */
     IntervalometerCalc(final IntervalometerData data, final long startAfterTime){
+        this(data, startAfterTime, TriggerClock.currentTimeMillis());
+    }
+    
+    /**
+     * @param data Intervalometer data
+     * @param startAfterTime If in future, try to take first at this time
+     * @param now The current time. The first button press must be at least 
+     * MinTime.BEFORE_SHOT_MS after this time
+     */
+    IntervalometerCalc(final IntervalometerData data, final long startAfterTime, final long now){
+        this(data, data.getExposure(), startAfterTime, now);
+    }
+    
+    /**
+     * @param data Intervalometer data
+     * @param exposure This shot's exposure in ms. Differs from data.getExposure() if the exposure is ramped
+     * @param startAfterTime If in future, try to take first at this time
+     * @param now The current time. The first button press must be at least 
+     * MinTime.BEFORE_SHOT_MS after this time
+     */
+    IntervalometerCalc(final IntervalometerData data, final int exposure, final long startAfterTime, final long now){
+        this.exposure = exposure;
         int mirrorUpDuration = data.isMirrorLockSet() ? data.getMirrorUpDuration() : 0;
         
         shutterOpenDelay = data.getShutterOpenDelay();
         shutterCloseDelay = data.getShutterCloseDelay(); // only relevant in bulb mode
 
-        // The requested start time rounded to the nearest second
-        long startTime = ((startAfterTime + 500) / 1000) * 1000;
-        calculateButtonTimes(startTime, data.getExposure(), mirrorUpDuration);
+        // The requested start time rounded to the nearest grid point (eg nearest second)
+        final int grid = data.getStartAlignment().getMillis();
+        long startTime = ((startAfterTime + grid / 2) / grid) * grid;
+        calculateButtonTimes(startTime, exposure, mirrorUpDuration);
         
         long firstPressTime = Math.min(shutterButtonDownT, mirrorLockButtonDownT);
-        long earliestPossibleTime = System.currentTimeMillis() + MinTime.BEFORE_SHOT_MS;
+        long earliestPossibleTime = now + MinTime.BEFORE_SHOT_MS;
         if (firstPressTime < earliestPossibleTime){
             // first press was in the past, or too soon
             long delta = earliestPossibleTime - firstPressTime;
-            // round delta upto the next whole second
-            delta = ((delta / 1000) * 1000) + 1000;
-            // Increase startTime by the required whole number of seconds
+            // round delta upto the next grid point
+            delta = ((delta / grid) * grid) + grid;
+            // Increase startTime by the required whole number of grid spacings
             startTime += delta;
-            calculateButtonTimes(startTime, data.getExposure(), mirrorUpDuration);
+            calculateButtonTimes(startTime, exposure, mirrorUpDuration);
         }
         exposureStartTime = startTime;
     }
 
+    /**
+     * Button times for an exposure that starts at exactly startTime. The start
+     * time is not aligned to a grid or delayed. Used for externally triggered shots.
+     * @param data Intervalometer data
+     * @param exposure This shot's exposure in ms
+     * @param startTime The exposure should start at this time
+     */
+    private IntervalometerCalc(final IntervalometerData data, final int exposure, final long startTime){
+        this.exposure = exposure;
+        shutterOpenDelay = data.getShutterOpenDelay();
+        shutterCloseDelay = data.getShutterCloseDelay();
+        calculateButtonTimes(startTime, exposure, data.isMirrorLockSet() ? data.getMirrorUpDuration() : 0);
+        exposureStartTime = startTime;
+    }
+    
+    /**
+     * @param data Intervalometer data
+     * @param exposure This shot's exposure in ms
+     * @param startTime The exposure should start at this time
+     * @return Button times for an exposure that starts at exactly startTime
+     */
+    static IntervalometerCalc startingAt(final IntervalometerData data, final int exposure, final long startTime){
+        return new IntervalometerCalc(data, exposure, startTime);
+    }
+
     /**
      * Calculates shutterButtonDownT, shutterButtonUpT, mirrorLockButtonDownT, mirrorLockButtonUpT.
      * If the mirror lock / take exposure gets out of sync, the exposure will only be 
@@ -96,6 +147,13 @@ class IntervalometerCalc {
         return exposureStartTime;
     }
 
+    /**
+     * @return The commanded exposure length in milliseconds
+     */
+    int getExposure() {
+        return exposure;
+    }
+
     long getFirstButtonPressTime(){
         return mirrorLockButtonDownT;
     }
@@ -24,12 +24,31 @@ import info.johnmurphyastro.dslrtrigger.usbswitch.SerialComPortsAvailable;
 import gnu.io.PortInUseException;
 import gnu.io.UnsupportedCommOperationException;
 import java.io.IOException;
+import info.johnmurphyastro.dslrtrigger.ArmedListener;
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
 import info.johnmurphyastro.dslrtrigger.MessageListener;
 import info.johnmurphyastro.dslrtrigger.ProgressListener;
+import info.johnmurphyastro.dslrtrigger.TimingListener;
 import info.johnmurphyastro.dslrtrigger.WaitTimeListener;
-import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
+import info.johnmurphyastro.dslrtrigger.calibration.LagCalibrationSession;
+import info.johnmurphyastro.dslrtrigger.calibration.ShutterLagStore;
+import info.johnmurphyastro.dslrtrigger.clock.TimeSource;
+import info.johnmurphyastro.dslrtrigger.data.ClockData;
 import info.johnmurphyastro.dslrtrigger.data.LogfileData;
 import info.johnmurphyastro.dslrtrigger.data.ObserverData;
+import info.johnmurphyastro.dslrtrigger.data.SequencePlan;
+import info.johnmurphyastro.dslrtrigger.data.ShutterLagProfile;
+import info.johnmurphyastro.dslrtrigger.data.ExternalTriggerData;
+import info.johnmurphyastro.dslrtrigger.data.TriggerData;
+import info.johnmurphyastro.dslrtrigger.eventlog.EventLogWriter;
+import info.johnmurphyastro.dslrtrigger.jfr.FlightRecorderEvents;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFile;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFileReader;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFileWriter;
+import info.johnmurphyastro.dslrtrigger.trigger.TriggerSource;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
 import info.johnmurphyastro.dslrtrigger.usbswitch.UsbSwitch;
 
 /**
@@ -42,6 +61,30 @@ public class IntervalometerController {
     private final SerialComPortsAvailable availableSerialPorts = new SerialComPortsAvailable();
     private UsbSwitch usbSwitch;
     private Intervalometer intervalometer;
+    private final TimingListeners timingListeners = new TimingListeners();
+    private final ShutterLagStore lagStore = new ShutterLagStore();
+    /** Enough self test cycles to measure the 99th percentile, in about a minute */
+    public static final int SELF_TEST_CYCLES = 2000;
+    /** A GPS that has just been plugged in may need this long to find the time */
+    private static final long CLOCK_LOCK_TIMEOUT_MS = 60_000;
+    
+    /**
+     * Timing events are also sent to Flight Recorder when it is available,
+     * and recorded whenever a recording is running.
+     */
+    public IntervalometerController() {
+        TimingListener flightRecorder = FlightRecorderEvents.createListener();
+        if (flightRecorder != null) {
+            timingListeners.add(flightRecorder);
+        }
+    }
+
+    /**
+     * @return The shutter lag calibrations for every camera and mode
+     */
+    public ShutterLagStore getShutterLagStore() {
+        return lagStore;
+    }
 
     private synchronized Intervalometer getIntervalometer() {
         return intervalometer;
@@ -51,6 +94,21 @@ public class IntervalometerController {
         this.intervalometer = intervalometer;
     }
 
+    /**
+     * @param listener Told about every wait, button press, release and log row
+     * of this and later sequences. Called on the Intervalometer thread.
+     */
+    public void addTimingListener(TimingListener listener) {
+        timingListeners.add(listener);
+    }
+    
+    /**
+     * @param listener Listener to remove
+     */
+    public void removeTimingListener(TimingListener listener) {
+        timingListeners.remove(listener);
+    }
+
     /**
      * @return list of Serial COM port names
      */
@@ -62,15 +120,58 @@ public class IntervalometerController {
      * Start capturing images
      *
      * @param comPort
-     * @param ivData
+     * @param plan Sequence plan. All segments are taken without reopening the COM port
      * @param obsData
      * @param logData
+     * @param triggerData Shutter trigger settings
+     * @param listener Provide progress feedback to the user interface (number of shots taken)
+     * @param waitTimeListener Provide count down time progress until first shot
+     * @param armedListener Provide the pre-flight arming results
+     * @param msgListener
+     */
+    public void start(String comPort, SequencePlan plan, ObserverData obsData, LogfileData logData,
+            TriggerData triggerData, ProgressListener listener, WaitTimeListener waitTimeListener, 
+            ArmedListener armedListener, MessageListener msgListener) {
+        start(new PlanFile(plan, obsData, logData, triggerData, comPort), null,
+                listener, waitTimeListener, armedListener, msgListener);
+    }
+    
+    /**
+     * Resume a sequence that was interrupted by a crash or reboot. The plan 
+     * copy saved when the sequence started is used, on its original time grid,
+     * and the original log file is appended to.
+     *
+     * @param checkpoint The checkpoint saved after the last shot
      * @param listener Provide progress feedback to the user interface (number of shots taken)
      * @param waitTimeListener Provide count down time progress until first shot
+     * @param armedListener Provide the pre-flight arming results
      * @param msgListener
      */
-    public void start(String comPort, IntervalometerData ivData, ObserverData obsData, LogfileData logData,
-            ProgressListener listener, WaitTimeListener waitTimeListener, MessageListener msgListener) {
+    public void resume(Checkpoint checkpoint, ProgressListener listener, WaitTimeListener waitTimeListener, 
+            ArmedListener armedListener, MessageListener msgListener) {
+        PlanFile planFile;
+        try {
+            planFile = PlanFileReader.read(checkpoint.getPlanFile());
+        } catch (IOException | InvalidDataException ex) {
+            msgListener.showErrorMessage("Cannot resume sequence\n" + ex.getLocalizedMessage());
+            return;
+        }
+        if (!PlanFileWriter.getHash(planFile).equals(checkpoint.getPlanHash())) {
+            msgListener.showErrorMessage("Cannot resume sequence\n" + checkpoint.getPlanFile() + " has been changed");
+            return;
+        }
+        start(planFile, checkpoint, listener, waitTimeListener, armedListener, msgListener);
+    }
+    
+    /**
+     * @param planFile The plan and settings
+     * @param resumeFrom Checkpoint to resume from, or null to start a new sequence
+     */
+    private void start(PlanFile planFile, Checkpoint resumeFrom, ProgressListener listener, 
+            WaitTimeListener waitTimeListener, ArmedListener armedListener, MessageListener msgListener) {
+        String comPort = planFile.getComPort();
+        SequencePlan plan = planFile.getSequencePlan();
+        LogfileData logData = planFile.getLogfileData();
         try {
             if (null == comPort || comPort.trim().isEmpty()) {
                 msgListener.showErrorMessage("No COM port specified");
@@ -86,15 +187,95 @@ public class IntervalometerController {
                 return;
             }
 
-            // The intervalometer runs in its own thread
-            ExposureReport report = new ExposureReport(logData, obsData, ivData);
-            Intervalometer iv = new Intervalometer(getUsbSwitch(), ivData,
-                    report, listener, waitTimeListener, msgListener);
-            iv.start();
-            // The stop action will need to access the intervalometer inorder to stop it.
-            setIntervalometer(iv);
-            // Wait until either the sequence has finished or has been aborted
-            iv.join();
+            List<TimeSource> timeSources = Collections.emptyList();
+            ClockData clock = planFile.getTriggerData().getClock();
+            if (clock != null) {
+                try {
+                    timeSources = TimeSource.open(clock, availableSerialPorts);
+                    for (TimeSource timeSource : timeSources) {
+                        if (!timeSource.waitForLock(CLOCK_LOCK_TIMEOUT_MS)) {
+                            TimeSource.close(timeSources);
+                            msgListener.showErrorMessage("No time from " + timeSource.getName() + " after " 
+                                    + CLOCK_LOCK_TIMEOUT_MS / 1000 + " seconds");
+                            return;
+                        }
+                    }
+                } catch (IOException | InvalidDataException ex) {
+                    msgListener.showErrorMessage("Failed to open " + clock + "\n" + ex.getLocalizedMessage());
+                    return;
+                }
+            }
+            
+            TriggerSource triggerSource = null;
+            ExternalTriggerData externalTrigger = planFile.getTriggerData().getExternalTrigger();
+            if (externalTrigger != null) {
+                try {
+                    // Start listening now, so that a bad address is reported straight away
+                    triggerSource = TriggerSource.open(externalTrigger, availableSerialPorts);
+                } catch (IOException | InvalidDataException ex) {
+                    msgListener.showErrorMessage("Failed to open external trigger " + externalTrigger.getAddress()
+                            + "\n" + ex.getLocalizedMessage());
+                    TimeSource.close(timeSources);
+                    return;
+                }
+            }
+            
+            try {
+                // If the delays come from this profile, the log header includes their uncertainty.
+                // A plan that uses lag profiles has the same mirror lock setting in every segment.
+                ShutterLagProfile lagProfile = lagStore.find(planFile.getObserverData().getCamera(), 
+                        plan.getFirstSegment().isMirrorLockSet(), plan.inBulbMode());
+                ExposureReport report = new ExposureReport(logData, planFile.getObserverData(), plan, 
+                        clock, lagProfile);
+                Checkpoint checkpoint = resumeFrom;
+                if (checkpoint == null) {
+                    // Save a copy of the plan next to the log, so that the sequence can be resumed after a crash
+                    File logFile = report.getLogFile();
+                    File planCopy = new File(logFile.getPath() + ".plan");
+                    try {
+                        PlanFileWriter.write(planFile, planCopy);
+                    } catch (IOException ex) {
+                        msgListener.showErrorMessage("Failed to write " + planCopy + "\n" + ex.getLocalizedMessage());
+                        return;
+                    }
+                    checkpoint = new Checkpoint(PlanFileWriter.getHash(planFile), planCopy, logFile, plan.getNumberOfShots());
+                }
+
+                // Record every timing event in a compact binary file next to the log.
+                // The text log is still written, so the sequence continues without it.
+                File eventsFile = new File(checkpoint.getLogFile().getPath() + ".events");
+                EventLogWriter eventLog = null;
+                try {
+                    eventLog = EventLogWriter.open(eventsFile, report.createEventLogFormat(), 
+                            (plan.getNumberOfShots() + 1) * 12);
+                    timingListeners.add(eventLog);
+                    report.setEventLog(eventLog);
+                } catch (IOException ex) {
+                    System.err.println("Failed to open " + eventsFile + ": " + ex.getLocalizedMessage());
+                }
+
+                try {
+                    // The intervalometer runs in its own thread
+                    Intervalometer iv = new Intervalometer(getUsbSwitch(), plan, planFile.getTriggerData(),
+                            report, listener, waitTimeListener, armedListener, msgListener,
+                            checkpoint, Checkpoint.getFile(logData.getLogFolder()), triggerSource, timingListeners);
+                    iv.start();
+                    // The stop action will need to access the intervalometer inorder to stop it.
+                    setIntervalometer(iv);
+                    // Wait until either the sequence has finished or has been aborted
+                    iv.join();
+                } finally {
+                    if (eventLog != null) {
+                        timingListeners.remove(eventLog);
+                        eventLog.close();
+                    }
+                }
+            } finally {
+                if (triggerSource != null) {
+                    triggerSource.close();
+                }
+                TimeSource.close(timeSources);
+            }
             
         } catch (Throwable t) {
             msgListener.showErrorMessage(t);
@@ -106,18 +287,37 @@ public class IntervalometerController {
      * @param msgListener Report error messages to user
      */
     public synchronized void exit(MessageListener msgListener) {
+        close(msgListener);
+        System.exit(0);
+    }
+
+    /**
+     * Stop background thread and close the USB switch COM port
+     * @param msgListener Report error messages to user
+     */
+    public synchronized void close(MessageListener msgListener) {
+        close(msgListener, false);
+    }
+
+    /**
+     * Stop background thread and close the USB switch COM port
+     * @param msgListener Report error messages to user
+     * @param keepCheckpoint If true, an unfinished sequence can be resumed when
+     * the program is restarted. Used when the process is being terminated.
+     */
+    public synchronized void close(MessageListener msgListener, boolean keepCheckpoint) {
         // Abort any sequence currently in progress.
         // If the camera is not in bulb mode, we have to wait for the current
         // exposure to finish. In bulb mode we can stop the current exposure early.
-        stop(msgListener);
+        stop(msgListener, keepCheckpoint);
         try {
             if (usbSwitch != null) {
                 usbSwitch.close();
+                usbSwitch = null;
             }
         } catch (Throwable t) {
             System.err.println(t.getMessage());
         }
-        System.exit(0);
     }
 
     /**
@@ -128,10 +328,14 @@ public class IntervalometerController {
      * @param msgListener Report error messages to user
      */
     public synchronized void stop(MessageListener msgListener) {
+        stop(msgListener, false);
+    }
+    
+    private void stop(MessageListener msgListener, boolean keepCheckpoint) {
         try {
             Intervalometer iv = getIntervalometer();
-            if (iv != null && iv.isAlive() && !iv.isInterrupted()){
-                iv.interrupt();
+            if (iv != null && iv.isAlive()){
+                iv.stopSequence(keepCheckpoint);
                 iv.join();
             }
 
@@ -150,6 +354,73 @@ public class IntervalometerController {
         }
     }
     
+    /**
+     * Pause the sequence in progress. The current shot is finished or cancelled
+     * in the same way as stop, but the USB switch stays open.
+     * @return True if the sequence is paused. False if there is no armed sequence to pause
+     */
+    public boolean pause() {
+        Intervalometer iv = getIntervalometer();
+        return iv != null && iv.isAlive() && iv.pauseSequence();
+    }
+    
+    /**
+     * Resume a paused sequence. The next shot starts on the original time grid.
+     */
+    public void resume() {
+        Intervalometer iv = getIntervalometer();
+        if (iv != null) {
+            iv.resumeSequence();
+        }
+    }
+    
+    /**
+     * @return True if a sequence is paused
+     */
+    public boolean isPaused() {
+        Intervalometer iv = getIntervalometer();
+        return iv != null && iv.isAlive() && iv.isPaused();
+    }
+    
+    /**
+     * Pre-flight self test. Runs press / release cycles through the wait loop,
+     * the USB switch (release commands only, so no shot is taken) and the log
+     * writer, then decides whether this machine can take the sequence.
+     * @param planFile The plan to check. If it has no COM port, the switch is not tested
+     * @param cycles Number of press / release cycles
+     * @param listener Told the number of cycles completed
+     * @param msgListener Report error messages to user
+     * @return The self test report, or null if it could not be run
+     */
+    public synchronized SelfTestReport selfTest(PlanFile planFile, int cycles, 
+            ProgressListener listener, MessageListener msgListener) {
+        Intervalometer iv = getIntervalometer();
+        if (iv != null && iv.isAlive()) {
+            msgListener.showErrorMessage("The self test cannot run while a sequence is running");
+            return null;
+        }
+        String comPort = planFile.getComPort();
+        if (comPort != null && comPort.trim().isEmpty()) {
+            comPort = null;
+        }
+        try {
+            if (comPort != null) {
+                setUsbSerialPort(comPort);
+            }
+            LogfileData logData = planFile.getLogfileData();
+            ExposureReport report = new ExposureReport(logData, planFile.getObserverData(), planFile.getSequencePlan());
+            SelfTest selfTest = new SelfTest(planFile.getSequencePlan().getFirstSegment(), report, 
+                    logData.getLogFolder(), planFile.getTriggerData().getWatchdogMargin());
+            return selfTest.run(comPort != null ? getUsbSwitch() : null, comPort, cycles, listener);
+        } catch (InvalidSerialPortNameException | PortInUseException | UnsupportedCommOperationException
+                | IOException | GetSerialPortExcepton ex) {
+            msgListener.showErrorMessage(ex);
+        } catch (InterruptedException ex) {
+            msgListener.showErrorMessage("Self test stopped");
+        }
+        return null;
+    }
+    
     /**
      * Take a test shot to determine the DSLR shutter open lag
      * @param comPort The USB switch COM port name
@@ -168,6 +439,55 @@ public class IntervalometerController {
         } 
     }
     
+    /**
+     * Take a bulb test shot to determine the DSLR shutter close lag
+     * @param comPort The USB switch COM port name
+     * @param shutterCloseDelay Estimated shutter close lag
+     * @param exposure Bulb exposure in milliseconds
+     * @param mirrorLock True if the DSLR is in mirror lock mode
+     * @param listener Report error messages to user
+     */
+    public synchronized void takeShutterCloseCalibrationShot(String comPort, int shutterCloseDelay, 
+            int exposure, boolean mirrorLock, MessageListener listener) {
+        try {
+            setUsbSerialPort(comPort);
+            CalibrateShutterClose calibrate = new CalibrateShutterClose(getUsbSwitch());
+            calibrate.takeCalibrationImage(shutterCloseDelay, exposure, mirrorLock, listener);
+        } catch (PortInUseException | UnsupportedCommOperationException | GetSerialPortExcepton | InvalidSerialPortNameException | IOException ex) {
+            listener.showErrorMessage("Calibrate shutter close delay\n" + ex.getLocalizedMessage());
+        } 
+    }
+    
+    /**
+     * Take the pending test shots of a shutter lag calibration session. The
+     * session file is saved after every shot.
+     * @param comPort The USB switch COM port name
+     * @param session Calibration session with a planned round
+     * @param sessionFile Session file
+     * @param listener Told the number of shots taken
+     * @param msgListener Report error messages to user
+     * @return The session with the shots taken, or null if the round failed
+     */
+    public synchronized LagCalibrationSession takeCalibrationRound(String comPort, 
+            LagCalibrationSession session, File sessionFile, 
+            ProgressListener listener, MessageListener msgListener) {
+        Intervalometer iv = getIntervalometer();
+        if (iv != null && iv.isAlive()) {
+            msgListener.showErrorMessage("Calibration shots cannot be taken while a sequence is running");
+            return null;
+        }
+        try {
+            setUsbSerialPort(comPort);
+            return new CalibrationRound(getUsbSwitch()).take(session, sessionFile, listener);
+        } catch (PortInUseException | UnsupportedCommOperationException | GetSerialPortExcepton 
+                | InvalidSerialPortNameException | IOException ex) {
+            msgListener.showErrorMessage("Shutter lag calibration\n" + ex.getLocalizedMessage());
+        } catch (InterruptedException ex) {
+            msgListener.showErrorMessage("Shutter lag calibration stopped");
+        }
+        return null;
+    }
+    
     /**
      * If the USB Serial Port is currently set up, do nothing. If usbSerialPort
      * is connected to a different port, close the serial port and construct a
@@ -200,4 +520,4 @@ public class IntervalometerController {
     private synchronized UsbSwitch getUsbSwitch() {
         return usbSwitch;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import info.johnmurphyastro.dslrtrigger.TimingListener;
+import info.johnmurphyastro.dslrtrigger.TimingListener.Event;
+import info.johnmurphyastro.dslrtrigger.usbswitch.ShutterSwitch;
+import java.io.IOException;
+
+/**
+ * Tells the timing listener about every failed switch command, then passes
+ * the exception on unchanged.
+ * @author John Murphy
+ */
+class ReportingSwitch implements ShutterSwitch {
+    private final ShutterSwitch usbSwitch;
+    private final TimingListener timingListener;
+    
+    /**
+     * @param usbSwitch The switch that does the work
+     * @param timingListener Told about each failed command
+     */
+    ReportingSwitch(ShutterSwitch usbSwitch, TimingListener timingListener) {
+        this.usbSwitch = usbSwitch;
+        this.timingListener = timingListener;
+    }
+
+    @Override
+    public long pressShutterButton() throws IOException {
+        try {
+            return usbSwitch.pressShutterButton();
+        } catch (IOException ex) {
+            switchError();
+            throw ex;
+        }
+    }
+
+    @Override
+    public long releaseShutterButton() throws IOException {
+        try {
+            return usbSwitch.releaseShutterButton();
+        } catch (IOException ex) {
+            switchError();
+            throw ex;
+        }
+    }
+    
+    private void switchError() {
+        long now = TriggerClock.currentTimeMillis();
+        timingListener.timingEvent(Event.SWITCH_ERROR, -1, now, now);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import info.johnmurphyastro.dslrtrigger.ProgressListener;
+import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
+import info.johnmurphyastro.dslrtrigger.data.MinTime;
+import info.johnmurphyastro.dslrtrigger.usbswitch.NoOpSwitch;
+import info.johnmurphyastro.dslrtrigger.usbswitch.ShutterSwitch;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Pre-flight self test. Runs thousands of simulated press / release cycles
+ * through the real wait loop, USB switch and log writer, and measures how 
+ * late each wake up is, how long each switch command takes and how long each
+ * log row takes to write.
+ * 
+ * The switch is only sent the (harmless) release command, so no shot is 
+ * taken. Log rows are written to a temporary file in the log folder, so the
+ * disk that will hold the log is the one that is measured.
+ * @author John Murphy
+ */
+class SelfTest {
+    /** Waits are this long, plus up to WAIT_SPREAD_MS so that they do not line up with the timer tick */
+    private static final int WAIT_MS = 5;
+    private static final int WAIT_SPREAD_MS = 20;
+    /** Time between the simulated press and release */
+    private static final int PRESS_MS = 2;
+    /** Run the Arming phase warm up for this long first, as a real sequence would */
+    private static final int WARM_UP_MS = 3000;
+    private static final int PROGRESS_INTERVAL = 100;
+    
+    private final IntervalometerData data;
+    private final ExposureReport report;
+    private final File logFolder;
+    private final int watchdogMargin;
+    
+    /**
+     * @param data Sequence settings used to calculate each shot's button times
+     * @param report Formats the log rows
+     * @param logFolder The temporary log file is written here
+     * @param watchdogMargin The plan's watchdog margin in ms
+     */
+    SelfTest(IntervalometerData data, ExposureReport report, File logFolder, int watchdogMargin) {
+        this.data = data;
+        this.report = report;
+        this.logFolder = logFolder;
+        this.watchdogMargin = watchdogMargin;
+    }
+    
+    /**
+     * @param usbSwitch The switch to test, or null for a dry run
+     * @param switchName The switch's COM port name
+     * @param cycles Number of press / release cycles
+     * @param listener Told the number of cycles completed, or null
+     * @return The measurements and go / no-go decision
+     * @throws IOException If the temporary log file could not be written
+     * @throws InterruptedException If the user pressed stop
+     */
+    SelfTestReport run(ShutterSwitch usbSwitch, String switchName, int cycles, ProgressListener listener) 
+            throws IOException, InterruptedException {
+        ShutterSwitch testSwitch = usbSwitch != null ? usbSwitch : new NoOpSwitch();
+        new ArmingPhase(data, report).arm(new NoOpSwitch(), TriggerClock.currentTimeMillis() + WARM_UP_MS);
+        
+        long[] wakeUpError = new long[cycles];
+        long[] switchWrite = new long[cycles * 2];
+        long[] logWrite = new long[cycles];
+        String switchError = null;
+        int n = 0;
+        File logFile = File.createTempFile("selftest", ".log", logFolder);
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(logFile), StandardCharsets.UTF_8))) {
+            for (; n < cycles; n++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                long target = TriggerClock.currentTimeMillis() + WAIT_MS + n % WAIT_SPREAD_MS;
+                IntervalometerCalc times = new IntervalometerCalc(data, target, target - MinTime.BEFORE_SHOT_MS);
+                Intervalometer.waitUntilTime(target, null);
+                wakeUpError[n] = TriggerClock.currentTimeMillis() - target;
+                
+                long pressTime;
+                long releaseTime;
+                try {
+                    long start = System.nanoTime();
+                    pressTime = testSwitch.releaseShutterButton();
+                    switchWrite[2 * n] = (System.nanoTime() - start) / 1000;
+                    Intervalometer.waitUntilTime(pressTime + PRESS_MS, null);
+                    start = System.nanoTime();
+                    releaseTime = testSwitch.releaseShutterButton();
+                    switchWrite[2 * n + 1] = (System.nanoTime() - start) / 1000;
+                } catch (IOException ex) {
+                    switchError = ex.getLocalizedMessage();
+                    break;
+                }
+                
+                long start = System.nanoTime();
+                report.logExposureTime(writer, times.getExposureStartTime(pressTime), 
+                        new Date(releaseTime), times.getExposure(), 0, 0, pressTime, releaseTime);
+                writer.flush();
+                logWrite[n] = (System.nanoTime() - start) / 1000;
+                
+                if (listener != null && (n + 1) % PROGRESS_INTERVAL == 0) {
+                    listener.setProgress(n + 1);
+                }
+            }
+        } finally {
+            if (!logFile.delete()) {
+                logFile.deleteOnExit();
+            }
+        }
+        return new SelfTestReport(n, switchName, 
+                new SelfTestReport.Timing(wakeUpError, n, 1), 
+                new SelfTestReport.Timing(switchWrite, 2 * n, 1000),
+                new SelfTestReport.Timing(logWrite, n, 1000), 
+                switchError, watchdogMargin);
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.data.MinTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Results of the pre-flight self test, with a go / no-go decision and the 
+ * timing margins this machine needs. Immutable class.
+ * @author John Murphy
+ */
+public class SelfTestReport {
+    /** 99% of wake ups must be at most this late */
+    static final long MAX_WAKE_UP_ERROR_MS = 10;
+    /** Recommended margins are this multiple of the worst measured delay */
+    private static final int SAFETY_FACTOR = 2;
+    /** Recommended margins are rounded up to a multiple of this */
+    private static final int ROUND_MS = 10;
+    
+    /**
+     * Mean, 99th percentile and maximum of a set of measurements. Immutable class.
+     */
+    public static class Timing {
+        private final double mean;
+        private final double percentile99;
+        private final double max;
+        
+        /**
+         * @param values Measurements. The first n are sorted in place
+         * @param n Number of measurements
+         * @param unitsPerMs Measurement units in one millisecond
+         */
+        Timing(long[] values, int n, double unitsPerMs) {
+            if (n == 0) {
+                mean = percentile99 = max = 0;
+                return;
+            }
+            Arrays.sort(values, 0, n);
+            long total = 0;
+            for (int i = 0; i < n; i++) {
+                total += values[i];
+            }
+            mean = total / unitsPerMs / n;
+            percentile99 = values[Math.min(n - 1, (int) Math.ceil(n * 0.99) - 1)] / unitsPerMs;
+            max = values[n - 1] / unitsPerMs;
+        }
+
+        /**
+         * @return Mean in milliseconds
+         */
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * @return 99th percentile in milliseconds
+         */
+        public double getPercentile99() {
+            return percentile99;
+        }
+
+        /**
+         * @return Maximum in milliseconds
+         */
+        public double getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "mean %.2f ms, 99%% %.2f ms, max %.2f ms", mean, percentile99, max);
+        }
+    }
+    
+    private final int cycles;
+    private final String switchName;
+    private final Timing wakeUpError;
+    private final Timing switchWrite;
+    private final Timing logWrite;
+    private final String switchError;
+    private final int watchdogMargin;
+    private final int recommendedBeforeShot;
+    private final int recommendedWatchdogMargin;
+    private final List<String> problems;
+
+    /**
+     * @param cycles Number of press / release cycles completed
+     * @param switchName The COM port that was tested, or null for a dry run
+     * @param wakeUpError Wait loop wake up lateness
+     * @param switchWrite Time taken by each USB switch command
+     * @param logWrite Time taken to write and flush each log row
+     * @param switchError Why a USB switch command failed, or null
+     * @param watchdogMargin The plan's watchdog margin in ms
+     */
+    SelfTestReport(int cycles, String switchName, Timing wakeUpError, Timing switchWrite, Timing logWrite,
+            String switchError, int watchdogMargin) {
+        this.cycles = cycles;
+        this.switchName = switchName;
+        this.wakeUpError = wakeUpError;
+        this.switchWrite = switchWrite;
+        this.logWrite = logWrite;
+        this.switchError = switchError;
+        this.watchdogMargin = watchdogMargin;
+        // Between shots: the log row is written, then the next shot waits for its first press
+        recommendedBeforeShot = roundUp(wakeUpError.getMax() + switchWrite.getMax() + logWrite.getMax());
+        // The watchdog must not release a button that is only late because of a slow wake up or switch write
+        recommendedWatchdogMargin = roundUp(wakeUpError.getMax() + switchWrite.getMax());
+        
+        List<String> list = new ArrayList<>();
+        if (switchError != null) {
+            list.add("USB switch command failed: " + switchError);
+        }
+        if (wakeUpError.getPercentile99() > MAX_WAKE_UP_ERROR_MS) {
+            list.add(String.format(Locale.ROOT, "99%% of wake ups were within %.1f ms. At most %d ms is needed",
+                    wakeUpError.getPercentile99(), MAX_WAKE_UP_ERROR_MS));
+        }
+        if (recommendedBeforeShot > MinTime.BEFORE_SHOT_MS) {
+            list.add("This machine needs " + recommendedBeforeShot + " ms before each shot, but only " 
+                    + MinTime.BEFORE_SHOT_MS + " ms is allowed");
+        }
+        if (recommendedWatchdogMargin > watchdogMargin) {
+            list.add("The watchdog margin of " + watchdogMargin + " ms is less than the recommended " 
+                    + recommendedWatchdogMargin + " ms");
+        }
+        problems = Collections.unmodifiableList(list);
+    }
+    
+    private static int roundUp(double ms) {
+        int margin = (int) Math.ceil(ms * SAFETY_FACTOR);
+        return ((margin + ROUND_MS - 1) / ROUND_MS) * ROUND_MS;
+    }
+
+    /**
+     * @return True if this machine can take the sequence
+     */
+    public boolean isGo() {
+        return problems.isEmpty();
+    }
+
+    /**
+     * @return Why the self test failed. Empty if it passed
+     */
+    public List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * @return Number of press / release cycles completed
+     */
+    public int getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @return True if no USB switch was used
+     */
+    public boolean isDryRun() {
+        return switchName == null;
+    }
+
+    /**
+     * @return Wait loop wake up lateness
+     */
+    public Timing getWakeUpError() {
+        return wakeUpError;
+    }
+
+    /**
+     * @return Time taken by each USB switch command
+     */
+    public Timing getSwitchWrite() {
+        return switchWrite;
+    }
+
+    /**
+     * @return Time taken to write and flush each log row
+     */
+    public Timing getLogWrite() {
+        return logWrite;
+    }
+
+    /**
+     * @return Recommended minimum time between the end of one shot and the 
+     * first button press of the next, in ms. Compare with MinTime.BEFORE_SHOT_MS
+     */
+    public int getRecommendedBeforeShot() {
+        return recommendedBeforeShot;
+    }
+
+    /**
+     * @return Recommended minimum watchdog margin in ms
+     */
+    public int getRecommendedWatchdogMargin() {
+        return recommendedWatchdogMargin;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Self test: ").append(isGo() ? "GO" : "NO-GO").append('\n');
+        sb.append(cycles).append(" press / release cycles through the wait loop, ")
+                .append(switchName == null ? "dry run without a USB switch" 
+                        : "USB switch " + switchName + " (release commands only)").append('\n');
+        sb.append("Wake up error: ").append(wakeUpError).append('\n');
+        sb.append("Switch write: ").append(switchWrite).append('\n');
+        sb.append("Log write: ").append(logWrite).append('\n');
+        sb.append("Recommended margins: before shot ").append(recommendedBeforeShot)
+                .append(" ms (allowed ").append(MinTime.BEFORE_SHOT_MS).append(" ms), watchdog ")
+                .append(recommendedWatchdogMargin).append(" ms (plan ").append(watchdogMargin).append(" ms)");
+        for (String problem : problems) {
+            sb.append("\n- ").append(problem);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
+import info.johnmurphyastro.dslrtrigger.data.MinTime;
+import info.johnmurphyastro.dslrtrigger.data.OverrunPolicy;
+
+/**
+ * Decides when each shot of a sequence starts. Shots are placed on the
+ * precompiled Timeline. If a shot cannot start on time, the segment's
+ * OverrunPolicy decides whether to skip grid slots, catch up with the grid,
+ * or slip the grid.
+ * @author John Murphy
+ */
+class ShotScheduler {
+    private final Timeline timeline;
+    /** Index of the current shot */
+    private int shot;
+    /** Index of the current shot's segment */
+    private int segment;
+    private IntervalometerData data;
+    /** Amount the grid has been shifted by SKIP or SLIP overruns */
+    private long offset;
+    private IntervalometerCalc current;
+    private String shotComment;
+    /** True if the previous shot was behind the grid (CATCH_UP policy) */
+    private boolean behindGrid;
+    /** Grid slot of the current shot before the overrun policy was applied */
+    private long overrunSlot;
+    /** Amount the current shot could not start on time, or 0 */
+    private long overrun;
+
+    /**
+     * @param timeline The compiled sequence plan
+     */
+    ShotScheduler(Timeline timeline) {
+        this.timeline = timeline;
+    }
+
+    /**
+     * @param now The current time
+     * @return Button times for the first shot
+     */
+    IntervalometerCalc first(long now) {
+        shot = 0;
+        segment = 0;
+        data = timeline.getSegment(0);
+        offset = 0;
+        behindGrid = false;
+        shotComment = null;
+        overrun = 0;
+        current = new IntervalometerCalc(data, timeline.getExposure(0, 0), timeline.getNominalStart(0, 0), now);
+        return current;
+    }
+
+    /**
+     * @return True if there are more shots to take
+     */
+    boolean hasNext() {
+        return shot + 1 < timeline.getNumberOfShots();
+    }
+
+    /**
+     * Calculate the next shot. If it cannot start on time, apply the overrun policy.
+     * @param releaseTime The time the previous shot's shutter button was released
+     * @param now The current time
+     * @return Button times for the next shot
+     */
+    IntervalometerCalc next(long releaseTime, long now) {
+        shot++;
+        shotComment = null;
+        overrun = 0;
+        if (segment + 1 < timeline.getNumberOfSegments() && timeline.getFirstShot(segment + 1) <= shot) {
+            segment = timeline.getSegmentIndex(shot);
+            data = timeline.getSegment(segment);
+            shotComment = "Segment " + (segment + 1);
+            if (timeline.isFixedStart(segment)) {
+                // This segment starts at its own time, so earlier overruns do not move it
+                offset = 0;
+                behindGrid = false;
+            }
+        }
+        final int interval = data.getRepeatInterval();
+        final int exposure = timeline.getExposure(shot, segment);
+        long nominalStart = timeline.getNominalStart(shot, segment) + offset;
+        IntervalometerCalc times = new IntervalometerCalc(data, exposure, nominalStart, now);
+        overrun = Math.max(0, times.getStartT() - nominalStart);
+        overrunSlot = nominalStart;
+        if (overrun > 0) {
+            String cause = getOverrunCause(releaseTime, now);
+            String overrunComment;
+            switch (data.getOverrunPolicy()) {
+                case SKIP:
+                    long skipped = (overrun + interval - 1) / interval;
+                    offset += skipped * interval;
+                    // The next grid slot is at least as late as the earliest possible start
+                    times = new IntervalometerCalc(data, exposure, nominalStart + skipped * interval, now);
+                    overrunComment = "Overrun " + overrun + " ms (" + cause + "). Skipped " 
+                            + skipped + (skipped == 1 ? " slot" : " slots");
+                    break;
+                case CATCH_UP:
+                    if (behindGrid) {
+                        overrunComment = "Catching up with grid, " + overrun + " ms behind";
+                    } else {
+                        overrunComment = "Overrun " + overrun + " ms (" + cause + "). Catching up with grid";
+                    }
+                    break;
+                default:
+                    offset += overrun;
+                    overrunComment = "Overrun " + overrun + " ms (" + cause + "). Grid slipped";
+                    break;
+            }
+            shotComment = shotComment == null ? overrunComment : shotComment + "; " + overrunComment;
+        }
+        behindGrid = overrun > 0 && data.getOverrunPolicy() == OverrunPolicy.CATCH_UP;
+        current = times;
+        return times;
+    }
+
+    /**
+     * Continue a sequence from a checkpoint, on its original time grid
+     * @param nextShot Index of the next shot to take
+     * @param gridOffset Amount the grid had been shifted by overruns or pauses
+     * @param now The current time
+     * @return Button times for the next shot
+     */
+    IntervalometerCalc resumeAt(int nextShot, long gridOffset, long now) {
+        shot = nextShot;
+        segment = timeline.getSegmentIndex(nextShot);
+        data = timeline.getSegment(segment);
+        offset = gridOffset;
+        shotComment = null;
+        current = null;
+        return resume(now);
+    }
+
+    /**
+     * Reschedule the current shot after a pause. The shot keeps its place on
+     * the original time grid: it moves to the first grid slot that can still
+     * be reached, so later shots keep the same phase.
+     * @param now The current time
+     * @return Button times for the current shot
+     */
+    IntervalometerCalc resume(long now) {
+        final int interval = data.getRepeatInterval();
+        final int exposure = timeline.getExposure(shot, segment);
+        long nominalStart = timeline.getNominalStart(shot, segment) + offset;
+        IntervalometerCalc times = new IntervalometerCalc(data, exposure, nominalStart, now);
+        long late = times.getStartT() - nominalStart;
+        if (late > 0) {
+            long slots = (late + interval - 1) / interval;
+            offset += slots * interval;
+            times = new IntervalometerCalc(data, exposure, nominalStart + slots * interval, now);
+        }
+        behindGrid = false;
+        // Moving a paused shot to a later slot is not an overrun
+        overrun = 0;
+        current = times;
+        return times;
+    }
+
+    /**
+     * @return The current shot's segment
+     */
+    IntervalometerData getSegment() {
+        return data;
+    }
+
+    /**
+     * @return Amount the grid has been shifted by overruns or pauses
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return Index of the current shot's segment
+     */
+    int getSegmentIndex() {
+        return segment;
+    }
+
+    /**
+     * @return Index of the current shot
+     */
+    int getShot() {
+        return shot;
+    }
+
+    /**
+     * @return Time in ms the current shot could not start on its grid slot, or 0
+     */
+    long getOverrun() {
+        return overrun;
+    }
+    
+    /**
+     * @return The current shot's grid slot before the overrun policy was applied.
+     * Only valid if getOverrun() is not 0
+     */
+    long getOverrunSlot() {
+        return overrunSlot;
+    }
+
+    /**
+     * @return Segment start or overrun details for the current shot, or null
+     */
+    String getShotComment() {
+        return shotComment;
+    }
+
+    /**
+     * @param releaseTime The time the previous shot's shutter button was released
+     * @param now The time the next shot was calculated
+     * @return Likely cause of the overrun
+     */
+    private String getOverrunCause(long releaseTime, long now) {
+        long releaseLateness = releaseTime - current.getShutterButtonReleaseTime();
+        long afterRelease = now - releaseTime;
+        if (releaseLateness > 0 && releaseLateness >= afterRelease) {
+            return "shutter released " + releaseLateness + " ms late";
+        }
+        if (afterRelease > MinTime.BEFORE_SHOT_MS) {
+            // Normally the log row is written in a few ms
+            return "logging took " + afterRelease + " ms after release";
+        }
+        return "fire interval too short";
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import info.johnmurphyastro.dslrtrigger.usbswitch.ShutterSwitch;
+import java.io.IOException;
+
+/**
+ * Guarantees that the shutter button is released, even if the Intervalometer
+ * thread stalls (for example, blocked by a file system write or a modal dialog)
+ * while the button is held down. In bulb mode a missed release would otherwise
+ * leave the camera exposing indefinitely.
+ * 
+ * The Intervalometer tells the watchdog the scheduled release time each time
+ * it presses the button. If the button has not been released within
+ * the margin, the watchdog releases it and records the time it did so.
+ * @author John Murphy
+ */
+class ShutterWatchdog extends Thread {
+    private final ShutterSwitch usbSwitch;
+    private final int marginMs;
+    /** Scheduled release time of the button currently held down. 0 if released */
+    private long scheduledReleaseTime;
+    /** Time the watchdog released the button. 0 if it has not needed to */
+    private long overrideReleaseTime;
+    private boolean running = true;
+
+    /**
+     * After construction, use Thread.start() to start watching.
+     * @param usbSwitch USB switch
+     * @param marginMs Release the button if it is this many ms late
+     */
+    ShutterWatchdog(ShutterSwitch usbSwitch, int marginMs) {
+        super("Shutter Watchdog Thread");
+        this.usbSwitch = usbSwitch;
+        this.marginMs = marginMs;
+        setDaemon(true);
+        setPriority(Thread.MAX_PRIORITY);
+    }
+
+    /**
+     * Call each time the button is pressed
+     * @param scheduledReleaseTime The time the button should be released
+     */
+    synchronized void buttonPressed(long scheduledReleaseTime) {
+        this.scheduledReleaseTime = scheduledReleaseTime;
+        overrideReleaseTime = 0;
+        notifyAll();
+    }
+
+    /**
+     * Call each time the button is released
+     * @return The time the watchdog released the button, or 0 if it did not need to
+     */
+    synchronized long buttonReleased() {
+        scheduledReleaseTime = 0;
+        long releaseTime = overrideReleaseTime;
+        overrideReleaseTime = 0;
+        return releaseTime;
+    }
+
+    /**
+     * Stop watching. Does not release the button.
+     */
+    synchronized void shutdown() {
+        running = false;
+        notifyAll();
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            while (running) {
+                try {
+                    if (scheduledReleaseTime == 0) {
+                        wait();
+                        continue;
+                    }
+                    long delta = scheduledReleaseTime + marginMs - TriggerClock.currentTimeMillis();
+                    if (delta > 0) {
+                        wait(delta);
+                        continue;
+                    }
+                    // The Intervalometer thread has missed the release
+                    overrideReleaseTime = usbSwitch.releaseShutterButton();
+                    System.err.println("Watchdog released shutter button "
+                            + (overrideReleaseTime - scheduledReleaseTime) + " ms late");
+                    scheduledReleaseTime = 0;
+                } catch (InterruptedException ex) {
+                    running = false;
+                } catch (IOException ex) {
+                    System.err.println("Watchdog failed to release shutter button: "
+                            + ex.getLocalizedMessage());
+                    scheduledReleaseTime = 0;
+                }
+            }
+        }
+    }
+}
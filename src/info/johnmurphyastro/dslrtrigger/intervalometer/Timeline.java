@@ -0,0 +1,197 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
+import info.johnmurphyastro.dslrtrigger.data.MinTime;
+import info.johnmurphyastro.dslrtrigger.data.SequencePlan;
+import java.util.List;
+
+/**
+ * A sequence plan compiled into one timeline. Holds the nominal exposure start
+ * time of every shot of every segment, assuming no overruns. Immutable class.
+ * 
+ * Only the origin of each segment is stored, so the memory used does not
+ * depend on the number of shots, except that the exposure of every shot of a
+ * ramped segment is precomputed so that nothing is calculated between shots.
+ * @author John Murphy
+ */
+class Timeline {
+    private final IntervalometerData[] segments;
+    /** Nominal exposure start time of the first shot of each segment */
+    private final long[] origins;
+    /** Index of the first shot of each segment */
+    private final int[] firstShots;
+    /** True if the segment origin was set by its start after time, rather than by the previous segment */
+    private final boolean[] fixedStarts;
+    /** Exposure of each shot of each segment, or null if the segment is not ramped */
+    private final int[][] exposures;
+    private final int nShots;
+
+    private Timeline(IntervalometerData[] segments, long[] origins, int[] firstShots,
+            boolean[] fixedStarts, int[][] exposures, int nShots) {
+        this.segments = segments;
+        this.origins = origins;
+        this.firstShots = firstShots;
+        this.fixedStarts = fixedStarts;
+        this.exposures = exposures;
+        this.nShots = nShots;
+    }
+
+    /**
+     * The first shot starts at the first segment's start after time, or as soon
+     * as possible if that is in the past. Each later segment starts at its own
+     * start after time, or one fire interval after the previous segment's last
+     * shot if that is later.
+     * @param plan The sequence plan
+     * @param now The current time
+     * @return The compiled timeline
+     */
+    static Timeline compile(SequencePlan plan, long now) {
+        IntervalometerData first = plan.getFirstSegment();
+        return compileFromOrigin(plan, new IntervalometerCalc(first, first.getStartAfterTime(), now).getStartT());
+    }
+
+    /**
+     * Compile the plan with a known first shot time. Used to resume a sequence
+     * on its original time grid.
+     * @param plan The sequence plan
+     * @param origin Nominal exposure start time of the first shot
+     * @return The compiled timeline
+     */
+    static Timeline compileFromOrigin(SequencePlan plan, long origin) {
+        List<IntervalometerData> list = plan.getSegments();
+        int n = list.size();
+        IntervalometerData[] segments = list.toArray(new IntervalometerData[n]);
+        long[] origins = new long[n];
+        int[] firstShots = new int[n];
+        boolean[] fixedStarts = new boolean[n];
+        int[][] exposures = new int[n][];
+        for (int i = 0; i < n; i++) {
+            if (segments[i].getExposureRamp() != null) {
+                exposures[i] = new int[segments[i].getNumberOfShots()];
+                for (int shot = 0; shot < exposures[i].length; shot++) {
+                    exposures[i][shot] = segments[i].getExposure(shot);
+                }
+            }
+        }
+        
+        origins[0] = origin;
+        fixedStarts[0] = true;
+        int shot = segments[0].getNumberOfShots();
+        for (int i = 1; i < n; i++) {
+            IntervalometerData previous = segments[i - 1];
+            IntervalometerData segment = segments[i];
+            final int grid = segment.getStartAlignment().getMillis();
+            int lastShot = previous.getNumberOfShots() - 1;
+            long lastStart = origins[i - 1] + (long) lastShot * previous.getRepeatInterval();
+            int lastExposure = exposures[i - 1] != null ? exposures[i - 1][lastShot] : previous.getExposure();
+            long continuation = Math.max(lastStart + previous.getRepeatInterval(),
+                    // This segment's mirror lock may need the button to be pressed earlier
+                    lastStart + lastExposure - previous.getShutterCloseDelay() + MinTime.BEFORE_SHOT_MS 
+                            + segment.getShutterOpenDelay() + segment.getMirrorUpDuration());
+            // Round up, so that the previous segment's last interval is not shortened
+            continuation = ((continuation + grid - 1) / grid) * grid;
+            long startAfter = ((segment.getStartAfterTime() + grid / 2) / grid) * grid;
+            fixedStarts[i] = startAfter > continuation;
+            origins[i] = Math.max(startAfter, continuation);
+            firstShots[i] = shot;
+            shot += segment.getNumberOfShots();
+        }
+        return new Timeline(segments, origins, firstShots, fixedStarts, exposures, shot);
+    }
+
+    /**
+     * @return Total number of shots
+     */
+    int getNumberOfShots() {
+        return nShots;
+    }
+
+    /**
+     * @return Nominal exposure start time of the first shot
+     */
+    long getOrigin() {
+        return origins[0];
+    }
+
+    /**
+     * @return Number of segments
+     */
+    int getNumberOfSegments() {
+        return segments.length;
+    }
+
+    /**
+     * @param segment Segment index
+     * @return The segment's intervalometer data
+     */
+    IntervalometerData getSegment(int segment) {
+        return segments[segment];
+    }
+
+    /**
+     * @param segment Segment index
+     * @return Index of the segment's first shot
+     */
+    int getFirstShot(int segment) {
+        return firstShots[segment];
+    }
+
+    /**
+     * @param segment Segment index
+     * @return True if the segment starts at its own start after time, rather
+     * than straight after the previous segment
+     */
+    boolean isFixedStart(int segment) {
+        return fixedStarts[segment];
+    }
+
+    /**
+     * @param shot Shot index
+     * @param segment The segment that contains the shot
+     * @return Nominal exposure start time
+     */
+    long getNominalStart(int shot, int segment) {
+        return origins[segment] + (long) (shot - firstShots[segment]) * segments[segment].getRepeatInterval();
+    }
+
+    /**
+     * @param shot Shot index
+     * @param segment The segment that contains the shot
+     * @return The shot's commanded exposure in milliseconds
+     */
+    int getExposure(int shot, int segment) {
+        int[] segmentExposures = exposures[segment];
+        return segmentExposures == null ? segments[segment].getExposure() 
+                : segmentExposures[shot - firstShots[segment]];
+    }
+
+    /**
+     * @param shot Shot index
+     * @return The segment that contains the shot
+     */
+    int getSegmentIndex(int shot) {
+        int segment = 0;
+        while (segment + 1 < segments.length && firstShots[segment + 1] <= shot) {
+            segment++;
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.intervalometer;
+
+import info.johnmurphyastro.dslrtrigger.TimingListener;
+import java.util.Arrays;
+
+/**
+ * Passes timing events on to every registered listener. Listeners can be 
+ * added or removed while a sequence is running without locking the 
+ * Intervalometer thread; it always reads a complete copy of the array.
+ * @author John Murphy
+ */
+class TimingListeners implements TimingListener {
+    private volatile TimingListener[] listeners = new TimingListener[0];
+    
+    /**
+     * @param listener Listener to add
+     */
+    synchronized void add(TimingListener listener) {
+        TimingListener[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+        copy[listeners.length] = listener;
+        listeners = copy;
+    }
+    
+    /**
+     * @param listener Listener to remove
+     */
+    synchronized void remove(TimingListener listener) {
+        TimingListener[] copy = new TimingListener[listeners.length];
+        int n = 0;
+        for (TimingListener l : listeners) {
+            if (l != listener) {
+                copy[n++] = l;
+            }
+        }
+        listeners = Arrays.copyOf(copy, n);
+    }
+
+    @Override
+    public void timingEvent(Event event, int shot, long scheduledTime, long actualTime) {
+        for (TimingListener listener : listeners) {
+            listener.timingEvent(event, shot, scheduledTime, actualTime);
+        }
+    }
+}
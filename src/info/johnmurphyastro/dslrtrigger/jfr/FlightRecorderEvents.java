@@ -0,0 +1,74 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.jfr;
+
+import info.johnmurphyastro.dslrtrigger.TimingListener;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * JDK Flight Recorder support. Flight Recorder is only in Java 8u262 or later,
+ * so check isAvailable() first; the classes that use it are not loaded until
+ * they are needed.
+ * @author John Murphy
+ */
+public class FlightRecorderEvents {
+    private static final boolean AVAILABLE = isFlightRecorderPresent();
+    
+    private FlightRecorderEvents() {
+    }
+    
+    private static boolean isFlightRecorderPresent() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false, FlightRecorderEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+    
+    /**
+     * @return True if this Java runtime includes Flight Recorder
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+    
+    /**
+     * @return A listener that records every wait, button press and release, 
+     * log row and cancel step as a Flight Recorder event, or null if 
+     * Flight Recorder is not available
+     */
+    public static TimingListener createListener() {
+        return AVAILABLE ? new FlightRecorderListener() : null;
+    }
+    
+    /**
+     * Start a continuous, low overhead recording. It is written to the file
+     * when the program exits.
+     * @param file Recording file (.jfr)
+     * @throws IOException Flight Recorder is not available, or failed to start
+     */
+    public static void startRecording(File file) throws IOException {
+        if (!AVAILABLE) {
+            throw new IOException("Flight Recorder needs Java 8u262 or later");
+        }
+        NightRecording.start(file);
+    }
+}
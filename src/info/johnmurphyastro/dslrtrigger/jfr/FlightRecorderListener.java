@@ -0,0 +1,110 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.jfr;
+
+import info.johnmurphyastro.dslrtrigger.TimingListener;
+
+/**
+ * Turns timing events into Flight Recorder events. An event is only created
+ * if a recording has enabled it, so this costs almost nothing when no 
+ * recording is running.
+ * @author John Murphy
+ */
+class FlightRecorderListener implements TimingListener {
+    /** The wait in progress. Only used by the Intervalometer thread */
+    private WaitEvent wait;
+    private int cancelledShot = -1;
+
+    @Override
+    public void timingEvent(Event event, int shot, long scheduledTime, long actualTime) {
+        switch (event) {
+            case WAIT_BEGIN:
+                if (shot == cancelledShot) {
+                    // The shot is being retaken after a pause
+                    cancelledShot = -1;
+                }
+                wait = new WaitEvent();
+                wait.begin();
+                break;
+            case WAIT_END:
+                if (wait != null) {
+                    wait.end();
+                    if (wait.shouldCommit()) {
+                        wait.shot = shot;
+                        wait.scheduledTime = scheduledTime;
+                        wait.actualTime = actualTime;
+                        wait.late = actualTime - scheduledTime;
+                        wait.commit();
+                    }
+                    wait = null;
+                }
+                break;
+            case MIRROR_LOCK_PRESS:
+                switchEvent("Mirror lock press", shot, scheduledTime, actualTime);
+                break;
+            case MIRROR_LOCK_RELEASE:
+                switchEvent("Mirror lock release", shot, scheduledTime, actualTime);
+                break;
+            case SHUTTER_PRESS:
+                switchEvent("Shutter press", shot, scheduledTime, actualTime);
+                break;
+            case SHUTTER_RELEASE:
+                switchEvent("Shutter release", shot, scheduledTime, actualTime);
+                break;
+            case LOG_ROW:
+                shotEvent("Log row", shot, scheduledTime, actualTime);
+                break;
+            case CANCEL:
+                cancelledShot = shot;
+                shotEvent("Cancel", shot, scheduledTime, actualTime);
+                break;
+            case OVERRUN:
+                shotEvent("Overrun", shot, scheduledTime, actualTime);
+                break;
+            case SWITCH_ERROR:
+                shotEvent("Switch error", shot, scheduledTime, actualTime);
+                break;
+        }
+    }
+    
+    private void switchEvent(String action, int shot, long scheduledTime, long actualTime) {
+        SwitchEvent event = new SwitchEvent();
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.shot = shot;
+            event.cancelStep = shot == cancelledShot;
+            event.scheduledTime = scheduledTime;
+            event.actualTime = actualTime;
+            event.late = actualTime - scheduledTime;
+            event.commit();
+        }
+    }
+    
+    private void shotEvent(String type, int shot, long scheduledTime, long actualTime) {
+        ShotEvent event = new ShotEvent();
+        if (event.shouldCommit()) {
+            event.type = type;
+            event.shot = shot;
+            event.scheduledTime = scheduledTime;
+            event.actualTime = actualTime;
+            event.late = actualTime - scheduledTime;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.jfr;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+/**
+ * A continuous recording for a whole night. Starts from the JDK's low 
+ * overhead 'default' settings, adds safepoints and lowers the file and 
+ * socket I/O thresholds so that they can be lined up with the trigger events.
+ * @author John Murphy
+ */
+class NightRecording {
+    /** Keep this much history on disk */
+    private static final Duration MAX_AGE = Duration.ofHours(24);
+    /** Record I/O and safepoints that take at least this long */
+    private static final String THRESHOLD = "1 ms";
+    
+    private NightRecording() {
+    }
+    
+    /**
+     * @param file The recording is written to this file when the program exits
+     * @throws IOException Flight Recorder is not available, or the settings could not be read
+     */
+    static void start(File file) throws IOException {
+        if (!FlightRecorder.isAvailable()) {
+            throw new IOException("Flight Recorder is not available in this Java runtime");
+        }
+        Map<String, String> settings;
+        try {
+            settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        } catch (ParseException ex) {
+            throw new IOException("Failed to read the default Flight Recorder settings: " + ex.getMessage(), ex);
+        }
+        for (String event : new String[]{"jdk.SafepointBegin", "jdk.SafepointStateSynchronization", 
+                "jdk.SafepointEnd", "jdk.ExecuteVMOperation"}) {
+            settings.put(event + "#enabled", "true");
+            settings.put(event + "#threshold", THRESHOLD);
+        }
+        for (String event : new String[]{"jdk.FileRead", "jdk.FileWrite", "jdk.SocketRead", "jdk.SocketWrite"}) {
+            settings.put(event + "#threshold", THRESHOLD);
+        }
+        for (String event : new String[]{"dslrtrigger.Wait", "dslrtrigger.Switch", "dslrtrigger.Shot"}) {
+            settings.put(event + "#enabled", "true");
+        }
+        Recording recording = new Recording(settings);
+        recording.setName("DSLR Trigger");
+        recording.setToDisk(true);
+        recording.setMaxAge(MAX_AGE);
+        recording.setDestination(file.toPath());
+        recording.setDumpOnExit(true);
+        recording.start();
+    }
+}
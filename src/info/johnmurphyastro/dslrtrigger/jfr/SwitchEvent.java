@@ -0,0 +1,61 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import jdk.jfr.Timestamp;
+
+/**
+ * A USB switch command: a mirror lock or shutter button press or release.
+ * @author John Murphy
+ */
+@Name("dslrtrigger.Switch")
+@Label("Switch Command")
+@Category("DSLR Trigger")
+@Description("pressShutterButton or releaseShutterButton returned")
+@StackTrace(false)
+class SwitchEvent extends Event {
+    @Label("Action")
+    String action;
+    
+    @Label("Shot")
+    int shot;
+    
+    @Label("Cancel Step")
+    @Description("Part of finishing a shot after Pause or Stop")
+    boolean cancelStep;
+    
+    @Label("Scheduled Time")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    long scheduledTime;
+    
+    @Label("Actual Time")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    long actualTime;
+    
+    @Label("Late")
+    @Timespan(Timespan.MILLISECONDS)
+    long late;
+}
@@ -0,0 +1,55 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import jdk.jfr.Timestamp;
+
+/**
+ * The Intervalometer thread sleeping until a scheduled button press or release.
+ * The event's duration is the whole wait.
+ * @author John Murphy
+ */
+@Name("dslrtrigger.Wait")
+@Label("Scheduled Wait")
+@Category("DSLR Trigger")
+@Description("Sleep until a scheduled button press or release")
+@StackTrace(false)
+class WaitEvent extends Event {
+    @Label("Shot")
+    int shot;
+    
+    @Label("Scheduled Time")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    long scheduledTime;
+    
+    @Label("Wake Up Time")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    long actualTime;
+    
+    @Label("Late")
+    @Timespan(Timespan.MILLISECONDS)
+    long late;
+}
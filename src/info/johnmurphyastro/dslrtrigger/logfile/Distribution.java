@@ -0,0 +1,146 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+/**
+ * Accumulates the distribution of a timing in ms with a fixed amount of 
+ * memory. The count, mean, minimum and maximum are exact. Percentiles are
+ * taken from a histogram of fixed width bins, so are only accurate to the
+ * bin width, and values outside the histogram range are counted in the 
+ * first or last bin. Distributions from several threads are combined with
+ * add. Not thread safe.
+ * @author John Murphy
+ */
+public class Distribution {
+    private final long origin;
+    private final long binWidth;
+    private final long[] bins;
+    private long count;
+    private double sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    /**
+     * @param origin Lowest value of the first bin, in ms
+     * @param binWidth Width of each bin, in ms
+     * @param nBins Number of bins
+     */
+    public Distribution(long origin, long binWidth, int nBins) {
+        this.origin = origin;
+        this.binWidth = binWidth;
+        this.bins = new long[nBins];
+    }
+    
+    /**
+     * @return An empty distribution with the same bins
+     */
+    public Distribution copyEmpty() {
+        return new Distribution(origin, binWidth, bins.length);
+    }
+    
+    /**
+     * @param value Value to add, in ms
+     */
+    public void add(long value) {
+        long bin = Math.floorDiv(value - origin, binWidth);
+        bins[(int) Math.max(0, Math.min(bins.length - 1, bin))]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+    
+    /**
+     * Add all the values of another distribution
+     * @param other A distribution with the same bins
+     */
+    public void add(Distribution other) {
+        if (other.origin != origin || other.binWidth != binWidth || other.bins.length != bins.length) {
+            throw new IllegalArgumentException("Distributions have different bins");
+        }
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] += other.bins[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return Number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Mean, or NaN if there are no values
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @return Smallest value. Only valid if the count is not zero
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * @return Largest value. Only valid if the count is not zero
+     */
+    public long getMax() {
+        return max;
+    }
+    
+    /**
+     * @param fraction 0.5 for the median, 0.99 for the 99th percentile
+     * @return The middle of the bin holding the percentile, limited to the
+     * minimum and maximum. NaN if there are no values
+     */
+    public double getPercentile(double fraction) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long total = 0;
+        for (int i = 0; i < bins.length; i++) {
+            total += bins[i];
+            if (total >= rank) {
+                double middle = origin + i * binWidth + binWidth / 2.0;
+                return Math.max(min, Math.min(max, middle));
+            }
+        }
+        return max;
+    }
+    
+    /**
+     * @return "n, mean, median, 99%, min, max" for display, or "none"
+     */
+    @Override
+    public String toString() {
+        if (count == 0) {
+            return "none";
+        }
+        return String.format("n %d, mean %.1f, median %.0f, 99%% %.0f, min %d, max %d", 
+                count, getMean(), getPercentile(0.5), getPercentile(0.99), min, max);
+    }
+}
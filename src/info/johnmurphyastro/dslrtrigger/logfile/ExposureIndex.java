@@ -0,0 +1,403 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * A sorted index of every exposure in a log archive, for finding which 
+ * frame of which night was exposing at a given UTC time. The index file is
+ * memory mapped, so a query is a binary search over the mapped records and
+ * takes microseconds, however large the archive.
+ * 
+ * The file is a 32 byte header, then a 24 byte record per exposure (start 
+ * and end in ms since 1970, session number and frame number) sorted by 
+ * start, then the session table: the path, length and modified time of
+ * each log file. Updating the index only reads the logs that are new or 
+ * have changed since the last update, then merges their records with the
+ * existing ones into a new file, which replaces the old one with an atomic
+ * rename. Logs that have been deleted stay in the index.
+ * 
+ * A log without an 'End time' column gives each exposure the logged 
+ * exposure, or the first segment's exposure if it was not logged.
+ * @author John Murphy
+ */
+public class ExposureIndex {
+    /** "DTIX" */
+    private static final int MAGIC = 0x44544958;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_BYTES = 24;
+    private static final int WRITE_BUFFER_BYTES = RECORD_BYTES * 4096;
+    /** On Windows the old index cannot be replaced until its mapping is garbage collected */
+    private static final int MAPPED_FILE_RETRIES = 3;
+    
+    private final ByteBuffer buffer;
+    private final int nFrames;
+    /** Longest exposure in the index, which limits how far back a query searches */
+    private final long maxDuration;
+    private final List<Session> sessions;
+    
+    /**
+     * One log file in the session table
+     */
+    private static class Session {
+        final String path;
+        final long length;
+        final long lastModified;
+        final File file;
+        
+        Session(String path, long length, long lastModified) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.file = new File(path);
+        }
+    }
+    
+    /**
+     * One exposure, while updating the index
+     */
+    private static class Entry {
+        final long start;
+        final long end;
+        final int session;
+        final int frame;
+        
+        Entry(long start, long end, int session, int frame) {
+            this.start = start;
+            this.end = end;
+            this.session = session;
+            this.frame = frame;
+        }
+    }
+    
+    private ExposureIndex(File file) throws IOException, InvalidDataException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new InvalidDataException(file.getName() + " is not an exposure index");
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new InvalidDataException(file.getName() + " is not a version " + VERSION + " exposure index");
+        }
+        nFrames = buffer.getInt(8);
+        maxDuration = buffer.getLong(16);
+        long tableOffset = buffer.getLong(24);
+        if (nFrames < 0 || tableOffset != HEADER_BYTES + (long) nFrames * RECORD_BYTES 
+                || tableOffset + 4 > buffer.limit()) {
+            throw new InvalidDataException(file.getName() + " is damaged");
+        }
+        try {
+            ByteBuffer table = buffer.duplicate();
+            table.position((int) tableOffset);
+            int nSessions = table.getInt();
+            sessions = new ArrayList<>(nSessions);
+            for (int i = 0; i < nSessions; i++) {
+                long length = table.getLong();
+                long lastModified = table.getLong();
+                byte[] path = new byte[table.getShort() & 0xFFFF];
+                table.get(path);
+                sessions.add(new Session(new String(path, StandardCharsets.UTF_8), length, lastModified));
+            }
+        } catch (RuntimeException ex) {
+            throw new InvalidDataException(file.getName() + " session table is damaged");
+        }
+    }
+    
+    /**
+     * Open an index for queries
+     * @param file Index file written by update
+     * @return The index
+     * @throws IOException
+     * @throws InvalidDataException If the file is not an exposure index
+     */
+    public static ExposureIndex open(File file) throws IOException, InvalidDataException {
+        return new ExposureIndex(file);
+    }
+    
+    /**
+     * Add new and changed logs to the index, creating it if it does not exist
+     * @param indexFile Index file
+     * @param paths Log files or folders. Folders are searched, including sub
+     * folders, for .txt files
+     * @param zone Time zone of the computer that wrote the logs
+     * @return Number of logs read. Zero if the index was already up to date
+     * @throws IOException
+     * @throws InvalidDataException If the index file is not an exposure index
+     */
+    public static int update(File indexFile, List<File> paths, TimeZone zone) throws IOException, InvalidDataException {
+        ExposureIndex existing = indexFile.exists() ? new ExposureIndex(indexFile) : null;
+        List<Session> sessions = existing != null ? new ArrayList<>(existing.sessions) : new ArrayList<>();
+        Map<String, Integer> sessionIds = new HashMap<>();
+        for (int i = 0; i < sessions.size(); i++) {
+            sessionIds.put(sessions.get(i).path, i);
+        }
+        
+        List<File> files = new ArrayList<>();
+        for (File path : paths) {
+            LogArchiveAnalyzer.findLogs(path, files);
+        }
+        Collections.sort(files);
+        List<Entry> entries = new ArrayList<>();
+        boolean[] replaced = new boolean[sessions.size()];
+        int nRead = 0;
+        for (File file : files) {
+            Session session = new Session(file.getAbsolutePath(), file.length(), file.lastModified());
+            Integer id = sessionIds.get(session.path);
+            if (id != null) {
+                Session old = sessions.get(id);
+                if (old.length == session.length && old.lastModified == session.lastModified) {
+                    continue;
+                }
+                // A log that is still being written, or a resumed session
+                replaced[id] = true;
+                sessions.set(id, session);
+            } else {
+                id = sessions.size();
+                sessionIds.put(session.path, id);
+                sessions.add(session);
+            }
+            readLog(file, zone, id, entries);
+            nRead++;
+        }
+        if (nRead == 0 && existing != null) {
+            return 0;
+        }
+        entries.sort(Comparator.comparingLong((Entry e) -> e.start));
+        
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        write(tmpFile, existing, replaced, entries, sessions);
+        replace(tmpFile, indexFile);
+        return nRead;
+    }
+    
+    /**
+     * Add the log's exposures to entries. Text files that are not logs add 
+     * nothing, but stay in the session table so they are not read again.
+     */
+    private static void readLog(File file, TimeZone zone, int session, List<Entry> entries) throws IOException {
+        try (LogReader reader = new LogReader(file, zone)) {
+            int exposure = reader.getHeader().getExposure();
+            for (LogRow row = reader.next(); row != null; row = reader.next()) {
+                if (row.isCancelled()) {
+                    continue;
+                }
+                long end = row.getEnd();
+                if (end == LogRow.NO_TIME) {
+                    end = row.getStart() + (row.getCommandedExposure() >= 0 ? row.getCommandedExposure() : exposure);
+                }
+                entries.add(new Entry(row.getStart(), end, session, row.getN()));
+            }
+        } catch (InvalidDataException ex) {
+            // Not a log file
+        }
+    }
+    
+    /**
+     * Merge the existing records, less those of replaced sessions, with the 
+     * new entries and write the new index
+     */
+    private static void write(File file, ExposureIndex existing, boolean[] replaced, List<Entry> entries, 
+            List<Session> sessions) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, 
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            channel.position(HEADER_BYTES);
+            int nOld = existing != null ? existing.nFrames : 0;
+            int i = 0;
+            int j = 0;
+            int nFrames = 0;
+            long maxDuration = 0;
+            while (true) {
+                while (i < nOld && replaced[existing.getSession(i)]) {
+                    i++;
+                }
+                long start;
+                long end;
+                int session;
+                int frame;
+                if (i < nOld && (j == entries.size() || existing.getStart(i) <= entries.get(j).start)) {
+                    start = existing.getStart(i);
+                    end = existing.getEnd(i);
+                    session = existing.getSession(i);
+                    frame = existing.getFrame(i);
+                    i++;
+                } else if (j < entries.size()) {
+                    Entry entry = entries.get(j++);
+                    start = entry.start;
+                    end = entry.end;
+                    session = entry.session;
+                    frame = entry.frame;
+                } else {
+                    break;
+                }
+                if (!out.hasRemaining()) {
+                    flush(channel, out);
+                }
+                out.putLong(start).putLong(end).putInt(session).putInt(frame);
+                maxDuration = Math.max(maxDuration, end - start);
+                nFrames++;
+            }
+            long tableOffset = HEADER_BYTES + (long) nFrames * RECORD_BYTES;
+            flush(channel, out);
+            if (tableOffset > Integer.MAX_VALUE / 2) {
+                // Leave room for the session table within the 2 GB a buffer can map
+                throw new IOException("Too many exposures for one index: " + nFrames);
+            }
+            
+            out.putInt(sessions.size());
+            for (Session session : sessions) {
+                byte[] path = session.path.getBytes(StandardCharsets.UTF_8);
+                if (out.remaining() < 18 + path.length) {
+                    flush(channel, out);
+                }
+                out.putLong(session.length).putLong(session.lastModified).putShort((short) path.length).put(path);
+            }
+            flush(channel, out);
+            
+            out.putInt(MAGIC).putInt(VERSION).putInt(nFrames).putInt(0).putLong(maxDuration).putLong(tableOffset);
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out, out.position());
+            }
+            channel.force(true);
+        }
+    }
+    
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+    
+    private static void replace(File tmpFile, File file) throws IOException {
+        for (int retry = 0; ; retry++) {
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), 
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return;
+            } catch (FileSystemException ex) {
+                if (retry == MAPPED_FILE_RETRIES) {
+                    throw ex;
+                }
+                System.gc();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+    
+    private long getStart(int i) {
+        return buffer.getLong(HEADER_BYTES + i * RECORD_BYTES);
+    }
+    
+    private long getEnd(int i) {
+        return buffer.getLong(HEADER_BYTES + i * RECORD_BYTES + 8);
+    }
+    
+    private int getSession(int i) {
+        return buffer.getInt(HEADER_BYTES + i * RECORD_BYTES + 16);
+    }
+    
+    private int getFrame(int i) {
+        return buffer.getInt(HEADER_BYTES + i * RECORD_BYTES + 20);
+    }
+    
+    /**
+     * @return Index of the first record that starts after time
+     */
+    private int upperBound(long time) {
+        int low = 0;
+        int high = nFrames;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getStart(mid) <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * @param time Time in ms since 1970 (UTC)
+     * @return The exposures that were open at this time
+     */
+    public List<IndexedFrame> find(long time) {
+        return find(time, time);
+    }
+    
+    /**
+     * @param from Start of the time range in ms since 1970 (UTC)
+     * @param to End of the time range in ms since 1970 (UTC), inclusive
+     * @return The exposures that were open at any time in the range, in start time order
+     */
+    public List<IndexedFrame> find(long from, long to) {
+        List<IndexedFrame> frames = new ArrayList<>();
+        int last = upperBound(to);
+        for (int i = upperBound(from - maxDuration - 1); i < last; i++) {
+            long end = getEnd(i);
+            // A zero length exposure is found if it starts within the range
+            if (end > from || getStart(i) >= from) {
+                frames.add(new IndexedFrame(getStart(i), end, sessions.get(getSession(i)).file, getFrame(i)));
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * @return Number of exposures in the index
+     */
+    public int getNumberOfFrames() {
+        return nFrames;
+    }
+
+    /**
+     * @return Number of text files in the session table, including any that are not logs
+     */
+    public int getNumberOfSessions() {
+        return sessions.size();
+    }
+}
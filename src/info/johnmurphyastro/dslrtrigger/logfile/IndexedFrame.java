@@ -0,0 +1,73 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+import java.io.File;
+
+/**
+ * One exposure found in an ExposureIndex. Immutable class.
+ * @author John Murphy
+ */
+public class IndexedFrame {
+    private final long start;
+    private final long end;
+    private final File session;
+    private final int frame;
+
+    /**
+     * @param start Exposure start in ms since 1970 (UTC)
+     * @param end Exposure end in ms since 1970 (UTC)
+     * @param session Log file of the session
+     * @param frame Log row number
+     */
+    IndexedFrame(long start, long end, File session, int frame) {
+        this.start = start;
+        this.end = end;
+        this.session = session;
+        this.frame = frame;
+    }
+
+    /**
+     * @return Exposure start in ms since 1970 (UTC)
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return Exposure end in ms since 1970 (UTC)
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return Log file of the session
+     */
+    public File getSession() {
+        return session;
+    }
+
+    /**
+     * @return Log row number, starting at 1
+     */
+    public int getFrame() {
+        return frame;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Analyses any number of log files, for example every night's logs from 
+ * several years. Each log is read once, a row at a time, on a fork/join 
+ * pool. As each log finishes, its CSV row is written and its distributions 
+ * are added to the total, then it is discarded, so the memory used does
+ * not depend on the number or size of the logs.
+ * @author John Murphy
+ */
+public class LogArchiveAnalyzer {
+    private final SessionStats total = new SessionStats(null);
+    private final List<String> errors = new ArrayList<>();
+    private final Writer csvWriter;
+    private final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private int nSessions;
+    private int nFiles;
+    private long nKBytes;
+    private IOException csvException;
+    /** Time taken to analyse the logs in milliseconds */
+    private long analysisTime;
+    
+    private LogArchiveAnalyzer(Writer csvWriter) {
+        this.csvWriter = csvWriter;
+    }
+    
+    /**
+     * Analyse the log files. Folders are searched, including sub folders, 
+     * for .txt files. Text files that are not logs are listed in the errors.
+     * @param paths Log files or folders
+     * @param zone Time zone of the computer that wrote the logs
+     * @param csvWriter Destination for one CSV row per log, in the order the 
+     * logs finish, or null. Not closed by this method.
+     * @return The totals
+     * @throws IOException If the CSV could not be written
+     */
+    public static LogArchiveAnalyzer analyze(List<File> paths, TimeZone zone, Writer csvWriter) throws IOException {
+        long startNanos = System.nanoTime();
+        List<File> files = new ArrayList<>();
+        for (File path : paths) {
+            findLogs(path, files);
+        }
+        Collections.sort(files);
+        LogArchiveAnalyzer analyzer = new LogArchiveAnalyzer(csvWriter);
+        analyzer.nFiles = files.size();
+        if (csvWriter != null) {
+            csvWriter.write("File,Camera,First shot,Last shot,Rows,Cancelled,Skipped lines,"
+                    + "Exposure mean,Exposure min,Exposure max,Exposure error mean,Exposure error 99%,"
+                    + "Lateness mean,Lateness 99%,Lateness max,Realigned,Gap min,Gap median,Gap max,"
+                    + "Desync signatures,Layout\n");
+        }
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            pool.invoke(analyzer.new AnalyzeTask(files, zone, 0, files.size()));
+        } finally {
+            pool.shutdown();
+        }
+        if (analyzer.csvException != null) {
+            throw analyzer.csvException;
+        }
+        analyzer.analysisTime = (System.nanoTime() - startNanos) / 1_000_000;
+        return analyzer;
+    }
+    
+    /**
+     * Write the CSV file and analyse the log files
+     * @param paths Log files or folders
+     * @param zone Time zone of the computer that wrote the logs
+     * @param csvFile CSV file
+     * @return The totals
+     * @throws IOException 
+     */
+    public static LogArchiveAnalyzer analyze(List<File> paths, TimeZone zone, File csvFile) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
+            return analyze(paths, zone, writer);
+        }
+    }
+    
+    /**
+     * Add the .txt files in path, searching sub folders
+     */
+    static void findLogs(File path, List<File> files) {
+        if (path.isDirectory()) {
+            File[] children = path.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    findLogs(child, files);
+                }
+            }
+        } else if (path.getName().toLowerCase(Locale.ROOT).endsWith(".txt")) {
+            files.add(path);
+        }
+    }
+    
+    /**
+     * Add a finished log to the totals and write its CSV row
+     */
+    private synchronized void addSession(SessionStats stats) {
+        nKBytes += stats.getFile().length() / 1024;
+        if (stats.getError() != null) {
+            errors.add(stats.getFile().getName() + ": " + stats.getError());
+            return;
+        }
+        nSessions++;
+        total.add(stats);
+        if (csvWriter != null && csvException == null) {
+            try {
+                writeCsvRow(stats);
+            } catch (IOException ex) {
+                csvException = ex;
+            }
+        }
+    }
+    
+    private void writeCsvRow(SessionStats stats) throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(quote(stats.getFile().getPath())).append(',').append(quote(stats.getCamera())).append(',');
+        if (stats.getFirstStart() != LogRow.NO_TIME) {
+            sb.append(sdf.format(new Date(stats.getFirstStart()))).append(',')
+                    .append(sdf.format(new Date(stats.getLastStart())));
+        } else {
+            sb.append(',');
+        }
+        sb.append(',').append(stats.getNumberOfRows())
+                .append(',').append(stats.getNumberOfCancelled())
+                .append(',').append(stats.getNumberOfSkippedLines());
+        Distribution exposure = stats.getExposure();
+        appendMean(sb, exposure);
+        appendValue(sb, exposure, exposure.getMin());
+        appendValue(sb, exposure, exposure.getMax());
+        appendMean(sb, stats.getExposureError());
+        appendValue(sb, stats.getExposureError(), stats.getExposureError().getPercentile(0.99));
+        Distribution lateness = stats.getLateness();
+        appendMean(sb, lateness);
+        appendValue(sb, lateness, lateness.getPercentile(0.99));
+        appendValue(sb, lateness, lateness.getMax());
+        sb.append(',').append(stats.getNumberOfRealigned());
+        Distribution gap = stats.getGap();
+        appendValue(sb, gap, gap.getMin());
+        appendValue(sb, gap, gap.getPercentile(0.5));
+        appendValue(sb, gap, gap.getMax());
+        sb.append(',').append(stats.getNumberOfDesyncSignatures())
+                .append(',').append(quote(stats.getLayout())).append('\n');
+        csvWriter.append(sb);
+    }
+    
+    private static void appendMean(StringBuilder sb, Distribution distribution) {
+        sb.append(',');
+        if (distribution.getCount() > 0) {
+            sb.append(String.format(Locale.ROOT, "%.1f", distribution.getMean()));
+        }
+    }
+    
+    private static void appendValue(StringBuilder sb, Distribution distribution, double value) {
+        sb.append(',');
+        if (distribution.getCount() > 0) {
+            sb.append((long) value);
+        }
+    }
+    
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * @return Every session's rows and distributions added together
+     */
+    public SessionStats getTotal() {
+        return total;
+    }
+
+    /**
+     * @return Number of logs read
+     */
+    public int getNumberOfSessions() {
+        return nSessions;
+    }
+
+    /**
+     * @return Files that could not be read, or are not logs
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * @return Summary of every session for display to the user
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Logs: ").append(nSessions).append(" of ").append(nFiles).append(" .txt files (")
+                .append(nKBytes / 1024).append(" MB)\n");
+        sb.append(total).append('\n');
+        sb.append("Analysis time: ").append(analysisTime).append(" ms");
+        for (String error : errors) {
+            sb.append("\nSkipped ").append(error);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Reads files[from] to files[to - 1], splitting the range in half until
+     * it is a single file
+     */
+    private class AnalyzeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<File> files;
+        private final TimeZone zone;
+        private final int from;
+        private final int to;
+        
+        AnalyzeTask(List<File> files, TimeZone zone, int from, int to) {
+            this.files = files;
+            this.zone = zone;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                addSession(SessionStats.read(files.get(from), zone));
+            } else if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new AnalyzeTask(files, zone, from, mid), new AnalyzeTask(files, zone, mid, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+/**
+ * The columns an ExposureReport log file can contain. Which of them are
+ * present depends on the 'Log all events', mirror lock, bulb mode, exposure
+ * ramp and NTP settings.
+ * @author John Murphy
+ */
+public enum LogColumn {
+    N("N"),
+    FILENAME("Filename"),
+    ML_PRESS("ML press"),
+    ML_RELEASE("ML release"),
+    SB_PRESS("SB press"),
+    SB_RELEASE("SB release"),
+    START_TIME("Start time"),
+    END_TIME("End time"),
+    EXPOSURE("Exposure"),
+    COMMANDED("Commanded"),
+    NTP_OFFSET("NTP offset"),
+    COMMENT("Comment");
+    
+    private final String header;
+    
+    private LogColumn(String header) {
+        this.header = header;
+    }
+    
+    /**
+     * @return Column header text written by ExposureReport
+     */
+    public String getHeader() {
+        return header;
+    }
+    
+    /**
+     * @param header Column header text, without padding
+     * @return The column, or null if the header is not recognised
+     */
+    static LogColumn fromHeader(String header) {
+        for (LogColumn column : values()) {
+            if (column.header.equalsIgnoreCase(header)) {
+                return column;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes the key, column headers and rows of an ExposureReport log file.
+ * Used both while the sequence runs and by EventLogExport to regenerate
+ * the log from an event log, so the two cannot drift apart. LogLayout reads
+ * the result back.
+ * @author John Murphy
+ */
+public class LogFormatter {
+    /** Written for a button time that is not known */
+    private static final String NO_TIME = "00.00.00.000";
+    private static final int EXPOSURE_LENGTH = 8;
+    private static final int OFFSET_LENGTH = 10;
+
+    private final SimpleDateFormat sdf;
+    private final SimpleDateFormat imageTime = new SimpleDateFormat("HH.mm.ss.SSS");
+    private final String filenamePrefix;
+    private final String colSep;
+    private final boolean allEvents;
+    private final boolean mirrorLockUsed;
+    private final boolean bulbMode;
+    private final boolean exposureRamped;
+    private final boolean ntpOffsetColumn;
+    private final int timeStrLength = NO_TIME.length();
+
+    /**
+     * @param filenamePrefix Log and image filename prefix
+     * @param millisecondFilenames True if image filenames include milliseconds
+     * @param tabSeparated True to separate the columns with tabs instead of commas
+     * @param allEvents True to include every button press and release
+     * @param mirrorLockUsed True if any segment uses mirror lock
+     * @param bulbMode True if the camera is in bulb mode
+     * @param exposureRamped True to include the Commanded column
+     * @param ntpOffsetColumn True to include the NTP offset column
+     */
+    public LogFormatter(String filenamePrefix, boolean millisecondFilenames, boolean tabSeparated,
+            boolean allEvents, boolean mirrorLockUsed, boolean bulbMode, boolean exposureRamped,
+            boolean ntpOffsetColumn) {
+        this.filenamePrefix = filenamePrefix;
+        if (millisecondFilenames) {
+            // Sub-second cadence. Include milliseconds so that the filenames are unique
+            sdf = new SimpleDateFormat("yyyy'y'LL'm'dd'd'_HH'h'mm'm'ss.SSS's'");
+        } else {
+            sdf = new SimpleDateFormat("yyyy'y'LL'm'dd'd'_HH'h'mm'm'ss's'");
+        }
+        colSep = tabSeparated ? "\t" : ", ";
+        this.allEvents = allEvents;
+        this.mirrorLockUsed = mirrorLockUsed;
+        this.bulbMode = bulbMode;
+        this.exposureRamped = exposureRamped;
+        this.ntpOffsetColumn = ntpOffsetColumn;
+    }
+
+    /**
+     * @param logFileWriter Log file
+     * @throws IOException
+     */
+    public void writeKey(BufferedWriter logFileWriter) throws IOException {
+        logFileWriter.write("Key");
+        logFileWriter.newLine();
+        if (allEvents){
+            if (mirrorLockUsed){
+                logFileWriter.write(rightPadding("ML press:", 12) + "Shutter button pressed; instructs DSLR to lock up mirror.");
+                logFileWriter.newLine();
+                logFileWriter.write(rightPadding("ML release:", 12) + "Shutter button released; mirror stays up, but the camera is now ready for the next shot.");
+                logFileWriter.newLine();
+            }
+            logFileWriter.write(rightPadding("SB press:", 12) + "Shutter button pressed; instructs DSLR to take an image.)");
+            logFileWriter.newLine();
+            logFileWriter.write(rightPadding("SB release:", 12) + "Shutter button released; if in bulb mode, instruct DSLR to end exposure.");
+            logFileWriter.newLine();
+        }
+        logFileWriter.write(rightPadding("Start time:", 12) + "The exposure start time; equal to 'Shutter button press time' + 'Shutter open delay'.");
+        logFileWriter.newLine();
+        if (bulbMode){
+            logFileWriter.write(rightPadding("End time:", 12) + "The exposure end time; equal to 'Shutter button release time' + 'Shutter close delay'.");
+            logFileWriter.newLine();
+        }
+        if (exposureRamped){
+            logFileWriter.write(rightPadding("Commanded:", 12) + "The exposure requested by the exposure ramp in ms.");
+            logFileWriter.newLine();
+        }
+        if (ntpOffsetColumn){
+            logFileWriter.write(rightPadding("NTP offset:", 12) + "NTP server time minus the times in this log in ms, from its latest replies.");
+            logFileWriter.newLine();
+        }
+        logFileWriter.newLine();
+    }
+
+    /**
+     * @param logFileWriter Log file
+     * @throws IOException
+     */
+    public void writeColumnHeaders(BufferedWriter logFileWriter) throws IOException {
+        int filenameLength = createFilename(new Date()).length();
+        StringBuilder columnHeaders = new StringBuilder()
+                .append(LogColumn.N.getHeader())
+                .append(colSep).append(rightPadding(LogColumn.FILENAME.getHeader(), filenameLength));
+        if (allEvents) {
+            if (mirrorLockUsed){
+                columnHeaders
+                    .append(colSep).append(rightPadding(LogColumn.ML_PRESS.getHeader(), timeStrLength))
+                    .append(colSep).append(rightPadding(LogColumn.ML_RELEASE.getHeader(), timeStrLength));
+            }
+            columnHeaders.append(colSep).append(rightPadding(LogColumn.SB_PRESS.getHeader(), timeStrLength));
+            columnHeaders.append(colSep).append(rightPadding(LogColumn.SB_RELEASE.getHeader(), timeStrLength));
+        }
+        columnHeaders.append(colSep).append(rightPadding(LogColumn.START_TIME.getHeader(), timeStrLength));
+        if (bulbMode){
+            columnHeaders.append(colSep).append(rightPadding(LogColumn.END_TIME.getHeader(), timeStrLength));
+            columnHeaders.append(colSep).append(rightPadding(LogColumn.EXPOSURE.getHeader(), EXPOSURE_LENGTH));
+        }
+        if (exposureRamped) {
+            columnHeaders.append(colSep).append(rightPadding(LogColumn.COMMANDED.getHeader(), EXPOSURE_LENGTH));
+        }
+        if (ntpOffsetColumn) {
+            columnHeaders.append(colSep).append(rightPadding(LogColumn.NTP_OFFSET.getHeader(), OFFSET_LENGTH));
+        }
+        columnHeaders.append(colSep).append(LogColumn.COMMENT.getHeader());
+
+        logFileWriter.write(columnHeaders.toString());
+        logFileWriter.newLine();
+    }
+
+    /**
+     * Write an exposure time data row to the log file
+     * @param logFileWriter Log file
+     * @param n nth shot
+     * @param startTime Time that the exposure started, or null if not known
+     * @param endTime Time that the exposure finished, or null if not known
+     * @param commandedExposure Exposure requested for this shot in ms
+     * @param mirrorLockButtonPressTimeMs USB button press to start mirror lock time
+     * @param mirrorLockButtonReleaseTimeMs USB button release time (mirror still locked up)
+     * @param shutterButtonPressTimeMs USB button press time (tells camera to start exposure)
+     * @param shutterButtonReleaseTimeMs USB button release time (tells camera to finish exposure)
+     * @param ntpOffset NTP server's offset in ms, or NaN if there is no estimate yet
+     * @param comment User comment, or aborted shot information.
+     * @throws IOException
+     */
+    public void writeRow(BufferedWriter logFileWriter, int n, Date startTime, Date endTime,
+            int commandedExposure, long mirrorLockButtonPressTimeMs, long mirrorLockButtonReleaseTimeMs,
+            long shutterButtonPressTimeMs, long shutterButtonReleaseTimeMs,
+            double ntpOffset, String comment) throws IOException {
+
+        StringBuilder columnData = new StringBuilder()
+                .append(Integer.toString(n)).append(colSep)
+                .append(startTime != null ? createFilename(startTime) : filenamePrefix);
+        if (allEvents) {
+            if (mirrorLockUsed){
+                columnData
+                    .append(colSep).append(formatTime(mirrorLockButtonPressTimeMs))
+                    .append(colSep).append(formatTime(mirrorLockButtonReleaseTimeMs));
+            }
+            columnData.append(colSep).append(formatTime(shutterButtonPressTimeMs));
+            columnData.append(colSep).append(formatTime(shutterButtonReleaseTimeMs));
+        }
+        columnData.append(colSep).append(formatTime(startTime));
+        if (bulbMode){
+            long exposure = startTime != null && endTime != null ? endTime.getTime() - startTime.getTime() : 0;
+            columnData.append(colSep).append(formatTime(endTime));
+            columnData.append(colSep).append(String.format("%8d", exposure));
+        }
+        if (exposureRamped) {
+            columnData.append(colSep).append(String.format("%9d", commandedExposure));
+        }
+        if (ntpOffsetColumn) {
+            columnData.append(colSep).append(!Double.isNaN(ntpOffset)
+                    ? String.format(Locale.ROOT, "%+10.1f", ntpOffset) : rightPadding("none", OFFSET_LENGTH));
+        }
+        columnData.append(colSep).append(comment);
+
+        logFileWriter.write(columnData.toString());
+        logFileWriter.newLine();
+    }
+
+    /**
+     * Create the suggested filename for the image taken at startTime.
+     * The user will rename each image saved from the camera to the corresponding name
+     * @param startTime The time the exposure actually started.
+     * @return The filename, without an extension
+     */
+    public String createFilename(Date startTime) {
+        return filenamePrefix + '_' + sdf.format(startTime);
+    }
+
+    /**
+     * Create a formatted time in "HH.mm.ss.SSS" format
+     * @param eventTime convert this time to a string
+     * @return The time as a formatted string
+     */
+    public String formatTime(long eventTime){
+        if (eventTime == 0){
+            return NO_TIME;
+        }
+        return imageTime.format(new Date(eventTime));
+    }
+
+    /**
+     * Create a formatted time in "HH.mm.ss.SSS" format
+     * @param eventTime convert this time to a string
+     * @return The time as a formatted string
+     */
+    public String formatTime(Date eventTime) {
+        if (eventTime == null){
+            return NO_TIME;
+        }
+        return imageTime.format(eventTime);
+    }
+
+    /**
+     * Pad the end of a string with blank spaces
+     * @param str String to pad
+     * @param num Pad until the string contains this number of characters
+     * @return The padded string
+     */
+    public static String rightPadding(String str, int num) {
+        return String.format("%1$-" + num + "s", str);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The observer details and DSLRtrigger parameters at the top of an
+ * ExposureReport log file, and the labels in its key block. Immutable class.
+ * @author John Murphy
+ */
+public class LogHeader {
+    private final Map<String, String> values;
+    private final Set<String> keyLabels;
+    
+    /**
+     * @param values Header values, indexed by their label without the ':'
+     * @param keyLabels Labels in the key block, for example 'SB press'
+     */
+    LogHeader(Map<String, String> values, Set<String> keyLabels) {
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+        this.keyLabels = Collections.unmodifiableSet(new LinkedHashSet<>(keyLabels));
+    }
+    
+    /**
+     * @param label Header label without the ':', for example 'Shots'
+     * @return The value, or null if the header does not have this label
+     */
+    public String get(String label) {
+        return values.get(label);
+    }
+    
+    /**
+     * @return Every header value, in file order
+     */
+    public Map<String, String> getValues() {
+        return values;
+    }
+    
+    /**
+     * @return Labels in the key block, for example 'SB press'
+     */
+    public Set<String> getKeyLabels() {
+        return keyLabels;
+    }
+    
+    /**
+     * @return Camera model, or an empty string
+     */
+    public String getCamera() {
+        String camera = get("CCD/camera");
+        return camera == null ? "" : camera;
+    }
+    
+    /**
+     * @return Shutter open delay in ms, or 0 if not logged
+     */
+    public int getShutterOpenDelay() {
+        return getInt("Shutter open delay (ms)");
+    }
+    
+    /**
+     * @return Shutter close delay in ms, or 0 if not logged
+     */
+    public int getShutterCloseDelay() {
+        return getInt("Shutter close delay (ms)");
+    }
+    
+    /**
+     * @return True if the first segment used mirror lock
+     */
+    public boolean isMirrorLockSet() {
+        return values.containsKey("Mirror Lock (ms)");
+    }
+    
+    /**
+     * @return Time the mirror is locked up before each shot in ms, or 0 if mirror lock was off
+     */
+    public int getMirrorUpDuration() {
+        return getInt("Mirror Lock (ms)");
+    }
+    
+    /**
+     * @return True if the camera was in bulb mode
+     */
+    public boolean inBulbMode() {
+        return "on".equalsIgnoreCase(get("Bulb mode"));
+    }
+    
+    /**
+     * @return First segment's exposure in ms, or 0 if not logged
+     */
+    public int getExposure() {
+        return inBulbMode() ? getInt("Bulb Exposure (ms)") : getInt("Exposure (ms)");
+    }
+    
+    /**
+     * @return First segment's fire interval in ms, or 0 if not logged
+     */
+    public int getFireInterval() {
+        return getInt("Fire interval (ms)");
+    }
+    
+    /**
+     * @return Number of planned shots, or 0 if not logged
+     */
+    public int getNumberOfShots() {
+        return getInt("Shots");
+    }
+    
+    /**
+     * @param label Header label
+     * @return The leading integer of the value, or 0 if there is none. 
+     * For example 120 for '120 +/- 1.5 (s.d. 3.0, 4 calibrations)'
+     */
+    public int getInt(String label) {
+        String value = get(label);
+        if (value == null) {
+            return 0;
+        }
+        int n = 0;
+        int i = 0;
+        boolean negative = value.startsWith("-");
+        if (negative) {
+            i++;
+        }
+        for (; i < value.length() && Character.isDigit(value.charAt(i)); i++) {
+            n = n * 10 + (value.charAt(i) - '0');
+        }
+        return negative ? -n : n;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+import java.util.Arrays;
+
+/**
+ * The column layout of an ExposureReport log file, detected from its column
+ * header line. Logs are either comma or tab separated, and the optional
+ * columns depend on the settings used for the session. Immutable class.
+ * @author John Murphy
+ */
+public class LogLayout {
+    private final char separator;
+    private final LogColumn[] columns;
+    /** Position of each LogColumn, indexed by ordinal, or -1 if not present */
+    private final int[] positions;
+    
+    private LogLayout(char separator, LogColumn[] columns) {
+        this.separator = separator;
+        this.columns = columns;
+        this.positions = new int[LogColumn.values().length];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < columns.length; i++) {
+            positions[columns[i].ordinal()] = i;
+        }
+    }
+    
+    /**
+     * @param line A line from a log file
+     * @return The layout if the line is a column header line, otherwise null
+     */
+    static LogLayout parse(String line) {
+        if (line.length() < 2 || line.charAt(0) != 'N') {
+            return null;
+        }
+        char separator = line.charAt(1);
+        if (separator != ',' && separator != '\t') {
+            return null;
+        }
+        String[] headers = split(line, separator, Integer.MAX_VALUE);
+        LogColumn[] columns = new LogColumn[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            columns[i] = LogColumn.fromHeader(headers[i]);
+            if (columns[i] == null) {
+                return null;
+            }
+        }
+        LogLayout layout = new LogLayout(separator, columns);
+        if (!layout.hasColumn(LogColumn.START_TIME) || columns[columns.length - 1] != LogColumn.COMMENT) {
+            return null;
+        }
+        return layout;
+    }
+    
+    /**
+     * Split a line into trimmed values. The last value receives the rest of
+     * the line, so a comment may contain the separator.
+     * @param line Line to split
+     * @param separator ',' or '\t'
+     * @param limit Maximum number of values
+     * @return The values
+     */
+    static String[] split(String line, char separator, int limit) {
+        String[] values = new String[Math.min(limit, countSeparators(line, separator) + 1)];
+        int start = 0;
+        for (int i = 0; i < values.length - 1; i++) {
+            int end = line.indexOf(separator, start);
+            values[i] = line.substring(start, end).trim();
+            start = end + 1;
+        }
+        values[values.length - 1] = line.substring(start).trim();
+        return values;
+    }
+    
+    private static int countSeparators(String line, char separator) {
+        int n = 0;
+        for (int i = line.indexOf(separator); i >= 0; i = line.indexOf(separator, i + 1)) {
+            n++;
+        }
+        return n;
+    }
+    
+    /**
+     * @param line A data row
+     * @return The row's values, one per column. Missing trailing values are empty
+     */
+    String[] splitRow(String line) {
+        String[] values = split(line, separator, columns.length);
+        if (values.length < columns.length) {
+            values = Arrays.copyOf(values, columns.length);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    values[i] = "";
+                }
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * @return True if the columns are tab separated, false if comma separated
+     */
+    public boolean isTabSeparated() {
+        return separator == '\t';
+    }
+    
+    /**
+     * @return True if every button press and release was logged
+     */
+    public boolean hasAllEvents() {
+        return hasColumn(LogColumn.SB_PRESS);
+    }
+    
+    /**
+     * @param column Column
+     * @return True if the log has this column
+     */
+    public boolean hasColumn(LogColumn column) {
+        return positions[column.ordinal()] >= 0;
+    }
+    
+    /**
+     * @param column Column
+     * @return Position of the column, or -1 if the log does not have it
+     */
+    public int indexOf(LogColumn column) {
+        return positions[column.ordinal()];
+    }
+    
+    /**
+     * @return Number of columns
+     */
+    public int getNumberOfColumns() {
+        return columns.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(isTabSeparated() ? "tab: " : "comma: ");
+        for (int i = 0; i < columns.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(columns[i].getHeader());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Reads an ExposureReport log file one row at a time, so that logs of any
+ * size can be read with bounded memory. The header and key blocks are read 
+ * when the reader is opened, and the column layout (comma or tab separated, 
+ * with or without the 'all events' columns) is detected from the column 
+ * header line.
+ * 
+ * Rows only log the time of day. The date is taken from the row's filename,
+ * or if the filename has no date, from the header date and the row order.
+ * @author John Murphy
+ */
+public class LogReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long DAY_MS = 86_400_000L;
+    private static final long HOUR_MS = 3_600_000L;
+    /** Returned by parseTimeOfDay for an invalid time */
+    private static final int NOT_LOGGED = -1;
+    
+    private final File file;
+    private final BufferedReader reader;
+    private final TimeZone zone;
+    private final Calendar calendar;
+    private final LogHeader header;
+    private LogLayout layout;
+    /** Start of each date and hour, indexed by yyyyMMddHH */
+    private final Map<Integer, Long> hourStarts = new HashMap<>();
+    /** yyyyMMdd of the previous row, or -1 */
+    private int previousDate;
+    /** Time of day of the previous row's start, in ms */
+    private int previousTimeOfDay;
+    private int skippedLines;
+
+    /**
+     * Open a log file and read its header, key and column header lines
+     * @param file ExposureReport log file
+     * @param zone Time zone of the computer that wrote the log
+     * @throws IOException
+     * @throws InvalidDataException The file is not an ExposureReport log file
+     */
+    public LogReader(File file, TimeZone zone) throws IOException, InvalidDataException {
+        this.file = file;
+        this.zone = zone;
+        this.calendar = new GregorianCalendar(zone, Locale.ROOT);
+        this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)), BUFFER_SIZE);
+        try {
+            Map<String, String> values = new LinkedHashMap<>();
+            Set<String> keyLabels = new LinkedHashSet<>();
+            boolean inKey = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                layout = LogLayout.parse(line);
+                if (layout != null) {
+                    break;
+                }
+                String text = line.trim();
+                if (text.isEmpty()) {
+                    inKey = false;
+                } else if ("Key".equals(text)) {
+                    inKey = true;
+                } else {
+                    int colon = text.indexOf(':');
+                    if (colon > 0) {
+                        String label = text.substring(0, colon).trim();
+                        if (inKey) {
+                            keyLabels.add(label);
+                        } else {
+                            values.put(label, text.substring(colon + 1).trim());
+                        }
+                    }
+                }
+            }
+            if (layout == null) {
+                throw new InvalidDataException(file.getName() + ": no column header line. Not a DSLRtrigger log file");
+            }
+            header = new LogHeader(values, keyLabels);
+            previousDate = parseHeaderDate(header.get("Date"));
+        } catch (IOException | InvalidDataException | RuntimeException ex) {
+            reader.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * @return The log file
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * @return Observer details and DSLRtrigger parameters
+     */
+    public LogHeader getHeader() {
+        return header;
+    }
+    
+    /**
+     * @return Column layout of the rows read so far
+     */
+    public LogLayout getLayout() {
+        return layout;
+    }
+    
+    /**
+     * @return Number of lines after the column header that were not valid rows
+     */
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+    
+    /**
+     * @return The next row, or null at the end of the file. Lines that are
+     * not valid rows are skipped
+     * @throws IOException 
+     */
+    public LogRow next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            LogLayout newLayout = LogLayout.parse(line);
+            if (newLayout != null) {
+                // A resumed session can start a new block of rows
+                layout = newLayout;
+                continue;
+            }
+            LogRow row = parseRow(line);
+            if (row != null) {
+                return row;
+            }
+            skippedLines++;
+        }
+        return null;
+    }
+    
+    /**
+     * @return Every remaining row
+     * @throws IOException 
+     */
+    public List<LogRow> readAll() throws IOException {
+        List<LogRow> rows = new ArrayList<>();
+        for (LogRow row = next(); row != null; row = next()) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+    
+    /**
+     * @param line Data row
+     * @return The row, or null if the line is not a valid row
+     */
+    private LogRow parseRow(String line) {
+        String[] values = layout.splitRow(line);
+        int n = parseInt(values[layout.indexOf(LogColumn.N)], -1);
+        int startTimeOfDay = parseTimeOfDay(values[layout.indexOf(LogColumn.START_TIME)]);
+        if (n < 0 || startTimeOfDay == NOT_LOGGED) {
+            return null;
+        }
+        String filename = layout.hasColumn(LogColumn.FILENAME) ? values[layout.indexOf(LogColumn.FILENAME)] : "";
+        int date = parseFilenameDate(filename);
+        if (date < 0) {
+            date = previousDate;
+            if (date < 0) {
+                return null;
+            }
+            if (startTimeOfDay < previousTimeOfDay - DAY_MS / 2) {
+                // Passed midnight
+                date = nextDate(date);
+            }
+        }
+        previousDate = date;
+        previousTimeOfDay = startTimeOfDay;
+        long start = getTime(date, startTimeOfDay);
+        
+        String comment = values[layout.indexOf(LogColumn.COMMENT)];
+        int commanded = layout.hasColumn(LogColumn.COMMANDED) 
+                ? parseInt(values[layout.indexOf(LogColumn.COMMANDED)], -1) : -1;
+        double ntpOffset = Double.NaN;
+        if (layout.hasColumn(LogColumn.NTP_OFFSET)) {
+            try {
+                ntpOffset = Double.parseDouble(values[layout.indexOf(LogColumn.NTP_OFFSET)]);
+            } catch (NumberFormatException ex) {
+                // 'none'
+            }
+        }
+        return new LogRow(n, filename, 
+                getTime(values, LogColumn.ML_PRESS, date, start),
+                getTime(values, LogColumn.ML_RELEASE, date, start),
+                getTime(values, LogColumn.SB_PRESS, date, start),
+                getTime(values, LogColumn.SB_RELEASE, date, start),
+                start, 
+                getTime(values, LogColumn.END_TIME, date, start),
+                commanded, ntpOffset, comment);
+    }
+    
+    /**
+     * @return The column's time, within half a day of the start time, or NO_TIME
+     */
+    private long getTime(String[] values, LogColumn column, int date, long start) {
+        if (!layout.hasColumn(column)) {
+            return LogRow.NO_TIME;
+        }
+        int timeOfDay = parseTimeOfDay(values[layout.indexOf(column)]);
+        if (timeOfDay == NOT_LOGGED || timeOfDay == 0) {
+            // "00.00.00.000" marks an event that did not happen
+            return LogRow.NO_TIME;
+        }
+        long time = getTime(date, timeOfDay);
+        if (time - start > DAY_MS / 2) {
+            time -= DAY_MS;
+        } else if (start - time > DAY_MS / 2) {
+            time += DAY_MS;
+        }
+        return time;
+    }
+    
+    /**
+     * @param date yyyyMMdd
+     * @param timeOfDay Milliseconds since midnight
+     * @return Time in milliseconds since 1970
+     */
+    private long getTime(int date, int timeOfDay) {
+        int hour = (int) (timeOfDay / HOUR_MS);
+        int key = date * 100 + hour;
+        Long hourStart = hourStarts.get(key);
+        if (hourStart == null) {
+            if (hourStarts.size() > 10_000) {
+                hourStarts.clear();
+            }
+            calendar.clear();
+            calendar.set(date / 10000, (date / 100) % 100 - 1, date % 100, hour, 0, 0);
+            hourStart = calendar.getTimeInMillis();
+            hourStarts.put(key, hourStart);
+        }
+        return hourStart + timeOfDay % HOUR_MS;
+    }
+    
+    /**
+     * @param date yyyyMMdd
+     * @return The following date as yyyyMMdd
+     */
+    private int nextDate(int date) {
+        calendar.clear();
+        calendar.set(date / 10000, (date / 100) % 100 - 1, date % 100 + 1);
+        return toDate(calendar);
+    }
+    
+    private static int toDate(Calendar calendar) {
+        return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100 
+                + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+    
+    /**
+     * @param value Header date, for example '12 May 2019'
+     * @return yyyyMMdd, or -1 if it could not be read
+     */
+    private int parseHeaderDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        for (Locale locale : new Locale[]{Locale.getDefault(), Locale.ENGLISH}) {
+            SimpleDateFormat format = new SimpleDateFormat("dd MMM yyyy", locale);
+            format.setTimeZone(zone);
+            try {
+                calendar.setTime(format.parse(value));
+                return toDate(calendar);
+            } catch (ParseException ex) {
+                // Try the next locale
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Read the date from a filename created by ExposureReport, for example
+     * 'ISS_2019y05m12d_21h03m05s' or 'ISS_2019y05m12d_21h03m05.120s'
+     * @param filename Filename, without an extension
+     * @return yyyyMMdd, or -1 if the filename does not end with a date and time
+     */
+    static int parseFilenameDate(String filename) {
+        int end = filename.length();
+        if (end < 21 || filename.charAt(end - 1) != 's') {
+            return -1;
+        }
+        if (filename.charAt(end - 5) == '.') {
+            end -= 4;
+        }
+        // yyyy y MM m dd d _ HH h mm m ss s
+        int i = end - 21;
+        if (i < 0 || filename.charAt(i + 4) != 'y' || filename.charAt(i + 7) != 'm' 
+                || filename.charAt(i + 10) != 'd' || filename.charAt(i + 11) != '_') {
+            return -1;
+        }
+        int year = parseDigits(filename, i, 4);
+        int month = parseDigits(filename, i + 5, 2);
+        int day = parseDigits(filename, i + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return -1;
+        }
+        return year * 10000 + month * 100 + day;
+    }
+    
+    /**
+     * @param value Time in "HH.mm.ss.SSS" format
+     * @return Milliseconds since midnight, or NOT_LOGGED for an invalid time
+     */
+    static int parseTimeOfDay(String value) {
+        if (value.length() != 12 || value.charAt(2) != '.' || value.charAt(5) != '.' || value.charAt(8) != '.') {
+            return NOT_LOGGED;
+        }
+        int hours = parseDigits(value, 0, 2);
+        int minutes = parseDigits(value, 3, 2);
+        int seconds = parseDigits(value, 6, 2);
+        int millis = parseDigits(value, 9, 3);
+        if (hours < 0 || minutes < 0 || seconds < 0 || millis < 0 || hours > 23 || minutes > 59 || seconds > 60) {
+            return NOT_LOGGED;
+        }
+        return ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+    }
+    
+    /**
+     * @return The number, or -1 if the characters are not all digits
+     */
+    private static int parseDigits(String s, int start, int length) {
+        int n = 0;
+        for (int i = start; i < start + length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+    
+    private static int parseInt(String value, int defaultValue) {
+        if (value.isEmpty() || value.length() > 9) {
+            return defaultValue;
+        }
+        int n = parseDigits(value, 0, value.length());
+        return n < 0 ? defaultValue : n;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+/**
+ * One exposure row of an ExposureReport log file. Times are milliseconds
+ * since 1970, with the date taken from the row's filename. Immutable class.
+ * @author John Murphy
+ */
+public class LogRow {
+    /** Time of an event that was not logged */
+    public static final long NO_TIME = Long.MIN_VALUE;
+    
+    private final int n;
+    private final String filename;
+    private final long mlPress;
+    private final long mlRelease;
+    private final long sbPress;
+    private final long sbRelease;
+    private final long start;
+    private final long end;
+    private final int commanded;
+    private final double ntpOffset;
+    private final String comment;
+
+    /**
+     * @param n Row number, starting at 1
+     * @param filename Suggested image filename
+     * @param mlPress Mirror lock button press time, or NO_TIME
+     * @param mlRelease Mirror lock button release time, or NO_TIME
+     * @param sbPress Shutter button press time, or NO_TIME
+     * @param sbRelease Shutter button release time, or NO_TIME
+     * @param start Exposure start time
+     * @param end Exposure end time, or NO_TIME if not in bulb mode
+     * @param commanded Exposure requested by an exposure ramp in ms, or -1
+     * @param ntpOffset NTP server time minus the log times in ms, or NaN
+     * @param comment Comment, or an empty string
+     */
+    LogRow(int n, String filename, long mlPress, long mlRelease, long sbPress, long sbRelease,
+            long start, long end, int commanded, double ntpOffset, String comment) {
+        this.n = n;
+        this.filename = filename;
+        this.mlPress = mlPress;
+        this.mlRelease = mlRelease;
+        this.sbPress = sbPress;
+        this.sbRelease = sbRelease;
+        this.start = start;
+        this.end = end;
+        this.commanded = commanded;
+        this.ntpOffset = ntpOffset;
+        this.comment = comment;
+    }
+
+    /**
+     * @return Row number, starting at 1
+     */
+    public int getN() {
+        return n;
+    }
+
+    /**
+     * @return Suggested image filename, without an extension
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return Mirror lock button press time, or NO_TIME
+     */
+    public long getMirrorLockPress() {
+        return mlPress;
+    }
+
+    /**
+     * @return Mirror lock button release time, or NO_TIME
+     */
+    public long getMirrorLockRelease() {
+        return mlRelease;
+    }
+
+    /**
+     * @return Shutter button press time, or NO_TIME if all events were not logged
+     */
+    public long getShutterPress() {
+        return sbPress;
+    }
+
+    /**
+     * @return Shutter button release time, or NO_TIME if all events were not logged
+     */
+    public long getShutterRelease() {
+        return sbRelease;
+    }
+
+    /**
+     * @return Exposure start time
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return Exposure end time, or NO_TIME if not in bulb mode
+     */
+    public long getEnd() {
+        return end;
+    }
+    
+    /**
+     * @return Measured exposure in ms, or -1 if not in bulb mode
+     */
+    public long getExposure() {
+        return end == NO_TIME ? -1 : end - start;
+    }
+
+    /**
+     * @return Exposure requested by an exposure ramp in ms, or -1
+     */
+    public int getCommandedExposure() {
+        return commanded;
+    }
+
+    /**
+     * @return NTP server time minus the log times in ms, or NaN
+     */
+    public double getNtpOffset() {
+        return ntpOffset;
+    }
+
+    /**
+     * @return Comment, or an empty string
+     */
+    public String getComment() {
+        return comment;
+    }
+    
+    /**
+     * @return True if the shot was cancelled or paused before it finished
+     */
+    public boolean isCancelled() {
+        return comment.startsWith("Cancelled") || comment.startsWith("Paused");
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.logfile;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import info.johnmurphyastro.dslrtrigger.data.MinTime;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Timing statistics of one log file, read a row at a time so that the 
+ * memory used does not depend on the length of the log.
+ * 
+ * Lateness is the exposure start time minus its place on the fire interval
+ * grid, which starts at the first shot. A shot more than a quarter of the 
+ * fire interval off the grid (a new segment, an overrun or a resumed 
+ * sequence) starts a new grid instead. Logs with an external trigger have
+ * no grid.
+ * 
+ * A mirror lock desync signature is a mirror lock press less than
+ * MinTime.BEFORE_SHOT_MS after the previous exposure ended. The camera may
+ * still be busy and ignore the press, so the following presses are out of
+ * step with the mirror.
+ * @author John Murphy
+ */
+public class SessionStats {
+    private final File file;
+    private String camera = "";
+    private String layout = "";
+    private long firstStart = LogRow.NO_TIME;
+    private long lastStart = LogRow.NO_TIME;
+    private int nRows;
+    private int nCancelled;
+    private int nSkippedLines;
+    private int nRealigned;
+    private int nDesyncSignatures;
+    /** Measured bulb exposures */
+    private final Distribution exposure;
+    /** Measured bulb exposure minus the requested exposure */
+    private final Distribution exposureError;
+    /** Exposure start minus its place on the fire interval grid */
+    private final Distribution lateness;
+    /** Previous exposure end to exposure start */
+    private final Distribution gap;
+    private String error;
+    
+    /**
+     * Empty statistics, used to total the sessions
+     * @param file Log file, or null
+     */
+    SessionStats(File file) {
+        this.file = file;
+        exposure = new Distribution(0, 10, 12000);
+        exposureError = new Distribution(-500, 1, 1000);
+        lateness = new Distribution(-500, 1, 1000);
+        gap = new Distribution(0, 10, 6000);
+    }
+    
+    /**
+     * Read a log file. If it cannot be read, or is not a log file, the
+     * statistics are empty and getError says why.
+     * @param file Log file
+     * @param zone Time zone of the computer that wrote the log
+     * @return The statistics
+     */
+    public static SessionStats read(File file, TimeZone zone) {
+        SessionStats stats = new SessionStats(file);
+        try (LogReader reader = new LogReader(file, zone)) {
+            stats.read(reader);
+        } catch (IOException | InvalidDataException ex) {
+            stats.error = ex.getMessage();
+        }
+        return stats;
+    }
+    
+    private void read(LogReader reader) throws IOException {
+        LogHeader header = reader.getHeader();
+        camera = header.getCamera();
+        int fireInterval = header.get("External trigger") == null ? header.getFireInterval() : 0;
+        // Later segments may have other exposures, and only a ramp logs each requested exposure
+        boolean oneExposure = header.get("Segment 2") == null;
+        long prevEnd = LogRow.NO_TIME;
+        long gridStart = LogRow.NO_TIME;
+        for (LogRow row = reader.next(); row != null; row = reader.next()) {
+            nRows++;
+            if (row.isCancelled()) {
+                nCancelled++;
+                prevEnd = LogRow.NO_TIME;
+                continue;
+            }
+            long start = row.getStart();
+            if (firstStart == LogRow.NO_TIME) {
+                firstStart = start;
+            }
+            lastStart = start;
+            long requested = row.getCommandedExposure() >= 0 ? row.getCommandedExposure() 
+                    : oneExposure ? header.getExposure() : -1;
+            if (row.getExposure() >= 0) {
+                exposure.add(row.getExposure());
+                if (requested > 0) {
+                    exposureError.add(row.getExposure() - requested);
+                }
+            }
+            if (prevEnd != LogRow.NO_TIME) {
+                gap.add(start - prevEnd);
+                if (row.getMirrorLockPress() != LogRow.NO_TIME 
+                        && row.getMirrorLockPress() < prevEnd + MinTime.BEFORE_SHOT_MS) {
+                    nDesyncSignatures++;
+                }
+            }
+            if (fireInterval > 0) {
+                long late = gridStart == LogRow.NO_TIME ? Long.MAX_VALUE 
+                        : Math.floorMod(start - gridStart + fireInterval / 2, fireInterval) - fireInterval / 2;
+                if (Math.abs(late) > fireInterval / 4) {
+                    if (gridStart != LogRow.NO_TIME) {
+                        nRealigned++;
+                    }
+                    gridStart = start;
+                } else {
+                    lateness.add(late);
+                }
+            }
+            if (row.getEnd() != LogRow.NO_TIME) {
+                prevEnd = row.getEnd();
+            } else {
+                prevEnd = requested >= 0 ? start + requested : LogRow.NO_TIME;
+            }
+        }
+        layout = reader.getLayout().toString();
+        nSkippedLines = reader.getSkippedLines();
+    }
+    
+    /**
+     * Add another session's rows and distributions to this total
+     * @param other Session statistics
+     */
+    void add(SessionStats other) {
+        nRows += other.nRows;
+        nCancelled += other.nCancelled;
+        nSkippedLines += other.nSkippedLines;
+        nRealigned += other.nRealigned;
+        nDesyncSignatures += other.nDesyncSignatures;
+        exposure.add(other.exposure);
+        exposureError.add(other.exposureError);
+        lateness.add(other.lateness);
+        gap.add(other.gap);
+        if (other.firstStart != LogRow.NO_TIME) {
+            firstStart = firstStart == LogRow.NO_TIME ? other.firstStart : Math.min(firstStart, other.firstStart);
+            lastStart = lastStart == LogRow.NO_TIME ? other.lastStart : Math.max(lastStart, other.lastStart);
+        }
+    }
+
+    /**
+     * @return Log file, or null for a total
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Why the file could not be read, or null
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return Camera from the log header
+     */
+    public String getCamera() {
+        return camera;
+    }
+
+    /**
+     * @return Column layout of the last rows
+     */
+    public String getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return First exposure start time, or LogRow.NO_TIME if there are no rows
+     */
+    public long getFirstStart() {
+        return firstStart;
+    }
+
+    /**
+     * @return Last exposure start time, or LogRow.NO_TIME if there are no rows
+     */
+    public long getLastStart() {
+        return lastStart;
+    }
+
+    /**
+     * @return Number of rows, including cancelled rows
+     */
+    public int getNumberOfRows() {
+        return nRows;
+    }
+
+    /**
+     * @return Number of cancelled or paused rows
+     */
+    public int getNumberOfCancelled() {
+        return nCancelled;
+    }
+
+    /**
+     * @return Number of lines after the column header that were not valid rows
+     */
+    public int getNumberOfSkippedLines() {
+        return nSkippedLines;
+    }
+
+    /**
+     * @return Number of times a shot was too far from the fire interval grid 
+     * and started a new grid
+     */
+    public int getNumberOfRealigned() {
+        return nRealigned;
+    }
+
+    /**
+     * @return Number of mirror lock presses too soon after the previous exposure
+     */
+    public int getNumberOfDesyncSignatures() {
+        return nDesyncSignatures;
+    }
+
+    /**
+     * @return Measured bulb exposures in ms
+     */
+    public Distribution getExposure() {
+        return exposure;
+    }
+
+    /**
+     * @return Measured bulb exposure minus the requested exposure in ms
+     */
+    public Distribution getExposureError() {
+        return exposureError;
+    }
+
+    /**
+     * @return Exposure start minus its place on the fire interval grid in ms
+     */
+    public Distribution getLateness() {
+        return lateness;
+    }
+
+    /**
+     * @return Previous exposure end to exposure start in ms
+     */
+    public Distribution getGap() {
+        return gap;
+    }
+    
+    /**
+     * @return Statistics for display to the user
+     */
+    @Override
+    public String toString() {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder sb = new StringBuilder();
+        if (firstStart != LogRow.NO_TIME) {
+            sb.append("Shots from ").append(sdf.format(new Date(firstStart)))
+                    .append(" to ").append(sdf.format(new Date(lastStart))).append('\n');
+        }
+        sb.append("Rows: ").append(nRows).append(" (").append(nCancelled).append(" cancelled or paused, ")
+                .append(nSkippedLines).append(" invalid lines skipped)\n");
+        sb.append("Bulb exposure (ms): ").append(exposure).append('\n');
+        sb.append("Exposure error (ms): ").append(exposureError).append('\n');
+        sb.append("Lateness (ms): ").append(lateness).append(" (").append(nRealigned).append(" realigned)\n");
+        sb.append("Gap (ms): ").append(gap).append('\n');
+        sb.append("Mirror lock desync signatures: ").append(nDesyncSignatures);
+        return sb.toString();
+    }
+}
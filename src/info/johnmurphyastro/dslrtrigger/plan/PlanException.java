@@ -0,0 +1,67 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.plan;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when a sequence plan contains one or more problems
+ * @author John Murphy
+ */
+public class PlanException extends InvalidDataException {
+
+    private static final long serialVersionUID = 1L;
+    /** Maximum number of problems listed in the message */
+    private static final int MAX_LISTED = 50;
+    
+    private final transient List<PlanProblem> problems;
+
+    /**
+     * @param source Plan file name
+     * @param problems Every problem found in the plan
+     */
+    public PlanException(String source, List<PlanProblem> problems) {
+        super(createMessage(source, problems));
+        this.problems = Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * @return Every problem found in the plan
+     */
+    public List<PlanProblem> getProblems() {
+        return problems;
+    }
+
+    private static String createMessage(String source, List<PlanProblem> problems) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(source).append(": ").append(problems.size())
+                .append(problems.size() == 1 ? " problem" : " problems");
+        int n = 0;
+        for (PlanProblem problem : problems) {
+            if (++n > MAX_LISTED) {
+                sb.append("\n...");
+                break;
+            }
+            sb.append('\n').append(problem);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.plan;
+
+/**
+ * Sequence segment fields that a validation problem can refer to
+ * @author John Murphy
+ */
+public enum PlanField {
+    /** Exposure length */
+    EXPOSURE,
+    /** Mirror up duration */
+    MIRROR_LOCK,
+    /** Time from the start of one shot to the start of the next */
+    FIRE_INTERVAL,
+    /** Number of shots */
+    SHOTS,
+    /** Shutter open and close delays */
+    SHUTTER_DELAY,
+    /** Segment start after time */
+    START_AFTER,
+    /** External trigger input and address */
+    EXTERNAL_TRIGGER,
+    /** External trigger deadline */
+    EXTERNAL_DEADLINE,
+    /** Reference clock */
+    CLOCK
+}
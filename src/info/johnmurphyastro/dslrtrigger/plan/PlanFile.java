@@ -0,0 +1,88 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.plan;
+
+import info.johnmurphyastro.dslrtrigger.data.LogfileData;
+import info.johnmurphyastro.dslrtrigger.data.ObserverData;
+import info.johnmurphyastro.dslrtrigger.data.SequencePlan;
+import info.johnmurphyastro.dslrtrigger.data.TriggerData;
+
+/**
+ * Everything needed to run a sequence: the sequence plan, observer details,
+ * log file and trigger settings. Immutable class.
+ * @author John Murphy
+ */
+public class PlanFile {
+    private final SequencePlan sequencePlan;
+    private final ObserverData observerData;
+    private final LogfileData logfileData;
+    private final TriggerData triggerData;
+    private final String comPort;
+
+    /**
+     * @param sequencePlan The sequence segments
+     * @param observerData Observer details for the log file header
+     * @param logfileData Log file settings
+     * @param triggerData Shutter trigger settings
+     * @param comPort USB switch COM port name, or null if not specified
+     */
+    public PlanFile(SequencePlan sequencePlan, ObserverData observerData,
+            LogfileData logfileData, TriggerData triggerData, String comPort) {
+        this.sequencePlan = sequencePlan;
+        this.observerData = observerData;
+        this.logfileData = logfileData;
+        this.triggerData = triggerData;
+        this.comPort = comPort;
+    }
+
+    /**
+     * @return The sequence segments
+     */
+    public SequencePlan getSequencePlan() {
+        return sequencePlan;
+    }
+
+    /**
+     * @return Observer details for the log file header
+     */
+    public ObserverData getObserverData() {
+        return observerData;
+    }
+
+    /**
+     * @return Log file settings
+     */
+    public LogfileData getLogfileData() {
+        return logfileData;
+    }
+
+    /**
+     * @return Shutter trigger settings
+     */
+    public TriggerData getTriggerData() {
+        return triggerData;
+    }
+
+    /**
+     * @return USB switch COM port name, or null if not specified
+     */
+    public String getComPort() {
+        return comPort;
+    }
+}
@@ -0,0 +1,601 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.plan;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import info.johnmurphyastro.dslrtrigger.calibration.ShutterLagStore;
+import info.johnmurphyastro.dslrtrigger.data.ClockData;
+import info.johnmurphyastro.dslrtrigger.data.ExposureRamp;
+import info.johnmurphyastro.dslrtrigger.data.ExternalTriggerData;
+import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
+import info.johnmurphyastro.dslrtrigger.data.LogfileData;
+import info.johnmurphyastro.dslrtrigger.data.ObserverData;
+import info.johnmurphyastro.dslrtrigger.data.OverrunPolicy;
+import info.johnmurphyastro.dslrtrigger.data.RampCurve;
+import info.johnmurphyastro.dslrtrigger.data.SequencePlan;
+import info.johnmurphyastro.dslrtrigger.data.ShutterLagProfile;
+import info.johnmurphyastro.dslrtrigger.data.StartAlignment;
+import info.johnmurphyastro.dslrtrigger.data.TriggerData;
+import info.johnmurphyastro.dslrtrigger.data.TriggerInput;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a plain text sequence plan file. The file is made of sections, each
+ * started by a [section] line, containing key = value lines. Blank lines and
+ * lines starting with # are ignored. The [segment] section may be repeated;
+ * the segments are taken in file order. For example:
+ * <pre>
+ * [trigger]
+ * com_port = COM3
+ * [observer]
+ * name = John Murphy
+ * [log]
+ * folder = C:\Users\John\Documents\DSLRtrigger
+ * prefix = ISS
+ * [camera]
+ * bulb_mode = true
+ * shutter_open_delay_ms = 105
+ * shutter_close_delay_ms = 45
+ * [segment]
+ * start_after = 2019-08-12 02:15:00
+ * exposure_s = 1.5
+ * fire_interval_s = 2
+ * shots = 500
+ * </pre>
+ * A segment with 'start_after = now', or no start_after, starts straight 
+ * after the previous segment (or straight away if it is the first segment).
+ * Optional segment keys: mirror_lock_s (seconds or off), alignment 
+ * (auto, none, tenth_second, second) and overrun (skip, catch_up, slip).
+ * In bulb mode the exposure can be ramped: 'ramp = linear' or 'ramp = logarithmic'
+ * goes from exposure_s at the first shot to exposure_end_s at the last shot;
+ * 'ramp = table' uses ramp_table, a list of seconds since the segment start 
+ * and exposures, for example 'ramp_table = 0:0.5, 1800:4, 3600:15'.
+ * In external trigger mode ([trigger] 'external_input = udp', 'pipe' or 
+ * 'serial', with 'external_address' and 'external_deadline_ms') each shot of
+ * the single segment is started by an event; fire_interval_s is then the 
+ * minimum time between shots and start_after is when events are first accepted.
+ * An optional [clock] section disciplines the trigger clock to a serial GPS
+ * ('gps_port', 'gps_baud', and 'gps_pps = true' if the PPS is wired to DCD)
+ * or to a recorded NMEA file ('gps_replay'). It can also poll an NTP server
+ * ('ntp_server', 'ntp_poll_s') to log the clock's offset from it in every
+ * row, or, without a GPS, discipline the clock to it ('ntp_apply = true').
+ * With [camera] 'lag_profile = true', the shutter delays are the calibrated
+ * means of the [observer] camera's shutter lag profile for the plan's mode,
+ * when it has one; the values are fixed when the plan is read. Each mode has
+ * its own profile, so every segment must then use the same mirror lock setting.
+ * The whole file is read before reporting, so that every problem is listed
+ * with its line number.
+ * @author John Murphy
+ */
+public class PlanFileReader {
+    /** Start after time format */
+    public static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    
+    static final String TRIGGER = "trigger";
+    static final String CLOCK = "clock";
+    static final String OBSERVER = "observer";
+    static final String LOG = "log";
+    static final String CAMERA = "camera";
+    static final String SEGMENT = "segment";
+    
+    /** Value that means 'use the default' for alignment and 'not used' for mirror lock */
+    static final String AUTO = "auto";
+    static final String OFF = "off";
+    /** start_after value for a segment that follows straight on */
+    static final String NOW = "now";
+    
+    private static final Map<String, Set<String>> KEYS = new HashMap<>();
+    static {
+        KEYS.put(TRIGGER, new HashSet<>(Arrays.asList("com_port", "watchdog_margin_ms",
+                "external_input", "external_address", "external_deadline_ms")));
+        KEYS.put(CLOCK, new HashSet<>(Arrays.asList("gps_port", "gps_baud", "gps_pps", "gps_replay",
+                "ntp_server", "ntp_poll_s", "ntp_apply")));
+        KEYS.put(OBSERVER, new HashSet<>(Arrays.asList(
+                "name", "email", "location", "camera", "lens", "comment")));
+        KEYS.put(LOG, new HashSet<>(Arrays.asList(
+                "folder", "prefix", "tab_separated", "log_all_events")));
+        KEYS.put(CAMERA, new HashSet<>(Arrays.asList(
+                "bulb_mode", "shutter_open_delay_ms", "shutter_close_delay_ms", "lag_profile")));
+        KEYS.put(SEGMENT, new HashSet<>(Arrays.asList("start_after", "exposure_s",
+                "fire_interval_s", "shots", "mirror_lock_s", "alignment", "overrun",
+                "ramp", "exposure_end_s", "ramp_table")));
+    }
+    
+    /** A value and the line it was read from */
+    private static class Value {
+        final String text;
+        final int line;
+        Value(String text, int line) {
+            this.text = text;
+            this.line = line;
+        }
+    }
+    
+    /** The key = value lines of one section */
+    private static class Section {
+        final String name;
+        final int line;
+        final Map<String, Value> values = new HashMap<>();
+        Section(String name, int line) {
+            this.name = name;
+            this.line = line;
+        }
+    }
+    
+    private final String source;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat(TIME_FORMAT);
+    private final List<PlanProblem> problems = new ArrayList<>();
+    private final Map<String, Section> sections = new HashMap<>();
+    private final List<Section> segments = new ArrayList<>();
+
+    private PlanFileReader(String source) {
+        this.source = source;
+        timeFormat.setLenient(false);
+    }
+    
+    /**
+     * @param file Plan file
+     * @return The plan
+     * @throws IOException Failed to read the file
+     * @throws PlanException The plan contains one or more problems
+     */
+    public static PlanFile read(File file) throws IOException, PlanException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return read(reader, file.getName());
+        }
+    }
+    
+    /**
+     * @param reader Plan file contents
+     * @param source Name used in the problem report
+     * @return The plan
+     * @throws IOException Failed to read the plan
+     * @throws PlanException The plan contains one or more problems
+     */
+    public static PlanFile read(Reader reader, String source) throws IOException, PlanException {
+        PlanFileReader planReader = new PlanFileReader(source);
+        planReader.parse(new BufferedReader(reader));
+        return planReader.build();
+    }
+
+    private void parse(BufferedReader reader) throws IOException {
+        Section section = null;
+        String text;
+        int lineNumber = 0;
+        while ((text = reader.readLine()) != null) {
+            lineNumber++;
+            String line = text.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("[")) {
+                section = startSection(line, lineNumber);
+                continue;
+            }
+            int equals = line.indexOf('=');
+            if (equals < 1) {
+                problem(lineNumber, "Expected 'key = value' or '[section]'");
+                continue;
+            }
+            String key = line.substring(0, equals).trim().toLowerCase();
+            String value = line.substring(equals + 1).trim();
+            if (section == null) {
+                problem(lineNumber, "'" + key + "' is not inside a [section]");
+            } else if (!KEYS.get(section.name).contains(key)) {
+                problem(lineNumber, "Unknown key '" + key + "' in [" + section.name + "]");
+            } else {
+                Value previous = section.values.put(key, new Value(value, lineNumber));
+                if (previous != null) {
+                    problem(lineNumber, "'" + key + "' already set on line " + previous.line);
+                }
+            }
+        }
+    }
+
+    private Section startSection(String line, int lineNumber) {
+        if (!line.endsWith("]")) {
+            problem(lineNumber, "Section name must end with ']'");
+            return null;
+        }
+        String name = line.substring(1, line.length() - 1).trim().toLowerCase();
+        if (!KEYS.containsKey(name)) {
+            problem(lineNumber, "Unknown section [" + name + "]");
+            return null;
+        }
+        Section section = new Section(name, lineNumber);
+        if (SEGMENT.equals(name)) {
+            segments.add(section);
+        } else {
+            Section previous = sections.put(name, section);
+            if (previous != null) {
+                problem(lineNumber, "[" + name + "] already started on line " + previous.line);
+            }
+        }
+        return section;
+    }
+
+    private PlanFile build() throws PlanException {
+        Section trigger = getSection(TRIGGER);
+        String comPort = getString(trigger, "com_port", null);
+        ExternalTriggerData externalTrigger = getExternalTrigger(trigger);
+        Section clock = getSection(CLOCK);
+        ClockData clockData = getClock(clock);
+        if (clockData != null) {
+            for (PlanProblem problem : PlanValidator.validateClock(clockData, comPort, externalTrigger)) {
+                problems.add(problem.atLine(clock.line));
+            }
+        }
+        TriggerData triggerData = null;
+        int margin = getInt(trigger, "watchdog_margin_ms", TriggerData.DEFAULT_WATCHDOG_MARGIN_MS);
+        try {
+            triggerData = new TriggerData(margin, externalTrigger, clockData);
+        } catch (InvalidDataException ex) {
+            problem(lineOf(trigger, "watchdog_margin_ms"), ex.getMessage());
+        }
+        
+        Section observer = getSection(OBSERVER);
+        ObserverData observerData = new ObserverData(
+                getString(observer, "name", ""), getString(observer, "email", ""),
+                getString(observer, "location", ""), getString(observer, "camera", ""),
+                getString(observer, "lens", ""), getString(observer, "comment", ""));
+        
+        Section log = getSection(LOG);
+        LogfileData logfileData = null;
+        String folder = getString(log, "folder", null);
+        if (folder == null || folder.isEmpty()) {
+            problem(log.line, "[log] 'folder' is required");
+        } else {
+            try {
+                logfileData = new LogfileData(new File(folder), getString(log, "prefix", "DSLRtrigger"),
+                        getBoolean(log, "tab_separated", false), getBoolean(log, "log_all_events", false));
+            } catch (InvalidDataException ex) {
+                problem(lineOf(log, "folder"), ex.getMessage());
+            }
+        }
+        
+        Section camera = getSection(CAMERA);
+        boolean bulbMode = getBoolean(camera, "bulb_mode", true);
+        int openDelay = getInt(camera, "shutter_open_delay_ms", 0);
+        int closeDelay = getInt(camera, "shutter_close_delay_ms", 0);
+        ShutterLagStore lagStore = getBoolean(camera, "lag_profile", false) ? new ShutterLagStore() : null;
+        
+        if (segments.isEmpty()) {
+            problem(0, "At least one [segment] is required");
+        }
+        List<IntervalometerData> data = new ArrayList<>(segments.size());
+        Boolean lagMirrorLock = null;
+        for (Section segment : segments) {
+            int nProblems = problems.size();
+            ExposureRamp ramp = getExposureRamp(segment);
+            // A ramp table provides every exposure, so exposure_s is not needed
+            boolean rampTable = RampCurve.TABLE.name().equalsIgnoreCase(getString(segment, "ramp", ""));
+            float exposure = getFloat(segment, "exposure_s", rampTable ? 0 : -1);
+            float interval = getFloat(segment, "fire_interval_s", -1);
+            int shots = getInt(segment, "shots", -1);
+            Value mirrorLock = segment.values.get("mirror_lock_s");
+            boolean isMirrorLockSet = mirrorLock != null && !OFF.equalsIgnoreCase(mirrorLock.text);
+            float mirrorUp = isMirrorLockSet ? getFloat(segment, "mirror_lock_s", 0) : 0;
+            long startAfter = getTime(segment, "start_after");
+            String alignmentName = getString(segment, "alignment", AUTO);
+            StartAlignment alignment = AUTO.equalsIgnoreCase(alignmentName)
+                    ? StartAlignment.coarsestFor((int) (1000 * interval + 0.5F))
+                    : getEnum(segment, "alignment", StartAlignment.class, StartAlignment.NONE);
+            OverrunPolicy overrun = getEnum(segment, "overrun", OverrunPolicy.class, OverrunPolicy.SLIP);
+            int segmentOpenDelay = openDelay;
+            int segmentCloseDelay = closeDelay;
+            if (lagStore != null) {
+                if (lagMirrorLock == null) {
+                    lagMirrorLock = isMirrorLockSet;
+                } else if (lagMirrorLock != isMirrorLockSet) {
+                    problem(lineOf(segment, "mirror_lock_s"), "With 'lag_profile = true', 'mirror_lock_s' must be "
+                            + (lagMirrorLock ? "set" : "off") + " in every segment, like the first segment");
+                }
+                ShutterLagProfile profile = lagStore.find(observerData.getCamera(), isMirrorLockSet, bulbMode);
+                if (profile != null) {
+                    segmentOpenDelay = profile.getShutterOpenDelay(openDelay);
+                    segmentCloseDelay = profile.getShutterCloseDelay(closeDelay);
+                }
+            }
+            IntervalometerData segmentData = null;
+            if (problems.size() == nProblems) {
+                try {
+                    segmentData = new IntervalometerData(isMirrorLockSet, bulbMode, segmentOpenDelay, segmentCloseDelay,
+                            startAfter, exposure, mirrorUp, shots, interval, alignment, overrun, ramp);
+                } catch (InvalidDataException ex) {
+                    problem(segment.line, ex.getMessage());
+                }
+            }
+            // A null entry keeps segment indexes in step with the file, but skips its validation
+            data.add(segmentData);
+        }
+        
+        List<IntervalometerData> validSegments = new ArrayList<>(data.size());
+        List<Integer> validIndex = new ArrayList<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            if (data.get(i) != null) {
+                validSegments.add(data.get(i));
+                validIndex.add(i);
+            }
+        }
+        for (PlanProblem problem : PlanValidator.validateSegments(validSegments)) {
+            Section segment = segments.get(validIndex.get(problem.getSegment()));
+            problems.add(problem.atLine(lineOf(segment, problem.getField(), camera)));
+        }
+        if (externalTrigger != null) {
+            for (PlanProblem problem : PlanValidator.validateExternalTrigger(externalTrigger, validSegments, comPort)) {
+                // Segment indexes are of the valid segments, as for validateSegments
+                int line = problem.getSegment() > 0 && problem.getSegment() < validIndex.size()
+                        ? segments.get(validIndex.get(problem.getSegment())).line 
+                        : lineOf(trigger, problem.getField() == PlanField.EXTERNAL_DEADLINE 
+                                ? "external_deadline_ms" : "external_input");
+                problems.add(problem.atLine(line));
+            }
+        }
+        
+        if (!problems.isEmpty()) {
+            // [camera] problems are found once per segment, and a key may be read
+            // more than once, but each problem only needs reporting once
+            Set<String> reported = new HashSet<>();
+            problems.removeIf(problem -> !reported.add(problem.toString()));
+            problems.sort((a, b) -> Integer.compare(a.getLine(), b.getLine()));
+            throw new PlanException(source, problems);
+        }
+        try {
+            return new PlanFile(new SequencePlan(data), observerData, logfileData, triggerData, comPort);
+        } catch (InvalidDataException ex) {
+            throw new PlanException(source, Arrays.asList(new PlanProblem(0, -1, null, ex.getMessage())));
+        }
+    }
+    
+    /**
+     * @return The external trigger settings, or null if 'external_input' is not set or is off
+     */
+    private ExternalTriggerData getExternalTrigger(Section trigger) {
+        String input = getString(trigger, "external_input", OFF);
+        if (OFF.equalsIgnoreCase(input)) {
+            return null;
+        }
+        TriggerInput triggerInput = getEnum(trigger, "external_input", TriggerInput.class, null);
+        int deadline = getInt(trigger, "external_deadline_ms", ExternalTriggerData.DEFAULT_DEADLINE_MS);
+        if (triggerInput == null) {
+            return null;
+        }
+        if (deadline < 0) {
+            problem(lineOf(trigger, "external_deadline_ms"), "External trigger deadline must not be negative");
+        }
+        try {
+            // Still check the address if the deadline is wrong
+            ExternalTriggerData externalTrigger = new ExternalTriggerData(triggerInput, 
+                    getString(trigger, "external_address", null), Math.max(deadline, 0));
+            return deadline < 0 ? null : externalTrigger;
+        } catch (InvalidDataException ex) {
+            problem(lineOf(trigger, "external_input"), ex.getMessage());
+        }
+        return null;
+    }
+    
+    /**
+     * @return The reference clock settings, or null if there is no [clock] section
+     */
+    private ClockData getClock(Section clock) {
+        if (clock.line == 0) {
+            return null;
+        }
+        String replay = getString(clock, "gps_replay", null);
+        try {
+            return new ClockData(getString(clock, "gps_port", null), 
+                    getInt(clock, "gps_baud", ClockData.DEFAULT_GPS_BAUD), getBoolean(clock, "gps_pps", false),
+                    replay == null || replay.isEmpty() ? null : new File(replay),
+                    getString(clock, "ntp_server", null), getInt(clock, "ntp_poll_s", ClockData.DEFAULT_NTP_POLL_S),
+                    getBoolean(clock, "ntp_apply", false));
+        } catch (InvalidDataException ex) {
+            problem(clock.line, ex.getMessage());
+        }
+        return null;
+    }
+    
+    /**
+     * @return The segment's exposure ramp, or null if the exposure is not ramped
+     */
+    private ExposureRamp getExposureRamp(Section segment) {
+        Value rampValue = segment.values.get("ramp");
+        if (rampValue == null || OFF.equalsIgnoreCase(rampValue.text)) {
+            return null;
+        }
+        RampCurve curve = getEnum(segment, "ramp", RampCurve.class, null);
+        if (curve == null) {
+            return null;
+        }
+        try {
+            if (curve != RampCurve.TABLE) {
+                float start = getFloat(segment, "exposure_s", -1);
+                float end = getFloat(segment, "exposure_end_s", -1);
+                return start < 0 || end < 0 ? null : new ExposureRamp(curve, start, end);
+            }
+            Value table = getRequired(segment, "ramp_table");
+            if (table == null) {
+                return null;
+            }
+            String[] points = table.text.split(",");
+            float[] times = new float[points.length];
+            float[] exposures = new float[points.length];
+            for (int i = 0; i < points.length; i++) {
+                String[] point = points[i].split(":");
+                if (point.length != 2) {
+                    problem(table.line, "'ramp_table' entries must be 'seconds:exposure': " + points[i].trim());
+                    return null;
+                }
+                times[i] = Float.parseFloat(point[0].trim());
+                exposures[i] = Float.parseFloat(point[1].trim());
+            }
+            return new ExposureRamp(times, exposures);
+        } catch (NumberFormatException ex) {
+            problem(lineOf(segment, "ramp_table"), "'ramp_table' must contain numbers: " + ex.getMessage());
+        } catch (InvalidDataException ex) {
+            problem(rampValue.line, ex.getMessage());
+        }
+        return null;
+    }
+    
+    /**
+     * @return The named section, or an empty section if it was not in the file
+     */
+    private Section getSection(String name) {
+        Section section = sections.get(name);
+        return section != null ? section : new Section(name, 0);
+    }
+    
+    private int lineOf(Section section, String key) {
+        Value value = section.values.get(key);
+        return value != null ? value.line : section.line;
+    }
+    
+    private int lineOf(Section segment, PlanField field, Section camera) {
+        if (field == null) {
+            return segment.line;
+        }
+        switch (field) {
+            case EXPOSURE:
+                return lineOf(segment, "exposure_s");
+            case MIRROR_LOCK:
+                return lineOf(segment, "mirror_lock_s");
+            case FIRE_INTERVAL:
+                return lineOf(segment, "fire_interval_s");
+            case SHOTS:
+                return lineOf(segment, "shots");
+            case SHUTTER_DELAY:
+                return camera.line > 0 ? lineOf(camera, "shutter_close_delay_ms") : segment.line;
+            case START_AFTER:
+                return lineOf(segment, "start_after");
+            default:
+                return segment.line;
+        }
+    }
+    
+    private String getString(Section section, String key, String defaultValue) {
+        Value value = section.values.get(key);
+        return value != null ? value.text : defaultValue;
+    }
+    
+    private Value getRequired(Section section, String key) {
+        Value value = section.values.get(key);
+        if (value == null || value.text.isEmpty()) {
+            problem(section.line, "[" + section.name + "] '" + key + "' is required");
+            return null;
+        }
+        return value;
+    }
+    
+    /**
+     * @param defaultValue Returned if the key is missing. If negative, the key is required.
+     */
+    private int getInt(Section section, String key, int defaultValue) {
+        Value value = defaultValue < 0 ? getRequired(section, key) : section.values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.text);
+        } catch (NumberFormatException ex) {
+            problem(value.line, "'" + key + "' must be a whole number: " + value.text);
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * @param defaultValue Returned if the key is missing. If negative, the key is required.
+     */
+    private float getFloat(Section section, String key, float defaultValue) {
+        Value value = defaultValue < 0 ? getRequired(section, key) : section.values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Float.parseFloat(value.text);
+        } catch (NumberFormatException ex) {
+            problem(value.line, "'" + key + "' must be a number: " + value.text);
+            return defaultValue;
+        }
+    }
+    
+    private boolean getBoolean(Section section, String key, boolean defaultValue) {
+        Value value = section.values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        switch (value.text.toLowerCase()) {
+            case "true": case "yes": case "on":
+                return true;
+            case "false": case "no": case OFF:
+                return false;
+            default:
+                problem(value.line, "'" + key + "' must be true or false: " + value.text);
+                return defaultValue;
+        }
+    }
+    
+    private <E extends Enum<E>> E getEnum(Section section, String key, Class<E> type, E defaultValue) {
+        Value value = section.values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.text.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            problem(value.line, "'" + key + "' must be one of " + Arrays.toString(type.getEnumConstants())
+                    + ": " + value.text);
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * @return The time in ms, or 0 if the segment should start straight away
+     */
+    private long getTime(Section section, String key) {
+        Value value = section.values.get(key);
+        if (value == null || value.text.isEmpty() || NOW.equalsIgnoreCase(value.text)) {
+            return 0;
+        }
+        try {
+            return timeFormat.parse(value.text).getTime();
+        } catch (ParseException ex) {
+            problem(value.line, "'" + key + "' must be '" + TIME_FORMAT + "' or '" + NOW + "': " + value.text);
+            return 0;
+        }
+    }
+    
+    private void problem(int line, String message) {
+        problems.add(new PlanProblem(line, -1, null, message));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.plan;
+
+import info.johnmurphyastro.dslrtrigger.data.ClockData;
+import info.johnmurphyastro.dslrtrigger.data.ExposureRamp;
+import info.johnmurphyastro.dslrtrigger.data.ExternalTriggerData;
+import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
+import info.johnmurphyastro.dslrtrigger.data.RampCurve;
+import info.johnmurphyastro.dslrtrigger.data.LogfileData;
+import info.johnmurphyastro.dslrtrigger.data.ObserverData;
+import info.johnmurphyastro.dslrtrigger.data.TriggerData;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a sequence plan file that can be read by PlanFileReader
+ * @author John Murphy
+ */
+public class PlanFileWriter {
+    
+    private PlanFileWriter() {
+    }
+    
+    /**
+     * @param plan The plan to write
+     * @param file Plan file
+     * @throws IOException 
+     */
+    public static void write(PlanFile plan, File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            write(plan, writer);
+        }
+    }
+    
+    /**
+     * @param plan The plan
+     * @return A short hash of the plan, used to check that a plan has not changed
+     */
+    public static String getHash(PlanFile plan) {
+        StringWriter writer = new StringWriter();
+        try {
+            write(plan, writer);
+        } catch (IOException ex) {
+            // StringWriter does not throw IOException
+            throw new IllegalStateException(ex);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(writer.toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+    
+    /**
+     * @param plan The plan to write
+     * @param writer Destination. Not closed by this method.
+     * @throws IOException 
+     */
+    public static void write(PlanFile plan, Writer writer) throws IOException {
+        SimpleDateFormat timeFormat = new SimpleDateFormat(PlanFileReader.TIME_FORMAT);
+        PrintWriter out = new PrintWriter(writer);
+        out.println("# DSLR Trigger sequence plan");
+        
+        TriggerData trigger = plan.getTriggerData();
+        out.println("[" + PlanFileReader.TRIGGER + "]");
+        if (plan.getComPort() != null) {
+            out.println("com_port = " + plan.getComPort());
+        }
+        out.println("watchdog_margin_ms = " + trigger.getWatchdogMargin());
+        ExternalTriggerData externalTrigger = trigger.getExternalTrigger();
+        if (externalTrigger != null) {
+            out.println("external_input = " + externalTrigger.getInput().name().toLowerCase());
+            out.println("external_address = " + externalTrigger.getAddress());
+            out.println("external_deadline_ms = " + externalTrigger.getDeadline());
+        }
+        ClockData clock = trigger.getClock();
+        if (clock != null) {
+            out.println();
+            out.println("[" + PlanFileReader.CLOCK + "]");
+            if (clock.getGpsReplay() != null) {
+                out.println("gps_replay = " + clock.getGpsReplay().getPath());
+            } else if (clock.getGpsPort() != null) {
+                out.println("gps_port = " + clock.getGpsPort());
+                out.println("gps_baud = " + clock.getGpsBaud());
+                out.println("gps_pps = " + clock.isPpsOnDcd());
+            }
+            if (clock.getNtpHost() != null) {
+                out.println("ntp_server = " + clock.getNtpServer());
+                out.println("ntp_poll_s = " + clock.getNtpPoll());
+                out.println("ntp_apply = " + clock.isNtpApplied());
+            }
+        }
+        
+        ObserverData observer = plan.getObserverData();
+        out.println();
+        out.println("[" + PlanFileReader.OBSERVER + "]");
+        out.println("name = " + observer.getName());
+        out.println("email = " + observer.getEmail());
+        out.println("location = " + observer.getLocation());
+        out.println("camera = " + observer.getCamera());
+        out.println("lens = " + observer.getLens());
+        out.println("comment = " + observer.getComment());
+        
+        LogfileData log = plan.getLogfileData();
+        out.println();
+        out.println("[" + PlanFileReader.LOG + "]");
+        out.println("folder = " + log.getLogFolder().getPath());
+        out.println("prefix = " + log.getFilenamePrefix());
+        out.println("tab_separated = " + log.tabSeparatedData());
+        out.println("log_all_events = " + log.logAllEvents());
+        
+        IntervalometerData first = plan.getSequencePlan().getFirstSegment();
+        out.println();
+        out.println("[" + PlanFileReader.CAMERA + "]");
+        out.println("bulb_mode = " + first.inBulbMode());
+        out.println("shutter_open_delay_ms = " + first.getShutterOpenDelay());
+        out.println("shutter_close_delay_ms = " + first.getShutterCloseDelay());
+        
+        for (IntervalometerData segment : plan.getSequencePlan().getSegments()) {
+            out.println();
+            out.println("[" + PlanFileReader.SEGMENT + "]");
+            long startAfter = segment.getStartAfterTime();
+            out.println("start_after = " + (startAfter > 0
+                    ? timeFormat.format(new Date(startAfter)) : PlanFileReader.NOW));
+            out.println("exposure_s = " + segment.getExposure() / 1000.0);
+            ExposureRamp ramp = segment.getExposureRamp();
+            if (ramp != null) {
+                out.println("ramp = " + ramp.getCurve().name().toLowerCase());
+                if (ramp.getCurve() == RampCurve.TABLE) {
+                    StringBuilder table = new StringBuilder();
+                    for (int i = 0; i < ramp.getTableSize(); i++) {
+                        table.append(i == 0 ? "" : ", ").append(ramp.getTableTime(i) / 1000.0)
+                                .append(':').append(ramp.getTableExposure(i) / 1000.0);
+                    }
+                    out.println("ramp_table = " + table);
+                } else {
+                    out.println("exposure_end_s = " + ramp.getEndExposure() / 1000.0);
+                }
+            }
+            out.println("fire_interval_s = " + segment.getRepeatInterval() / 1000.0);
+            out.println("shots = " + segment.getNumberOfShots());
+            out.println("mirror_lock_s = " + (segment.isMirrorLockSet()
+                    ? String.valueOf(segment.getMirrorUpDuration() / 1000.0) : PlanFileReader.OFF));
+            out.println("alignment = " + segment.getStartAlignment().name().toLowerCase());
+            out.println("overrun = " + segment.getOverrunPolicy().name().toLowerCase());
+        }
+        out.flush();
+        if (out.checkError()) {
+            throw new IOException("Failed to write plan file");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.plan;
+
+/**
+ * A single problem found while reading or validating a sequence plan. Immutable class.
+ * @author John Murphy
+ */
+public class PlanProblem {
+    private final int line;
+    private final int segment;
+    private final PlanField field;
+    private final String message;
+
+    /**
+     * @param line Plan file line number, or 0 if not known
+     * @param segment Segment index (from 0), or -1 if not in a segment
+     * @param field The segment field, or null
+     * @param message Description of the problem
+     */
+    public PlanProblem(int line, int segment, PlanField field, String message) {
+        this.line = line;
+        this.segment = segment;
+        this.field = field;
+        this.message = message;
+    }
+
+    /**
+     * @param line Plan file line number
+     * @return A copy of this problem located at the specified line
+     */
+    PlanProblem atLine(int line) {
+        return new PlanProblem(line, segment, field, message);
+    }
+
+    /**
+     * @return Plan file line number, or 0 if not known
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return Segment index (from 0), or -1 if not in a segment
+     */
+    public int getSegment() {
+        return segment;
+    }
+
+    /**
+     * @return The segment field, or null
+     */
+    public PlanField getField() {
+        return field;
+    }
+
+    /**
+     * @return Description of the problem
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (line > 0) {
+            sb.append("line ").append(line).append(": ");
+        } else if (segment >= 0) {
+            sb.append("segment ").append(segment + 1).append(": ");
+        }
+        return sb.append(message).toString();
+    }
+}
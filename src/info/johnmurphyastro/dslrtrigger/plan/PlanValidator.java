@@ -0,0 +1,187 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.plan;
+
+import info.johnmurphyastro.dslrtrigger.data.ClockData;
+import info.johnmurphyastro.dslrtrigger.data.ExternalTriggerData;
+import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
+import info.johnmurphyastro.dslrtrigger.data.MinTime;
+import info.johnmurphyastro.dslrtrigger.data.TriggerInput;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks sequence settings. Has no user interface dependencies, so it is used
+ * by the user interface, the plan file reader and headless runs.
+ * Every problem is reported, not just the first.
+ * @author John Murphy
+ */
+public class PlanValidator {
+    
+    private PlanValidator() {
+    }
+
+    /**
+     * @param data Segment to check
+     * @param segment Segment index (from 0), or -1 if there is only one
+     * @return Every problem found. Empty if valid
+     */
+    public static List<PlanProblem> validateSegment(IntervalometerData data, int segment) {
+        List<PlanProblem> problems = new ArrayList<>(2);
+        validateSegment(data, segment, problems);
+        return problems;
+    }
+
+    /**
+     * @param segments The plan's segments, in order
+     * @return Every problem found. Empty if valid
+     */
+    public static List<PlanProblem> validateSegments(List<IntervalometerData> segments) {
+        List<PlanProblem> problems = new ArrayList<>();
+        long latestStartAfter = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            IntervalometerData data = segments.get(i);
+            validateSegment(data, i, problems);
+            long startAfter = data.getStartAfterTime();
+            if (startAfter > 0 && startAfter < latestStartAfter) {
+                problems.add(new PlanProblem(0, i, PlanField.START_AFTER,
+                        "'Start after' is earlier than a previous segment's 'Start after'"));
+            }
+            latestStartAfter = Math.max(latestStartAfter, startAfter);
+        }
+        return problems;
+    }
+
+    /**
+     * @param externalTrigger External trigger settings
+     * @param segments The plan's segments. Triggered shots use the first segment
+     * @param comPort USB switch COM port name, or null if not known
+     * @return Every problem found. Empty if valid
+     */
+    public static List<PlanProblem> validateExternalTrigger(ExternalTriggerData externalTrigger,
+            List<IntervalometerData> segments, String comPort) {
+        List<PlanProblem> problems = new ArrayList<>(2);
+        if (segments.size() > 1) {
+            problems.add(new PlanProblem(0, 1, PlanField.EXTERNAL_TRIGGER,
+                    "External trigger mode uses a single [segment]"));
+        }
+        if (!segments.isEmpty()) {
+            IntervalometerData data = segments.get(0);
+            int lead = data.getShutterOpenDelay() + (data.isMirrorLockSet() ? data.getMirrorUpDuration() : 0);
+            if (externalTrigger.getDeadline() < lead) {
+                problems.add(new PlanProblem(0, 0, PlanField.EXTERNAL_DEADLINE, "External trigger deadline "
+                        + externalTrigger.getDeadline() + " ms is shorter than the 'Shutter open delay'"
+                        + (data.isMirrorLockSet() ? " + 'Mirror Lock'" : "") + " (" + lead + " ms)"));
+            }
+        }
+        if (externalTrigger.getInput() == TriggerInput.SERIAL && externalTrigger.getAddress().equals(comPort)) {
+            problems.add(new PlanProblem(0, -1, PlanField.EXTERNAL_TRIGGER,
+                    "External trigger serial port must not be the USB switch COM port"));
+        }
+        return problems;
+    }
+
+    /**
+     * @param clock Reference clock settings
+     * @param comPort USB switch COM port name, or null if not known
+     * @param externalTrigger External trigger settings, or null
+     * @return Every problem found. Empty if valid
+     */
+    public static List<PlanProblem> validateClock(ClockData clock, String comPort, 
+            ExternalTriggerData externalTrigger) {
+        List<PlanProblem> problems = new ArrayList<>(1);
+        String gpsPort = clock.getGpsPort();
+        if (gpsPort != null && gpsPort.equals(comPort)) {
+            problems.add(new PlanProblem(0, -1, PlanField.CLOCK, "GPS port must not be the USB switch COM port"));
+        }
+        if (gpsPort != null && externalTrigger != null && externalTrigger.getInput() == TriggerInput.SERIAL
+                && gpsPort.equals(externalTrigger.getAddress())) {
+            problems.add(new PlanProblem(0, -1, PlanField.CLOCK, 
+                    "GPS port must not be the external trigger serial port"));
+        }
+        if (clock.getGpsReplay() != null && !clock.getGpsReplay().isFile()) {
+            problems.add(new PlanProblem(0, -1, PlanField.CLOCK, 
+                    "GPS replay file " + clock.getGpsReplay() + " does not exist"));
+        }
+        return problems;
+    }
+
+    private static void validateSegment(IntervalometerData data, int segment, List<PlanProblem> problems) {
+        if (data.isMirrorLockSet() && data.getMirrorUpDuration() < MinTime.MIRROR_MOVE_MS) {
+            problems.add(new PlanProblem(0, segment, PlanField.MIRROR_LOCK,
+                    "Minimum 'Mirror Lock' time is " + (MinTime.MIRROR_MOVE_MS / 1000.0) + " s"));
+        }
+        if (data.getExposureRamp() != null && !data.inBulbMode()) {
+            problems.add(new PlanProblem(0, segment, PlanField.EXPOSURE,
+                    "An exposure ramp needs 'Bulb mode'"));
+        }
+        if (data.getExposure() < MinTime.EXPOSURE_MS) {
+            problems.add(new PlanProblem(0, segment, PlanField.EXPOSURE,
+                    "Minimum 'Exposure' time is " + MinTime.EXPOSURE_MS / 1000.0 + " s"));
+        }
+        if (data.getNumberOfShots() < 1) {
+            problems.add(new PlanProblem(0, segment, PlanField.SHOTS, "Minimum number of 'Shots' is 1"));
+        }
+        if (data.getShutterCloseDelay() > data.getShutterOpenDelay()) {
+            problems.add(new PlanProblem(0, segment, PlanField.SHUTTER_DELAY,
+                    "'Shutter close delay' must not be greater than the 'Shutter open delay'"));
+        }
+        if (!data.getStartAlignment().isAligned(data.getRepeatInterval())) {
+            problems.add(new PlanProblem(0, segment, PlanField.FIRE_INTERVAL,
+                    "'Fire interval' must be a multiple of the start alignment ("
+                    + data.getStartAlignment().getMillis() + " ms)"));
+        }
+        if (data.getExposureRamp() != null) {
+            validateRampedIntervals(data, segment, problems);
+        } else if (data.getRepeatInterval() < data.getMinimumRepeatInterval(0)) {
+            StringBuilder sb = new StringBuilder()
+                    .append("Minimum 'Fire interval' time is 'Exposure' + '");
+            if (data.isMirrorLockSet()) {
+                sb.append("Mirror Lock' + '");
+            }
+            sb.append("Shutter open delay' - 'Shutter close delay' + '")
+                    .append(MinTime.BEFORE_SHOT_MS).append(" ms' (")
+                    .append(data.getMinimumRepeatInterval(0)).append(" ms)");
+            problems.add(new PlanProblem(0, segment, PlanField.FIRE_INTERVAL, sb.toString()));
+        }
+    }
+    
+    /**
+     * Check that every shot of a ramped segment fits within the fire interval
+     */
+    private static void validateRampedIntervals(IntervalometerData data, int segment, List<PlanProblem> problems) {
+        int firstFailure = -1;
+        int nFailures = 0;
+        for (int shot = 0; shot < data.getNumberOfShots(); shot++) {
+            if (data.getRepeatInterval() < data.getMinimumRepeatInterval(data.getExposure(shot), 0)) {
+                if (firstFailure < 0) {
+                    firstFailure = shot;
+                }
+                nFailures++;
+            }
+        }
+        if (firstFailure >= 0) {
+            int exposure = data.getExposure(firstFailure);
+            problems.add(new PlanProblem(0, segment, PlanField.FIRE_INTERVAL,
+                    "Shot " + (firstFailure + 1) + " exposure " + exposure + " ms needs a 'Fire interval' of at least "
+                    + data.getMinimumRepeatInterval(exposure, 0) + " ms (" + nFailures 
+                    + (nFailures == 1 ? " shot is" : " shots are") + " too long)"));
+        }
+    }
+}
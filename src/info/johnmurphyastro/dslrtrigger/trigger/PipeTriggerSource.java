@@ -0,0 +1,93 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.trigger;
+
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads trigger messages, one per line, from a named pipe. Create the pipe 
+ * with 'mkfifo' on Linux, or use a '\\.\pipe\name' path on Windows. When the
+ * writer closes the pipe, it is opened again to wait for the next writer.
+ * For example: echo FIRE > /tmp/dslrtrigger
+ * @author John Murphy
+ */
+class PipeTriggerSource extends TriggerSource {
+    /** Wait before reopening a pipe that could not be read, to avoid a busy loop */
+    private static final long RETRY_MS = 1000;
+    
+    private final String path;
+    private volatile boolean closed;
+    private volatile BufferedReader reader;
+    
+    /**
+     * @param path Named pipe path
+     */
+    PipeTriggerSource(String path) {
+        super("pipe " + path);
+        this.path = path;
+        Thread thread = new Thread(this::receive, "Pipe Trigger");
+        // Opening a pipe blocks until a writer opens it, so close() cannot always stop this thread
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+    
+    private void receive() {
+        while (!closed) {
+            // Blocks until the other end of the pipe is opened
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(path), StandardCharsets.US_ASCII))) {
+                reader = in;
+                String line;
+                while (!closed && (line = in.readLine()) != null) {
+                    received(line, TriggerClock.currentTimeMillis());
+                }
+            } catch (IOException ex) {
+                if (!closed) {
+                    System.err.println(getName() + ": " + ex.getMessage());
+                    try {
+                        Thread.sleep(RETRY_MS);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+            } finally {
+                reader = null;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        BufferedReader in = reader;
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                System.err.println(getName() + ": " + ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.trigger;
+
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import info.johnmurphyastro.dslrtrigger.usbswitch.InvalidSerialPortNameException;
+import info.johnmurphyastro.dslrtrigger.usbswitch.SerialComPortsAvailable;
+import gnu.io.PortInUseException;
+import gnu.io.SerialPort;
+import gnu.io.SerialPortEvent;
+import gnu.io.UnsupportedCommOperationException;
+import java.util.TooManyListenersException;
+
+/**
+ * Fires when the serial port's Clear To Send (CTS) line becomes active, for
+ * example from a detector output or a push button wired between RTS and CTS.
+ * RTS is held active so that it can be used as the supply for such a switch.
+ * @author John Murphy
+ */
+class SerialTriggerSource extends TriggerSource {
+    
+    private final SerialPort serialPort;
+    
+    /**
+     * @param serialPorts Available serial ports
+     * @param comPortName Serial COM port name. Must not be the USB switch port
+     * @throws PortInUseException
+     * @throws InvalidSerialPortNameException
+     * @throws UnsupportedCommOperationException
+     * @throws TooManyListenersException 
+     */
+    SerialTriggerSource(SerialComPortsAvailable serialPorts, String comPortName) throws PortInUseException,
+            InvalidSerialPortNameException, UnsupportedCommOperationException, TooManyListenersException {
+        super("serial " + comPortName);
+        serialPort = serialPorts.openSerialPort(comPortName);
+        try {
+            serialPort.setSerialPortParams(9600, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+            serialPort.setRTS(true);
+            serialPort.addEventListener(event -> {
+                if (event.getEventType() == SerialPortEvent.CTS && event.getNewValue()) {
+                    received(new TriggerEvent(getName(), TriggerClock.currentTimeMillis(), 0));
+                }
+            });
+            serialPort.notifyOnCTS(true);
+        } catch (UnsupportedCommOperationException | TooManyListenersException | RuntimeException ex) {
+            serialPort.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close() {
+        serialPort.removeEventListener();
+        serialPort.close();
+    }
+}
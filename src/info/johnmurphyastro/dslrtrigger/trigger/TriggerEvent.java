@@ -0,0 +1,97 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.trigger;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+
+/**
+ * A request to start an exposure, received from an external trigger input.
+ * Immutable class.
+ * @author John Murphy
+ */
+public class TriggerEvent {
+    /** Message that starts an exposure. 'FIRE' means now, 'FIRE 1565576100000' means at this Java time (ms) */
+    public static final String FIRE = "FIRE";
+    
+    private final String source;
+    private final long receivedTime;
+    private final long fireAtTime;
+    
+    /**
+     * @param source Name of the trigger input, for the log file
+     * @param receivedTime Time the event was received in ms
+     * @param fireAtTime Requested exposure start time in ms, or 0 to start as soon as possible
+     */
+    public TriggerEvent(String source, long receivedTime, long fireAtTime) {
+        this.source = source;
+        this.receivedTime = receivedTime;
+        this.fireAtTime = fireAtTime;
+    }
+    
+    /**
+     * @param source Name of the trigger input
+     * @param message 'FIRE' or 'FIRE time', where time is in milliseconds since 1970 (UTC)
+     * @param receivedTime Time the message was received in ms
+     * @return The trigger event
+     * @throws InvalidDataException The message is not a FIRE message
+     */
+    public static TriggerEvent parse(String source, String message, long receivedTime) throws InvalidDataException {
+        String text = message.trim();
+        if (!text.regionMatches(true, 0, FIRE, 0, FIRE.length())) {
+            throw new InvalidDataException("Unknown trigger message: " + text);
+        }
+        String time = text.substring(FIRE.length()).trim();
+        if (time.isEmpty()) {
+            return new TriggerEvent(source, receivedTime, 0);
+        }
+        try {
+            return new TriggerEvent(source, receivedTime, Long.parseLong(time));
+        } catch (NumberFormatException ex) {
+            throw new InvalidDataException("Trigger time must be in milliseconds: " + text);
+        }
+    }
+    
+    /**
+     * @return Name of the trigger input
+     */
+    public String getSource() {
+        return source;
+    }
+    
+    /**
+     * @return Time the event was received in ms
+     */
+    public long getReceivedTime() {
+        return receivedTime;
+    }
+    
+    /**
+     * @return True if the exposure should start as soon as possible
+     */
+    public boolean isFireNow() {
+        return fireAtTime == 0;
+    }
+    
+    /**
+     * @return The time the exposure should start in ms. For 'fire now' this is the received time.
+     */
+    public long getRequestedStartTime() {
+        return isFireNow() ? receivedTime : fireAtTime;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.trigger;
+
+import info.johnmurphyastro.dslrtrigger.InvalidDataException;
+import info.johnmurphyastro.dslrtrigger.data.ExternalTriggerData;
+import info.johnmurphyastro.dslrtrigger.usbswitch.InvalidSerialPortNameException;
+import info.johnmurphyastro.dslrtrigger.usbswitch.SerialComPortsAvailable;
+import gnu.io.PortInUseException;
+import gnu.io.UnsupportedCommOperationException;
+import java.io.IOException;
+import java.util.TooManyListenersException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Receives external trigger events on a background thread and queues them 
+ * for the Intervalometer thread. Each event is time stamped as soon as it is
+ * received, so that the input to button press latency can be measured.
+ * @author John Murphy
+ */
+public abstract class TriggerSource {
+    /** Events that arrive when the queue is full are dropped */
+    private static final int QUEUE_SIZE = 64;
+    
+    private final BlockingQueue<TriggerEvent> events = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final String name;
+    private volatile int nDropped;
+    
+    /**
+     * @param name Name of the trigger input, for the log file
+     */
+    protected TriggerSource(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Open the trigger input and start listening for events
+     * @param data External trigger settings
+     * @param serialPorts Used to open a serial trigger input
+     * @return The trigger source. Must be closed after use.
+     * @throws IOException
+     * @throws InvalidDataException The trigger input could not be opened
+     */
+    public static TriggerSource open(ExternalTriggerData data, SerialComPortsAvailable serialPorts)
+            throws IOException, InvalidDataException {
+        switch (data.getInput()) {
+            case UDP:
+                return new UdpTriggerSource(data.getPort());
+            case PIPE:
+                return new PipeTriggerSource(data.getAddress());
+            case SERIAL:
+                try {
+                    return new SerialTriggerSource(serialPorts, data.getAddress());
+                } catch (PortInUseException | InvalidSerialPortNameException 
+                        | UnsupportedCommOperationException | TooManyListenersException ex) {
+                    throw new InvalidDataException("External trigger " + data.getAddress() + ": " + ex.getMessage());
+                }
+            default:
+                throw new InvalidDataException("Unknown external trigger input " + data.getInput());
+        }
+    }
+    
+    /**
+     * @return Name of the trigger input, for the log file
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Wait for the next trigger event
+     * @return The oldest queued event
+     * @throws InterruptedException 
+     */
+    public TriggerEvent take() throws InterruptedException {
+        return events.take();
+    }
+    
+    /**
+     * Discard queued events, for example events received while the sequence was paused
+     * @return The number of events discarded
+     */
+    public int clear() {
+        int n = events.size();
+        events.clear();
+        return n;
+    }
+    
+    /**
+     * @return Number of events dropped because the queue was full
+     */
+    public int getDroppedCount() {
+        return nDropped;
+    }
+    
+    /**
+     * Queue a received event. Called by the receiving thread.
+     * @param event The event
+     */
+    protected void received(TriggerEvent event) {
+        if (!events.offer(event)) {
+            nDropped++;
+        }
+    }
+    
+    /**
+     * Parse and queue a received text message. Unknown messages are reported
+     * to System.err and ignored. Called by the receiving thread.
+     * @param message One line of text
+     * @param receivedTime Time the message was received in ms
+     */
+    protected void received(String message, long receivedTime) {
+        if (message.trim().isEmpty()) {
+            return;
+        }
+        try {
+            received(TriggerEvent.parse(name, message, receivedTime));
+        } catch (InvalidDataException ex) {
+            System.err.println(name + ": " + ex.getMessage());
+        }
+    }
+    
+    /**
+     * Stop listening and release the trigger input
+     */
+    public abstract void close();
+}
@@ -0,0 +1,75 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.trigger;
+
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Receives trigger messages as UDP datagrams on the loopback interface, so
+ * only software on this computer can fire the camera. Each line of a 
+ * datagram is one message. For example: echo FIRE | nc -u -w0 127.0.0.1 5000
+ * @author John Murphy
+ */
+class UdpTriggerSource extends TriggerSource {
+    private static final int MAX_DATAGRAM = 512;
+    
+    private final DatagramSocket socket;
+    
+    /**
+     * @param port Local UDP port number
+     * @throws IOException The port could not be opened
+     */
+    UdpTriggerSource(int port) throws IOException {
+        super("udp " + port);
+        socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        Thread thread = new Thread(this::receive, "UDP Trigger " + port);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+    
+    private void receive() {
+        DatagramPacket packet = new DatagramPacket(new byte[MAX_DATAGRAM], MAX_DATAGRAM);
+        while (!socket.isClosed()) {
+            try {
+                socket.receive(packet);
+                long receivedTime = TriggerClock.currentTimeMillis();
+                String text = new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.US_ASCII);
+                for (String line : text.split("\\r?\\n")) {
+                    received(line, receivedTime);
+                }
+            } catch (IOException ex) {
+                if (!socket.isClosed()) {
+                    System.err.println(getName() + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
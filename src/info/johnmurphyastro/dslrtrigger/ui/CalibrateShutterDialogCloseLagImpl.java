@@ -0,0 +1,118 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.ui;
+
+import info.johnmurphyastro.dslrtrigger.calibration.LagCalibrationSession;
+import javax.swing.JOptionPane;
+
+/**
+ * Used to configure CalibrateShutterDialog to measure shutter close lag
+ * @author John Murphy
+ */
+class CalibrateShutterDialogCloseLagImpl implements CalibrateShutterDialogConfig {
+
+    private final CalibrateShutterDialog calibrateShutterDialog;
+    private final UiController uiController;
+    
+    CalibrateShutterDialogCloseLagImpl(CalibrateShutterDialog dialog, UiController controller){
+        this.calibrateShutterDialog = dialog;
+        this.uiController = controller;
+    }
+    
+    private static final String HELP_MSG = 
+            "The shutter close lag can be determined by photographing the LEDs on the USB relay switch "
+            + "just after the end of a bulb exposure.\n\n"
+            + "Camera settings:\n"
+            + "Image format: RAW only. Focus mode: Manual. Exposure mode: Bulb. "
+            + "Aperture: the aperture you intend to use in the field. Mirror Lock: set if available. "
+            + "Set ISO to ensure LEDs are visible. Keep the room dark so that the switch LED is the brightest light.\n\n"
+            + "Dialog settings:\n"
+            + "Set Mirror Lock to match camera setting. "
+            + "Set Shutter close delay to an estimate of the shutter close lag. 30 - 100 ms is a good starting point. "
+            + "Press 'Test' to take a bulb exposure of the LEDs on the USB switch. The switch is held for the "
+            + "shutter open delay plus 500 ms. It is then released, and after the specified number of milliseconds "
+            + "the switch LED is pulsed for " + LagCalibrationSession.LED_PULSE_MS + " ms. "
+            + "This is too short for the camera to take another shot.\n\n"
+            + "Analysing the results:\n"
+            + "If the switch LED pulse is visible, the shutter was still open: increase the value.\n"
+            + "If only the power LED is visible, decrease the value.\n"
+            + "Once you have the correct setting, the pulse should be visible about half the time. Press 'Apply'.\n\n"
+            + "'Calibrate > Shutter close lag session...' takes a batch of these shots automatically.";
+
+    @Override
+    public String getTitle() {
+        return "Calibrate shutter close delay";
+    }
+
+    @Override
+    public String getHelpText() {
+        return HELP_MSG;
+    }
+
+    @Override
+    public String getShutterDelayLabel() {
+        return "Shutter close delay (ms)";
+    }
+
+    @Override
+    public boolean isMirrorLockOn() {
+        return uiController.isMirrorLockSet();
+    }
+
+    @Override
+    public int getShutterDelayValue() {
+        int closeShutterDelay = uiController.getShutterCloseDelay();
+        if (closeShutterDelay == 0){
+            // It has not been set, so default to good starting value
+            closeShutterDelay = 30;
+        }
+        return closeShutterDelay;
+    }
+
+    @Override
+    public void testButtonAction() {
+        Thread calibrate = new Thread("Calibrate shutter close thread") {
+            @Override
+            public void run() {
+                int delay = calibrateShutterDialog.getShutterCalibrationDelay();
+                calibrateShutterDialog.enableUi(false);
+                uiController.takeShutterCloseCalibrationShot(
+                        delay, calibrateShutterDialog.isMirrorLockSelected());
+                java.awt.EventQueue.invokeLater(() -> {
+                    calibrateShutterDialog.enableUi(true);
+                });
+            }
+        };
+        calibrate.start();
+    }
+
+    @Override
+    public void applyButtonAction() {
+        int delay = calibrateShutterDialog.getShutterCalibrationDelay();
+        int ok = JOptionPane.showConfirmDialog(calibrateShutterDialog, "Replace existing shutter close delay?",
+                "Shutter close delay calibration", JOptionPane.OK_CANCEL_OPTION);
+        if (ok == JOptionPane.OK_OPTION) {
+            uiController.setShutterCloseDelay(delay);
+            // Also refine this camera's calibrated bulb mode shutter lag
+            uiController.addShutterCloseCalibration(delay, calibrateShutterDialog.isMirrorLockSelected());
+        }
+        calibrateShutterDialog.setVisible(false);
+    }
+    
+}
@@ -124,6 +124,8 @@ class CalibrateShutterDialogOpenLagImpl implements CalibrateShutterDialogConfig
                 "Shutter open delay calibration", JOptionPane.OK_CANCEL_OPTION);
         if (ok == JOptionPane.OK_OPTION) {
             uiController.setShutterOpenDelay(delay);
+            // Also refine this camera's calibrated shutter lag
+            uiController.addShutterOpenCalibration(delay, calibrateShutterDialog.isMirrorLockSelected());
         }
         calibrateShutterDialog.setVisible(false);
     }
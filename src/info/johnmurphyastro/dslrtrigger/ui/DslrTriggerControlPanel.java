@@ -66,7 +66,7 @@ class DslrTriggerControlPanel extends javax.swing.JPanel {
         jLabel7 = new javax.swing.JLabel();
         jLabel11 = new javax.swing.JLabel();
         mirrorLockTextfield = new JFormattedTextField(getFloatFormatter());
-        fireIntervalTextfield = new JFormattedTextField(getFormatter(1, 1));
+        fireIntervalTextfield = new JFormattedTextField(getFloatFormatter());
         exposureTextfield = new JFormattedTextField(getFloatFormatter());
         yearTextfield = new JFormattedTextField(getFormatter(4));
         monthTextfield = new JFormattedTextField(getFormatter(2));
@@ -474,15 +474,15 @@ class DslrTriggerControlPanel extends javax.swing.JPanel {
         this.exposureTextfield.setValue(exposure);
     }
 
-    int getFireInterval() {
+    float getFireInterval() {
         Object obj = fireIntervalTextfield.getValue();
         if (obj instanceof Number){
-            return ((Number)obj).intValue();
+            return ((Number)obj).floatValue();
         }
         return 0;
     }
 
-    void setFireInterval(int fireInterval) {
+    void setFireInterval(float fireInterval) {
         this.fireIntervalTextfield.setValue(fireInterval);
     }
     
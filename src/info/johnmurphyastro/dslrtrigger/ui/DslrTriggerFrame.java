@@ -20,7 +20,11 @@ package info.johnmurphyastro.dslrtrigger.ui;
 
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
 import info.johnmurphyastro.dslrtrigger.Version;
+import info.johnmurphyastro.dslrtrigger.calibration.LagType;
 import info.johnmurphyastro.dslrtrigger.intervalometer.IntervalometerController;
 import javax.swing.JOptionPane;
 
@@ -62,6 +66,8 @@ public class DslrTriggerFrame extends javax.swing.JFrame {
             });
 
             uiController.setDSLRtrigger(new IntervalometerController());
+            setJMenuBar(createMenuBar(uiController));
+            pack();
         } catch (Throwable t){
             ScrolledErrorPanel scrolledErrorPanel = new ScrolledErrorPanel();
             scrolledErrorPanel.setText(t.getLocalizedMessage());
@@ -72,4 +78,42 @@ public class DslrTriggerFrame extends javax.swing.JFrame {
         }
     }
     
+    private JMenuBar createMenuBar(UiController uiController) {
+        JMenu planMenu = new JMenu("Plan");
+        JMenuItem runPlanItem = new JMenuItem("Run plan file...");
+        runPlanItem.addActionListener(evt -> uiController.runPlanAction());
+        planMenu.add(runPlanItem);
+        JMenuItem dryRunItem = new JMenuItem("Dry run plan file...");
+        dryRunItem.addActionListener(evt -> uiController.dryRunPlanAction());
+        planMenu.add(dryRunItem);
+        JMenuItem selfTestItem = new JMenuItem("Self test current settings");
+        selfTestItem.addActionListener(evt -> uiController.selfTestAction());
+        planMenu.add(selfTestItem);
+        JMenuItem savePlanItem = new JMenuItem("Save settings as plan file...");
+        savePlanItem.addActionListener(evt -> uiController.savePlanAction());
+        planMenu.add(savePlanItem);
+        
+        JMenu sequenceMenu = new JMenu("Sequence");
+        JMenuItem pauseItem = new JMenuItem("Pause");
+        pauseItem.addActionListener(evt -> uiController.pauseAction());
+        sequenceMenu.add(pauseItem);
+        JMenuItem resumeItem = new JMenuItem("Resume");
+        resumeItem.addActionListener(evt -> uiController.resumeAction());
+        sequenceMenu.add(resumeItem);
+        
+        JMenu calibrateMenu = new JMenu("Calibrate");
+        JMenuItem lagSessionItem = new JMenuItem("Shutter open lag session...");
+        lagSessionItem.addActionListener(evt -> uiController.shutterLagSessionAction(LagType.OPEN));
+        calibrateMenu.add(lagSessionItem);
+        JMenuItem closeLagSessionItem = new JMenuItem("Shutter close lag session...");
+        closeLagSessionItem.addActionListener(evt -> uiController.shutterLagSessionAction(LagType.CLOSE));
+        calibrateMenu.add(closeLagSessionItem);
+        
+        JMenuBar menuBar = new JMenuBar();
+        menuBar.add(planMenu);
+        menuBar.add(sequenceMenu);
+        menuBar.add(calibrateMenu);
+        return menuBar;
+    }
+    
 }
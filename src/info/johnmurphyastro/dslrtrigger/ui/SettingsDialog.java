@@ -18,10 +18,10 @@
  */
 package info.johnmurphyastro.dslrtrigger.ui;
 
+import info.johnmurphyastro.dslrtrigger.data.OverrunPolicy;
+import info.johnmurphyastro.dslrtrigger.data.StartAlignment;
 import java.text.NumberFormat;
 import javax.swing.JFormattedTextField;
-import javax.swing.JOptionPane;
-import javax.swing.JTextArea;
 import javax.swing.text.NumberFormatter;
 
 /**
@@ -90,6 +90,53 @@ class SettingsDialog extends javax.swing.JDialog {
         shutterCloseDelayTextField.setValue(delay);
     }
 
+    /**
+     * @return If the shutter button release is this many ms late, the watchdog releases it
+     */
+    int getWatchdogMargin(){
+        Object obj = watchdogMarginTextField.getValue();
+        if (obj instanceof Number){
+            return ((Number)obj).intValue();
+        }
+        return 0;
+    }
+    
+    /**
+     * @param margin Watchdog margin in ms
+     */
+    void setWatchdogMargin(int margin){
+        watchdogMarginTextField.setValue(margin);
+    }
+    
+    /**
+     * @return Start time grid, or null for the coarsest grid that fits the fire interval
+     */
+    StartAlignment getStartAlignment(){
+        int i = startAlignmentComboBox.getSelectedIndex();
+        return i > 0 ? StartAlignment.values()[i - 1] : null;
+    }
+    
+    /**
+     * @param alignment Start time grid, or null for the coarsest grid that fits the fire interval
+     */
+    void setStartAlignment(StartAlignment alignment){
+        startAlignmentComboBox.setSelectedIndex(alignment == null ? 0 : alignment.ordinal() + 1);
+    }
+    
+    /**
+     * @return What to do when a shot cannot start on time
+     */
+    OverrunPolicy getOverrunPolicy(){
+        return OverrunPolicy.values()[Math.max(0, overrunPolicyComboBox.getSelectedIndex())];
+    }
+    
+    /**
+     * @param policy What to do when a shot cannot start on time
+     */
+    void setOverrunPolicy(OverrunPolicy policy){
+        overrunPolicyComboBox.setSelectedIndex(policy.ordinal());
+    }
+    
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -113,6 +160,13 @@ class SettingsDialog extends javax.swing.JDialog {
         shutterCloseDelayTextField = new JFormattedTextField(getFormatter());
         shutterOpenDelayTextField = new JFormattedTextField(getFormatter());
         calibrateShutterCloseDelayButton = new javax.swing.JButton();
+        jPanel3 = new javax.swing.JPanel();
+        jLabel3 = new javax.swing.JLabel();
+        watchdogMarginTextField = new JFormattedTextField(getFormatter());
+        jLabel10 = new javax.swing.JLabel();
+        startAlignmentComboBox = new javax.swing.JComboBox<>();
+        jLabel11 = new javax.swing.JLabel();
+        overrunPolicyComboBox = new javax.swing.JComboBox<>();
 
         setTitle("DSLR Trigger Settings");
 
@@ -303,6 +357,62 @@ class SettingsDialog extends javax.swing.JDialog {
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
 
+        jPanel3.setBorder(javax.swing.BorderFactory.createTitledBorder("Sequence timing"));
+
+        jLabel3.setText("Watchdog margin / ms:");
+        jLabel3.setToolTipText("If the shutter button release is this many milliseconds late, the watchdog releases the button");
+
+        watchdogMarginTextField.setToolTipText("If the shutter button release is this many milliseconds late, the watchdog releases the button");
+        watchdogMarginTextField.setMinimumSize(new java.awt.Dimension(40, 30));
+        watchdogMarginTextField.setPreferredSize(new java.awt.Dimension(40, 30));
+
+        jLabel10.setText("Start time grid:");
+        jLabel10.setToolTipText("Exposure start times are rounded to this grid. Auto uses the coarsest grid that fits the fire interval");
+
+        startAlignmentComboBox.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Auto", "None", "0.1 second", "1 second" }));
+        startAlignmentComboBox.setToolTipText("Exposure start times are rounded to this grid. Auto uses the coarsest grid that fits the fire interval");
+
+        jLabel11.setText("Overrun policy:");
+        jLabel11.setToolTipText("What to do when a shot cannot start on time because the previous one finished late");
+
+        overrunPolicyComboBox.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Skip", "Catch up", "Slip" }));
+        overrunPolicyComboBox.setToolTipText("What to do when a shot cannot start on time because the previous one finished late");
+
+        javax.swing.GroupLayout jPanel3Layout = new javax.swing.GroupLayout(jPanel3);
+        jPanel3.setLayout(jPanel3Layout);
+        jPanel3Layout.setHorizontalGroup(
+            jPanel3Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(jPanel3Layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(jPanel3Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(jLabel3)
+                    .addComponent(jLabel10)
+                    .addComponent(jLabel11))
+                .addGap(18, 18, 18)
+                .addGroup(jPanel3Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(watchdogMarginTextField, javax.swing.GroupLayout.PREFERRED_SIZE, 120, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(startAlignmentComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, 120, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(overrunPolicyComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, 120, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        jPanel3Layout.setVerticalGroup(
+            jPanel3Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(jPanel3Layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(jPanel3Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel3)
+                    .addComponent(watchdogMarginTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(jPanel3Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel10)
+                    .addComponent(startAlignmentComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(jPanel3Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel11)
+                    .addComponent(overrunPolicyComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
@@ -314,7 +424,8 @@ class SettingsDialog extends javax.swing.JDialog {
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(closeButton)
                         .addGap(0, 0, Short.MAX_VALUE))
-                    .addComponent(jPanel2, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+                    .addComponent(jPanel2, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                    .addComponent(jPanel3, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
                 .addContainerGap())
         );
         layout.setVerticalGroup(
@@ -323,6 +434,8 @@ class SettingsDialog extends javax.swing.JDialog {
                 .addContainerGap()
                 .addComponent(jPanel2, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addGap(18, 18, 18)
+                .addComponent(jPanel3, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addGap(18, 18, 18)
                 .addComponent(jPanel1, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                 .addGap(18, 18, 18)
                 .addComponent(closeButton)
@@ -342,10 +455,7 @@ class SettingsDialog extends javax.swing.JDialog {
     }//GEN-LAST:event_calibrateShutterOpenDelayButtonActionPerformed
 
     private void calibrateShutterCloseDelayButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_calibrateShutterCloseDelayButtonActionPerformed
-        JTextArea textArea = new JTextArea("The calibration procedure is described here:\n\n"
-                + "http://www.johnmurphyastro.info/software/dslr-trigger/dslr-trigger-help/calibrate-shutter-close-lag\n");
-        textArea.setEditable(false);
-        JOptionPane.showMessageDialog(this, textArea, "Calibrate shutter close lag", JOptionPane.INFORMATION_MESSAGE);
+        uiController.showShutterCloseDelayDialog();
     }//GEN-LAST:event_calibrateShutterCloseDelayButtonActionPerformed
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
@@ -356,7 +466,10 @@ class SettingsDialog extends javax.swing.JDialog {
     final javax.swing.JTextField commentTextField = new javax.swing.JTextField();
     final javax.swing.JTextField emailTextField = new javax.swing.JTextField();
     private javax.swing.JLabel jLabel1;
+    private javax.swing.JLabel jLabel10;
+    private javax.swing.JLabel jLabel11;
     private javax.swing.JLabel jLabel2;
+    private javax.swing.JLabel jLabel3;
     private javax.swing.JLabel jLabel4;
     private javax.swing.JLabel jLabel5;
     private javax.swing.JLabel jLabel6;
@@ -365,13 +478,17 @@ class SettingsDialog extends javax.swing.JDialog {
     private javax.swing.JLabel jLabel9;
     private javax.swing.JPanel jPanel1;
     private javax.swing.JPanel jPanel2;
+    private javax.swing.JPanel jPanel3;
     final javax.swing.JTextField lensTextField = new javax.swing.JTextField();
     final javax.swing.JTextField locationTextField = new javax.swing.JTextField();
     final javax.swing.JCheckBox logAllEventsCheckBox = new javax.swing.JCheckBox();
     final javax.swing.JTextField nameTextField = new javax.swing.JTextField();
+    private javax.swing.JComboBox<String> overrunPolicyComboBox;
     private javax.swing.JFormattedTextField shutterCloseDelayTextField;
     private javax.swing.JFormattedTextField shutterOpenDelayTextField;
+    private javax.swing.JComboBox<String> startAlignmentComboBox;
     final javax.swing.JCheckBox tabSeparatedCheckBox = new javax.swing.JCheckBox();
+    private javax.swing.JFormattedTextField watchdogMarginTextField;
     // End of variables declaration//GEN-END:variables
 
 }
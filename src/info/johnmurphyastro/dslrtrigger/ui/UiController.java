@@ -19,26 +19,49 @@
 package info.johnmurphyastro.dslrtrigger.ui;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import info.johnmurphyastro.dslrtrigger.ArmedListener;
 import info.johnmurphyastro.dslrtrigger.InvalidDataException;
 import info.johnmurphyastro.dslrtrigger.ProgressListener;
 import info.johnmurphyastro.dslrtrigger.WaitTimeListener;
+import info.johnmurphyastro.dslrtrigger.calibration.LagCalibrationSession;
+import info.johnmurphyastro.dslrtrigger.calibration.LagEstimate;
+import info.johnmurphyastro.dslrtrigger.calibration.LagType;
 import info.johnmurphyastro.dslrtrigger.data.IntervalometerData;
 import info.johnmurphyastro.dslrtrigger.data.LogfileData;
 import info.johnmurphyastro.dslrtrigger.data.MinTime;
 import info.johnmurphyastro.dslrtrigger.data.ObserverData;
+import info.johnmurphyastro.dslrtrigger.data.SequencePlan;
+import info.johnmurphyastro.dslrtrigger.data.ShutterLagProfile;
+import info.johnmurphyastro.dslrtrigger.data.OverrunPolicy;
+import info.johnmurphyastro.dslrtrigger.data.StartAlignment;
+import info.johnmurphyastro.dslrtrigger.data.TriggerData;
+import info.johnmurphyastro.dslrtrigger.intervalometer.ArmingReport;
+import info.johnmurphyastro.dslrtrigger.intervalometer.Checkpoint;
+import info.johnmurphyastro.dslrtrigger.intervalometer.DryRun;
 import info.johnmurphyastro.dslrtrigger.intervalometer.IntervalometerController;
+import info.johnmurphyastro.dslrtrigger.intervalometer.SelfTestReport;
+import info.johnmurphyastro.dslrtrigger.plan.PlanField;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFile;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFileReader;
+import info.johnmurphyastro.dslrtrigger.plan.PlanFileWriter;
+import info.johnmurphyastro.dslrtrigger.plan.PlanProblem;
+import info.johnmurphyastro.dslrtrigger.plan.PlanValidator;
 
 /**
  *
  * @author John Murphy
  */
-class UiController implements ProgressListener, WaitTimeListener {
+class UiController implements ProgressListener, WaitTimeListener, ArmedListener {
     private final static String LOG_FOLDER = "log_folder";
     private final static String FIRE_INTERVAL = "fire_interval";
     private final static String N_SHOTS = "n_shots";
@@ -57,13 +80,20 @@ class UiController implements ProgressListener, WaitTimeListener {
     private final static String COMMENT = "comment";
     private final static String USE_TABS = "use_tabs";
     private final static String LOG_ALL_EVENTS = "log_all_events";
+    private final static String WATCHDOG_MARGIN = "watchdog_margin";
+    private final static String START_ALIGNMENT = "start_alignment";
+    private final static String OVERRUN_POLICY = "overrun_policy";
 
     private DslrTriggerControlPanel ui;
     private final JFileChooser fileChooser = new JFileChooser();
+    private final JFileChooser planChooser = new JFileChooser();
+    private final JFileChooser sessionChooser = new JFileChooser();
     private File logFolder;
 
     private IntervalometerController intervalometerController;
     private Thread startButtonThread;
+    /** Total number of shots in the running sequence */
+    private volatile int progressTotal;
     private final static int HOURS_MS = 3_600_000;
     private final static int MINUTES_MS = 60_000;
     private static final int SECONDS_MS = 1_000;
@@ -75,17 +105,93 @@ class UiController implements ProgressListener, WaitTimeListener {
     private MessageDisplayer messageListener;
     
     /**
-     * @return Shutter open lag in milliseconds
+     * @return Shutter open lag in milliseconds. The calibrated mean if this 
+     * camera has been calibrated in this mode, otherwise the Settings dialog value.
      */
     int getShutterOpenDelay() {
-        return settingsDialog.getShutterOpenDelay();
+        ShutterLagProfile profile = getShutterLagProfile();
+        int delay = settingsDialog.getShutterOpenDelay();
+        return profile != null ? profile.getShutterOpenDelay(delay) : delay;
     }
 
     /**
-     * @return Shutter close lag in milliseconds
+     * @return Shutter close lag in milliseconds. The calibrated mean if this 
+     * camera has been calibrated in this mode, otherwise the Settings dialog value.
      */    
     int getShutterCloseDelay() {
-        return settingsDialog.getShutterCloseDelay();
+        ShutterLagProfile profile = getShutterLagProfile();
+        int delay = settingsDialog.getShutterCloseDelay();
+        return profile != null ? profile.getShutterCloseDelay(delay) : delay;
+    }
+    
+    /**
+     * @return Calibrations for the camera and mode, or null if not calibrated
+     */
+    private ShutterLagProfile getShutterLagProfile() {
+        return intervalometerController.getShutterLagStore().find(settingsDialog.cameraTextField.getText(),
+                ui.getMirrorLockFlag(), ui.bulbCheckBox.isSelected());
+    }
+    
+    /**
+     * Add a calibration result to the camera's shutter lag profile
+     * @param lag Shutter open lag in milliseconds
+     * @param mirrorLock True if the camera was in mirror lock mode
+     */
+    void addShutterOpenCalibration(double lag, boolean mirrorLock) {
+        addShutterOpenCalibration(settingsDialog.cameraTextField.getText(), 
+                lag, mirrorLock, ui.bulbCheckBox.isSelected());
+    }
+    
+    /**
+     * Add a calibration result to a camera's shutter lag profile
+     * @param camera Camera model
+     * @param lag Shutter open lag in milliseconds
+     * @param mirrorLock True if the camera was in mirror lock mode
+     * @param bulbMode True if the camera was in bulb mode
+     */
+    private void addShutterOpenCalibration(String camera, double lag, boolean mirrorLock, boolean bulbMode) {
+        try {
+            ShutterLagProfile profile = intervalometerController.getShutterLagStore().addOpenLag(
+                    camera, mirrorLock, bulbMode, lag);
+            messageListener.showMessage(profile.getName() + "\nShutter open lag " + profile.getOpenLag(), 
+                    "Shutter lag profile");
+        } catch (BackingStoreException ex) {
+            messageListener.showErrorMessage("Failed to save the shutter lag profile\n" + ex.getLocalizedMessage());
+        }
+    }
+    
+    /**
+     * Add a calibration result to the camera's bulb mode shutter lag profile
+     * @param lag Shutter close lag in milliseconds
+     * @param mirrorLock True if the camera was in mirror lock mode
+     */
+    void addShutterCloseCalibration(double lag, boolean mirrorLock) {
+        addShutterCloseCalibration(settingsDialog.cameraTextField.getText(), lag, mirrorLock);
+    }
+    
+    /**
+     * Add a calibration result to a camera's bulb mode shutter lag profile
+     * @param camera Camera model
+     * @param lag Shutter close lag in milliseconds
+     * @param mirrorLock True if the camera was in mirror lock mode
+     */
+    private void addShutterCloseCalibration(String camera, double lag, boolean mirrorLock) {
+        try {
+            ShutterLagProfile profile = intervalometerController.getShutterLagStore().addCloseLag(
+                    camera, mirrorLock, true, lag);
+            messageListener.showMessage(profile.getName() + "\nShutter close lag " + profile.getCloseLag(), 
+                    "Shutter lag profile");
+        } catch (BackingStoreException ex) {
+            messageListener.showErrorMessage("Failed to save the shutter lag profile\n" + ex.getLocalizedMessage());
+        }
+    }
+    
+    /**
+     * @return Bulb exposure for shutter close lag test shots, in milliseconds. 
+     * Long enough for the shutter to be fully open before the switch is released
+     */
+    int getShutterCloseCalibrationExposure() {
+        return Math.max(MinTime.EXPOSURE_MS, getShutterOpenDelay()) + 500;
     }
 
     boolean isMirrorLockSet(){
@@ -123,49 +229,64 @@ class UiController implements ProgressListener, WaitTimeListener {
         );
     }
     
+    private TriggerData getTriggerData() throws InvalidDataException{
+        return new TriggerData(settingsDialog.getWatchdogMargin());
+    }
+    
     /**
      * Validates and returns the Intervalometer related data
      * @return Intervalometer data
      * @throws InvalidDataException 
      */
     private IntervalometerData getIntervalometerData() throws InvalidDataException{
+        float fireInterval = ui.getFireInterval();
+        StartAlignment alignment = settingsDialog.getStartAlignment();
+        if (alignment == null) {
+            // Auto
+            alignment = StartAlignment.coarsestFor((int) (1000 * fireInterval + 0.5F));
+        }
         IntervalometerData ivData = new IntervalometerData(
                 ui.getMirrorLockFlag(),
                 ui.bulbCheckBox.isSelected(),
-                settingsDialog.getShutterOpenDelay(),
-                settingsDialog.getShutterCloseDelay(),
+                getShutterOpenDelay(),
+                getShutterCloseDelay(),
                 getStartAfterTime(),
                 ui.getExposure(),
                 ui.getMirrorLockValue(), // mirror up duration
                 getNumberOfShots(),
-                ui.getFireInterval()
+                fireInterval,
+                alignment,
+                settingsDialog.getOverrunPolicy()
         );
         
-        if (ivData.isMirrorLockSet() && ivData.getMirrorUpDuration() < MinTime.MIRROR_MOVE_MS) {
-            throw new InvalidDataException(
-                    "Minimum '" + ui.mirrorLockLabel.getText() + "' time is " + (MinTime.MIRROR_MOVE_MS / 1000.0) + " s");
-        }
-        if (ivData.getExposure() < MinTime.EXPOSURE_MS) {
-            throw new InvalidDataException(
-                    "Minimum '" + ui.exposureLabel.getText() + "' time is " + MinTime.EXPOSURE_MS / 1000.0 + " s");
-        }
-        if (ivData.getShutterCloseDelay() > ivData.getShutterOpenDelay()){
-            throw new InvalidDataException("'Shutter close delay' must not be greater than the 'Shutter open delay'\n(Settings dialog)");
-        }
-        if (ivData.getRepeatInterval() < ivData.getMirrorUpDuration() + ivData.getExposure() + MinTime.BEFORE_SHOT_MS) {
-            StringBuffer strBuf = new StringBuffer()
-                    .append("Minimum '").append(ui.timeIntervalLabel.getText()).append("' time is \n")
-                    .append("'").append(ui.exposureLabel.getText()).append("' + '");
-            if (ivData.isMirrorLockSet()){
-                strBuf.append(ui.mirrorLockLabel.getText()).append("' + '");
+        List<PlanProblem> problems = PlanValidator.validateSegment(ivData, -1);
+        if (!problems.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (PlanProblem problem : problems) {
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                sb.append(problem.getMessage());
+                if (problem.getField() == PlanField.SHUTTER_DELAY) {
+                    sb.append("\n(Settings dialog)");
+                }
             }
-            strBuf.append(MinTime.BEFORE_SHOT_MS).append(" ms'");
-            throw new InvalidDataException(strBuf.toString());
+            throw new InvalidDataException(sb.toString());
         }
         
         return ivData;
     }
     
+    /**
+     * Validates the user interface settings
+     * @return The settings as a single segment plan
+     * @throws InvalidDataException 
+     */
+    private PlanFile getPlanFile() throws InvalidDataException {
+        return new PlanFile(new SequencePlan(getIntervalometerData()), 
+                getObserverData(), getLogfileData(), getTriggerData(), getComPort());
+    }
+    
     /**
      * @param delay Shutter open lag in milliseconds
      */
@@ -184,7 +305,7 @@ class UiController implements ProgressListener, WaitTimeListener {
     public void setProgress(final int completed) {
         java.awt.EventQueue.invokeLater(() -> {
             ui.progressTextfield.setText(""
-                    + completed + " / " + getNumberOfShots());
+                    + completed + " / " + progressTotal);
         });
     }
 
@@ -195,6 +316,13 @@ class UiController implements ProgressListener, WaitTimeListener {
         });
     }
 
+    @Override
+    public void setArmed(ArmingReport report) {
+        java.awt.EventQueue.invokeLater(() -> {
+            ui.progressTextfield.setToolTipText(report.toString());
+        });
+    }
+
     /**
      * Displays wait time. Example format: "0h 11m 43s"
      * @param waitTime Wait time in milliseconds
@@ -332,6 +460,49 @@ class UiController implements ProgressListener, WaitTimeListener {
     void setDSLRtrigger(IntervalometerController intervalometerController) {
         this.intervalometerController = intervalometerController;
         setComPorts(intervalometerController.getUSBSerialPortNames());
+        offerToResume();
+    }
+    
+    /**
+     * If a sequence was interrupted by a crash or reboot, ask the user if it 
+     * should be resumed. If not, the checkpoint is deleted.
+     */
+    private void offerToResume() {
+        File file = Checkpoint.getFile(logFolder);
+        if (!file.exists()) {
+            return;
+        }
+        Checkpoint checkpoint;
+        try {
+            checkpoint = Checkpoint.load(file);
+        } catch (IOException | InvalidDataException ex) {
+            messageListener.showErrorMessage("Ignoring sequence checkpoint\n" + ex.getLocalizedMessage());
+            file.delete();
+            return;
+        }
+        String msg = "A sequence was interrupted before it finished.\n"
+                + "Log file: " + checkpoint.getLogFile() + "\n"
+                + "Resume at shot " + (checkpoint.getNextShot() + 1) + " of " + checkpoint.getNumberOfShots() + "?";
+        int answer = JOptionPane.showConfirmDialog(ui, msg, "Resume sequence", JOptionPane.YES_NO_OPTION);
+        if (answer != JOptionPane.YES_OPTION) {
+            file.delete();
+            return;
+        }
+        progressTotal = checkpoint.getNumberOfShots();
+        ui.enableUi(false);
+        showClock = false;
+        startButtonThread = new Thread("Resume Thread") {
+            @Override
+            public void run() {
+                intervalometerController.resume(checkpoint, 
+                        UiController.this, UiController.this, UiController.this, messageListener);
+                java.awt.EventQueue.invokeLater(() -> {
+                    ui.enableUi(true);
+                    startClock();
+                });
+            }
+        };
+        startButtonThread.start();
     }
 
     /**
@@ -342,18 +513,114 @@ class UiController implements ProgressListener, WaitTimeListener {
     }
 
     void startButtonAction() {
+        try {
+            startPlan(getPlanFile());
+        } catch (InvalidDataException ex) {
+            messageListener.showErrorMessage(ex);
+        }
+    }
+    
+    /**
+     * Read a sequence plan file and run it. If the plan does not specify a 
+     * COM port, the selected COM port is used.
+     */
+    void runPlanAction() {
+        if (!ui.startButton.isEnabled()) {
+            // A sequence is already running
+            return;
+        }
+        if (JFileChooser.APPROVE_OPTION != planChooser.showOpenDialog(ui)) {
+            return;
+        }
+        try {
+            startPlan(PlanFileReader.read(planChooser.getSelectedFile()));
+        } catch (IOException | InvalidDataException ex) {
+            messageListener.showErrorMessage(ex);
+        }
+    }
+    
+    /**
+     * Read a sequence plan file and simulate it without using the USB switch.
+     * The simulated timeline is written next to the plan file as CSV and 
+     * Chrome trace JSON files.
+     */
+    void dryRunPlanAction() {
+        if (JFileChooser.APPROVE_OPTION != planChooser.showOpenDialog(ui)) {
+            return;
+        }
+        File planFile = planChooser.getSelectedFile();
+        try {
+            DryRun dryRun = DryRun.simulate(
+                    PlanFileReader.read(planFile).getSequencePlan(), System.currentTimeMillis());
+            File csvFile = new File(planFile.getPath() + "_dryrun.csv");
+            File traceFile = new File(planFile.getPath() + "_dryrun.json");
+            dryRun.export(csvFile, traceFile);
+            messageListener.showMessage(dryRun.getSummary() + "\n\nTimeline written to:\n" 
+                    + csvFile.getPath() + "\n" + traceFile.getPath(), "Dry run");
+        } catch (IOException | InvalidDataException ex) {
+            messageListener.showErrorMessage(ex);
+        }
+    }
+    
+    /**
+     * Run the pre-flight self test with the current settings. The USB switch
+     * is only sent release commands, so no shot is taken.
+     */
+    void selfTestAction() {
+        PlanFile planFile;
+        try {
+            planFile = getPlanFile();
+        } catch (InvalidDataException ex) {
+            messageListener.showErrorMessage(ex);
+            return;
+        }
+        final int cycles = IntervalometerController.SELF_TEST_CYCLES;
+        ui.enableUi(false);
+        showClock = false;
+        Thread thread = new Thread("Self Test Thread") {
+            @Override
+            public void run() {
+                SelfTestReport report = intervalometerController.selfTest(planFile, cycles, 
+                        completed -> java.awt.EventQueue.invokeLater(() -> 
+                                ui.progressTextfield.setText("Self test " + completed + " / " + cycles)), 
+                        messageListener);
+                java.awt.EventQueue.invokeLater(() -> {
+                    ui.enableUi(true);
+                    startClock();
+                    if (report != null) {
+                        messageListener.showMessage(report.toString(), "Self test");
+                    }
+                });
+            }
+        };
+        thread.start();
+    }
+    
+    /**
+     * Save the current settings as a sequence plan file
+     */
+    void savePlanAction() {
+        try {
+            PlanFile planFile = getPlanFile();
+            if (JFileChooser.APPROVE_OPTION == planChooser.showSaveDialog(ui)) {
+                PlanFileWriter.write(planFile, planChooser.getSelectedFile());
+            }
+        } catch (IOException | InvalidDataException ex) {
+            messageListener.showErrorMessage(ex);
+        }
+    }
+    
+    private void startPlan(PlanFile planFile) {
+        final String comPort = planFile.getComPort() != null ? planFile.getComPort() : getComPort();
+        progressTotal = planFile.getSequencePlan().getNumberOfShots();
         ui.enableUi(false);
         showClock = false;
         startButtonThread = new Thread("Start Button Thread") {
             @Override
             public void run() {
-                try {
-                    intervalometerController.start(getComPort(), getIntervalometerData(), 
-                            getObserverData(), getLogfileData(),
-                            UiController.this, UiController.this, messageListener);
-                } catch (InvalidDataException ex) {
-                    messageListener.showErrorMessage(ex);
-                }
+                intervalometerController.start(comPort, planFile.getSequencePlan(), 
+                        planFile.getObserverData(), planFile.getLogfileData(), planFile.getTriggerData(),
+                        UiController.this, UiController.this, UiController.this, messageListener);
                 java.awt.EventQueue.invokeLater(() -> {
                     ui.enableUi(true);
                     startClock();
@@ -379,6 +646,21 @@ class UiController implements ProgressListener, WaitTimeListener {
         thread.start();
     }
 
+    void pauseAction() {
+        if (intervalometerController.pause()) {
+            ui.progressTextfield.setText("Paused");
+        } else {
+            messageListener.showErrorMessage("Pause is available once the sequence has been armed");
+        }
+    }
+
+    void resumeAction() {
+        if (intervalometerController.isPaused()) {
+            intervalometerController.resume();
+            ui.progressTextfield.setText("Resuming");
+        }
+    }
+
     void exitButtonAction() {
         ui.exitButton.setEnabled(false);
         Thread thread = new Thread("Exit Button Thread") {
@@ -427,6 +709,132 @@ class UiController implements ProgressListener, WaitTimeListener {
                 shutterOpenDelay, mirrorLock, messageListener);
     }
     
+    void showShutterCloseDelayDialog(){
+        if (calibrateShutterDialog == null) {
+            calibrateShutterDialog = new CalibrateShutterDialog(null, true);
+        }
+        calibrateShutterDialog.setController(
+                new CalibrateShutterDialogCloseLagImpl(calibrateShutterDialog, this));
+        calibrateShutterDialog.validate();
+        calibrateShutterDialog.setLocationRelativeTo(ui);
+        calibrateShutterDialog.setVisible(true);
+    }
+    
+    void takeShutterCloseCalibrationShot(int shutterCloseDelay, boolean mirrorLock){
+        intervalometerController.takeShutterCloseCalibrationShot(getComPort(), 
+                shutterCloseDelay, getShutterCloseCalibrationExposure(), mirrorLock, messageListener);
+    }
+    
+    /**
+     * Open or create a shutter lag calibration session file. A new session
+     * uses the current camera and mirror lock settings, and tests delays
+     * from half to twice the current shutter open or close delay. Open lag
+     * sessions use the current bulb setting; close lag sessions are always in
+     * bulb mode. Takes the next round of shots, or once the lag is known, adds
+     * it to the shutter lag profile.
+     * @param type The lag to calibrate if a new session file is created
+     */
+    void shutterLagSessionAction(LagType type) {
+        if (JFileChooser.APPROVE_OPTION != sessionChooser.showDialog(ui, "Open or create")) {
+            return;
+        }
+        final File file = sessionChooser.getSelectedFile();
+        final String title = "Shutter lag calibration";
+        LagCalibrationSession session;
+        try {
+            if (file.exists()) {
+                session = LagCalibrationSession.load(file);
+            } else if (type == LagType.CLOSE) {
+                int delay = getShutterCloseDelay();
+                if (delay < MinTime.EXPOSURE_MS) {
+                    delay = 30;
+                }
+                session = new LagCalibrationSession(type, settingsDialog.cameraTextField.getText(), 
+                        ui.getMirrorLockFlag(), true, null, delay / 2, delay * 2, 
+                        getShutterCloseCalibrationExposure(),
+                        LagCalibrationSession.DEFAULT_SHOTS_PER_ROUND, LagCalibrationSession.DEFAULT_REPEATS);
+            } else {
+                int delay = getShutterOpenDelay();
+                if (delay < MinTime.EXPOSURE_MS) {
+                    delay = 100;
+                }
+                int lower = Math.max(MinTime.EXPOSURE_MS, delay / 2);
+                session = new LagCalibrationSession(type, settingsDialog.cameraTextField.getText(), 
+                        ui.getMirrorLockFlag(), ui.bulbCheckBox.isSelected(), null, 
+                        lower, Math.max(lower + 20, delay * 2), 0,
+                        LagCalibrationSession.DEFAULT_SHOTS_PER_ROUND, LagCalibrationSession.DEFAULT_REPEATS);
+            }
+            if (session.getPendingShots().isEmpty()) {
+                if (session.getUnmarkedShots() > 0) {
+                    messageListener.showMessage("Mark the 'led' column of " + session.getUnmarkedShots() 
+                            + " shots in\n" + file.getPath() + "\nwith y or n, then open it again", title);
+                    return;
+                }
+                LagEstimate estimate = session.getEstimate();
+                if (session.isComplete()) {
+                    boolean closeLag = session.getType() == LagType.CLOSE;
+                    int ok = JOptionPane.showConfirmDialog(ui, session.getType().getDescription() + " " + estimate 
+                            + "\n\nAdd to the shutter lag profile and replace the shutter " 
+                            + (closeLag ? "close" : "open") + " delay?", 
+                            title, JOptionPane.OK_CANCEL_OPTION);
+                    if (ok == JOptionPane.OK_OPTION) {
+                        int delay = (int) Math.round(estimate.getLag());
+                        if (closeLag) {
+                            setShutterCloseDelay(delay);
+                            addShutterCloseCalibration(session.getCamera(), estimate.getLag(), 
+                                    session.isMirrorLock());
+                        } else {
+                            setShutterOpenDelay(delay);
+                            addShutterOpenCalibration(session.getCamera(), estimate.getLag(), 
+                                    session.isMirrorLock(), session.isBulbMode());
+                        }
+                    }
+                    return;
+                }
+                session = session.withNextRound();
+                session.save(file);
+            }
+            LagEstimate estimate = session.getEstimate();
+            int nShots = session.getPendingShots().size();
+            int ok = JOptionPane.showConfirmDialog(ui, (estimate != null ? "So far: " + estimate + "\n\n" : "")
+                    + "Take round " + session.getRound() + ": " + nShots + " shots, one every " 
+                    + session.getShotInterval() + " ms?", title, JOptionPane.OK_CANCEL_OPTION);
+            if (ok != JOptionPane.OK_OPTION) {
+                return;
+            }
+            takeCalibrationRound(session, file, nShots);
+        } catch (IOException | InvalidDataException ex) {
+            messageListener.showErrorMessage(ex);
+        }
+    }
+    
+    private void takeCalibrationRound(LagCalibrationSession session, File file, int nShots) {
+        final String comPort = session.getComPort() != null ? session.getComPort() : getComPort();
+        ui.enableUi(false);
+        showClock = false;
+        Thread thread = new Thread("Calibration Round Thread") {
+            @Override
+            public void run() {
+                LagCalibrationSession result = intervalometerController.takeCalibrationRound(comPort, 
+                        session, file, completed -> java.awt.EventQueue.invokeLater(() -> 
+                                ui.progressTextfield.setText("Calibration shot " + completed + " / " + nShots)), 
+                        messageListener);
+                java.awt.EventQueue.invokeLater(() -> {
+                    ui.enableUi(true);
+                    startClock();
+                    if (result != null) {
+                        String warning = result.getRoundWarning();
+                        messageListener.showMessage("Round " + result.getRound() + " taken. Mark the 'led' "
+                                + "column of each shot in\n" + file.getPath() 
+                                + "\nwith y or n, then open it again"
+                                + (warning != null ? "\n\n" + warning + "." : ""), "Shutter lag calibration");
+                    }
+                });
+            }
+        };
+        thread.start();
+    }
+    
     void updateSettings() {
         saveValues();
     }
@@ -438,7 +846,7 @@ class UiController implements ProgressListener, WaitTimeListener {
         Preferences userPref = Preferences.userNodeForPackage(this.getClass());
         userPref.put(LOG_FOLDER, ui.logFolderTextfield.getText());
         userPref.put(LOG_FILE_PREFIX, ui.logFilenameTextfield.getText());
-        userPref.putInt(FIRE_INTERVAL, ui.getFireInterval());
+        userPref.putFloat(FIRE_INTERVAL, ui.getFireInterval());
         userPref.putInt(N_SHOTS, ui.getNumberOfShots());
         userPref.putFloat(EXPOSURE, ui.getExposure());
         userPref.putFloat(MIRROR_LOCK, ui.getMirrorLockValue());
@@ -456,6 +864,14 @@ class UiController implements ProgressListener, WaitTimeListener {
         userPref.put(COMMENT, settingsDialog.commentTextField.getText());
         userPref.putBoolean(USE_TABS, settingsDialog.tabSeparatedCheckBox.isSelected());
         userPref.putBoolean(LOG_ALL_EVENTS, settingsDialog.logAllEventsCheckBox.isSelected());
+        userPref.putInt(WATCHDOG_MARGIN, settingsDialog.getWatchdogMargin());
+        StartAlignment alignment = settingsDialog.getStartAlignment();
+        if (alignment == null) {
+            userPref.remove(START_ALIGNMENT);
+        } else {
+            userPref.put(START_ALIGNMENT, alignment.name());
+        }
+        userPref.put(OVERRUN_POLICY, settingsDialog.getOverrunPolicy().name());
     }
 
     /** 
@@ -468,7 +884,7 @@ class UiController implements ProgressListener, WaitTimeListener {
         this.logFolder = new File(logFilePath);
         
         ui.logFilenameTextfield.setText(userPref.get(LOG_FILE_PREFIX, "RemoveDebris"));
-        ui.setFireInterval(userPref.getInt(FIRE_INTERVAL, 5));
+        ui.setFireInterval(userPref.getFloat(FIRE_INTERVAL, 5.0F));
         ui.setNumberOfShots(userPref.getInt(N_SHOTS, 999));
         ui.setExposure(userPref.getFloat(EXPOSURE, 1.0F));
         ui.setMirrorLockValue(userPref.getFloat(MIRROR_LOCK, 0.5F));
@@ -488,5 +904,17 @@ class UiController implements ProgressListener, WaitTimeListener {
         settingsDialog.commentTextField.setText(userPref.get(COMMENT, "BST"));
         settingsDialog.tabSeparatedCheckBox.setSelected(userPref.getBoolean(USE_TABS, false));
         settingsDialog.logAllEventsCheckBox.setSelected(userPref.getBoolean(LOG_ALL_EVENTS, false));
+        settingsDialog.setWatchdogMargin(userPref.getInt(WATCHDOG_MARGIN, TriggerData.DEFAULT_WATCHDOG_MARGIN_MS));
+        try {
+            String alignment = userPref.get(START_ALIGNMENT, null);
+            settingsDialog.setStartAlignment(alignment == null ? null : StartAlignment.valueOf(alignment));
+        } catch (IllegalArgumentException ex) {
+            settingsDialog.setStartAlignment(null);
+        }
+        try {
+            settingsDialog.setOverrunPolicy(OverrunPolicy.valueOf(userPref.get(OVERRUN_POLICY, OverrunPolicy.SLIP.name())));
+        } catch (IllegalArgumentException ex) {
+            settingsDialog.setOverrunPolicy(OverrunPolicy.SLIP);
+        }
     }
 }
@@ -21,6 +21,7 @@ package info.johnmurphyastro.dslrtrigger.usbswitch;
 import gnu.io.CommPort;
 import gnu.io.CommPortIdentifier;
 import gnu.io.PortInUseException;
+import gnu.io.SerialPort;
 
 import java.util.ArrayList;
 import java.util.Enumeration;
@@ -49,6 +50,22 @@ public class SerialComPortsAvailable {
         return portNames.toArray(new String[1]);
     }
 
+    /**
+     * Open a serial port that is not being used. The caller sets the port parameters.
+     * @param comPortName Serial COM port name (eg COM3)
+     * @return The open serial port
+     * @throws PortInUseException
+     * @throws InvalidSerialPortNameException No unused serial port has this name
+     */
+    public SerialPort openSerialPort(String comPortName) throws PortInUseException, InvalidSerialPortNameException {
+        for (CommPortIdentifier pid : getAvailableSerialPortIds()) {
+            if (pid.getPortType() == CommPortIdentifier.PORT_SERIAL && pid.getName().equals(comPortName)) {
+                return (SerialPort) pid.open(COM_PORT_OWNER, 1000);
+            }
+        }
+        throw new InvalidSerialPortNameException("Serial port " + comPortName + " is not available");
+    }
+
     /**
      * @return A HashSet containing the CommPortIdentifier for all serial ports
      * that are not currently being used.
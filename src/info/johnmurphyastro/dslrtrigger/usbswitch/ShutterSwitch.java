@@ -0,0 +1,41 @@
+/*
+ * DSLR Trigger is designed to control a DSLR camera to providing accurate
+ * start and end exposure times
+ * Copyright (C) 2018 - 2019  John Murphy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package info.johnmurphyastro.dslrtrigger.usbswitch;
+
+import java.io.IOException;
+
+/**
+ * A switch connected to the DSLR's remote shutter release socket
+ * @author John Murphy
+ */
+public interface ShutterSwitch {
+    /**
+     * Press the DSLR shutter button
+     * @return time when the switch command returns
+     * @throws IOException
+     */
+    public long pressShutterButton() throws IOException;
+
+    /**
+     * Release the DSLR shutter button
+     * @return time when the switch command returns
+     * @throws IOException
+     */
+    public long releaseShutterButton() throws IOException;
+}
@@ -18,6 +18,7 @@
  */
 package info.johnmurphyastro.dslrtrigger.usbswitch;
 
+import info.johnmurphyastro.dslrtrigger.clock.TriggerClock;
 import gnu.io.CommPortIdentifier;
 import gnu.io.PortInUseException;
 import gnu.io.SerialPort;
@@ -37,7 +38,7 @@ import java.util.HashSet;
  *
  * @author John Murphy
  */
-public class UsbSwitch {
+public class UsbSwitch implements ShutterSwitch {
 
     private static final byte CMD = (byte) 0xA0;
     private static final byte SWITCH1 = (byte) 0x01;
@@ -105,13 +106,15 @@ public class UsbSwitch {
     }
 
     /**
-     * Press the DSLR shutter button
+     * Press the DSLR shutter button.
+     * Synchronized so that commands from the Intervalometer and watchdog threads cannot interleave.
      * @return time when the switch command returns
      * @throws IOException
      */
-    public long pressShutterButton() throws IOException {
+    @Override
+    public synchronized long pressShutterButton() throws IOException {
         serialPortWriter.write(switchOnCmd());
-        return System.currentTimeMillis();
+        return TriggerClock.currentTimeMillis();
     }
 
     /**
@@ -119,9 +122,10 @@ public class UsbSwitch {
      * @return time when the switch command returns
      * @throws IOException
      */
-    public long releaseShutterButton() throws IOException {
+    @Override
+    public synchronized long releaseShutterButton() throws IOException {
         serialPortWriter.write(switchOffCmd());
-        return System.currentTimeMillis();
+        return TriggerClock.currentTimeMillis();
     }
 
     /**